@@ -9,6 +9,8 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.net.Socket;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * 消息接收线程：独立线程接收服务器消息，按类型分发处理
@@ -86,15 +88,25 @@ public class MessageReceiver extends Thread {
             case "offline": // 用户下线通知
                 handleUserStatusMsg(jsonMsg, msgType);
                 break;
+            case "presence": // 合并的上下线通知（up/down=账号列表，逗号分隔）
+                handlePresenceMsg(jsonMsg);
+                break;
             case "system": // 系统消息
                 handleSystemMsg(jsonMsg);
                 break;
             case "error": // 错误消息
                 handleErrorMsg(jsonMsg);
                 break;
+            case "loginResult": // 登录结果（success/failed/duplicate/busy）
+                handleLoginResult(jsonMsg);
+                break;
             case "offlineMessages": // 离线消息（可选功能）
                 handleOfflineMessages(jsonMsg);
                 break;
+            case "offlineCount": // 离线消息回放开始（content=总条数）
+            case "offlineDone": // 离线消息回放结束（content=已投递条数）
+                // 回放的消息按 text/group 正常显示，这两个控制帧不需要处理
+                break;
             default:
                 JOptionPane.showMessageDialog(null, "收到未支持的消息类型：" + msgType, "提示", JOptionPane.INFORMATION_MESSAGE);
         }
@@ -203,6 +215,52 @@ public class MessageReceiver extends Thread {
         UIManager.updateFriendStatus(account, isOnline);
     }
 
+    /**
+     * 处理合并的上下线通知：一段时间内的多个好友上下线一次性更新
+     */
+    private void handlePresenceMsg(String jsonMsg) {
+        List<String> up = splitAccounts(MessageParser.getField(jsonMsg, "up"));
+        List<String> down = splitAccounts(MessageParser.getField(jsonMsg, "down"));
+        if (!up.isEmpty() || !down.isEmpty()) {
+            UIManager.updateFriendStatus(up, down);
+        }
+    }
+
+    private static List<String> splitAccounts(String accounts) {
+        List<String> list = new ArrayList<>();
+        if (accounts != null) {
+            for (String account : accounts.split(",")) {
+                if (!account.isBlank()) {
+                    list.add(account.trim());
+                }
+            }
+        }
+        return list;
+    }
+
+    /**
+     * 处理登录结果：成功不提示，失败、重复登录、服务器繁忙时弹窗说明
+     */
+    private void handleLoginResult(String jsonMsg) {
+        String result = MessageParser.getField(jsonMsg, "content");
+        if (result == null || "success".equals(result)) {
+            return;
+        }
+        switch (result) {
+            case "busy": // 服务器登录排队已满
+                JOptionPane.showMessageDialog(null, "服务器繁忙，请稍后重新登录", "提示", JOptionPane.WARNING_MESSAGE);
+                break;
+            case "duplicate":
+                JOptionPane.showMessageDialog(null, "该账号已在其他地方登录", "登录失败", JOptionPane.ERROR_MESSAGE);
+                break;
+            case "failed":
+                JOptionPane.showMessageDialog(null, "账号或密码错误", "登录失败", JOptionPane.ERROR_MESSAGE);
+                break;
+            default:
+                JOptionPane.showMessageDialog(null, "登录失败：" + result, "登录失败", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
     /**
      * 处理系统消息：弹窗显示
      */
@@ -1,6 +1,7 @@
 package client.ui;
 import javax.swing.*;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -24,4 +25,30 @@ public class UIManager {
         JOptionPane.showMessageDialog(null, "好友" + account + "已" + status, "状态通知", JOptionPane.INFORMATION_MESSAGE);
     }
 
+    /**
+     * 批量更新好友在线状态（合并的上下线通知，只提示一次）
+     * @param online 上线的好友账号
+     * @param offline 下线的好友账号
+     */
+    public static void updateFriendStatus(List<String> online, List<String> offline) {
+        for (String account : online) {
+            friendStatusMap.put(account, true);
+        }
+        for (String account : offline) {
+            friendStatusMap.put(account, false);
+        }
+        StringBuilder text = new StringBuilder();
+        if (!online.isEmpty()) {
+            text.append("好友").append(String.join("、", online)).append("已在线");
+        }
+        if (!offline.isEmpty()) {
+            if (text.length() > 0) {
+                text.append("\n");
+            }
+            text.append("好友").append(String.join("、", offline)).append("已离线");
+        }
+        System.out.println("好友状态更新：" + text);
+        JOptionPane.showMessageDialog(null, text.toString(), "状态通知", JOptionPane.INFORMATION_MESSAGE);
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,316 @@
+package server;
+
+import common.protocol.Message;
+import common.utils.JsonUtil;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 连接准入控制（在监听线程 accept 时执行，重连风暴时保护线程和内存）
+ * 1. 接受速率：监听线程按令牌桶（GCRA）节流，超出速率的连接留在内核 backlog 中排队，
+ *    backlog 满后由 TCP 让客户端自行重试，服务器不会因此多开线程。
+ * 2. 连接上限：打开的连接数达到全局上限、或同一 IP 达到单 IP 上限时，回一条 error 后立即关闭，
+ *    不创建 ClientHandler 和线程。免检地址（默认本机回环，如本机反向代理、压测工具）不受单 IP 上限限制。
+ * 3. 登录期限：连上后一直不登录的连接由 HeartbeatManager 在期限到后断开（精度为心跳检测间隔）。
+ *
+ * 配置（ServerConfig，JMX ChatServerAdmin 可在运行时修改）：
+ *   chat.admission.enabled=true
+ *   chat.admission.max.connections=10000    全局上限（0 表示不限）
+ *   chat.admission.max.per.ip=100           单 IP 上限（0 表示不限）
+ *   chat.admission.exempt=127.0.0.1,::1     不受单 IP 上限限制的地址
+ *   chat.admission.accept.rate=100/200      每秒接受的连接数/突发数（0 表示不限）
+ *   chat.admission.login.timeout=30000      连接后必须在多少毫秒内登录（0 表示不限）
+ */
+public class AdmissionControl {
+    public static final String DEFAULT_ACCEPT_RATE = "100/200";
+    public static final String DEFAULT_EXEMPT = "127.0.0.1,::1";
+
+    /**
+     * 拒绝原因（label 用作指标标签）
+     */
+    public enum Reason {
+        GLOBAL_LIMIT("global_limit", "服务器连接已满，请稍后重试"),
+        IP_LIMIT("ip_limit", "来自同一地址的连接过多，请稍后重试"),
+        LOGIN_TIMEOUT("login_timeout", "登录超时"),
+        ACCEPT_ERROR("accept_error", "服务器繁忙，请稍后重试");
+
+        private final String label;
+        private final String message;
+
+        Reason(String label, String message) {
+            this.label = label;
+            this.message = message;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+
+    private static volatile boolean enabled = true;
+    private static volatile int maxConnections = 10_000;
+    private static volatile int maxPerIp = 100;
+    private static volatile Set<String> exempt = parseExempt(DEFAULT_EXEMPT);
+    private static volatile long[] acceptRate = RateLimiter.parseLimit(DEFAULT_ACCEPT_RATE); // {间隔纳秒, 容差纳秒}
+    private static volatile String acceptRateSpec = DEFAULT_ACCEPT_RATE;
+    private static volatile long loginTimeoutMillis = 30_000;
+
+    private static final ConcurrentHashMap<String, AtomicInteger> perIp = new ConcurrentHashMap<>();
+    private static long acceptTat; // 接受速率的理论到达时间（按 AdmissionControl.class 同步）
+
+    private static final LongAdder[] rejected = new LongAdder[Reason.values().length];
+    private static final LongAdder throttled = new LongAdder();
+    private static final LongAdder throttleNanos = new LongAdder();
+
+    static {
+        for (int i = 0; i < rejected.length; i++) {
+            rejected[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * 监听线程在 accept 之前调用：超过接受速率时等待（等待期间新连接留在 backlog 中）
+     * 在锁内预留令牌并算出等待时间，锁外等待，JMX 调整速率时不会被卡住
+     */
+    static void throttleAccept() {
+        if (!enabled) {
+            return;
+        }
+        long wait;
+        synchronized (AdmissionControl.class) {
+            long[] rate = acceptRate;
+            if (rate[0] == 0) {
+                return;
+            }
+            long now = System.nanoTime();
+            wait = Math.max(acceptTat, now) - now - rate[1];
+            acceptTat = Math.max(acceptTat, now) + rate[0];
+        }
+        if (wait > 0) {
+            throttled.increment();
+            throttleNanos.add(wait);
+            LockSupport.parkNanos(wait);
+        }
+    }
+
+    /**
+     * 判断是否接纳刚 accept 的连接；接纳时计入该 IP 的连接数并返回 null，否则返回拒绝原因
+     * 关闭准入控制时也计数（只是不检查上限），运行时开关前后接纳的连接计数一致；
+     * 接纳的连接关闭时必须调用 release（见 ClientHandler.disconnect）
+     */
+    static Reason admit(String ip) {
+        boolean on = enabled;
+        int global = maxConnections;
+        if (on && global > 0 && ClientHandler.getOpenConnectionCount() >= global) {
+            return Reason.GLOBAL_LIMIT;
+        }
+        // 在 compute 里加一，避免和 release 删除计数项交错
+        AtomicInteger count = perIp.compute(ip, (k, c) -> {
+            AtomicInteger n = c != null ? c : new AtomicInteger();
+            n.incrementAndGet();
+            return n;
+        });
+        int limit = !on || exempt.contains(ip) ? 0 : maxPerIp;
+        if (limit > 0 && count.get() > limit) {
+            release(ip);
+            return Reason.IP_LIMIT;
+        }
+        return null;
+    }
+
+    /**
+     * 归还 admit 计入的连接数
+     */
+    static void release(String ip) {
+        perIp.computeIfPresent(ip, (k, count) -> count.decrementAndGet() <= 0 ? null : count);
+    }
+
+    /**
+     * 拒绝连接：回一条 error 后关闭（新连接的发送缓冲区足够放下这一行，不会阻塞监听线程）
+     */
+    static void reject(Socket socket, Reason reason) {
+        recordRejected(reason);
+        Message error = new Message("error");
+        error.setContent(reason.getMessage());
+        try (Socket s = socket) {
+            OutputStream out = s.getOutputStream();
+            out.write((JsonUtil.toJson(error) + "\n").getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        } catch (IOException ignored) {
+            // 客户端已经断开，不需要再通知
+        }
+    }
+
+    static void recordRejected(Reason reason) {
+        rejected[reason.ordinal()].increment();
+    }
+
+    // ===== 配置 =====
+
+    /**
+     * 按服务器配置设置全部参数（ChatServer 启动时调用），配置无效时保留当前参数
+     */
+    public static void configure(ServerConfig config) {
+        // 先全部读取并校验，全部有效后再一起生效
+        int maxConn;
+        int perIp;
+        long loginTimeout;
+        Set<String> exemptSet;
+        String rateSpec;
+        long[] rate;
+        boolean on;
+        try {
+            maxConn = checkMaxConnections(config.getInt(ServerConfig.ADMISSION_MAX_CONNECTIONS, 10_000));
+            perIp = checkMaxPerIp(config.getInt(ServerConfig.ADMISSION_MAX_PER_IP, 100));
+            loginTimeout = checkLoginTimeout(config.getLong(ServerConfig.ADMISSION_LOGIN_TIMEOUT, 30_000));
+            exemptSet = parseExempt(config.getString(ServerConfig.ADMISSION_EXEMPT, DEFAULT_EXEMPT));
+            rateSpec = config.getString(ServerConfig.ADMISSION_ACCEPT_RATE, DEFAULT_ACCEPT_RATE).trim();
+            rate = RateLimiter.parseLimit(rateSpec);
+            on = config.getBoolean(ServerConfig.ADMISSION_ENABLED, true);
+        } catch (IllegalArgumentException e) {
+            System.err.println("❌ 准入配置无效，保留当前设置: " + e.getMessage());
+            return;
+        }
+        maxConnections = maxConn;
+        maxPerIp = perIp;
+        loginTimeoutMillis = loginTimeout;
+        exempt = exemptSet;
+        synchronized (AdmissionControl.class) {
+            acceptRate = rate;
+            acceptRateSpec = rateSpec;
+        }
+        enabled = on;
+    }
+
+    // 地址统一成 InetAddress.getHostAddress 的写法（::1 → 0:0:0:0:0:0:0:1）
+    private static Set<String> parseExempt(String spec) {
+        Set<String> set = new LinkedHashSet<>();
+        for (String part : spec.split(",")) {
+            String ip = part.trim();
+            if (ip.isEmpty()) {
+                continue;
+            }
+            if (ip.equals("::1")) {
+                ip = "0:0:0:0:0:0:0:1";
+            }
+            set.add(ip);
+        }
+        return Collections.unmodifiableSet(set);
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        AdmissionControl.enabled = enabled;
+    }
+
+    public static int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public static void setMaxConnections(int max) {
+        maxConnections = checkMaxConnections(max);
+    }
+
+    private static int checkMaxConnections(int max) {
+        if (max < 0) {
+            throw new IllegalArgumentException("连接上限不能为负: " + max);
+        }
+        return max;
+    }
+
+    public static int getMaxPerIp() {
+        return maxPerIp;
+    }
+
+    public static void setMaxPerIp(int max) {
+        maxPerIp = checkMaxPerIp(max);
+    }
+
+    private static int checkMaxPerIp(int max) {
+        if (max < 0) {
+            throw new IllegalArgumentException("单 IP 连接上限不能为负: " + max);
+        }
+        return max;
+    }
+
+    public static String getExempt() {
+        return String.join(",", exempt);
+    }
+
+    public static void setExempt(String spec) {
+        exempt = parseExempt(spec);
+    }
+
+    public static String getAcceptRate() {
+        return acceptRateSpec;
+    }
+
+    public static synchronized void setAcceptRate(String spec) {
+        acceptRate = RateLimiter.parseLimit(spec);
+        acceptRateSpec = spec.trim();
+    }
+
+    public static long getLoginTimeoutMillis() {
+        return loginTimeoutMillis;
+    }
+
+    public static void setLoginTimeoutMillis(long millis) {
+        loginTimeoutMillis = checkLoginTimeout(millis);
+    }
+
+    private static long checkLoginTimeout(long millis) {
+        if (millis != 0 && millis < 1000) {
+            throw new IllegalArgumentException("登录期限不能小于 1000ms: " + millis);
+        }
+        return millis;
+    }
+
+    // ===== 统计 =====
+
+    public static long getRejectedCount(Reason reason) {
+        return rejected[reason.ordinal()].sum();
+    }
+
+    public static long getRejectedCount() {
+        long total = 0;
+        for (LongAdder adder : rejected) {
+            total += adder.sum();
+        }
+        return total;
+    }
+
+    /**
+     * 监听线程因接受速率等待的次数
+     */
+    public static long getThrottledCount() {
+        return throttled.sum();
+    }
+
+    public static long getThrottleMillis() {
+        return throttleNanos.sum() / 1_000_000L;
+    }
+
+    /**
+     * 当前有连接的 IP 数
+     */
+    public static int getTrackedIpCount() {
+        return perIp.size();
+    }
+}
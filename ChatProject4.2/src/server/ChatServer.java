@@ -0,0 +1,253 @@
+package server;
+
+import server.ServerLogger.Category;
+import server.ServerLogger.Level;
+import server.dao.FriendGraph;
+import server.jfr.ChatEvents;
+import server.jmx.JmxRegistrar;
+import server.metrics.MetricsHttpServer;
+import server.service.LoginQueue;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 聊天服务器核心（与界面无关）
+ * 负责绑定端口、预加载好友索引、接受连接并为每个连接启动 ClientHandler。
+ * 接受连接前后经过 AdmissionControl（接受速率、全局和单 IP 连接上限）。
+ * ServerGUI 和 HeadlessServer 都只是创建 ChatServer 并通过 Listener 接收状态变化。
+ */
+public class ChatServer {
+
+    /**
+     * 服务器状态回调（在监听线程上调用，界面需要自行切换到 EDT）
+     */
+    public interface Listener {
+        default void onStarted(int port, long startupMillis) {}
+
+        default void onStopped() {}
+
+        default void onConnection(Socket socket, int clientId) {}
+
+        default void onError(String message, Exception e) {}
+    }
+
+    private final ServerConfig config;
+    private final Listener listener;
+    private final AtomicInteger clientSeq = new AtomicInteger();
+
+    private volatile ServerSocket serverSocket;
+    private volatile Thread acceptThread;
+    private volatile boolean running;
+    private volatile long startupMillis = -1;
+    private volatile MetricsHttpServer metricsServer;
+
+    public ChatServer(ServerConfig config, Listener listener) {
+        this.config = config;
+        this.listener = listener != null ? listener : new Listener() {};
+    }
+
+    /**
+     * 绑定端口并启动监听线程，端口绑定失败时抛出异常
+     */
+    public synchronized void start() throws IOException {
+        if (running) {
+            return;
+        }
+        long begin = System.nanoTime();
+        int port = config.getPort();
+
+        ServerSocket ss = new ServerSocket();
+        ss.setReuseAddress(true);
+        ss.bind(new InetSocketAddress(InetAddress.getByName(config.getBindAddress()), port),
+                config.getInt(ServerConfig.BACKLOG, 200));
+        serverSocket = ss;
+        running = true;
+
+        // 预加载好友索引（一次查询整体加载，之后登录和上下线通知都不再查好友表）
+        try {
+            FriendGraph.getInstance();
+        } catch (Exception e) {
+            listener.onError("⚠️ 好友索引加载失败: " + e.getMessage(), e);
+        }
+
+        startupMillis = (System.nanoTime() - begin) / 1_000_000;
+        startMetrics();
+        ChatEvents.setEnabled(config.getBoolean(ServerConfig.JFR_EVENTS, true));
+        RateLimiter.configure(config);
+        AdmissionControl.configure(config);
+        LoginQueue.configure(config);
+        PresenceBroadcaster.configure(config);
+        OnlineSet.configure(config);
+        if (config.getBoolean(ServerConfig.JMX_ENABLED, true)) {
+            JmxRegistrar.register(this);
+        }
+        Thread t = new Thread(this::acceptLoop, "chat-accept-" + getPort());
+        acceptThread = t;
+        t.start();
+
+        ServerLogger.log("🚀 服务启动成功，正在监听 " + config.getBindAddress() + ":" + getPort()
+                + "，启动耗时 " + startupMillis + "ms（JVM 启动至监听 " + getMillisSinceJvmStart() + "ms）");
+        listener.onStarted(getPort(), startupMillis);
+    }
+
+    // 指标接口启动失败不影响聊天服务
+    private void startMetrics() {
+        int metricsPort = config.getInt(ServerConfig.METRICS_PORT, -1);
+        if (metricsPort < 0) {
+            return;
+        }
+        MetricsHttpServer ms = new MetricsHttpServer(this,
+                config.getString(ServerConfig.METRICS_BIND, "127.0.0.1"), metricsPort);
+        try {
+            ms.start();
+            metricsServer = ms;
+        } catch (IOException e) {
+            listener.onError("⚠️ 指标接口启动失败（端口 " + metricsPort + "）: " + e.getMessage(), e);
+        }
+    }
+
+    // 循环监听客户端连接
+    private void acceptLoop() {
+        ServerSocket ss = serverSocket;
+        try {
+            while (running && !ss.isClosed()) {
+                AdmissionControl.throttleAccept(); // 超过接受速率时新连接留在 backlog 里等待
+                Socket socket;
+                try {
+                    socket = ss.accept();
+                } catch (IOException e) {
+                    if (!running || ss.isClosed()) {
+                        throw e;
+                    }
+                    // 文件描述符耗尽等临时错误：稍后继续监听，而不是停掉整个服务
+                    AdmissionControl.recordRejected(AdmissionControl.Reason.ACCEPT_ERROR);
+                    ServerLogger.log(Category.PRESENCE, Level.WARN, "⚠️ 接受连接失败: {}", e.getMessage());
+                    Thread.sleep(100);
+                    continue;
+                }
+
+                String ip = socket.getInetAddress().getHostAddress();
+                AdmissionControl.Reason rejected = AdmissionControl.admit(ip);
+                if (rejected != null) {
+                    ServerLogger.log(Category.PRESENCE, Level.DEBUG, "⛔ 拒绝连接 {}: {}", ip, rejected.getLabel());
+                    AdmissionControl.reject(socket, rejected);
+                    continue;
+                }
+
+                int clientId = clientSeq.incrementAndGet();
+                // 启动 ClientHandler
+                ClientHandler handler = new ClientHandler(socket, clientId);
+                handler.setAdmittedAddress(ip);
+                Thread t = new Thread(handler, "client-" + clientId);
+                try {
+                    t.start();
+                } catch (OutOfMemoryError e) {
+                    // 无法再创建线程：只关闭这个连接，监听继续
+                    AdmissionControl.recordRejected(AdmissionControl.Reason.ACCEPT_ERROR);
+                    ServerLogger.log(Category.PRESENCE, Level.ERROR, "❌ 无法为客户端 #{} 创建线程: {}",
+                            clientId, e.getMessage());
+                    handler.disconnect();
+                    continue;
+                }
+                listener.onConnection(socket, clientId);
+            }
+        } catch (Exception e) {
+            if (running) { // 只有在非手动停止的情况下才报错
+                ServerLogger.exception("❌ 监听服务异常停止", e);
+                listener.onError("❌ 监听服务异常停止: " + e.getMessage(), e);
+                stop();
+            }
+        }
+    }
+
+    /**
+     * 停止监听并断开所有在线连接
+     */
+    public void stop() {
+        synchronized (this) {
+            if (!running) {
+                return;
+            }
+            running = false;
+        }
+        try {
+            ServerSocket ss = serverSocket;
+            if (ss != null && !ss.isClosed()) {
+                ss.close(); // 这会抛出 SocketException 中断 accept() 阻塞
+            }
+        } catch (IOException e) {
+            listener.onError("关闭监听时出错: " + e.getMessage(), e);
+        }
+        for (ClientHandler handler : OnlineUserManager.getAllClientHandlers()) {
+            handler.disconnect();
+        }
+        MetricsHttpServer ms = metricsServer;
+        if (ms != null) {
+            ms.stop();
+            metricsServer = null;
+        }
+        JmxRegistrar.unregister();
+        ServerLogger.log("🛑 服务已停止");
+        listener.onStopped();
+    }
+
+    /**
+     * 等待监听线程结束（HeadlessServer 主线程用来保持进程）
+     */
+    public void awaitTermination() throws InterruptedException {
+        Thread t = acceptThread;
+        if (t != null) {
+            t.join();
+        }
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * 实际监听的端口（配置为 0 时由系统分配）
+     */
+    public int getPort() {
+        ServerSocket ss = serverSocket;
+        return ss != null ? ss.getLocalPort() : config.getPort();
+    }
+
+    /**
+     * 启动以来接受的连接数
+     */
+    public int getAcceptedCount() {
+        return clientSeq.get();
+    }
+
+    /**
+     * 指标接口（未启用时为 null）
+     */
+    public MetricsHttpServer getMetricsServer() {
+        return metricsServer;
+    }
+
+    /**
+     * start() 从开始到可以接受连接的耗时（毫秒），未启动返回 -1
+     */
+    public long getStartupMillis() {
+        return startupMillis;
+    }
+
+    public ServerConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * JVM 启动至今的毫秒数
+     */
+    public static long getMillisSinceJvmStart() {
+        return System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+    }
+}
@@ -2,24 +2,54 @@ package server;
 
 import common.protocol.Message;
 import common.utils.JsonUtil;
+import server.ServerLogger.Category;
+import server.ServerLogger.Level;
+import server.dao.OfflineMessageStore;
+import server.jfr.ChatEvents;
+import server.jfr.RouteEvent;
+import server.jfr.SendEvent;
+import server.metrics.MessageTypeMetrics;
+import server.metrics.MetricsRegistry;
 import server.service.LoginService;
+import server.service.OfflineReplayService;
 import server.service.RegisterService;
 
 import java.io.*;
 import java.net.Socket;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ClientHandler implements Runnable {
+    private static final AtomicInteger openConnections = new AtomicInteger(); // 当前打开的连接数（含未登录）
+    private static final int MAX_OUTBOUND_PENDING = 1000; // 单个连接排队的后台发送上限，超过视为慢客户端
+    private static final AtomicInteger outboundThreadSeq = new AtomicInteger();
+    // 后台发送线程：每个连接同一时刻最多占用一个，空闲 60 秒回收
+    private static final ThreadPoolExecutor outboundExecutor = new ThreadPoolExecutor(0, Integer.MAX_VALUE,
+            60L, TimeUnit.SECONDS, new SynchronousQueue<>(), r -> {
+        Thread t = new Thread(r, "outbound-" + outboundThreadSeq.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+    });
     private Socket socket;
     private BufferedReader reader;
     private BufferedWriter writer;
     private String userId;
-    private long lastHeartbeatTime;
     private volatile boolean running = true;
+    private volatile long loginNanos;                     // 登录时间（用于统计首条实时消息耗时）
+    private volatile boolean firstLiveRecorded = true;    // 登录后是否已发出首条实时消息
+    private final AtomicBoolean counted = new AtomicBoolean(); // 是否已计入 openConnections
+    private volatile String admittedAddress;              // AdmissionControl 计入的 IP（关闭时归还）
     private final int clientId;
     private final String clientAddress;
-    private static final long HEARTBEAT_TIMEOUT = 45000; // 45秒超时
-    private static final long CHECK_INTERVAL = 15000; // 每15秒检查一次
+    private final ConnectionStats stats = new ConnectionStats(); // 收发字节、排队帧数、最近心跳
+    private final RateLimiter.Buckets rateBuckets = new RateLimiter.Buckets(); // 入站限流（只由读线程访问）
+    private final Queue<Runnable> outbound = new ConcurrentLinkedQueue<>();  // 本连接的后台发送任务（按提交顺序执行）
+    private final AtomicInteger outboundPending = new AtomicInteger();
     private final LoginService loginService = new LoginService();
     private final RegisterService registerService = new RegisterService();
 
@@ -28,17 +58,18 @@ public class ClientHandler implements Runnable {
         this.socket = socket;
         this.clientId = clientId;
         this.clientAddress = socket.getInetAddress().getHostAddress() + ":" + socket.getPort();
-        this.lastHeartbeatTime = System.currentTimeMillis();
 
         try {
             // 设置字符编码为UTF-8
             reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
             writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), "UTF-8"));
+            counted.set(true);
+            openConnections.incrementAndGet();
 
-            System.out.println("🔄 客户端 #" + clientId + " 已连接: " + clientAddress);
+            ServerLogger.log(Category.PRESENCE, Level.INFO, "🔄 客户端 #{} 已连接: {}", clientId, clientAddress);
 
         } catch (Exception e) {
-            System.err.println("❌ 初始化客户端 #" + clientId + " 失败: " + e.getMessage());
+            ServerLogger.log(Category.PRESENCE, Level.ERROR, "❌ 初始化客户端 #{} 失败: {}", clientId, e.getMessage());
             running = false;
 //             I/O 流初始化失败时，主动终止当前客户端处理器（ClientHandler）的后续逻辑，避免程序进入无效或错误状态。
         }
@@ -48,10 +79,10 @@ public class ClientHandler implements Runnable {
     @Override
     public void run() {
         try {
-            // 启动心跳检测线程
-            Thread heartbeatThread = new Thread(this::heartbeatCheck);
-            heartbeatThread.setDaemon(true);//设置为守护线程
-            heartbeatThread.start();
+            // 登记到心跳管理器（所有连接共用一个检测线程）
+            if (running) {
+                HeartbeatManager.register(this);
+            }
 
             // 主消息处理循环
             String line;
@@ -61,38 +92,80 @@ public class ClientHandler implements Runnable {
 
         } catch (IOException e) {
             if (running) { // 只有非主动断开才输出错误
-                System.out.println("⚠️  客户端 #" + clientId + " 连接异常: " +
-                        (userId != null ? userId : "未登录用户"));
+                ServerLogger.log(Category.PRESENCE, Level.WARN, "⚠️  客户端 #{} 连接异常: {}",
+                        clientId, userId != null ? userId : "未登录用户");
             }
         } finally {
             disconnect();// 确保清理资源
         }
     }
 
+    /**
+     * 在调用线程上按读线程的完整路径处理一行消息（解析、统计、限流、JFR、路由），供 tools.bench 基准测试使用
+     */
+    public void processLine(String jsonLine) {
+        processMessage(jsonLine);
+    }
+
     private void processMessage(String jsonLine) {
+        MessageTypeMetrics metrics = null;
         try {
             // 解析JSON消息
             Message msg = JsonUtil.fromJson(jsonLine);//JSon反序列化
-
-            // 更新最后活跃时间
-            lastHeartbeatTime = System.currentTimeMillis();
-
-            // 记录接收到的消息
-            System.out.println("📨 收到消息 #" + clientId +
-                    (userId != null ? " (" + userId + ")" : "") +
-                    ": " + msg.getType());
+            metrics = MetricsRegistry.forType(msg.getType());
+            int bytes = MetricsRegistry.utf8Length(jsonLine) + 1;
+            metrics.recordReceived(bytes);
+
+            // 更新收包统计和最后活跃时间
+            stats.recordIn(metrics.getIndex(), bytes);
+
+            // 记录接收到的消息（ROUTING 分类 DEBUG 级别，默认关闭时不拼接字符串）
+            ServerLogger.log(Category.ROUTING, Level.DEBUG, "📨 收到消息 #{} ({}): {}",
+                    clientId, userId, msg.getType());
+
+            // 限流：超限的消息不进入路由
+            RateLimiter.Verdict verdict = RateLimiter.check(rateBuckets, metrics.getIndex());
+            if (verdict != RateLimiter.Verdict.PASS) {
+                onRateLimited(verdict, msg.getType());
+                return;
+            }
 
             // 根据消息类型路由处理（根据消息的类型或内容，将它分发（转发）给对应的处理模块。）
             // 解耦设计，降低系统各部分之间的依赖程度，使它们尽可能独立、互不影响。
-            routeMessage(msg);
+            RouteEvent jfr = ChatEvents.beginRoute();
+            long routeStart = System.nanoTime();
+            routeMessage(msg, metrics);
+            long routeNanos = System.nanoTime() - routeStart;
+            metrics.recordRoute(routeNanos);
+            ChatEvents.commitRoute(jfr, msg.getType(), bytes, userId, clientId, routeNanos);
 
         } catch (Exception e) {
-            System.err.println("❌ 处理消息失败 #" + clientId + ": " + e.getMessage());
+            (metrics != null ? metrics : MetricsRegistry.forType(MetricsRegistry.INVALID)).recordError();
+            ServerLogger.log(Category.ROUTING, Level.ERROR, "❌ 处理消息失败 #{}: {}", clientId, e.getMessage());
             sendError("消息格式错误或处理失败");
         }
     }
 
-    private void routeMessage(Message msg) {
+    private void onRateLimited(RateLimiter.Verdict verdict, String type) {
+        switch (verdict) {
+            case DISCONNECT:
+                ServerLogger.log(Category.ROUTING, Level.WARN, "🚦 客户端 #{} ({}) 发送过于频繁，断开连接",
+                        clientId, userId != null ? userId : "未登录用户");
+                sendError("发送过于频繁，连接已断开");
+                disconnect();
+                break;
+            case DROP_NOTIFY:
+                // 连续超限只提示和记录第一条
+                ServerLogger.log(Category.ROUTING, Level.WARN, "🚦 客户端 #{} ({}) 发送过于频繁，丢弃 {} 消息",
+                        clientId, userId != null ? userId : "未登录用户", type);
+                sendError("发送过于频繁，消息已被丢弃");
+                break;
+            default:
+                ServerLogger.log(Category.ROUTING, Level.DEBUG, "🚦 限流丢弃 #{}: {}", clientId, type);
+        }
+    }
+
+    private void routeMessage(Message msg, MessageTypeMetrics metrics) {
         String type = msg.getType();
 
         if (type == null || type.isEmpty()) {
@@ -123,20 +196,27 @@ public class ClientHandler implements Runnable {
                     break;
 
                 case "getOnlineUsers":
-                    handleGetOnlineUsers();
+                    handleGetOnlineUsers(msg);
                     break;
 
                 case "logout":
                     handleLogout();
                     break;
 
+                case "file":
+                case "shake":
+                case "screenshot":
+                    // 文件、窗口抖动、截图：原样转发给目标用户
+                    handleForward(msg);
+                    break;
+
                 default:
-                    System.err.println("❓ 未知消息类型 #" + clientId + ": " + type);
+                    ServerLogger.log(Category.ROUTING, Level.WARN, "❓ 未知消息类型 #{}: {}", clientId, type);
                     sendError("未知消息类型: " + type);
             }
         } catch (Exception e) {
-            System.err.println("❌ 路由消息失败 #" + clientId + ": " + e.getMessage());
-            e.printStackTrace();
+            metrics.recordError();
+            ServerLogger.exception(Category.ROUTING, "❌ 路由消息失败 #" + clientId, e);
             sendError("服务器内部错误");
         }
     }
@@ -159,11 +239,13 @@ public class ClientHandler implements Runnable {
 
         // 转发消息
         if (OnlineUserManager.forwardMessage(msg)) {
-            System.out.println("💬 私聊消息 #" + clientId + ": " + userId + " → " + toUser);
+            ServerLogger.log(Category.ROUTING, Level.DEBUG, "💬 私聊消息 #{}: {} → {}", clientId, userId, toUser);
         } else {
-            // 用户不在线，返回错误
-            sendError("用户 " + toUser + " 不在线");
-            System.out.println("❌ 用户不在线 #" + clientId + ": " + userId + " → " + toUser);
+            // 用户不在线，存为离线消息（异步批量写库），并告知发送者
+            OfflineMessageStore.save(toUser, msg);
+            sendError("用户 " + toUser + " 不在线，消息已离线保存");
+            ServerLogger.log(Category.ROUTING, Level.DEBUG, "📥 用户不在线，已存离线消息 #{}: {} → {}",
+                    clientId, userId, toUser);
         }
     }
 
@@ -178,7 +260,26 @@ public class ClientHandler implements Runnable {
 
         // 广播群聊消息
         OnlineUserManager.broadcastGroupMessage(msg, userId);
-        System.out.println("📢 群聊消息 #" + clientId + ": " + userId + " 发送群消息");
+        ServerLogger.log(Category.ROUTING, Level.DEBUG, "📢 群聊消息 #{}: {} 发送群消息", clientId, userId);
+    }
+
+    private void handleForward(Message msg) {
+        if (userId == null) {
+            sendError("请先登录");
+            return;
+        }
+        String toUser = msg.getTo();
+        if (toUser == null || toUser.isEmpty()) {
+            sendError("接收者不能为空");
+            return;
+        }
+
+        msg.setFrom(userId);
+        if (OnlineUserManager.forwardMessage(msg)) {
+            ServerLogger.log(Category.TRANSFER, Level.DEBUG, "📎 转发 [{}]: {} → {}", msg.getType(), userId, toUser);
+        } else {
+            sendError("用户 " + toUser + " 不在线，无法发送 " + msg.getType());
+        }
     }
 
     private void handleHeartbeat() {
@@ -187,118 +288,229 @@ public class ClientHandler implements Runnable {
         send(heartbeatResp);
     }
 
-    private void handleGetOnlineUsers() {
+    private void handleGetOnlineUsers(Message msg) {
         try {
-            Message resp = new Message("onlineList");
-            String[] users = OnlineUserManager.getAllOnlineUsers();
-            resp.setContent(String.join(",", users));
-            send(resp);
-            System.out.println("📋 返回在线列表 #" + clientId + ": " + userId);
+            OnlineSet.respond(this, msg.getExtra("since")); // 带 since 时只返回之后的变化
+            ServerLogger.log(Category.ROUTING, Level.DEBUG, "📋 返回在线列表 #{}: {}", clientId, userId);
         } catch (Exception e) {
-            System.err.println("❌ 获取在线用户列表失败 #" + clientId + ": " + e.getMessage());
+            ServerLogger.log(Category.ROUTING, Level.ERROR, "❌ 获取在线用户列表失败 #{}: {}", clientId, e.getMessage());
         }
     }
 
     private void handleLogout() {
-        System.out.println("👋 用户主动退出 #" + clientId + ": " + userId);
+        ServerLogger.log(Category.PRESENCE, Level.INFO, "👋 用户主动退出 #{}: {}", clientId, userId);
         disconnect();
     }
 
 
-//心跳超时检测
-    private void heartbeatCheck() {
+    private void sendError(String errorMsg) {
+        Message error = new Message("error");
+        error.setContent(errorMsg);
+        send(error); // 直接调用，无需 try-catch
+    }
 
-        while (running) {
-            try {
-                TimeUnit.MILLISECONDS.sleep(CHECK_INTERVAL);//休眠15秒
+    public void send(Message msg) {
+        sendFrame(msg.getType(), null, msg);
+    }
 
-                long currentTime = System.currentTimeMillis();
-                if (currentTime - lastHeartbeatTime > HEARTBEAT_TIMEOUT) {//检查是否超过45秒未收到消息
-                    System.out.println("💔 心跳超时 #" + clientId +
-                            (userId != null ? " (" + userId + ")" : ""));
-                    disconnect();//断开连接
-                    break;
-                }
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                break;
+    /**
+     * 不在调用线程上等待写出：交给本连接的后台发送队列（上下线广播等一次发给很多连接的场景使用）
+     */
+    public void sendAsync(Message msg) {
+        runOutbound(() -> send(msg));
+    }
+
+    /**
+     * 在本连接的后台发送队列上按提交顺序执行 task（task 内可以调用 send 阻塞写出）
+     * 每个连接同一时刻只占用一个后台线程，慢客户端只拖慢自己的队列；
+     * 排队超过上限说明客户端长时间不读，按慢客户端断开。
+     */
+    public void runOutbound(Runnable task) {
+        if (!running) {
+            return;
+        }
+        if (outboundPending.get() >= MAX_OUTBOUND_PENDING) {
+            ServerLogger.log(Category.PRESENCE, Level.WARN, "⚠️ 客户端 #{} 积压过多未发送的消息，断开连接: {}",
+                    clientId, userId);
+            disconnect();
+            return;
+        }
+        outbound.add(task);
+        if (outboundPending.incrementAndGet() == 1) {
+            outboundExecutor.execute(this::drainOutbound);
+        }
+    }
+
+    // 依次执行排队的发送任务，队列清空后归还线程
+    private void drainOutbound() {
+        do {
+            Runnable task = outbound.poll();
+            try {
+                task.run();
             } catch (Exception e) {
-                System.err.println("心跳检查异常 #" + clientId + ": " + e.getMessage());
+                ServerLogger.log(Category.ROUTING, Level.ERROR, "❌ 后台发送失败 #{}: {}", clientId, e.getMessage());
             }
-        }
+        } while (outboundPending.decrementAndGet() > 0);
     }
 
-    private void sendError(String errorMsg) {
-        Message error = new Message("error");
-        error.setContent(errorMsg);
-        send(error); // 直接调用，无需 try-catch
+    /**
+     * 发送已经编码好的帧（多个连接共用同一份 JSON 时，如 OnlineSet 缓存的在线列表）
+     */
+    public void sendEncoded(String type, String json) {
+        sendFrame(type, json, null);
     }
 
-    public void send(Message msg) {
+    // json 为空时在计时内编码 msg
+    private void sendFrame(String type, String json, Message msg) {
         if (writer == null || !running) {
             return; // 静默失败或记录日志
         }
 
+        SendEvent jfr = ChatEvents.beginSend();
+        long sendStart = System.nanoTime();
+        stats.enterQueue(); // 等待写锁期间计入排队帧数
         try {
+            if (json == null) {
+                json = JsonUtil.toJson(msg);
+            }
+            int bytes;
+            long lockRequested = System.nanoTime();
+            long lockWait;
             synchronized (writer) {
-                String json = JsonUtil.toJson(msg);
+                lockWait = System.nanoTime() - lockRequested;
                 writer.write(json);
                 writer.write("\n");
                 writer.flush();
+                bytes = MetricsRegistry.utf8Length(json) + 1;
+                long now = System.nanoTime();
+                MessageTypeMetrics metrics = MetricsRegistry.forType(type);
+                metrics.recordSent(bytes, now - sendStart);
+                stats.recordOut(metrics.getIndex(), bytes, now - lockRequested);
+
+                if (!firstLiveRecorded && msg != null && isLiveChatMessage(msg)) {
+                    firstLiveRecorded = true;
+                    OfflineReplayService.recordTimeToFirstLive(System.nanoTime() - loginNanos);
+                }
 
-                System.out.println("📤 发送消息 #" + clientId +
-                        (userId != null ? " (" + userId + ")" : "") +
-                        ": " + msg.getType());
+                ServerLogger.log(Category.ROUTING, Level.DEBUG, "📤 发送消息 #{} ({}): {}",
+                        clientId, userId, type);
             }
+            ChatEvents.commitSend(jfr, type, userId, clientId, bytes, lockWait,
+                    System.nanoTime() - lockRequested);
         } catch (IOException e) {
-            System.err.println("❌ 发送消息失败 #" + clientId + ": " + e.getMessage());
+            MetricsRegistry.forType(type).recordError();
+            ServerLogger.log(Category.ROUTING, Level.ERROR, "❌ 发送消息失败 #{}: {}", clientId, e.getMessage());
             // 主动断开连接
             disconnect();
+        } finally {
+            stats.leaveQueue();
         }
     }
 
+    // 实时聊天消息（不含离线回放的消息和登录响应等控制消息）
+    private static boolean isLiveChatMessage(Message msg) {
+        if (msg.getExtra("offline") != null) {
+            return false;
+        }
+        String type = msg.getType();
+        return "text".equals(type) || "group".equals(type) || "file".equals(type)
+                || "shake".equals(type) || "screenshot".equals(type);
+    }
+
     public void disconnect() {
         if (!running) return;
 
         running = false;
+        if (counted.compareAndSet(true, false)) {
+            openConnections.decrementAndGet();
+            if (admittedAddress != null) {
+                AdmissionControl.release(admittedAddress);
+            }
+        }
+        HeartbeatManager.unregister(this);
 
-        // 从在线用户中移除
+        // 从在线用户中移除，并记录离线状态
         if (userId != null) {
-            OnlineUserManager.removeUser(userId);
+            loginService.handleLogout(userId);
         }
 
-        // 关闭资源
+        // 关闭资源：先关 Socket，让阻塞在 readLine 的读线程退出并释放 reader 的锁，
+        // 否则从心跳线程断开时 reader.close() 会一直等到客户端再发数据
         try {
+            if (socket != null && !socket.isClosed()) {
+                socket.close();
+            }
             if (reader != null) {
                 reader.close();
             }
             if (writer != null) {
                 writer.close();
             }
-            if (socket != null && !socket.isClosed()) {
-                socket.close();
-            }
 
-            System.out.println("🔌 连接关闭 #" + clientId + ": " + clientAddress +
-                    (userId != null ? " (" + userId + ")" : ""));
+            ServerLogger.log(Category.PRESENCE, Level.INFO, "🔌 连接关闭 #{}: {} ({})", clientId, clientAddress, userId);
 
         } catch (IOException e) {
-            System.err.println("关闭连接资源时出错 #" + clientId + ": " + e.getMessage());
+            ServerLogger.log(Category.PRESENCE, Level.ERROR, "关闭连接资源时出错 #{}: {}", clientId, e.getMessage());
+        }
+    }
+
+    /**
+     * 监听线程接纳连接后调用；初始化失败的连接不会走到 disconnect 的归还逻辑，这里直接归还
+     */
+    void setAdmittedAddress(String ip) {
+        if (!counted.get()) {
+            AdmissionControl.release(ip);
+            return;
         }
+        this.admittedAddress = ip;
     }
 
     public void setUserId(String id) {
+        setUserId(id, true);
+    }
+
+    /**
+     * 绑定登录账号；notifyFriends=false 时不在这里发上线通知（LoginService 推迟到实时消息之后再发）
+     */
+    public void setUserId(String id, boolean notifyFriends) {
         this.userId = id;
-        OnlineUserManager.addUser(id, this);
-        lastHeartbeatTime = System.currentTimeMillis(); // 重置心跳时间
+        this.loginNanos = System.nanoTime();
+        this.firstLiveRecorded = false;
+        OnlineUserManager.addUser(id, this, notifyFriends);
+        stats.touch(); // 重置心跳时间
 
-        System.out.println("✅ 用户登录成功 #" + clientId + ": " + id);
+        ServerLogger.log(Category.PRESENCE, Level.INFO, "✅ 用户登录成功 #{}: {}", clientId, id);
     }
 
     public String getUserId() {
         return userId;
     }
 
+    public int getClientId() {
+        return clientId;
+    }
+
+    /**
+     * 连接统计（JMX、监控接口读取）
+     */
+    public ConnectionStats getStats() {
+        return stats;
+    }
+
+    /**
+     * 本连接被限流（丢弃或导致断开）的消息数
+     */
+    public long getRateLimitedCount() {
+        return rateBuckets.getLimitedCount();
+    }
+
+    /**
+     * 当前打开的客户端连接数（含尚未登录的连接）
+     */
+    public static int getOpenConnectionCount() {
+        return openConnections.get();
+    }
+
     public boolean isRunning() {
         return running;
     }
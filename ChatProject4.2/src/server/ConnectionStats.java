@@ -0,0 +1,160 @@
+package server;
+
+import server.metrics.MetricsRegistry;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个连接的统计（收发字节/帧数及按消息类型的明细、发送阻塞时间、排队帧数及峰值、最近心跳）
+ * 读线程和多个发送线程并发写入，计数用 LongAdder / 原子数组，读取不加锁。
+ * 按类型的明细以 MetricsRegistry 中的类型序号为下标，不创建 Map，也不随客户端发来的类型增长。
+ */
+public class ConnectionStats {
+    private static final long RATE_WINDOW_NANOS = 1_000_000_000L; // 速率至少按 1 秒窗口计算
+
+    private final long connectedAt = System.currentTimeMillis();
+
+    final LongAdder bytesIn = new LongAdder();
+    final LongAdder bytesOut = new LongAdder();
+    final LongAdder framesIn = new LongAdder();
+    final LongAdder framesOut = new LongAdder();
+    final LongAdder sendBlockedNanos = new LongAdder();       // send() 等待写锁 + 写出的累计时间
+    final AtomicInteger queuedFrames = new AtomicInteger();   // 正在等待写锁或写出的帧
+    private final AtomicInteger maxQueuedFrames = new AtomicInteger();
+    private final AtomicLongArray typeFramesIn = new AtomicLongArray(MetricsRegistry.getTypeCount());
+    private final AtomicLongArray typeBytesIn = new AtomicLongArray(MetricsRegistry.getTypeCount());
+    private final AtomicLongArray typeFramesOut = new AtomicLongArray(MetricsRegistry.getTypeCount());
+    private final AtomicLongArray typeBytesOut = new AtomicLongArray(MetricsRegistry.getTypeCount());
+    private volatile long lastHeartbeat = connectedAt;         // 最近一次收到消息的时间
+
+    // 消息速率采样（只在监控线程调用 sampleMessageRate 时更新）
+    private long rateSampleNanos = System.nanoTime();
+    private long rateSampleFrames;
+    private double messageRate;
+
+    void recordIn(int typeIndex, long bytes) {
+        framesIn.increment();
+        bytesIn.add(bytes);
+        typeFramesIn.incrementAndGet(typeIndex);
+        typeBytesIn.addAndGet(typeIndex, bytes);
+        lastHeartbeat = System.currentTimeMillis();
+    }
+
+    void recordOut(int typeIndex, long bytes, long blockedNanos) {
+        framesOut.increment();
+        bytesOut.add(bytes);
+        typeFramesOut.incrementAndGet(typeIndex);
+        typeBytesOut.addAndGet(typeIndex, bytes);
+        sendBlockedNanos.add(blockedNanos);
+    }
+
+    // send() 开始排队，同时更新排队峰值
+    void enterQueue() {
+        int queued = queuedFrames.incrementAndGet();
+        int max;
+        while (queued > (max = maxQueuedFrames.get())) {
+            if (maxQueuedFrames.compareAndSet(max, queued)) {
+                break;
+            }
+        }
+    }
+
+    void leaveQueue() {
+        queuedFrames.decrementAndGet();
+    }
+
+    void touch() {
+        lastHeartbeat = System.currentTimeMillis();
+    }
+
+    /**
+     * 收发消息总速率（条/秒）
+     * 距上次采样不足 1 秒时返回上次的结果，多个监控线程同时调用也不会把窗口切得过短。
+     */
+    public synchronized double sampleMessageRate() {
+        long now = System.nanoTime();
+        long elapsed = now - rateSampleNanos;
+        if (elapsed >= RATE_WINDOW_NANOS) {
+            long frames = framesIn.sum() + framesOut.sum();
+            messageRate = (frames - rateSampleFrames) * 1e9 / elapsed;
+            rateSampleFrames = frames;
+            rateSampleNanos = now;
+        }
+        return messageRate;
+    }
+
+    public long getConnectedAt() {
+        return connectedAt;
+    }
+
+    public long getBytesIn() {
+        return bytesIn.sum();
+    }
+
+    public long getBytesOut() {
+        return bytesOut.sum();
+    }
+
+    public long getFramesIn() {
+        return framesIn.sum();
+    }
+
+    public long getFramesOut() {
+        return framesOut.sum();
+    }
+
+    public long getSendBlockedNanos() {
+        return sendBlockedNanos.sum();
+    }
+
+    public int getQueuedFrames() {
+        return queuedFrames.get();
+    }
+
+    /**
+     * 排队帧数的历史峰值
+     */
+    public int getMaxQueuedFrames() {
+        return maxQueuedFrames.get();
+    }
+
+    public long getLastHeartbeat() {
+        return lastHeartbeat;
+    }
+
+    // ===== 按消息类型（下标为 MessageTypeMetrics.getIndex()） =====
+
+    public long getFramesIn(int typeIndex) {
+        return typeFramesIn.get(typeIndex);
+    }
+
+    public long getBytesIn(int typeIndex) {
+        return typeBytesIn.get(typeIndex);
+    }
+
+    public long getFramesOut(int typeIndex) {
+        return typeFramesOut.get(typeIndex);
+    }
+
+    public long getBytesOut(int typeIndex) {
+        return typeBytesOut.get(typeIndex);
+    }
+
+    /**
+     * 收发字节数最多的消息类型，没有流量时返回 null
+     */
+    public String getHeaviestType() {
+        int best = -1;
+        long bestBytes = 0;
+        for (int i = 0; i < typeBytesIn.length(); i++) {
+            long bytes = typeBytesIn.get(i) + typeBytesOut.get(i);
+            if (bytes > bestBytes) {
+                bestBytes = bytes;
+                best = i;
+            }
+        }
+        return best >= 0 ? MetricsRegistry.getTypeName(best) : null;
+    }
+}
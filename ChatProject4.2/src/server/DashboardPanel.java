@@ -0,0 +1,180 @@
+package server;
+
+import server.metrics.MetricsSampler;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+/**
+ * 服务端仪表盘：消息速率、连接数、p99 路由耗时、堆内存、CPU 五条走势线
+ * 数据由 MetricsSampler 每秒采样一次；每来一个新点，每张图只把缓存图像左移一格再画最后一段线，
+ * 只有纵轴量程变化或尺寸变化时才整张重画。面板不可见（切到其他标签页）时不重画。
+ */
+public class DashboardPanel extends JPanel {
+    private final MetricsSampler sampler;
+    private final SparklineChart[] charts;
+
+    public DashboardPanel(MetricsSampler sampler) {
+        super(new GridLayout(0, 1, 0, 6));
+        this.sampler = sampler;
+        setBackground(Color.WHITE);
+        setBorder(BorderFactory.createEmptyBorder(6, 6, 6, 6));
+
+        charts = new SparklineChart[]{
+                new SparklineChart(sampler.getMessagesPerSecond(), new Color(0, 120, 215)),
+                new SparklineChart(sampler.getConnections(), new Color(40, 167, 69)),
+                new SparklineChart(sampler.getRouteP99(), new Color(220, 53, 69)),
+                new SparklineChart(sampler.getHeapUsed(), new Color(111, 66, 193)),
+                new SparklineChart(sampler.getCpuLoad(), new Color(253, 126, 20)),
+        };
+        for (SparklineChart chart : charts) {
+            add(chart);
+        }
+
+        // 采样线程回调，切到 EDT 后只重画可见的图
+        sampler.addListener(() -> SwingUtilities.invokeLater(() -> {
+            if (isShowing()) {
+                for (SparklineChart chart : charts) {
+                    chart.repaint();
+                }
+            }
+        }));
+    }
+
+    public MetricsSampler getSampler() {
+        return sampler;
+    }
+
+    /**
+     * 单条走势线（最新的点在最右侧）
+     */
+    static class SparklineChart extends JComponent {
+        private static final int HEADER = 18;                 // 标题行高度
+        private static final Color GRID = new Color(235, 235, 235);
+
+        private final MetricsSampler.Series series;
+        private final Color lineColor;
+
+        // 缓存的折线图像及其对应状态（只在 EDT 访问）
+        private BufferedImage image;
+        private long drawnCount;
+        private double scaleMax;
+        private int step;
+
+        SparklineChart(MetricsSampler.Series series, Color lineColor) {
+            this.series = series;
+            this.lineColor = lineColor;
+            setPreferredSize(new Dimension(300, 60));
+            setOpaque(true);
+        }
+
+        @Override
+        protected void paintComponent(Graphics g) {
+            int w = getWidth();
+            int h = getHeight() - HEADER;
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, getWidth(), getHeight());
+            if (w < 2 || h < 2) {
+                return;
+            }
+
+            long count = series.getCount();
+            double windowMax = series.getMax();
+            boolean rescale = windowMax > scaleMax || (scaleMax > 1 && windowMax < scaleMax / 4);
+            if (image == null || image.getWidth() != w || image.getHeight() != h || rescale
+                    || count - drawnCount >= MetricsSampler.CAPACITY) {
+                redraw(w, h, count, windowMax);
+            } else if (count > drawnCount) {
+                append(w, h, count);
+            }
+            g.drawImage(image, 0, HEADER, null);
+
+            // 标题、最新值和量程
+            g.setColor(Color.DARK_GRAY);
+            g.setFont(getFont().deriveFont(Font.BOLD, 12f));
+            String unit = series.getUnit();
+            g.drawString(series.getTitle() + "  " + format(series.getLatest()) + unit, 4, 13);
+            g.setFont(getFont().deriveFont(Font.PLAIN, 11f));
+            String max = "max " + format(scaleMax) + unit;
+            g.drawString(max, w - g.getFontMetrics().stringWidth(max) - 4, 13);
+        }
+
+        // 整张重画：重新计算量程并画出窗口内全部点
+        private void redraw(int w, int h, long count, double windowMax) {
+            if (image == null || image.getWidth() != w || image.getHeight() != h) {
+                image = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+            }
+            scaleMax = niceCeil(windowMax * 1.2);
+            step = Math.max(1, (w - 1) / (MetricsSampler.CAPACITY - 1));
+
+            Graphics2D g2 = image.createGraphics();
+            g2.setColor(Color.WHITE);
+            g2.fillRect(0, 0, w, h);
+            g2.setColor(GRID);
+            g2.drawLine(0, h / 2, w, h / 2);
+            g2.drawLine(0, h - 1, w, h - 1);
+            g2.setColor(lineColor);
+            long first = Math.max(0, count - MetricsSampler.CAPACITY);
+            for (long seq = first + 1; seq < count; seq++) {
+                int x1 = w - 1 - (int) (count - seq) * step;
+                g2.drawLine(x1, y(series.valueAt(seq - 1), h), x1 + step, y(series.valueAt(seq), h));
+            }
+            g2.dispose();
+            drawnCount = count;
+        }
+
+        // 增量绘制：图像左移一格，只画新的一段
+        private void append(int w, int h, long count) {
+            Graphics2D g2 = image.createGraphics();
+            for (long seq = drawnCount; seq < count; seq++) {
+                g2.copyArea(step, 0, w - step, h, -step, 0);
+                g2.setColor(Color.WHITE);
+                g2.fillRect(w - step, 0, step, h);
+                g2.setColor(GRID);
+                g2.drawLine(w - step, h / 2, w, h / 2);
+                g2.drawLine(w - step, h - 1, w, h - 1);
+                if (seq > 0) {
+                    g2.setColor(lineColor);
+                    g2.drawLine(w - 1 - step, y(series.valueAt(seq - 1), h), w - 1, y(series.valueAt(seq), h));
+                }
+            }
+            // 移出窗口的旧线段（窗口左侧剩余的几列）擦掉，和整张重画的结果保持一致
+            int left = w - 1 - (MetricsSampler.CAPACITY - 1) * step;
+            if (left > 0) {
+                g2.setColor(Color.WHITE);
+                g2.fillRect(0, 0, left, h);
+                g2.setColor(GRID);
+                g2.drawLine(0, h / 2, left - 1, h / 2);
+                g2.drawLine(0, h - 1, left - 1, h - 1);
+            }
+            g2.dispose();
+            drawnCount = count;
+        }
+
+        private int y(double value, int h) {
+            double ratio = scaleMax > 0 ? Math.min(1.0, value / scaleMax) : 0;
+            return h - 1 - (int) Math.round(ratio * (h - 2));
+        }
+
+        // 向上取到 1/2/5 × 10^n，避免量程随每个点抖动
+        private static double niceCeil(double value) {
+            if (value <= 1) {
+                return 1;
+            }
+            double magnitude = Math.pow(10, Math.floor(Math.log10(value)));
+            for (double f : new double[]{1, 2, 5, 10}) {
+                if (value <= f * magnitude) {
+                    return f * magnitude;
+                }
+            }
+            return 10 * magnitude;
+        }
+
+        private static String format(double value) {
+            return value >= 100 || value == Math.rint(value)
+                    ? String.valueOf(Math.round(value))
+                    : String.format("%.1f", value);
+        }
+    }
+}
@@ -26,8 +26,8 @@ public class FileTransferHandler {
         boolean success = OnlineUserManager.forwardMessage(msg);
 
         if (success) {
-            ServerLogger.log("📁 文件转发: " + sender.getUserId() + " -> " + toUser +
-                    " (文件名: " + msg.getExtra("fileName") + ")");
+            ServerLogger.log(ServerLogger.Category.TRANSFER, ServerLogger.Level.DEBUG, "📁 文件转发: {} -> {} (文件名: {})",
+                    sender.getUserId(), toUser, msg.getExtra("fileName"));
         } else {
             // 对方不在线，可以提示发送者
             Message error = new Message("error");
@@ -44,7 +44,8 @@ public class FileTransferHandler {
         msg.setFrom(sender.getUserId());
 
         if (OnlineUserManager.forwardMessage(msg)) {
-            ServerLogger.log("🖼️ 截图转发: " + sender.getUserId() + " -> " + toUser);
+            ServerLogger.log(ServerLogger.Category.TRANSFER, ServerLogger.Level.DEBUG, "🖼️ 截图转发: {} -> {}",
+                    sender.getUserId(), toUser);
         }
     }
 
@@ -56,7 +57,8 @@ public class FileTransferHandler {
         msg.setFrom(sender.getUserId());
 
         if (OnlineUserManager.forwardMessage(msg)) {
-            ServerLogger.log("📳 窗口抖动: " + sender.getUserId() + " -> " + toUser);
+            ServerLogger.log(ServerLogger.Category.TRANSFER, ServerLogger.Level.DEBUG, "📳 窗口抖动: {} -> {}",
+                    sender.getUserId(), toUser);
         }
     }
 }
\ No newline at end of file
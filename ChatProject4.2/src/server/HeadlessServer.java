@@ -0,0 +1,48 @@
+package server;
+
+import server.dao.OfflineMessageStore;
+import server.dao.UserStatusWriter;
+import server.dao.UserStoreFactory;
+
+/**
+ * 无界面启动入口（服务器、容器中运行）
+ * 不加载任何 Swing 类，配置来自配置文件、系统属性和命令行参数（见 ServerConfig）。
+ * 例：java -cp out:lib/* server.HeadlessServer --port=5000 --store=embedded --store.dir=/var/lib/chat
+ */
+public class HeadlessServer {
+
+    public static void main(String[] args) {
+        ServerConfig config = ServerConfig.load(args);
+        System.out.println("⚙️ 配置来源: " + config.getSource() + " " + config);
+
+        ChatServer server = new ChatServer(config, new ChatServer.Listener() {
+            @Override
+            public void onError(String message, Exception e) {
+                System.err.println(message);
+            }
+        });
+
+        try {
+            server.start();
+        } catch (Exception e) {
+            System.err.println("❌ 启动失败: " + e.getMessage());
+            ServerLogger.close();
+            System.exit(1);
+            return;
+        }
+
+        // 进程退出时停止监听，写回缓存的状态和离线消息后再关闭存储
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop();
+            UserStatusWriter.shutdown();
+            OfflineMessageStore.shutdown();
+            UserStoreFactory.close();
+        }, "chat-shutdown"));
+
+        try {
+            server.awaitTermination();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -1,7 +1,12 @@
 package server;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -13,37 +18,139 @@ import java.util.concurrent.TimeUnit;
  * 客户端突然断电、拔网线、App 崩溃 → 没有发送关闭连接的信号
  * 服务器不知道客户端已离线，仍认为连接有效
  * 结果：服务器持续维护无效连接，浪费内存、线程、文件描述符等资源
+ *
+ * 所有连接共用一个检测线程（不再每个连接各开一个线程），
+ * 检测间隔和超时时间可在运行时调整（JMX ChatServerAdmin）。
+ * 同一个检测线程还负责断开超过登录期限仍未登录的连接（期限见 AdmissionControl）。
  */
 public class HeartbeatManager {
-    private static final long HEARTBEAT_CHECK_INTERVAL = 30; // 秒
-    private static final long HEARTBEAT_TIMEOUT = 90; // 秒
+    private static volatile long checkIntervalMillis = 15_000; // 每15秒检查一次
+    private static volatile long timeoutMillis = 45_000;       // 45秒未收到任何消息视为超时
+
+    private static final Set<ClientHandler> clients = ConcurrentHashMap.newKeySet();
     private static ScheduledExecutorService scheduler;
+    private static ScheduledFuture<?> checkTask;
 
-    public static void start() {
+    public static synchronized void start() {
         if (scheduler != null && !scheduler.isShutdown()) {
             return;
         }
 
-        scheduler = Executors.newSingleThreadScheduledExecutor();
-        scheduler.scheduleAtFixedRate(
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "heartbeat-check");
+            t.setDaemon(true);
+            return t;
+        });
+        schedule();
+
+        System.out.println("💓 心跳管理器已启动");
+    }
+
+    private static void schedule() {
+        if (checkTask != null) {
+            checkTask.cancel(false);
+        }
+        checkTask = scheduler.scheduleAtFixedRate(
                 HeartbeatManager::checkAllClients,
-                HEARTBEAT_CHECK_INTERVAL,
-                HEARTBEAT_CHECK_INTERVAL,
-                TimeUnit.SECONDS
+                checkIntervalMillis,
+                checkIntervalMillis,
+                TimeUnit.MILLISECONDS
         );
+    }
 
-        System.out.println("💓 心跳管理器已启动");
+    /**
+     * 连接建立后登记（首次登记时自动启动检测线程）
+     */
+    public static void register(ClientHandler handler) {
+        if (scheduler == null) {
+            start();
+        }
+        clients.add(handler);
+    }
+
+    /**
+     * 连接关闭时注销
+     */
+    public static void unregister(ClientHandler handler) {
+        clients.remove(handler);
     }
 
     private static void checkAllClients() {
-        // 这里可以扩展为检查所有客户端连接状态
-        // 当前实现在 ClientHandler 中各自检测
+        long now = System.currentTimeMillis();
+        long timeout = timeoutMillis;
+        long loginTimeout = AdmissionControl.isEnabled() ? AdmissionControl.getLoginTimeoutMillis() : 0;
+        for (ClientHandler handler : clients) {
+            try {
+                if (!handler.isRunning()) {
+                    clients.remove(handler);
+                } else if (loginTimeout > 0 && handler.getUserId() == null
+                        && now - handler.getStats().getConnectedAt() > loginTimeout) {
+                    // 只连接不登录（心跳照发也一样）的连接占着线程，到期断开
+                    ServerLogger.log(ServerLogger.Category.PRESENCE, ServerLogger.Level.INFO,
+                            "⏱️ 登录超时 #{}", handler.getClientId());
+                    AdmissionControl.recordRejected(AdmissionControl.Reason.LOGIN_TIMEOUT);
+                    handler.disconnect();
+                    clients.remove(handler);
+                } else if (now - handler.getStats().getLastHeartbeat() > timeout) {
+                    ServerLogger.log(ServerLogger.Category.PRESENCE, ServerLogger.Level.INFO,
+                            "💔 心跳超时 #{} ({})", handler.getClientId(), handler.getUserId());
+                    handler.disconnect();//断开连接
+                    clients.remove(handler);
+                }
+            } catch (Exception e) {
+                System.err.println("心跳检查异常 #" + handler.getClientId() + ": " + e.getMessage());
+            }
+        }
     }
 
-    public static void stop() {
+    public static synchronized void stop() {
         if (scheduler != null) {
             scheduler.shutdownNow();
+            scheduler = null;
+            checkTask = null;
             System.out.println("💔 心跳管理器已停止");
         }
     }
-}
\ No newline at end of file
+
+    public static long getCheckIntervalMillis() {
+        return checkIntervalMillis;
+    }
+
+    /**
+     * 调整检测间隔（立即按新间隔重新调度）
+     */
+    public static synchronized void setCheckIntervalMillis(long millis) {
+        if (millis < 100) {
+            throw new IllegalArgumentException("检测间隔不能小于 100ms: " + millis);
+        }
+        checkIntervalMillis = millis;
+        if (scheduler != null) {
+            schedule();
+        }
+    }
+
+    public static long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    public static void setTimeoutMillis(long millis) {
+        if (millis < 1000) {
+            throw new IllegalArgumentException("心跳超时不能小于 1000ms: " + millis);
+        }
+        timeoutMillis = millis;
+    }
+
+    /**
+     * 当前登记的连接数
+     */
+    public static int getTrackedCount() {
+        return clients.size();
+    }
+
+    /**
+     * 当前登记的连接（含尚未登录的连接）
+     */
+    public static List<ClientHandler> getTrackedClients() {
+        return new ArrayList<>(clients);
+    }
+}
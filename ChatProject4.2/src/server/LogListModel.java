@@ -0,0 +1,223 @@
+package server;
+
+import javax.swing.*;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 服务端日志面板的数据模型（环形缓冲区，只保留最近 capacity 行）
+ * 任意线程调用 offer() 只是把日志行放进待显示队列；
+ * EDT 上的 Swing Timer 以固定帧率（默认每 50ms）一次性取出整批日志，
+ * 按当前过滤级别追加到可见列表并只触发一次增删事件，日志再多也不会淹没 EDT 事件队列。
+ * 配合固定行高的 JList 使用，只绘制可见行。
+ */
+public class LogListModel extends AbstractListModel<LogListModel.LogLine> {
+    private static final int FRAME_MILLIS = 50;
+
+    /**
+     * 一行日志
+     */
+    public static final class LogLine {
+        final ServerLogger.Level level;
+        final String text;
+
+        LogLine(ServerLogger.Level level, String text) {
+            this.level = level;
+            this.text = text;
+        }
+
+        public ServerLogger.Level getLevel() {
+            return level;
+        }
+
+        @Override
+        public String toString() {
+            return text;
+        }
+    }
+
+    private final int capacity;
+    private final Timer timer;
+
+    // 待显示队列（生产者线程写入，EDT 每帧整体取走），最多保留 capacity 行
+    private final Object pendingLock = new Object();
+    private ArrayDeque<LogLine> pending = new ArrayDeque<>();
+    private long droppedLines;
+
+    // 以下字段只在 EDT 访问
+    private final LogLine[] all;       // 全部级别的最近日志（切换过滤级别时用来重建）
+    private int allStart, allSize;
+    private final LogLine[] visible;   // 当前过滤级别下可见的日志
+    private int visibleStart, visibleSize;
+    private ServerLogger.Level minLevel = ServerLogger.Level.DEBUG;
+    private Runnable afterUpdate;
+
+    public LogListModel(int capacity) {
+        this.capacity = capacity;
+        this.all = new LogLine[capacity];
+        this.visible = new LogLine[capacity];
+        this.timer = new Timer(FRAME_MILLIS, e -> drain());
+        this.timer.setCoalesce(true);
+        this.timer.start();
+    }
+
+    /**
+     * 添加一行日志（任意线程调用）
+     */
+    public void offer(ServerLogger.Level level, String text) {
+        LogLine line = new LogLine(level, text);
+        synchronized (pendingLock) {
+            if (pending.size() >= capacity) {
+                // 一帧内超过容量的部分反正会被挤出环形缓冲区，直接丢弃最旧的
+                pending.pollFirst();
+                droppedLines++;
+            }
+            pending.add(line);
+        }
+    }
+
+    // EDT：取出整批日志并追加
+    private void drain() {
+        ArrayDeque<LogLine> batch;
+        synchronized (pendingLock) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = pending;
+            pending = new ArrayDeque<>();
+        }
+
+        int oldSize = visibleSize;
+        int removed = 0;
+        int added = 0;
+        for (LogLine line : batch) {
+            allStart = push(all, allStart, allSize, line);
+            allSize = Math.min(allSize + 1, capacity);
+
+            if (line.level.ordinal() >= minLevel.ordinal()) {
+                if (visibleSize == capacity) {
+                    removed++;
+                }
+                visibleStart = push(visible, visibleStart, visibleSize, line);
+                visibleSize = Math.min(visibleSize + 1, capacity);
+                added++;
+            }
+        }
+        if (added == 0) {
+            return;
+        }
+
+        // 先报被挤掉的旧行，再报新增的行
+        added = Math.min(added, capacity);
+        removed = Math.min(removed, oldSize);
+        if (removed > 0) {
+            fireIntervalRemoved(this, 0, removed - 1);
+        }
+        fireIntervalAdded(this, visibleSize - added, visibleSize - 1);
+        if (afterUpdate != null) {
+            afterUpdate.run();
+        }
+    }
+
+    // 追加到环形数组，满时覆盖最旧的一行，返回新的起始位置
+    private int push(LogLine[] ring, int start, int size, LogLine line) {
+        if (size < capacity) {
+            ring[(start + size) % capacity] = line;
+            return start;
+        }
+        ring[start] = line;
+        return (start + 1) % capacity;
+    }
+
+    /**
+     * 设置显示的最低级别，并按新级别重建可见列表（EDT 调用）
+     */
+    public void setMinLevel(ServerLogger.Level level) {
+        drain();
+        minLevel = level;
+        int oldSize = visibleSize;
+        visibleStart = 0;
+        visibleSize = 0;
+        for (int i = 0; i < allSize; i++) {
+            LogLine line = all[(allStart + i) % capacity];
+            if (line.level.ordinal() >= level.ordinal()) {
+                visible[visibleSize++] = line;
+            }
+        }
+        for (int i = visibleSize; i < oldSize; i++) {
+            visible[i] = null;
+        }
+        if (oldSize > 0) {
+            fireIntervalRemoved(this, 0, oldSize - 1);
+        }
+        if (visibleSize > 0) {
+            fireIntervalAdded(this, 0, visibleSize - 1);
+        }
+        if (afterUpdate != null) {
+            afterUpdate.run();
+        }
+    }
+
+    public ServerLogger.Level getMinLevel() {
+        return minLevel;
+    }
+
+    /**
+     * 清空日志（EDT 调用）
+     */
+    public void clear() {
+        synchronized (pendingLock) {
+            pending.clear();
+        }
+        int oldSize = visibleSize;
+        Arrays.fill(all, null);
+        Arrays.fill(visible, null);
+        allStart = allSize = visibleStart = visibleSize = 0;
+        if (oldSize > 0) {
+            fireIntervalRemoved(this, 0, oldSize - 1);
+        }
+    }
+
+    /**
+     * 每帧追加完成后的回调（用于自动滚动到底部）
+     */
+    public void setAfterUpdate(Runnable afterUpdate) {
+        this.afterUpdate = afterUpdate;
+    }
+
+    /**
+     * 因单帧日志过多被丢弃的行数
+     */
+    public long getDroppedLines() {
+        synchronized (pendingLock) {
+            return droppedLines;
+        }
+    }
+
+    /**
+     * 当前可见行的文本（复制等用途）
+     */
+    public List<String> getVisibleLines() {
+        List<String> lines = new ArrayList<>(visibleSize);
+        for (int i = 0; i < visibleSize; i++) {
+            lines.add(visible[(visibleStart + i) % capacity].text);
+        }
+        return lines;
+    }
+
+    public void stop() {
+        timer.stop();
+    }
+
+    @Override
+    public int getSize() {
+        return visibleSize;
+    }
+
+    @Override
+    public LogLine getElementAt(int index) {
+        return visible[(visibleStart + index) % capacity];
+    }
+}
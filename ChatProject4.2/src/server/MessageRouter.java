@@ -6,6 +6,10 @@ import server.service.FindPwdService;
 import server.service.LoginService;
 import server.service.RegisterService;
 import server.FileTransferHandler;
+import server.jfr.ChatEvents;
+import server.jfr.RouteEvent;
+import server.metrics.MessageTypeMetrics;
+import server.metrics.MetricsRegistry;
 
 /**
  * 消息路由器 - 负责将消息分发到对应的处理器
@@ -21,6 +25,13 @@ public class MessageRouter {
 
 //    route统一路由入口
     public static void route(Message msg, ClientHandler handler) {
+        route(msg, handler, -1);
+    }
+
+    /**
+     * 路由消息，frameBytes 为原始 JSON 行的字节数（未知时传 -1），只用于 JFR 事件
+     */
+    public static void route(Message msg, ClientHandler handler, int frameBytes) {
         String type = msg.getType();
 
         if (type == null || type.isEmpty()) {
@@ -28,10 +39,15 @@ public class MessageRouter {
             return;
         }
 
-        // 记录消息类型
-        ServerLogger.debug("路由消息: type=" + type + ", from=" +
-                (handler.getUserId() != null ? handler.getUserId() : "未登录"));
+        // 记录消息类型（DEBUG 默认关闭，先判断级别避免热点路径上拼接字符串）
+        if (ServerLogger.isEnabled(ServerLogger.Level.DEBUG)) {
+            ServerLogger.debug("路由消息: type=" + type + ", from=" +
+                    (handler.getUserId() != null ? handler.getUserId() : "未登录"));
+        }
 
+        MessageTypeMetrics metrics = MetricsRegistry.forType(type);
+        RouteEvent jfr = ChatEvents.beginRoute();
+        long routeStart = System.nanoTime();
         try {
             switch (type) {
                 case "login":
@@ -55,7 +71,7 @@ public class MessageRouter {
                     break;
 
                 case "getOnlineUsers":
-                    handleGetOnlineUsers(handler);
+                    handleGetOnlineUsers(msg, handler);
                     break;
 
                 case "logout":
@@ -91,8 +107,13 @@ public class MessageRouter {
                     sendError(handler, "未知消息类型: " + type);
             }
         } catch (Exception e) {
+            metrics.recordError();
             ServerLogger.exception("路由消息失败: type=" + type, e);
             sendError(handler, "服务器处理消息时发生错误");
+        } finally {
+            long routeNanos = System.nanoTime() - routeStart;
+            metrics.recordRoute(routeNanos);
+            ChatEvents.commitRoute(jfr, type, frameBytes, handler.getUserId(), handler.getClientId(), routeNanos);
         }
     }
 
@@ -145,7 +166,9 @@ public class MessageRouter {
 
         // 转发消息
         if (OnlineUserManager.forwardMessage(msg)) {
-            ServerLogger.log("私聊消息转发成功: " + userId + " -> " + toUser);
+            if (ServerLogger.isEnabled(ServerLogger.Level.DEBUG)) {
+                ServerLogger.debug("私聊消息转发成功: " + userId + " -> " + toUser);
+            }
 
             // 给发送者确认
             Message ack = new Message("ack");
@@ -175,7 +198,9 @@ public class MessageRouter {
 
         // 广播群聊消息
         OnlineUserManager.broadcastGroupMessage(msg, userId);
-        ServerLogger.log("群聊消息广播: " + userId);
+        if (ServerLogger.isEnabled(ServerLogger.Level.DEBUG)) {
+            ServerLogger.debug("群聊消息广播: " + userId);
+        }
 
         // 给发送者确认
         Message ack = new Message("ack");
@@ -204,19 +229,12 @@ public class MessageRouter {
     /**
      * 处理获取在线用户列表
      */
-    private static void handleGetOnlineUsers(ClientHandler handler) {
+    private static void handleGetOnlineUsers(Message msg, ClientHandler handler) {
         try {
-            String[] users = OnlineUserManager.getAllOnlineUsers();
-            String userList = String.join(",", users);
-
-            Message resp = new Message("onlineList");
-            resp.setContent(userList);
-
-            // 可选：添加在线人数
-            resp.putExtra("count", String.valueOf(users.length));
-
-            handler.send(resp);
-            ServerLogger.log("返回在线用户列表: count=" + users.length);
+            // 完整列表按版本缓存（含在线人数），带 since 时只返回之后的变化
+            OnlineSet.respond(handler, msg.getExtra("since"));
+            ServerLogger.log(ServerLogger.Category.ROUTING, ServerLogger.Level.DEBUG,
+                    "返回在线用户列表: version={}", OnlineSet.getVersion());
         } catch (Exception e) {
             ServerLogger.exception("获取在线用户列表失败", e);
             sendError(handler, "获取在线用户失败");
@@ -306,7 +324,9 @@ public class MessageRouter {
             ClientHandler targetHandler = OnlineUserManager.getUser(targetUser);
             if (targetHandler != null) {
                 targetHandler.send(msg);
-                ServerLogger.debug("转发消息 [" + msg.getType() + "] 从 " + msg.getFrom() + " 到 " + targetUser);
+                if (ServerLogger.isEnabled(ServerLogger.Level.DEBUG)) {
+                    ServerLogger.debug("转发消息 [" + msg.getType() + "] 从 " + msg.getFrom() + " 到 " + targetUser);
+                }
             } else {
                 // 目标不在线，可选：存入离线消息或返回错误
                 // 这里简单处理：告诉发送者对方不在线
@@ -0,0 +1,237 @@
+package server;
+
+import common.protocol.Message;
+import common.utils.JsonUtil;
+
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 带版本号的在线用户集合（getOnlineUsers 的数据来源）
+ * 每次上线/下线版本号加一，并在有界的变更日志里记一条：
+ * 1. 完整列表按版本缓存编码好的 onlineList 帧，同一版本的多次请求直接复用，不再每次拼接整个在线表、转成 JSON；
+ * 2. 请求带上客户端已知的版本（since）时只返回之后的变化（同一用户多次变化只保留最后状态），
+ *    版本已滚出变更日志、不是本次运行产生的、或变化比完整列表还多时返回完整列表。
+ *   请求：{"type":"getOnlineUsers","since":"1760000000000120"}
+ *   完整：{"type":"onlineList","content":"账号,账号","count":"2","version":"..."}
+ *   增量：{"type":"onlineDelta","up":"账号,账号","down":"账号","since":"...","version":"..."}
+ * 版本号从启动时刻（毫秒 × 1000）开始递增，上一次运行的版本不会被误认为本次的版本。
+ *
+ * 配置（ServerConfig，JMX ChatServerAdmin 可在运行时修改）：
+ *   chat.online.changelog=10000    变更日志条数（更早的版本只能拿完整列表）
+ */
+public class OnlineSet {
+    private static final Object lock = new Object();
+    private static final Set<String> members = new LinkedHashSet<>(); // 按 lock 同步
+    private static final long FIRST_VERSION = System.currentTimeMillis() * 1000;
+    private static volatile long version = FIRST_VERSION;     // 只在 lock 内修改，读取不加锁
+    private static long logStart = version;                           // 变更日志从这个版本之后开始有效
+
+    // 变更日志（环形缓冲）：版本 v 的变化存在下标 v % 容量
+    private static String[] logUsers = new String[10_000];
+    private static boolean[] logOnline = new boolean[10_000];
+
+    private static volatile Snapshot snapshot;
+
+    private static final LongAdder fullResponses = new LongAdder();
+    private static final LongAdder deltaResponses = new LongAdder();
+    private static final LongAdder snapshotBuilds = new LongAdder();
+
+    // 某个版本的完整列表（编码好的帧）
+    private static final class Snapshot {
+        final long version;
+        final String json;
+
+        Snapshot(long version, String json) {
+            this.version = version;
+            this.json = json;
+        }
+    }
+
+    /**
+     * 记录一次上线/下线（OnlineUserManager 在修改在线表的 compute 内调用，与在线表保持一致）
+     */
+    static void recordChange(String userId, boolean online) {
+        synchronized (lock) {
+            boolean changed = online ? members.add(userId) : members.remove(userId);
+            if (!changed) {
+                return;
+            }
+            version++;
+            int slot = (int) (version % logUsers.length);
+            logUsers[slot] = userId;
+            logOnline[slot] = online;
+        }
+    }
+
+    /**
+     * 回复 getOnlineUsers：since 为客户端已知的版本（可为空）
+     */
+    public static void respond(ClientHandler handler, String since) {
+        String delta = since != null ? encodeDelta(since) : null;
+        if (delta != null) {
+            deltaResponses.increment();
+            handler.sendEncoded("onlineDelta", delta);
+        } else {
+            fullResponses.increment();
+            handler.sendEncoded("onlineList", currentSnapshot().json);
+        }
+    }
+
+    // 当前版本的完整列表；版本变化后第一次请求时重新编码，同一版本只编码一次
+    private static Snapshot currentSnapshot() {
+        Snapshot s = snapshot;
+        if (s != null && s.version == version) {
+            return s;
+        }
+        synchronized (OnlineSet.class) {
+            String[] users;
+            long v;
+            synchronized (lock) {
+                v = version;
+                s = snapshot;
+                if (s != null && s.version == v) {
+                    return s;
+                }
+                users = members.toArray(new String[0]);
+            }
+            Message msg = new Message("onlineList");
+            msg.setContent(String.join(",", users));
+            msg.putExtra("count", String.valueOf(users.length));
+            msg.putExtra("version", String.valueOf(v));
+            s = new Snapshot(v, JsonUtil.toJson(msg));
+            snapshot = s;
+            snapshotBuilds.increment();
+            return s;
+        }
+    }
+
+    // since 之后的变化；无法给出增量（版本无效或已滚出日志）、或增量不比完整列表小时返回 null
+    private static String encodeDelta(String since) {
+        long from;
+        try {
+            from = Long.parseLong(since.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+
+        Map<String, Boolean> changes = new LinkedHashMap<>();
+        long to;
+        synchronized (lock) {
+            to = version;
+            if (from < logStart || from > to || to - from > logUsers.length) {
+                return null;
+            }
+            for (long v = from + 1; v <= to; v++) {
+                int slot = (int) (v % logUsers.length);
+                changes.remove(logUsers[slot]); // 重新插入，保持变化的先后顺序
+                changes.put(logUsers[slot], logOnline[slot]);
+            }
+            if (!changes.isEmpty() && changes.size() >= members.size()) {
+                return null;
+            }
+        }
+
+        StringBuilder up = new StringBuilder();
+        StringBuilder down = new StringBuilder();
+        for (Map.Entry<String, Boolean> change : changes.entrySet()) {
+            StringBuilder sb = change.getValue() ? up : down;
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(change.getKey());
+        }
+        Message msg = new Message("onlineDelta");
+        if (up.length() > 0) {
+            msg.putExtra("up", up.toString());
+        }
+        if (down.length() > 0) {
+            msg.putExtra("down", down.toString());
+        }
+        msg.putExtra("since", String.valueOf(from));
+        msg.putExtra("version", String.valueOf(to));
+        return JsonUtil.toJson(msg);
+    }
+
+    // ===== 配置 =====
+
+    /**
+     * 按服务器配置设置变更日志长度（ChatServer 启动时调用），配置无效时保留当前设置
+     */
+    public static void configure(ServerConfig config) {
+        try {
+            setChangeLogSize(config.getInt(ServerConfig.ONLINE_CHANGELOG, 10_000));
+        } catch (IllegalArgumentException e) {
+            System.err.println("❌ 在线列表配置无效，保留当前设置: " + e.getMessage());
+        }
+    }
+
+    public static int getChangeLogSize() {
+        synchronized (lock) {
+            return logUsers.length;
+        }
+    }
+
+    /**
+     * 调整变更日志长度（调整后旧的日志作废，之前的版本只能拿完整列表）
+     */
+    public static void setChangeLogSize(int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("变更日志条数必须大于 0: " + size);
+        }
+        synchronized (lock) {
+            if (size == logUsers.length) {
+                return;
+            }
+            logUsers = new String[size];
+            logOnline = new boolean[size];
+            logStart = version;
+        }
+    }
+
+    // ===== 统计 =====
+
+    /**
+     * 当前版本号
+     */
+    public static long getVersion() {
+        return version;
+    }
+
+    /**
+     * 本次运行以来的上线/下线变化数
+     */
+    public static long getChangeCount() {
+        return getVersion() - FIRST_VERSION;
+    }
+
+    public static int getSize() {
+        synchronized (lock) {
+            return members.size();
+        }
+    }
+
+    /**
+     * 回复完整列表的次数
+     */
+    public static long getFullResponseCount() {
+        return fullResponses.sum();
+    }
+
+    /**
+     * 回复增量的次数
+     */
+    public static long getDeltaResponseCount() {
+        return deltaResponses.sum();
+    }
+
+    /**
+     * 重新编码完整列表的次数（每个被请求过的版本最多一次）
+     */
+    public static long getSnapshotBuildCount() {
+        return snapshotBuilds.sum();
+    }
+}
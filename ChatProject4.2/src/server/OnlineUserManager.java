@@ -1,6 +1,10 @@
 package server;
 
 import common.protocol.Message;
+import server.ServerLogger.Category;
+import server.ServerLogger.Level;
+import server.jfr.BroadcastEvent;
+import server.jfr.ChatEvents;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -16,22 +20,40 @@ public class OnlineUserManager {
 
     // 添加用户到在线列表
     public static void addUser(String userId, ClientHandler handler) {
+        addUser(userId, handler, true);
+    }
+
+    // 添加用户到在线列表，notifyFriends=false 时由调用方稍后调用 notifyOnline（见 LoginQueue）
+    public static void addUser(String userId, ClientHandler handler, boolean notifyFriends) {
         if (userId == null || userId.isEmpty() || handler == null) {
-            System.err.println("❌ 添加在线用户失败：参数无效");
+            ServerLogger.log(Category.PRESENCE, Level.ERROR, "❌ 添加在线用户失败：参数无效");
             return;
         }
 
         // 检查用户是否已在线，处理重复登录
-        if (onlineUsers.containsKey(userId)) {
-            ClientHandler oldHandler = onlineUsers.get(userId);
+        ClientHandler oldHandler = onlineUsers.get(userId);
+        if (oldHandler != null && oldHandler != handler) {
             oldHandler.disconnect(); // 断开旧连接，保证同一账号只能单点登录
-            System.out.println("⚠️ 用户 " + userId + " 已在线，已断开旧连接");
+            ServerLogger.log(Category.PRESENCE, Level.WARN, "⚠️ 用户 {} 已在线，已断开旧连接", userId);
         }
 
-        onlineUsers.put(userId, handler);
-        System.out.println("✅ 用户上线: " + userId);
+        // 在线表和 OnlineSet 在同一个 compute 里更新，同一账号并发的上线/下线不会让两边不一致
+        onlineUsers.compute(userId, (id, old) -> {
+            if (old == null) {
+                OnlineSet.recordChange(id, true);
+            }
+            return handler;
+        });
+        ServerLogger.log(Category.PRESENCE, Level.INFO, "✅ 用户上线: {}", userId);
 
         // 广播上线通知给其他在线用户
+        if (notifyFriends) {
+            broadcastOnlineStatus(userId, "online");
+        }
+    }
+
+    // 通知在线好友：用户已上线
+    public static void notifyOnline(String userId) {
         broadcastOnlineStatus(userId, "online");
     }
 
@@ -41,9 +63,15 @@ public class OnlineUserManager {
             return;
         }
 
-        ClientHandler handler = onlineUsers.remove(userId);
+        ClientHandler[] removed = new ClientHandler[1];
+        onlineUsers.computeIfPresent(userId, (id, old) -> {
+            removed[0] = old;
+            OnlineSet.recordChange(id, false);
+            return null;
+        });
+        ClientHandler handler = removed[0];
         if (handler != null) {
-            System.out.println("📤 用户下线: " + userId);
+            ServerLogger.log(Category.PRESENCE, Level.INFO, "📤 用户下线: {}", userId);
 
             // 广播下线通知给其他在线用户
             broadcastOnlineStatus(userId, "offline");
@@ -64,7 +92,8 @@ public class OnlineUserManager {
                 target.send(msg);//直接发送
                 return true;
             } catch (Exception e) {
-                ServerLogger.error("转发消息失败 [" + msg.getFrom() + " → " + toUserId + "]: " + e.getMessage());
+                ServerLogger.log(Category.ROUTING, Level.ERROR, "转发消息失败 [{} → {}]: {}",
+                        msg.getFrom(), toUserId, e.getMessage());
                 return false;
             }
         }
@@ -76,7 +105,8 @@ public class OnlineUserManager {
         if (msg == null) return;
 
         String fromUser = msg.getFrom();
-        System.out.println("📢 广播群聊消息，发送者: " + fromUser);
+        BroadcastEvent jfr = ChatEvents.beginBroadcast();
+        long start = System.nanoTime();
 
         int successCount = 0;
         int totalCount = onlineUsers.size() - (excludeUserId != null ? 1 : 0);
@@ -96,12 +126,14 @@ public class OnlineUserManager {
                     successCount++;
                 } catch (Exception e) {
 //                    记录失败但不中断广播
-                    System.err.println("❌ 广播消息给 " + userId + " 失败: " + e.getMessage());
+                    ServerLogger.log(Category.ROUTING, Level.ERROR, "❌ 广播消息给 {} 失败: {}", userId, e.getMessage());
                 }
             }
         }
 
-        System.out.println("  成功发送: " + successCount + "/" + totalCount + " 人");
+        ChatEvents.commitBroadcast(jfr, "group", fromUser, totalCount, successCount, System.nanoTime() - start);
+        ServerLogger.log(Category.ROUTING, Level.DEBUG, "📢 广播群聊消息，发送者: {}，成功发送: {}/{} 人",
+                fromUser, successCount, totalCount);
     }
 
     // 广播系统消息
@@ -114,13 +146,10 @@ public class OnlineUserManager {
         systemMsg.setContent(content);
         systemMsg.setFrom("系统");
 
-        // 在服务器日志中记录
-        ServerGUI gui = Server.getServerGUI();
-        if (gui != null) {
-            gui.appendLog("📢 广播系统消息: " + content);
-        }
-
-        System.out.println("📢 广播系统消息: " + content);
+        // 在服务器日志中记录（同时显示在 ServerGUI 日志面板）
+        ServerLogger.log("📢 广播系统消息: " + content);
+        BroadcastEvent jfr = ChatEvents.beginBroadcast();
+        long start = System.nanoTime();
 
         int successCount = 0;
         int totalCount = onlineUsers.size();
@@ -133,45 +162,21 @@ public class OnlineUserManager {
                     handler.send(systemMsg);
                     successCount++;
                 } catch (Exception e) {
-                    System.err.println("❌ 发送系统消息给 " + entry.getKey() + " 失败");
+                    ServerLogger.error("❌ 发送系统消息给 " + entry.getKey() + " 失败");
                 }
             }
         }
 
-        System.out.println("  成功发送: " + successCount + "/" + totalCount + " 人");
+        ChatEvents.commitBroadcast(jfr, "system", "系统", totalCount, successCount, System.nanoTime() - start);
+        ServerLogger.log(Category.GENERAL, Level.INFO, "  成功发送: {}/{} 人", successCount, totalCount);
     }
 
-    // 广播用户上线/下线状态
+    // 通知在线好友：用户上线/下线（由 PresenceBroadcaster 按窗口合并后发给在线好友）
     private static void broadcastOnlineStatus(String userId, String status) {
         if (userId == null || status == null) {
             return;
         }
-
-        Message statusMsg = new Message(status);
-        statusMsg.setContent(userId);
-
-        int broadcastCount = 0;
-
-        for (Map.Entry<String, ClientHandler> entry : onlineUsers.entrySet()) {
-            String targetUserId = entry.getKey();
-            ClientHandler handler = entry.getValue();
-
-            // 不通知自己
-            if (targetUserId.equals(userId)) {
-                continue;
-            }
-
-            if (handler.isRunning()) {
-                try {
-                    handler.send(statusMsg);
-                    broadcastCount++;
-                } catch (Exception e) {
-                    System.err.println("❌ 广播状态给 " + targetUserId + " 失败");
-                }
-            }
-        }
-
-        System.out.println("  状态通知已发送给 " + broadcastCount + " 人");
+        PresenceBroadcaster.publish(userId, "online".equals(status));
     }
 
     /**
@@ -186,7 +191,7 @@ public class OnlineUserManager {
         return onlineUsers.get(userId);
     }
 
-    // 获取所有在线用户ID
+    // 获取所有在线用户ID（客户端请求在线列表时见 OnlineSet，按版本缓存并支持增量）
     public static String[] getAllOnlineUsers() {
         return onlineUsers.keySet().toArray(new String[0]);
     }
@@ -220,7 +225,7 @@ public class OnlineUserManager {
                 return true;
 
             } catch (Exception e) {
-                System.err.println("❌ 踢出用户失败 " + userId + ": " + e.getMessage());
+                ServerLogger.log(Category.PRESENCE, Level.ERROR, "❌ 踢出用户失败 {}: {}", userId, e.getMessage());
             }
         }
         return false;
@@ -238,9 +243,11 @@ public class OnlineUserManager {
                 String ip = handler.getSocket().getInetAddress().getHostAddress();
                 int port = handler.getSocket().getPort();
                 String status = handler.isRunning() ? "在线" : "断开中";
+                ConnectionStats stats = handler.getStats();
 
-                String info = String.format("%s [%s:%d] - %s",
-                        userId, ip, port, status);
+                String info = String.format("%s [%s:%d] - %s 收 %d 条/%d 字节 发 %d 条/%d 字节 %.1f 条/秒",
+                        userId, ip, port, status, stats.getFramesIn(), stats.getBytesIn(),
+                        stats.getFramesOut(), stats.getBytesOut(), stats.sampleMessageRate());
                 infoList.add(info);
 
             } catch (Exception e) {
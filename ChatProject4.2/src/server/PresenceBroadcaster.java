@@ -0,0 +1,265 @@
+package server;
+
+import common.protocol.Message;
+import server.ServerLogger.Category;
+import server.ServerLogger.Level;
+import server.dao.FriendGraph;
+import server.jfr.BroadcastEvent;
+import server.jfr.ChatEvents;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 上下线通知合并发送
+ * 逐条发送时，N 个用户同时重连，每个人上线都要通知所有在线好友，帧数随人数平方增长。
+ * 这里把一个窗口内的上下线变化先记下来（同一用户多次变化只保留最后状态），窗口结束时
+ * 按接收者分组，每个在线好友只收到一帧：
+ *   {"type":"presence","up":"账号,账号","down":"账号"}
+ * 接收者仍然只是好友（FriendGraph），总帧数从"变化数 × 好友数"降到"有变化的接收者数"。
+ * 窗口为 0 时退回逐条发送 online/offline（兼容不认识 presence 的旧客户端）。
+ * 通知都交给接收者连接自己的后台发送队列（ClientHandler.sendAsync），不读数据的客户端不会拖住广播线程和其他接收者。
+ *
+ * 配置（ServerConfig，JMX ChatServerAdmin 可在运行时修改）：
+ *   chat.presence.window=200     合并窗口（毫秒，0 表示逐条发送）
+ */
+public class PresenceBroadcaster {
+    private static volatile long windowMillis = 200;
+
+    private static final Object lock = new Object();
+    private static Map<String, Boolean> pending = new LinkedHashMap<>(); // 用户 -> 是否在线（按 lock 同步）
+
+    private static ScheduledExecutorService scheduler;
+    private static ScheduledFuture<?> flushTask;
+
+    private static final LongAdder events = new LongAdder();
+    private static final LongAdder frames = new LongAdder();
+    private static final LongAdder entries = new LongAdder();
+
+    /**
+     * 记录一次上下线（OnlineUserManager 调用）
+     */
+    public static void publish(String userId, boolean online) {
+        if (userId == null) {
+            return;
+        }
+        events.increment();
+        if (windowMillis == 0) {
+            sendImmediately(userId, online);
+            return;
+        }
+        synchronized (lock) {
+            pending.remove(userId); // 重新插入，保持变化的先后顺序
+            pending.put(userId, online);
+        }
+        ensureStarted();
+    }
+
+    private static synchronized void ensureStarted() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "presence-flush");
+            t.setDaemon(true);
+            return t;
+        });
+        schedule();
+    }
+
+    private static void schedule() {
+        if (flushTask != null) {
+            flushTask.cancel(false);
+        }
+        long window = Math.max(1, windowMillis);
+        flushTask = scheduler.scheduleAtFixedRate(PresenceBroadcaster::flushSafely, window, window, TimeUnit.MILLISECONDS);
+    }
+
+    private static void flushSafely() {
+        try {
+            flush();
+        } catch (Exception e) {
+            System.err.println("❌ 上下线通知发送异常: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 把窗口内积累的变化按接收者合并发送
+     */
+    static void flush() {
+        Map<String, Boolean> changes;
+        synchronized (lock) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            changes = pending;
+            pending = new LinkedHashMap<>();
+        }
+
+        BroadcastEvent jfr = ChatEvents.beginBroadcast();
+        long start = System.nanoTime();
+        FriendGraph graph = FriendGraph.getInstance();
+        Map<ClientHandler, Batch> batches = new HashMap<>();
+        int recipients = 0;
+        for (Map.Entry<String, Boolean> change : changes.entrySet()) {
+            int key = FriendGraph.toKey(change.getKey());
+            if (key < 0) {
+                continue;
+            }
+            for (int friend : graph.friendsOf(key)) {
+                recipients++;
+                ClientHandler handler = OnlineUserManager.getUser(String.valueOf(friend));
+                if (handler != null && handler.isRunning()) {
+                    batches.computeIfAbsent(handler, h -> new Batch()).add(change.getKey(), change.getValue());
+                }
+            }
+        }
+
+        int sent = 0;
+        for (Map.Entry<ClientHandler, Batch> entry : batches.entrySet()) {
+            Batch batch = entry.getValue();
+            Message msg = new Message("presence");
+            if (batch.up.length() > 0) {
+                msg.putExtra("up", batch.up.toString());
+            }
+            if (batch.down.length() > 0) {
+                msg.putExtra("down", batch.down.toString());
+            }
+            try {
+                entry.getKey().sendAsync(msg);
+                sent++;
+                entries.add(batch.count);
+            } catch (Exception e) {
+                ServerLogger.log(Category.PRESENCE, Level.ERROR, "❌ 发送上下线通知给 {} 失败",
+                        entry.getKey().getUserId());
+            }
+        }
+        frames.add(sent);
+
+        ChatEvents.commitBroadcast(jfr, "presence", null, recipients, sent, System.nanoTime() - start);
+        ServerLogger.log(Category.PRESENCE, Level.DEBUG, "  合并 {} 个上下线变化，发送给 {} 人", changes.size(), sent);
+    }
+
+    // 一个接收者在本窗口内要收到的变化
+    private static final class Batch {
+        final StringBuilder up = new StringBuilder();
+        final StringBuilder down = new StringBuilder();
+        int count;
+
+        void add(String userId, boolean online) {
+            StringBuilder sb = online ? up : down;
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(userId);
+            count++;
+        }
+    }
+
+    // 逐条通知在线好友（窗口为 0 时）
+    private static void sendImmediately(String userId, boolean online) {
+        int key = FriendGraph.toKey(userId);
+        if (key < 0) {
+            return;
+        }
+        int[] friends = FriendGraph.getInstance().friendsOf(key);
+        if (friends.length == 0) {
+            return;
+        }
+
+        String status = online ? "online" : "offline";
+        Message statusMsg = new Message(status);
+        statusMsg.setContent(userId);
+        BroadcastEvent jfr = ChatEvents.beginBroadcast();
+        long start = System.nanoTime();
+
+        int broadcastCount = 0;
+        for (int friend : friends) {
+            String targetUserId = String.valueOf(friend);
+            ClientHandler handler = OnlineUserManager.getUser(targetUserId);
+
+            if (handler != null && handler.isRunning()) {
+                try {
+                    handler.sendAsync(statusMsg);
+                    broadcastCount++;
+                } catch (Exception e) {
+                    ServerLogger.log(Category.PRESENCE, Level.ERROR, "❌ 广播状态给 {} 失败", targetUserId);
+                }
+            }
+        }
+        frames.add(broadcastCount);
+        entries.add(broadcastCount);
+
+        ChatEvents.commitBroadcast(jfr, status, userId, friends.length, broadcastCount, System.nanoTime() - start);
+        ServerLogger.log(Category.PRESENCE, Level.DEBUG, "  {} 状态通知已发送给 {} 人", userId, broadcastCount);
+    }
+
+    // ===== 配置 =====
+
+    /**
+     * 按服务器配置设置合并窗口（ChatServer 启动时调用），配置无效时保留当前设置
+     */
+    public static void configure(ServerConfig config) {
+        try {
+            setWindowMillis(config.getLong(ServerConfig.PRESENCE_WINDOW, 200));
+        } catch (IllegalArgumentException e) {
+            System.err.println("❌ 上下线通知配置无效，保留当前设置: " + e.getMessage());
+        }
+    }
+
+    public static long getWindowMillis() {
+        return windowMillis;
+    }
+
+    /**
+     * 调整合并窗口（0 表示逐条发送；改为 0 时先发出已积累的变化）
+     */
+    public static synchronized void setWindowMillis(long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("合并窗口不能为负: " + millis);
+        }
+        windowMillis = millis;
+        if (scheduler != null) {
+            if (millis == 0) {
+                scheduler.execute(PresenceBroadcaster::flushSafely);
+            } else {
+                schedule();
+            }
+        }
+    }
+
+    // ===== 统计 =====
+
+    /**
+     * 累计的上下线变化数
+     */
+    public static long getEventCount() {
+        return events.sum();
+    }
+
+    /**
+     * 累计发送的通知帧数
+     */
+    public static long getFrameCount() {
+        return frames.sum();
+    }
+
+    /**
+     * 累计通知到接收者的变化条数（合并前逐条发送需要的帧数）
+     */
+    public static long getEntryCount() {
+        return entries.sum();
+    }
+
+    public static int getPendingCount() {
+        synchronized (lock) {
+            return pending.size();
+        }
+    }
+}
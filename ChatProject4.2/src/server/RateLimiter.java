@@ -0,0 +1,286 @@
+package server;
+
+import server.metrics.MetricsRegistry;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 入站消息限流：每个连接一个总令牌桶，另外按消息类型各一个令牌桶
+ * 令牌桶用 GCRA 实现（每个桶只保存一个"理论到达时间"long 值），状态放在连接自己的 Buckets 里，
+ * 按 MetricsRegistry 的类型序号做数组下标，检查时不加锁、不分配对象。
+ * 超限时按策略处理：DROP 丢弃（同一段连续超限只回一条提示）、DELAY 读线程等到有令牌再处理
+ * （等待超过上限时丢弃；读线程暂停后 TCP 接收窗口会把压力传回客户端）、DISCONNECT 断开连接。
+ *
+ * 配置（ServerConfig，JMX ChatServerAdmin 可在运行时修改）：
+ *   chat.ratelimit.enabled=true
+ *   chat.ratelimit.action=drop              drop / delay / disconnect
+ *   chat.ratelimit.delay.max=1000           DELAY 最多等待的毫秒数
+ *   chat.ratelimit.connection=60/120        每个连接：每秒 60 条，突发 120 条
+ *   chat.ratelimit.types=group:5/20,...     按类型：类型:每秒条数/突发条数，未列出的类型只受连接总量限制
+ */
+public class RateLimiter {
+    public static final String DEFAULT_CONNECTION_LIMIT = "60/120";
+    public static final String DEFAULT_TYPE_LIMITS =
+            "text:20/50,group:5/20,file:5/10,screenshot:2/5,shake:1/3,getOnlineUsers:2/5,"
+                    + "login:2/5,register:1/3,findPwd:1/3";
+
+    public enum Action { DROP, DELAY, DISCONNECT }
+
+    /**
+     * 不可变的限流参数（整体替换，读取方只做一次 volatile 读）
+     * 间隔 = 1 秒 / 速率；容差 = (突发 - 1) × 间隔；间隔为 0 表示不限
+     */
+    private static final class Policy {
+        final boolean enabled;
+        final Action action;
+        final long maxDelayNanos;
+        final long connectionInterval;
+        final long connectionTolerance;
+        final long[] typeInterval = new long[MetricsRegistry.getTypeCount()];
+        final long[] typeTolerance = new long[MetricsRegistry.getTypeCount()];
+        final String connectionSpec;
+        final String typeSpec;
+
+        Policy(boolean enabled, Action action, long maxDelayMillis, String connectionSpec, String typeSpec) {
+            this.enabled = enabled;
+            this.action = action;
+            this.maxDelayNanos = maxDelayMillis * 1_000_000L;
+            this.connectionSpec = connectionSpec.trim();
+            this.typeSpec = typeSpec.trim();
+
+            long[] conn = parseLimit(this.connectionSpec);
+            connectionInterval = conn[0];
+            connectionTolerance = conn[1];
+            if (!this.typeSpec.isEmpty()) {
+                for (String part : this.typeSpec.split(",")) {
+                    int colon = part.indexOf(':');
+                    if (colon <= 0) {
+                        throw new IllegalArgumentException("无法识别的限流项: " + part + "（格式 类型:每秒条数/突发条数）");
+                    }
+                    String type = part.substring(0, colon).trim();
+                    int index = MetricsRegistry.forType(type).getIndex();
+                    if (!MetricsRegistry.getTypeName(index).equals(type)) {
+                        throw new IllegalArgumentException("未知的消息类型: " + type);
+                    }
+                    long[] limit = parseLimit(part.substring(colon + 1));
+                    typeInterval[index] = limit[0];
+                    typeTolerance[index] = limit[1];
+                }
+            }
+        }
+    }
+
+    /**
+     * 解析 "速率/突发" → {间隔纳秒, 容差纳秒}；速率为 0 表示不限，省略突发时取 ceil(速率)
+     * 消息限流和 AdmissionControl 的接受速率共用这一种写法
+     */
+    static long[] parseLimit(String spec) {
+        String[] parts = spec.trim().split("/");
+        try {
+            double rate = Double.parseDouble(parts[0].trim());
+            long burst = parts.length > 1 ? Long.parseLong(parts[1].trim()) : Math.max(1, (long) Math.ceil(rate));
+            if (rate < 0 || burst < 1 || parts.length > 2) {
+                throw new IllegalArgumentException("速率参数无效: " + spec);
+            }
+            if (rate == 0) {
+                return new long[]{0, 0};
+            }
+            long interval = Math.max(1, (long) (1e9 / rate));
+            return new long[]{interval, (burst - 1) * interval};
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("速率参数无效: " + spec + "（格式 每秒数量/突发数量）");
+        }
+    }
+
+    private static volatile Policy policy =
+            new Policy(true, Action.DROP, 1000, DEFAULT_CONNECTION_LIMIT, DEFAULT_TYPE_LIMITS);
+
+    private static final LongAdder dropped = new LongAdder();
+    private static final LongAdder delayed = new LongAdder();
+    private static final LongAdder disconnected = new LongAdder();
+    private static final LongAdder delayNanos = new LongAdder();
+
+    /**
+     * 单个连接的令牌桶（只由该连接的读线程访问）
+     */
+    public static final class Buckets {
+        private long connectionTat;
+        private final long[] typeTat = new long[MetricsRegistry.getTypeCount()];
+        private long limited;          // 本连接被限流的帧数
+        private boolean inViolation;   // 上一帧是否被限流（连续超限时只提示一次）
+
+        /**
+         * 需要等待多久才能处理这一帧（0 表示现在就可以，并已扣除令牌）
+         */
+        long tryAcquire(Policy p, int typeIndex, long now) {
+            long connWait = wait(connectionTat, p.connectionInterval, p.connectionTolerance, now);
+            long typeWait = wait(typeTat[typeIndex], p.typeInterval[typeIndex], p.typeTolerance[typeIndex], now);
+            long w = Math.max(connWait, typeWait);
+            if (w > 0) {
+                return w;
+            }
+            if (p.connectionInterval > 0) {
+                connectionTat = Math.max(connectionTat, now) + p.connectionInterval;
+            }
+            if (p.typeInterval[typeIndex] > 0) {
+                typeTat[typeIndex] = Math.max(typeTat[typeIndex], now) + p.typeInterval[typeIndex];
+            }
+            return 0;
+        }
+
+        private static long wait(long tat, long interval, long tolerance, long now) {
+            if (interval == 0) {
+                return 0;
+            }
+            return Math.max(0, Math.max(tat, now) - now - tolerance);
+        }
+
+        public long getLimitedCount() {
+            return limited;
+        }
+    }
+
+    /**
+     * 检查结果
+     */
+    public enum Verdict { PASS, DROP, DROP_NOTIFY, DISCONNECT }
+
+    /**
+     * 读线程在路由前调用；DELAY 策略下可能在这里阻塞（最多 chat.ratelimit.delay.max）
+     */
+    public static Verdict check(Buckets buckets, int typeIndex) {
+        Policy p = policy;
+        if (!p.enabled) {
+            return Verdict.PASS;
+        }
+        long now = System.nanoTime();
+        long w = buckets.tryAcquire(p, typeIndex, now);
+        if (w == 0) {
+            buckets.inViolation = false;
+            return Verdict.PASS;
+        }
+
+        if (p.action == Action.DELAY && w <= p.maxDelayNanos) {
+            long start = now;
+            do {
+                LockSupport.parkNanos(w);
+                now = System.nanoTime();
+                w = buckets.tryAcquire(p, typeIndex, now);
+            } while (w > 0 && now - start + w <= p.maxDelayNanos && !Thread.currentThread().isInterrupted());
+            if (w == 0) {
+                delayed.increment();
+                delayNanos.add(now - start);
+                buckets.inViolation = false;
+                return Verdict.PASS;
+            }
+        }
+
+        buckets.limited++;
+        MetricsRegistry.forIndex(typeIndex).recordRateLimited();
+        if (p.action == Action.DISCONNECT) {
+            disconnected.increment();
+            return Verdict.DISCONNECT;
+        }
+        dropped.increment();
+        boolean first = !buckets.inViolation;
+        buckets.inViolation = true;
+        return first ? Verdict.DROP_NOTIFY : Verdict.DROP;
+    }
+
+    // ===== 配置 =====
+
+    /**
+     * 按服务器配置设置全部参数（ChatServer 启动时调用），配置无效时保留当前参数
+     */
+    public static void configure(ServerConfig config) {
+        try {
+            policy = new Policy(
+                    config.getBoolean(ServerConfig.RATE_LIMIT_ENABLED, true),
+                    parseAction(config.getString(ServerConfig.RATE_LIMIT_ACTION, "drop")),
+                    config.getLong(ServerConfig.RATE_LIMIT_MAX_DELAY, 1000),
+                    config.getString(ServerConfig.RATE_LIMIT_CONNECTION, DEFAULT_CONNECTION_LIMIT),
+                    config.getString(ServerConfig.RATE_LIMIT_TYPES, DEFAULT_TYPE_LIMITS));
+        } catch (IllegalArgumentException e) {
+            System.err.println("❌ 限流配置无效，保留当前设置: " + e.getMessage());
+        }
+    }
+
+    private static Action parseAction(String action) {
+        try {
+            return Action.valueOf(action.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("未知的限流策略: " + action + "（可选 " + Arrays.toString(Action.values()) + "）");
+        }
+    }
+
+    public static boolean isEnabled() {
+        return policy.enabled;
+    }
+
+    public static synchronized void setEnabled(boolean enabled) {
+        Policy p = policy;
+        policy = new Policy(enabled, p.action, p.maxDelayNanos / 1_000_000L, p.connectionSpec, p.typeSpec);
+    }
+
+    public static String getAction() {
+        return policy.action.name();
+    }
+
+    public static synchronized void setAction(String action) {
+        Policy p = policy;
+        policy = new Policy(p.enabled, parseAction(action), p.maxDelayNanos / 1_000_000L, p.connectionSpec, p.typeSpec);
+    }
+
+    public static long getMaxDelayMillis() {
+        return policy.maxDelayNanos / 1_000_000L;
+    }
+
+    public static synchronized void setMaxDelayMillis(long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("最大等待时间不能为负: " + millis);
+        }
+        Policy p = policy;
+        policy = new Policy(p.enabled, p.action, millis, p.connectionSpec, p.typeSpec);
+    }
+
+    public static String getConnectionLimit() {
+        return policy.connectionSpec;
+    }
+
+    public static synchronized void setConnectionLimit(String spec) {
+        Policy p = policy;
+        policy = new Policy(p.enabled, p.action, p.maxDelayNanos / 1_000_000L, spec, p.typeSpec);
+    }
+
+    public static String getTypeLimits() {
+        return policy.typeSpec;
+    }
+
+    public static synchronized void setTypeLimits(String spec) {
+        Policy p = policy;
+        policy = new Policy(p.enabled, p.action, p.maxDelayNanos / 1_000_000L, p.connectionSpec, spec);
+    }
+
+    // ===== 统计 =====
+
+    public static long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    public static long getDelayedCount() {
+        return delayed.sum();
+    }
+
+    public static long getDisconnectedCount() {
+        return disconnected.sum();
+    }
+
+    /**
+     * DELAY 策略累计让读线程等待的时间
+     */
+    public static long getDelayMillis() {
+        return delayNanos.sum() / 1_000_000L;
+    }
+}
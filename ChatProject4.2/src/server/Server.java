@@ -3,10 +3,20 @@ package server;
 import javax.swing.*;
 import client.ui.AppLookAndFeel;
 
+import java.awt.GraphicsEnvironment;
+import java.util.Arrays;
+
 public class Server {
     private static ServerGUI gui;
 
     public static void main(String[] args) {
+        // 0. 无图形环境或指定 --headless 时走无界面入口，不初始化 Swing
+        if (GraphicsEnvironment.isHeadless() || Arrays.asList(args).contains("--headless")) {
+            HeadlessServer.main(args);
+            return;
+        }
+        ServerConfig.load(args);
+
         // 1. 强制 JVM 环境使用 UTF-8
         try {
             System.setProperty("file.encoding", "UTF-8");
@@ -22,7 +32,8 @@ public class Server {
             AppLookAndFeel.setLookAndFeel();
             gui = new ServerGUI(); // 只负责创建窗口
             gui.setVisible(true);
-            gui.appendLog("C.Lucky 服务器旗舰版已就绪，请点击配置面板启动监听...");
+            gui.appendLog("C.Lucky 服务器旗舰版已就绪，请点击配置面板启动监听...（界面启动耗时 "
+                    + ChatServer.getMillisSinceJvmStart() + "ms）");
         });
     }
 
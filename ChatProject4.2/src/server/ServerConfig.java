@@ -0,0 +1,229 @@
+package server;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * 服务器配置
+ * 按优先级从低到高叠加：内置默认值 < 配置文件 < 系统属性（-Dchat.xxx）< 命令行参数（--chat.xxx=值 或 --xxx=值）。
+ * 配置文件默认是工作目录下的 server.properties（不存在则跳过），可用 --config=路径 或 -Dchat.config=路径 指定。
+ * 例：java server.HeadlessServer --config=/etc/chat/server.properties --port=6000 --store=embedded
+ */
+public class ServerConfig {
+    public static final String CONFIG_FILE_PROPERTY = "chat.config";
+    public static final String DEFAULT_CONFIG_FILE = "server.properties";
+
+    public static final String PORT = "chat.port";
+    public static final String BIND_ADDRESS = "chat.bind";
+    public static final String BACKLOG = "chat.backlog";
+    public static final String STORE = "chat.store";
+    public static final String STORE_DIR = "chat.store.dir";
+    public static final String METRICS_PORT = "chat.metrics.port";
+    public static final String METRICS_BIND = "chat.metrics.bind";
+    public static final String JMX_ENABLED = "chat.jmx.enabled";
+    public static final String JFR_EVENTS = "chat.jfr.events";
+    public static final String RATE_LIMIT_ENABLED = "chat.ratelimit.enabled";
+    public static final String RATE_LIMIT_ACTION = "chat.ratelimit.action";
+    public static final String RATE_LIMIT_MAX_DELAY = "chat.ratelimit.delay.max";
+    public static final String RATE_LIMIT_CONNECTION = "chat.ratelimit.connection";
+    public static final String RATE_LIMIT_TYPES = "chat.ratelimit.types";
+    public static final String ADMISSION_ENABLED = "chat.admission.enabled";
+    public static final String ADMISSION_MAX_CONNECTIONS = "chat.admission.max.connections";
+    public static final String ADMISSION_MAX_PER_IP = "chat.admission.max.per.ip";
+    public static final String ADMISSION_EXEMPT = "chat.admission.exempt";
+    public static final String ADMISSION_ACCEPT_RATE = "chat.admission.accept.rate";
+    public static final String ADMISSION_LOGIN_TIMEOUT = "chat.admission.login.timeout";
+    public static final String LOGIN_CONCURRENCY = "chat.login.concurrency";
+    public static final String LOGIN_QUEUE = "chat.login.queue";
+    public static final String LOGIN_DEFER_MAX = "chat.login.defer.max";
+    public static final String PRESENCE_WINDOW = "chat.presence.window";
+    public static final String ONLINE_CHANGELOG = "chat.online.changelog";
+
+    private static volatile ServerConfig current;
+
+    private final Properties values = new Properties();
+    private String source = "默认值";
+
+    private ServerConfig() {
+        values.setProperty(PORT, "5000");
+        values.setProperty(BIND_ADDRESS, "0.0.0.0");
+        values.setProperty(BACKLOG, "200");
+        values.setProperty(STORE, "mysql");
+        values.setProperty(STORE_DIR, "data");
+        values.setProperty(METRICS_PORT, "9100");        // -1 关闭指标接口
+        values.setProperty(METRICS_BIND, "127.0.0.1");   // 默认只允许本机抓取
+        values.setProperty(JMX_ENABLED, "true");
+        values.setProperty(JFR_EVENTS, "true");          // 自定义 JFR 事件（只在有录制时产生开销）
+        values.setProperty(RATE_LIMIT_ENABLED, "true");
+        values.setProperty(RATE_LIMIT_ACTION, "drop");   // drop / delay / disconnect
+        values.setProperty(RATE_LIMIT_MAX_DELAY, "1000");
+        values.setProperty(RATE_LIMIT_CONNECTION, RateLimiter.DEFAULT_CONNECTION_LIMIT);
+        values.setProperty(RATE_LIMIT_TYPES, RateLimiter.DEFAULT_TYPE_LIMITS);
+        values.setProperty(ADMISSION_ENABLED, "true");
+        values.setProperty(ADMISSION_MAX_CONNECTIONS, "10000"); // 0 表示不限
+        values.setProperty(ADMISSION_MAX_PER_IP, "100");
+        values.setProperty(ADMISSION_EXEMPT, AdmissionControl.DEFAULT_EXEMPT);
+        values.setProperty(ADMISSION_ACCEPT_RATE, AdmissionControl.DEFAULT_ACCEPT_RATE);
+        values.setProperty(ADMISSION_LOGIN_TIMEOUT, "30000");
+        values.setProperty(LOGIN_CONCURRENCY, "4");
+        values.setProperty(LOGIN_QUEUE, "1000");
+        values.setProperty(LOGIN_DEFER_MAX, "200");
+        values.setProperty(PRESENCE_WINDOW, "200");     // 上下线通知合并窗口，0 表示逐条发送
+        values.setProperty(ONLINE_CHANGELOG, "10000");  // 在线列表增量可回溯的变化条数
+    }
+
+    /**
+     * 当前配置（未调用 load 时只包含默认值和系统属性）
+     */
+    public static ServerConfig get() {
+        ServerConfig c = current;
+        if (c == null) {
+            synchronized (ServerConfig.class) {
+                c = current;
+                if (c == null) {
+                    c = load(new String[0]);
+                }
+            }
+        }
+        return c;
+    }
+
+    /**
+     * 按默认值、配置文件、系统属性、命令行参数加载配置，并设为当前配置
+     */
+    public static synchronized ServerConfig load(String[] args) {
+        ServerConfig config = new ServerConfig();
+        Map<String, String> argValues = parseArgs(args);
+
+        // 配置文件
+        String file = argValues.getOrDefault(CONFIG_FILE_PROPERTY, System.getProperty(CONFIG_FILE_PROPERTY));
+        boolean explicit = file != null;
+        Path path = Paths.get(explicit ? file : DEFAULT_CONFIG_FILE);
+        if (Files.isRegularFile(path)) {
+            try (InputStream in = new FileInputStream(path.toFile())) {
+                config.values.load(new InputStreamReader(in, StandardCharsets.UTF_8));
+                config.source = path.toAbsolutePath().toString();
+            } catch (IOException e) {
+                System.err.println("❌ 读取配置文件失败 " + path + ": " + e.getMessage());
+            }
+        } else if (explicit) {
+            System.err.println("❌ 配置文件不存在: " + path.toAbsolutePath());
+        }
+
+        // 系统属性
+        for (String name : System.getProperties().stringPropertyNames()) {
+            if (name.startsWith("chat.")) {
+                config.values.setProperty(name, System.getProperty(name));
+            }
+        }
+
+        // 命令行参数
+        argValues.forEach(config.values::setProperty);
+
+        current = config;
+        return config;
+    }
+
+    /**
+     * 直接设置当前配置（测试、压测工具用）
+     */
+    public static synchronized void set(ServerConfig config) {
+        current = config;
+    }
+
+    /**
+     * 基于当前配置复制一份并覆盖部分值（ServerGUI 用界面上填写的端口启动）
+     */
+    public ServerConfig with(String key, String value) {
+        ServerConfig copy = new ServerConfig();
+        copy.values.putAll(values);
+        copy.values.setProperty(key, value);
+        copy.source = source;
+        return copy;
+    }
+
+    // --key=value 或 --chat.key=value；不带 chat. 前缀的自动补上
+    private static Map<String, String> parseArgs(String[] args) {
+        Map<String, String> map = new TreeMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                continue;
+            }
+            int eq = arg.indexOf('=');
+            String key = eq > 0 ? arg.substring(2, eq) : arg.substring(2);
+            String value = eq > 0 ? arg.substring(eq + 1) : "true";
+            if (key.equals("config")) {
+                key = CONFIG_FILE_PROPERTY;
+            } else if (!key.startsWith("chat.")) {
+                key = "chat." + key;
+            }
+            map.put(key, value);
+        }
+        return map;
+    }
+
+    public String getString(String key, String defaultValue) {
+        String value = values.getProperty(key);
+        return value != null ? value.trim() : defaultValue;
+    }
+
+    public int getInt(String key, int defaultValue) {
+        String value = getString(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            System.err.println("⚠️ 配置项 " + key + " 不是整数: " + value + "，使用默认值 " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    public long getLong(String key, long defaultValue) {
+        String value = getString(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            System.err.println("⚠️ 配置项 " + key + " 不是整数: " + value + "，使用默认值 " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    public boolean getBoolean(String key, boolean defaultValue) {
+        String value = getString(key, null);
+        return value != null ? Boolean.parseBoolean(value) : defaultValue;
+    }
+
+    public int getPort() {
+        return getInt(PORT, 5000);
+    }
+
+    public String getBindAddress() {
+        return getString(BIND_ADDRESS, "0.0.0.0");
+    }
+
+    /**
+     * 配置来源（配置文件路径或"默认值"）
+     */
+    public String getSource() {
+        return source;
+    }
+
+    @Override
+    public String toString() {
+        return new TreeMap<>(values).toString();
+    }
+}
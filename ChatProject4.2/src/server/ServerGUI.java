@@ -1,29 +1,32 @@
 package server;
 
+import server.metrics.MetricsRegistry;
+import server.metrics.MetricsSampler;
+import server.metrics.TopTalkers;
+
 import javax.swing.*;
 import javax.swing.border.*;
 import java.awt.*;
 import java.io.OutputStream;
 import java.io.PrintStream;
-import java.net.ServerSocket;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Enumeration;
-import java.util.concurrent.ExecutorService;
 
 /**
  * 修复版 ServerGUI - 解决按钮颜色不显示及透明问题
  */
 public class ServerGUI extends JFrame {
-    private JTextArea logArea;
-    private JButton startBtn, stopBtn, clearLogBtn, broadcastBtn, importBtn;
+    private static final int LOG_CAPACITY = 5000; // 日志面板最多保留的行数
+
+    private LogListModel logModel;
+    private JList<LogListModel.LogLine> logList;
+    private DashboardPanel dashboardPanel;
+    private JComboBox<ServerLogger.Level> viewLevelBox;
+    private JButton startBtn, stopBtn, clearLogBtn, broadcastBtn, importBtn, metricsBtn, topTalkersBtn;
     private JTextField broadcastField, ipField, portField, sqlField;
     private JLabel statusLabel, onlineLabel;
-    private Thread serverThread;
-
-    private boolean isRunning = false;
-    private ServerSocket serverSocket;
-    private ExecutorService threadPool;
+    private volatile ChatServer chatServer;
     private SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
 
     // 颜色定义
@@ -42,6 +45,8 @@ public class ServerGUI extends JFrame {
         setGlobalFont(); // 保持你原本正常的字体逻辑
         initUI();
         redirectSystemStreams();
+        // 服务器日志（ServerLogger）同步显示到日志面板
+        ServerLogger.setSink((level, category, line) -> logModel.offer(level, line));
     }
 
     private void setGlobalFont() {
@@ -75,7 +80,7 @@ public class ServerGUI extends JFrame {
         ipField = new JTextField("127.0.0.1", 10);
         row1.add(ipField);
         row1.add(new JLabel("端口:"));
-        portField = new JTextField("5000", 5);
+        portField = new JTextField(String.valueOf(ServerConfig.get().getPort()), 5);
         row1.add(portField);
 
         startBtn = createFlatButton("开始监听", successColor, Color.WHITE);
@@ -93,15 +98,44 @@ public class ServerGUI extends JFrame {
         row2.add(sqlField);
         configPanel.add(row2);
 
+        // 第三行：各分类日志级别（运行时生效）
+        JPanel row3 = new JPanel(new FlowLayout(FlowLayout.LEFT, 10, 5));
+        row3.setOpaque(false);
+        row3.add(new JLabel("日志级别:"));
+        for (ServerLogger.Category category : ServerLogger.Category.values()) {
+            row3.add(new JLabel(category.name()));
+            row3.add(createLevelBox(category));
+        }
+        configPanel.add(row3);
+
         mainPanel.add(configPanel, BorderLayout.NORTH);
 
-        // --- 中部：日志区域 ---
-        logArea = new JTextArea();
-        logArea.setEditable(false);
-        logArea.setFont(new Font("Monospaced", Font.PLAIN, 13));
-        JScrollPane scrollPane = new JScrollPane(logArea);
+        // --- 中部：日志区域（环形缓冲 + 固定行高列表，只绘制可见行）---
+        logModel = new LogListModel(LOG_CAPACITY);
+        logList = new JList<>(logModel);
+        logList.setFont(new Font("Monospaced", Font.PLAIN, 13));
+        // 原型行固定行高和行宽，JList 不必为计算尺寸而渲染全部日志行
+        logList.setPrototypeCellValue(new LogListModel.LogLine(ServerLogger.Level.INFO, "0".repeat(160)));
+        logList.setCellRenderer(new LogCellRenderer());
+        JScrollPane scrollPane = new JScrollPane(logList);
         scrollPane.setBorder(BorderFactory.createTitledBorder("日志信息"));
-        mainPanel.add(scrollPane, BorderLayout.CENTER);
+        // 滚动条在底部时，新日志到达后自动滚到最后一行；用户往上翻看时保持不动
+        logModel.setAfterUpdate(() -> {
+            JScrollBar bar = scrollPane.getVerticalScrollBar();
+            boolean atBottom = bar.getValue() + bar.getVisibleAmount() >= bar.getMaximum() - 2 * logList.getFixedCellHeight();
+            if (atBottom && logModel.getSize() > 0) {
+                logList.ensureIndexIsVisible(logModel.getSize() - 1);
+            }
+        });
+        // 仪表盘（每秒采样一次，只在切到该标签页时绘制）
+        MetricsSampler sampler = new MetricsSampler();
+        dashboardPanel = new DashboardPanel(sampler);
+        sampler.start();
+
+        JTabbedPane centerTabs = new JTabbedPane();
+        centerTabs.addTab("日志", scrollPane);
+        centerTabs.addTab("仪表盘", dashboardPanel);
+        mainPanel.add(centerTabs, BorderLayout.CENTER);
 
         // --- 底部：控制面板 ---
         JPanel bottomPanel = new JPanel(new BorderLayout(5, 5));
@@ -120,15 +154,38 @@ public class ServerGUI extends JFrame {
         btnRow.setOpaque(false);
         importBtn = createFlatButton("导入配置", new Color(100, 100, 100), Color.WHITE);
         clearLogBtn = createFlatButton("清空控制台", Color.GRAY, Color.WHITE);
+        metricsBtn = createFlatButton("消息统计", new Color(100, 100, 100), Color.WHITE);
         btnRow.add(importBtn);
         btnRow.add(clearLogBtn);
+        topTalkersBtn = createFlatButton("流量排行", new Color(100, 100, 100), Color.WHITE);
+        btnRow.add(metricsBtn);
+        btnRow.add(topTalkersBtn);
+        btnRow.add(new JLabel("显示级别:"));
+        viewLevelBox = new JComboBox<>(ServerLogger.Level.values());
+        viewLevelBox.setSelectedItem(logModel.getMinLevel());
+        viewLevelBox.addActionListener(e -> logModel.setMinLevel((ServerLogger.Level) viewLevelBox.getSelectedItem()));
+        btnRow.add(viewLevelBox);
 
         bottomPanel.add(bcRow, BorderLayout.NORTH);
         bottomPanel.add(btnRow, BorderLayout.SOUTH);
         mainPanel.add(bottomPanel, BorderLayout.SOUTH);
 
         // 事件绑定
-        clearLogBtn.addActionListener(e -> logArea.setText(""));
+        clearLogBtn.addActionListener(e -> logModel.clear());
+        // 各消息类型的收发次数、字节数、路由/发送耗时百分位
+        metricsBtn.addActionListener(e -> {
+            for (String line : MetricsRegistry.formatReport().split("\\R")) {
+                appendLog(line);
+            }
+        });
+        // 收发字节最多、消息速率最高的前 10 个连接（找出刷屏的客户端）
+        topTalkersBtn.addActionListener(e -> {
+            for (TopTalkers.Sort sort : TopTalkers.Sort.values()) {
+                for (String line : TopTalkers.formatReport(10, sort).split("\\R")) {
+                    appendLog(line);
+                }
+            }
+        });
         // --- 1. 广播发送功能 ---
         broadcastBtn.addActionListener(e -> {
             String msg = broadcastField.getText().trim();
@@ -166,43 +223,50 @@ public class ServerGUI extends JFrame {
 
     private void startServer() {
         try {
-            // 1. 获取端口号
+            // 1. 获取端口号（界面填写的端口覆盖配置文件）
             int port = Integer.parseInt(portField.getText().trim());
+            ServerConfig config = ServerConfig.get().with(ServerConfig.PORT, String.valueOf(port));
 
-            // 2. 启动后台线程进行监听 (防止卡死界面)
-            serverThread = new Thread(() -> {
-                try {
-                    serverSocket = new ServerSocket(port);
-                    isRunning = true;
-
+            startBtn.setEnabled(false);
+            ChatServer server = new ChatServer(config, new ChatServer.Listener() {
+                @Override
+                public void onStarted(int boundPort, long startupMillis) {
                     // 更新UI状态
                     SwingUtilities.invokeLater(() -> {
-                        startBtn.setEnabled(false);
                         stopBtn.setEnabled(true);
                         ipField.setEditable(false);
                         portField.setEditable(false);
-                        appendLog("🚀 服务启动成功，正在监听端口: " + port);
                     });
+                }
 
-                    int count = 0;
-                    // 循环监听客户端连接
-                    while (isRunning && !serverSocket.isClosed()) {
-                        java.net.Socket socket = serverSocket.accept();
-                        count++;
-                        // 启动 ClientHandler
-                        ClientHandler handler = new ClientHandler(socket, count);
-                        new Thread(handler).start();
-
-                        appendLog("📢 新连接接入: " + socket.getInetAddress() + " (ID:" + count + ")");
-                    }
-                } catch (Exception e) {
-                    if (isRunning) { // 只有在非手动停止的情况下才报错
-                        appendLog("❌ 监听服务异常停止: " + e.getMessage());
-                        stopServer(); // 触发停止逻辑
-                    }
+                @Override
+                public void onStopped() {
+                    // 恢复UI状态
+                    SwingUtilities.invokeLater(() -> {
+                        startBtn.setEnabled(true);
+                        stopBtn.setEnabled(false);
+                        ipField.setEditable(true);
+                        portField.setEditable(true);
+                    });
+                }
+
+                @Override
+                public void onError(String message, Exception e) {
+                    appendLog(message);
                 }
             });
-            serverThread.start();
+            chatServer = server;
+
+            // 2. 在后台线程绑定端口和预加载数据 (防止卡死界面)
+            Thread starter = new Thread(() -> {
+                try {
+                    server.start();
+                } catch (Exception e) {
+                    appendLog("❌ 启动失败: " + e.getMessage());
+                    SwingUtilities.invokeLater(() -> startBtn.setEnabled(true));
+                }
+            }, "chat-server-start");
+            starter.start();
 
         } catch (NumberFormatException ex) {
             JOptionPane.showMessageDialog(this, "端口号必须是数字！");
@@ -211,25 +275,27 @@ public class ServerGUI extends JFrame {
         }
     }
 
-    // --- 新增：停止服务器的具体逻辑 ---
+    // --- 停止服务器（关闭监听并断开所有连接）---
     private void stopServer() {
-        isRunning = false;
-        try {
-            if (serverSocket != null && !serverSocket.isClosed()) {
-                serverSocket.close(); // 这会抛出 SocketException 中断 accept() 阻塞
-            }
-        } catch (Exception e) {
-            appendLog("关闭监听时出错: " + e.getMessage());
+        ChatServer server = chatServer;
+        if (server != null) {
+            stopBtn.setEnabled(false);
+            new Thread(server::stop, "chat-server-stop").start();
         }
+    }
 
-        // 恢复UI状态
-        SwingUtilities.invokeLater(() -> {
-            startBtn.setEnabled(true);
-            stopBtn.setEnabled(false);
-            ipField.setEditable(true);
-            portField.setEditable(true);
-            appendLog("🛑 服务已停止");
+    // 日志级别下拉框，选择后立即修改对应分类的级别
+    private JComboBox<ServerLogger.Level> createLevelBox(ServerLogger.Category category) {
+        JComboBox<ServerLogger.Level> box = new JComboBox<>(ServerLogger.Level.values());
+        box.setSelectedItem(ServerLogger.getLevel(category));
+        box.addActionListener(e -> {
+            ServerLogger.Level level = (ServerLogger.Level) box.getSelectedItem();
+            if (level != null) {
+                ServerLogger.setLevel(category, level);
+                appendLog("🔧 日志级别 " + category + " -> " + level);
+            }
         });
+        return box;
     }
 
     /**
@@ -262,12 +328,43 @@ public class ServerGUI extends JFrame {
         return btn;
     }
 
+    /**
+     * 追加一行界面日志（任意线程可调用，由日志面板按帧批量刷新）
+     */
     public void appendLog(String msg) {
         String time = new SimpleDateFormat("HH:mm:ss").format(new Date());
-        SwingUtilities.invokeLater(() -> {
-            logArea.append("[" + time + "] " + msg + "\n");
-            logArea.setCaretPosition(logArea.getDocument().getLength());
-        });
+        ServerLogger.Level level = msg.startsWith("❌") ? ServerLogger.Level.ERROR
+                : msg.startsWith("⚠️") ? ServerLogger.Level.WARN : ServerLogger.Level.INFO;
+        logModel.offer(level, "[" + time + "] " + msg);
+    }
+
+    // 按级别着色的日志行
+    private static class LogCellRenderer extends DefaultListCellRenderer {
+        private final Color warnColor = new Color(200, 120, 0);
+        private final Color errorColor = new Color(200, 30, 30);
+        private final Color debugColor = Color.GRAY;
+
+        @Override
+        public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                                                      boolean isSelected, boolean cellHasFocus) {
+            super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
+            if (!isSelected && value instanceof LogListModel.LogLine) {
+                switch (((LogListModel.LogLine) value).getLevel()) {
+                    case ERROR:
+                        setForeground(errorColor);
+                        break;
+                    case WARN:
+                        setForeground(warnColor);
+                        break;
+                    case DEBUG:
+                        setForeground(debugColor);
+                        break;
+                    default:
+                        setForeground(list.getForeground());
+                }
+            }
+            return this;
+        }
     }
 
     private void redirectSystemStreams() {
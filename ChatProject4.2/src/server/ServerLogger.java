@@ -1,119 +1,642 @@
 package server;
 
+import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
-import java.text.SimpleDateFormat;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
 
 /**
- * 简单日志工具类
+ * 异步日志工具类
+ * 调用线程只把日志事件写入预分配的环形缓冲区（无锁，CAS 领取序号），
+ * 由单独的后台线程统一格式化时间戳（按秒缓存）、输出到控制台并批量写入日志文件，
+ * 路由等热点路径上记录一条日志的开销只有一次 CAS 和几次字段赋值。
+ * 缓冲区满时按 OverflowPolicy 处理：BLOCK 等待、DROP 丢弃、SAMPLE 高水位后按比例采样（WARN/ERROR 不采样）。
+ *
+ * 级别按分类（Category）单独设置，可在运行时调整（ServerGUI 的日志级别下拉框）。
+ * 热点路径使用参数化接口 log(category, level, "用户 {} -> {}", a, b)：级别未开启时直接返回，
+ * 开启时也只把模板和参数放进事件，由后台线程替换 {} 生成字符串，因此参数应当是不可变值（字符串、数字）。
+ * 需要调用方自己计算的消息用 Supplier 版本，只在级别开启时求值。
+ *
+ * 日志文件按大小（默认 10MB）和日期滚动，滚动在后台写线程上完成，不影响调用方；
+ * 滚出的旧文件（server_log.yyyy-MM-dd.N.txt）交给单独的压缩线程 gzip，
+ * 压缩后按总大小（默认 200MB）从最旧的开始删除。
  */
 public class ServerLogger {
     private static final String LOG_FILE = "server_log.txt";
-    private static final int MAX_LOG_SIZE = 10 * 1024 * 1024; // 10MB
-    private static final SimpleDateFormat DATE_FORMAT =
-            new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+    private static final String ARCHIVE_PREFIX = "server_log.";
+    private static final long DEFAULT_MAX_LOG_SIZE = 10L * 1024 * 1024;      // 单个文件 10MB
+    private static final long DEFAULT_MAX_TOTAL_SIZE = 200L * 1024 * 1024;   // 归档总量 200MB
+    private static final int RING_SIZE = 8192;                 // 环形缓冲区大小（2 的幂）
+    private static final int RING_MASK = RING_SIZE - 1;
+    private static final int SAMPLE_THRESHOLD = RING_SIZE * 3 / 4; // SAMPLE 策略的高水位
+    private static final int SAMPLE_RATE = 10;                 // 高水位以上每 10 条保留 1 条
+    private static final long IDLE_PARK_NANOS = 10_000_000L;   // 后台线程空闲时最长休眠 10ms
+    private static final DateTimeFormatter DATE_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZoneId.systemDefault());
+
+    /**
+     * 日志级别
+     */
+    public enum Level { DEBUG, INFO, WARN, ERROR }
+
+    /**
+     * 日志分类：GENERAL 通用、ROUTING 消息收发与路由、PRESENCE 上下线与连接、TRANSFER 文件/截图/抖动转发
+     */
+    public enum Category { GENERAL, ROUTING, PRESENCE, TRANSFER }
+
+    /**
+     * 日志输出订阅者（如 ServerGUI 的日志面板），在后台写线程上调用，实现必须很快且不能阻塞
+     */
+    public interface Sink {
+        void accept(Level level, Category category, String line);
+    }
+
+    /**
+     * 缓冲区满时的处理策略
+     */
+    public enum OverflowPolicy { BLOCK, DROP, SAMPLE }
+
+    // 预分配的日志事件，sequence 写入即表示该槽位已发布
+    private static final class LogEvent {
+        volatile long sequence = -1;
+        long timestamp;
+        Level level;
+        Category category;
+        String message;     // 消息或模板（argCount > 0 时）
+        int argCount;
+        Object arg0, arg1, arg2;
+        Throwable throwable;
+    }
+
+    private static final LogEvent[] ring = new LogEvent[RING_SIZE];
+    private static final AtomicLong claimSequence = new AtomicLong();   // 下一个可领取的序号
+    private static volatile long consumedSequence = 0;                  // 后台线程下一个要处理的序号
+    private static final LongAdder droppedCount = new LongAdder();
+    private static final AtomicLong sampleCounter = new AtomicLong();
+
+    private static volatile boolean enabled = true;
+    // 各分类的最低级别（按 Category 序号索引，修改时整体替换数组）
+    private static volatile Level[] categoryLevels = filledLevels(Level.INFO);
+    private static volatile OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+    private static volatile Thread writerThread;
+    private static volatile boolean writerSleeping;
+    private static volatile boolean running;
+    private static volatile boolean closed;         // close() 之后不再启动后台线程
+    private static volatile Sink sink;
+    private static volatile long maxLogSize = DEFAULT_MAX_LOG_SIZE;
+    private static volatile long maxTotalSize = DEFAULT_MAX_TOTAL_SIZE;
+    private static final LongAdder rollCount = new LongAdder();
+    private static ExecutorService compressExecutor;
+
+    // 以下字段只由后台线程访问
     private static PrintWriter logWriter = null;
-    private static boolean enabled = true;
+    private static CountingOutputStream logBytes;    // 当前文件已写入的字节数
+    private static long segmentDay;                  // 当前文件对应的日期（epochDay）
+    private static long cachedSecond = -1;
+    private static long cachedDay;
+    private static String cachedTimestamp;
+    private static final StringBuilder lineBuilder = new StringBuilder(256);
+
+    static {
+        for (int i = 0; i < RING_SIZE; i++) {
+            ring[i] = new LogEvent();
+        }
+        // 关闭钩子只注册一次：close() 之后再记录日志不会重新启动后台线程（关闭过程中不能再注册钩子）
+        try {
+            Runtime.getRuntime().addShutdownHook(new Thread(ServerLogger::close, "server-logger-flush"));
+        } catch (IllegalStateException e) {
+            closed = true; // 首次使用时 JVM 已在关闭，日志直接同步写出
+        }
+    }
 
     // 初始化日志
     private static void initLog() {
+        // 当日志文件达到一定大小（或跨天），就自动关闭当前文件，创建一个新文件继续写入
+        // 同时对旧日志文件进行归档、压缩或删除，防止日志无限增长、占满磁盘。
+        File logFile = new File(LOG_FILE);
+        long today = toEpochDay(System.currentTimeMillis());
+        if (logFile.exists()) {
+            long fileDay = toEpochDay(logFile.lastModified());
+            if (logFile.length() > maxLogSize || fileDay != today) {
+                archive(logFile, fileDay);
+            }
+        }
+        // 上次异常退出时留下的未压缩归档
+        File[] leftovers = listArchives(".txt");
+        for (File f : leftovers) {
+            submitCompress(f);
+        }
+        openSegment(today);
+    }
+
+    // 以追加模式打开当前日志文件（不自动刷新，由后台线程每批刷新一次）
+    private static void openSegment(long day) {
         try {
-            // 检查日志文件大小
             File logFile = new File(LOG_FILE);
-            // 10MB轮转（防磁盘占满）
-            // 当日志文件达到一定大小（或时间），就自动关闭当前文件，创建一个新文件继续写入
-            // 同时对旧日志文件进行归档、压缩或删除，防止日志无限增长、占满磁盘。
-            if (logFile.exists() && logFile.length() > MAX_LOG_SIZE) {
-                // 重命名旧日志
-                String backupName = LOG_FILE + "." + System.currentTimeMillis();
-                logFile.renameTo(new File(backupName));
-            }
-            // 以追加模式打开
-            FileWriter fileWriter = new FileWriter(LOG_FILE, true);
-            logWriter = new PrintWriter(fileWriter, true);
+            logBytes = new CountingOutputStream(new FileOutputStream(logFile, true), logFile.length());
+            logWriter = new PrintWriter(new BufferedWriter(
+                    new OutputStreamWriter(logBytes, StandardCharsets.UTF_8), 16 * 1024), false);
+            segmentDay = day;
         } catch (IOException e) {
             System.err.println("❌ 初始化日志失败: " + e.getMessage());
             logWriter = null;
+            logBytes = null;
+        }
+    }
+
+    // 写入前检查是否需要滚动（只在后台线程调用）
+    private static void rollIfNeeded(long day) {
+        if (logWriter == null) {
+            return;
+        }
+        if (day == segmentDay && logBytes.count < maxLogSize) {
+            return;
+        }
+        logWriter.flush();
+        // 缓冲区刷出后再确认一次大小
+        if (day == segmentDay && logBytes.count < maxLogSize) {
+            return;
+        }
+        logWriter.close();
+        archive(new File(LOG_FILE), segmentDay);
+        openSegment(day);
+        rollCount.increment();
+    }
+
+    // 把文件重命名为 server_log.yyyy-MM-dd.N.txt 并交给压缩线程
+    private static void archive(File logFile, long day) {
+        String date = LocalDate.ofEpochDay(day).toString();
+        File target;
+        int n = 1;
+        do {
+            target = new File(logFile.getAbsoluteFile().getParentFile(), ARCHIVE_PREFIX + date + "." + n + ".txt");
+            n++;
+        } while (target.exists() || new File(target.getPath() + ".gz").exists());
+
+        if (logFile.renameTo(target)) {
+            submitCompress(target);
+        } else {
+            System.err.println("❌ 日志滚动失败: 无法重命名 " + logFile + " -> " + target.getName());
+        }
+    }
+
+    private static synchronized void submitCompress(File file) {
+        if (compressExecutor == null) {
+            compressExecutor = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "server-logger-gzip");
+                t.setDaemon(true);
+                t.setPriority(Thread.MIN_PRIORITY);
+                return t;
+            });
+        }
+        compressExecutor.execute(() -> {
+            compress(file);
+            enforceRetention();
+        });
+    }
+
+    // gzip 压缩归档文件，成功后删除原文件
+    private static void compress(File source) {
+        File gz = new File(source.getPath() + ".gz");
+        try (InputStream in = new FileInputStream(source);
+             OutputStream out = new GZIPOutputStream(new FileOutputStream(gz), 64 * 1024)) {
+            in.transferTo(out);
+        } catch (IOException e) {
+            System.err.println("❌ 压缩日志失败 " + source.getName() + ": " + e.getMessage());
+            gz.delete();
+            return;
+        }
+        if (!source.delete()) {
+            System.err.println("⚠️ 删除已压缩的日志失败: " + source.getName());
         }
     }
 
+    // 归档总大小超过上限时从最旧的开始删除
+    private static void enforceRetention() {
+        File[] archives = listArchives(null);
+        long total = 0;
+        for (File f : archives) {
+            total += f.length();
+        }
+        Arrays.sort(archives, Comparator.comparingLong(File::lastModified));
+        for (int i = 0; i < archives.length && total > maxTotalSize; i++) {
+            long size = archives[i].length();
+            if (archives[i].delete()) {
+                total -= size;
+            }
+        }
+    }
+
+    // 列出归档文件（suffix 为 null 时包括 .txt 和 .gz）
+    private static File[] listArchives(String suffix) {
+        File dir = new File(LOG_FILE).getAbsoluteFile().getParentFile();
+        File[] files = dir.listFiles((d, name) -> name.startsWith(ARCHIVE_PREFIX) && !name.equals(LOG_FILE)
+                && (suffix != null ? name.endsWith(suffix) : (name.endsWith(".txt") || name.endsWith(".gz"))));
+        return files != null ? files : new File[0];
+    }
+
+    private static long toEpochDay(long millis) {
+        return Instant.ofEpochMilli(millis).atZone(ZoneId.systemDefault()).toLocalDate().toEpochDay();
+    }
+
+    // 统计写入字节数，用于按大小滚动
+    private static final class CountingOutputStream extends FilterOutputStream {
+        long count;
+
+        CountingOutputStream(OutputStream out, long initial) {
+            super(out);
+            this.count = initial;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+    // 启动后台写日志线程（首次记录日志时调用）
+    private static synchronized void start() {
+        if (running || closed) {
+            return;
+        }
+        running = true;
+        Thread t = new Thread(ServerLogger::writeLoop, "server-logger");
+        t.setDaemon(true);
+        writerThread = t;
+        t.start();
+    }
+
     /**
      * 记录普通日志
      */
     public static void log(String message) {
-        logInternal(message, "INFO");
+        logInternal(Category.GENERAL, Level.INFO, message, null, 0, null, null, null);
     }
 
     /**
      * 记录错误日志
      */
     public static void error(String message) {
-        logInternal(message, "ERROR");
+        logInternal(Category.GENERAL, Level.ERROR, message, null, 0, null, null, null);
     }
 
     /**
      * 记录警告日志
      */
     public static void warn(String message) {
-        logInternal(message, "WARN");
+        logInternal(Category.GENERAL, Level.WARN, message, null, 0, null, null, null);
     }
 
     /**
      * 记录调试日志
      */
     public static void debug(String message) {
-        logInternal(message, "DEBUG");
+        logInternal(Category.GENERAL, Level.DEBUG, message, null, 0, null, null, null);
+    }
+
+    /**
+     * 记录异常堆栈
+     */
+    public static void exception(String message, Exception e) {
+        exception(Category.GENERAL, message, e);
     }
 
     /**
-     * 内部日志记录方法，核心日志方法
+     * 记录异常堆栈（指定分类）
      */
-    private static void logInternal(String message, String level) {
-        if (!enabled) return;
+    public static void exception(Category category, String message, Throwable e) {
+        if (!isEnabled(category, Level.ERROR)) return;
+        logInternal(category, Level.ERROR, message + ": " + (e != null ? e.getMessage() : null), e, 0, null, null, null);
+    }
+
+    // ------------------- 分类 + 参数化接口 -------------------
+
+    public static void log(Category category, Level lvl, String message) {
+        logInternal(category, lvl, message, null, 0, null, null, null);
+    }
+
+    /**
+     * 参数化日志，模板中的 {} 依次替换为参数（在后台线程替换）
+     */
+    public static void log(Category category, Level lvl, String pattern, Object arg) {
+        logInternal(category, lvl, pattern, null, 1, arg, null, null);
+    }
+
+    public static void log(Category category, Level lvl, String pattern, Object arg0, Object arg1) {
+        logInternal(category, lvl, pattern, null, 2, arg0, arg1, null);
+    }
+
+    public static void log(Category category, Level lvl, String pattern, Object arg0, Object arg1, Object arg2) {
+        logInternal(category, lvl, pattern, null, 3, arg0, arg1, arg2);
+    }
+
+    /**
+     * 延迟求值日志，只有级别开启时才调用 supplier
+     */
+    public static void log(Category category, Level lvl, Supplier<String> supplier) {
+        if (!isEnabled(category, lvl)) return;
+        logInternal(category, lvl, supplier.get(), null, 0, null, null, null);
+    }
+
+    /**
+     * 通用分类下指定级别是否会被记录
+     */
+    public static boolean isEnabled(Level target) {
+        return isEnabled(Category.GENERAL, target);
+    }
+
+    /**
+     * 指定分类、级别是否会被记录（调用方可据此跳过拼接日志字符串）
+     */
+    public static boolean isEnabled(Category category, Level target) {
+        return enabled && target.ordinal() >= categoryLevels[category.ordinal()].ordinal();
+    }
+
+    /**
+     * 内部日志记录方法：领取槽位、填写事件、发布
+     */
+    private static void logInternal(Category category, Level lvl, String message, Throwable throwable,
+                                    int argCount, Object arg0, Object arg1, Object arg2) {
+        if (!isEnabled(category, lvl)) return;
+        if (!running) {
+            start();
+            if (!running) {
+                // 已 close()：关闭钩子之间没有先后顺序，之后的日志（如 ChatServer.stop 断开连接）在调用线程上直接写出
+                writeAfterClose(category, lvl, message, throwable, argCount, arg0, arg1, arg2);
+                return;
+            }
+        }
+
+        long seq = claim(lvl);
+        if (seq < 0) {
+            return; // 按溢出策略被丢弃
+        }
 
-        String timestamp = DATE_FORMAT.format(new Date());
-        String logEntry = String.format("[%s] [%s] %s", timestamp, level, message);
+        LogEvent event = ring[(int) seq & RING_MASK];
+        event.timestamp = System.currentTimeMillis();
+        event.level = lvl;
+        event.category = category;
+        event.message = message;
+        event.argCount = argCount;
+        event.arg0 = arg0;
+        event.arg1 = arg1;
+        event.arg2 = arg2;
+        event.throwable = throwable;
+        event.sequence = seq; // 发布
 
-        // 输出到控制台
+        if (writerSleeping) {
+            LockSupport.unpark(writerThread);
+        }
+    }
+
+    // 领取一个序号，缓冲区满时按溢出策略处理，返回 -1 表示丢弃
+    private static long claim(Level lvl) {
+        boolean important = lvl.ordinal() >= Level.WARN.ordinal();
+        while (true) {
+            long seq = claimSequence.get();
+            long used = seq - consumedSequence;
+            OverflowPolicy policy = overflowPolicy;
+
+            if (used >= RING_SIZE) {
+                boolean mayBlock = policy == OverflowPolicy.BLOCK
+                        || (policy == OverflowPolicy.SAMPLE && important);
+                // 后台线程自己记录日志时不能等待自己，否则会死锁
+                if (!mayBlock || Thread.currentThread() == writerThread || !running) {
+                    droppedCount.increment();
+                    return -1;
+                }
+                LockSupport.unpark(writerThread);
+                LockSupport.parkNanos(1_000);
+                continue;
+            }
+
+            if (policy == OverflowPolicy.SAMPLE && !important && used >= SAMPLE_THRESHOLD
+                    && sampleCounter.getAndIncrement() % SAMPLE_RATE != 0) {
+                droppedCount.increment();
+                return -1;
+            }
+
+            if (claimSequence.compareAndSet(seq, seq + 1)) {
+                return seq;
+            }
+        }
+    }
+
+    // 后台线程：按序号依次取出已发布的事件，每批处理完刷新一次文件
+    private static void writeLoop() {
+        initLog();
+        long next = consumedSequence;
+        int batched = 0;
+        int idleSpins = 0;
+
+        while (running || next < claimSequence.get()) {
+            LogEvent event = ring[(int) next & RING_MASK];
+            if (event.sequence != next) {
+                if (batched > 0) {
+                    flushOutput();
+                    batched = 0;
+                }
+                if (++idleSpins < 100) {
+                    Thread.onSpinWait();
+                    continue;
+                }
+                writerSleeping = true;
+                if (ring[(int) next & RING_MASK].sequence != next && running) {
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                }
+                writerSleeping = false;
+                continue;
+            }
+
+            idleSpins = 0;
+            try {
+                writeEvent(event);
+            } catch (Exception e) {
+                System.err.println("❌ 写日志失败: " + e.getMessage());
+            }
+            event.message = null;
+            event.arg0 = event.arg1 = event.arg2 = null;
+            event.throwable = null;
+            consumedSequence = ++next; // 释放槽位
+            batched++;
+        }
+
+        flushOutput();
+        if (logWriter != null) {
+            logWriter.println("=".repeat(60));
+            logWriter.close();
+            logWriter = null;
+        }
+    }
+
+    private static void writeEvent(LogEvent event) {
+        StringBuilder sb = lineBuilder;
+        sb.setLength(0);
+        String logEntry = formatLine(sb, event, formatTimestamp(event.timestamp));
+        printConsole(event.level, logEntry);
+
+        Sink s = sink;
+        if (s != null) {
+            s.accept(event.level, event.category, logEntry);
+        }
+
+        // 写入文件（先按大小/日期检查滚动）
+        rollIfNeeded(cachedDay);
+        if (logWriter != null) {
+            logWriter.println(logEntry);
+            if (event.throwable != null) {
+                event.throwable.printStackTrace(logWriter);
+            }
+        }
+    }
+
+    private static String formatLine(StringBuilder sb, LogEvent event, String timestamp) {
+        sb.append('[').append(timestamp).append("] [")
+                .append(event.level.name()).append("] ");
+        if (event.category != Category.GENERAL) {
+            sb.append('[').append(event.category.name()).append("] ");
+        }
+        if (event.argCount == 0) {
+            sb.append(event.message);
+        } else {
+            appendFormatted(sb, event);
+        }
+        return sb.toString();
+    }
+
+    private static void printConsole(Level level, String logEntry) {
         switch (level) {
-            case "ERROR":
+            case ERROR:
                 System.err.println(logEntry);
                 break;
-            case "WARN":
+            case WARN:
                 System.out.println("\u001B[33m" + logEntry + "\u001B[0m"); // 黄色
                 break;
             default:
                 System.out.println(logEntry);
         }
+    }
 
-        // 写入文件（带轮转）
-        if (logWriter != null) {
-            logWriter.println(logEntry);
+    // close() 之后的日志：后台线程已停止，同步输出到控制台并追加到日志文件（只在关闭过程中出现，条数很少）
+    private static synchronized void writeAfterClose(Category category, Level lvl, String message, Throwable throwable,
+                                                     int argCount, Object arg0, Object arg1, Object arg2) {
+        LogEvent event = new LogEvent();
+        event.timestamp = System.currentTimeMillis();
+        event.level = lvl;
+        event.category = category;
+        event.message = message;
+        event.argCount = argCount;
+        event.arg0 = arg0;
+        event.arg1 = arg1;
+        event.arg2 = arg2;
+        String logEntry = formatLine(new StringBuilder(128), event,
+                DATE_FORMAT.format(Instant.ofEpochMilli(event.timestamp)));
+        printConsole(lvl, logEntry);
+        try (PrintWriter out = new PrintWriter(new OutputStreamWriter(
+                new FileOutputStream(LOG_FILE, true), StandardCharsets.UTF_8))) {
+            out.println(logEntry);
+            if (throwable != null) {
+                throwable.printStackTrace(out);
+            }
+        } catch (IOException e) {
+            System.err.println("❌ 写日志失败: " + e.getMessage());
         }
     }
 
-    /**
-     * 记录异常堆栈
-     */
-    public static void exception(String message, Exception e) {
-        error(message + ": " + e.getMessage());
+    // 把模板中的 {} 依次替换为参数，多余的 {} 原样保留
+    private static void appendFormatted(StringBuilder sb, LogEvent event) {
+        String pattern = event.message;
+        if (pattern == null) {
+            sb.append("null");
+            return;
+        }
+        int argIndex = 0;
+        int start = 0;
+        int pos;
+        while (argIndex < event.argCount && (pos = pattern.indexOf("{}", start)) >= 0) {
+            sb.append(pattern, start, pos);
+            Object arg = argIndex == 0 ? event.arg0 : argIndex == 1 ? event.arg1 : event.arg2;
+            sb.append(arg);
+            argIndex++;
+            start = pos + 2;
+        }
+        sb.append(pattern, start, pattern.length());
+    }
+
+    // 时间戳按秒缓存，同一秒内的日志复用同一个字符串
+    private static String formatTimestamp(long millis) {
+        long second = millis / 1000;
+        if (second != cachedSecond) {
+            cachedSecond = second;
+            cachedTimestamp = DATE_FORMAT.format(Instant.ofEpochMilli(millis));
+            cachedDay = toEpochDay(millis);
+        }
+        return cachedTimestamp;
+    }
 
-        if (logWriter != null && e != null) {
-            e.printStackTrace(logWriter);
+    private static void flushOutput() {
+        if (logWriter != null) {
+            logWriter.flush();
         }
     }
 
     /**
-     * 关闭日志
+     * 关闭日志：写完缓冲区中剩余的日志后停止后台线程
      */
     public static void close() {
-        if (logWriter != null) {
-            log("服务器关闭时间: " + new Date());
-            logWriter.println("=".repeat(60));
-            logWriter.close();
+        Thread t = writerThread;
+        if (!running || t == null) {
+            closed = true;
+            return;
+        }
+        log("服务器关闭时间: " + new Date());
+        synchronized (ServerLogger.class) { // 与 start() 互斥，关闭后不会再启动后台线程
+            closed = true;
+            running = false;
+        }
+        LockSupport.unpark(t);
+        try {
+            t.join(2000);
+            ExecutorService executor;
+            synchronized (ServerLogger.class) {
+                executor = compressExecutor;
+                compressExecutor = null;
+            }
+            if (executor != null) {
+                executor.shutdown();
+                executor.awaitTermination(5, TimeUnit.SECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
 
@@ -123,4 +646,81 @@ public class ServerLogger {
     public static void setEnabled(boolean enabled) {
         ServerLogger.enabled = enabled;
     }
-}
\ No newline at end of file
+
+    /**
+     * 设置所有分类的最低记录级别（默认 INFO）
+     */
+    public static synchronized void setLevel(Level level) {
+        categoryLevels = filledLevels(level);
+    }
+
+    public static Level getLevel() {
+        return getLevel(Category.GENERAL);
+    }
+
+    /**
+     * 设置单个分类的最低记录级别（运行时生效）
+     */
+    public static synchronized void setLevel(Category category, Level level) {
+        Level[] levels = categoryLevels.clone();
+        levels[category.ordinal()] = level;
+        categoryLevels = levels;
+    }
+
+    public static Level getLevel(Category category) {
+        return categoryLevels[category.ordinal()];
+    }
+
+    private static Level[] filledLevels(Level level) {
+        Level[] levels = new Level[Category.values().length];
+        Arrays.fill(levels, level);
+        return levels;
+    }
+
+    /**
+     * 设置缓冲区满时的处理策略（默认 BLOCK）
+     */
+    public static void setOverflowPolicy(OverflowPolicy policy) {
+        ServerLogger.overflowPolicy = policy;
+    }
+
+    public static OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    /**
+     * 设置日志订阅者（null 取消）
+     */
+    public static void setSink(Sink newSink) {
+        sink = newSink;
+    }
+
+    /**
+     * 设置滚动策略：单个文件最大字节数、归档（压缩后）总字节数上限
+     */
+    public static void setRollingPolicy(long maxFileBytes, long maxTotalBytes) {
+        maxLogSize = maxFileBytes;
+        maxTotalSize = maxTotalBytes;
+    }
+
+    /**
+     * 启动以来滚动的次数
+     */
+    public static long getRollCount() {
+        return rollCount.sum();
+    }
+
+    /**
+     * 缓冲区中等待写出的日志条数
+     */
+    public static long getPendingCount() {
+        return Math.max(0, claimSequence.get() - consumedSequence);
+    }
+
+    /**
+     * 因缓冲区满（或采样）被丢弃的日志条数
+     */
+    public static long getDroppedCount() {
+        return droppedCount.sum();
+    }
+}
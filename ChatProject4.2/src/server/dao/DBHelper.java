@@ -1,55 +1,204 @@
 package server.dao;
 
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * MySQL 5.7数据库连接工具类
  * 负责连接管理、表初始化，与数据库脚本完全对齐
+ * 连接管理为一个小型连接池：getConnection 借出连接，调用方 close()（try-with-resources）时归还，
+ * 多个线程（登录、状态写回、离线消息写入）可以同时访问数据库而不会互相关闭对方的连接。
  */
 public class DBHelper {
     // MySQL 5.7连接配置（需替换为你的实际账号密码）
-    private static final String DB_URL = "jdbc:mysql://localhost:3306/jdbc?useSSL=false&serverTimezone=UTC&allowPublicKeyRetrieval=true";
+    private static final String DB_URL = "jdbc:mysql://localhost:3306/jdbc?useSSL=false&serverTimezone=UTC&allowPublicKeyRetrieval=true&rewriteBatchedStatements=true";
     private static final String DB_USER = "root";      // 你的MySQL用户名
     private static final String DB_PASSWORD = "123456";// 你的MySQL密码
-    private static Connection connection = null;
+    private static volatile int poolSize = 8;              // 最大物理连接数（可通过 JMX 调整）
+    private static final long BORROW_TIMEOUT_MS = 5000;    // 连接全部借出时的最长等待
+
+    private static final BlockingQueue<Connection> idleConnections = new LinkedBlockingQueue<>();
+    private static final AtomicInteger totalConnections = new AtomicInteger();   // 已创建的物理连接
+    private static final AtomicInteger activeConnections = new AtomicInteger();  // 已借出的连接
+    private static final LongAdder borrowWaits = new LongAdder();                // 需要等待的借出次数
+    private static final LongAdder borrowTimeouts = new LongAdder();             // 等待超时次数
 
     /**
-     * 单例模式获取数据库连接
+     * 从连接池借出数据库连接（用完 close() 即归还），连接失败返回 null
      */
-    public static synchronized Connection getConnection() {
-        if (connection == null || isConnectionClosed()) {
-            try {
-                // 加载MySQL 5.7驱动
-                Class.forName("com.mysql.cj.jdbc.Driver");
-                connection = DriverManager.getConnection(DB_URL, DB_USER, DB_PASSWORD);
-                System.out.println("✅ MySQL 5.7数据库连接成功（jdbc库）");
-            } catch (ClassNotFoundException e) {
-                System.err.println("❌ 找不到MySQL驱动类：" + e.getMessage());
-                System.err.println("请导入mysql-connector-java-5.x版本驱动（如5.1.49）");
-            } catch (SQLException e) {
-                System.err.println("❌ MySQL连接失败：" + e.getMessage());
-                System.err.println("排查：1.服务是否启动 2.账号密码正确 3.jdbc数据库已创建");
+    public static Connection getConnection() {
+        Connection raw = idleConnections.poll();
+        while (raw != null && isConnectionClosed(raw)) {
+            totalConnections.decrementAndGet();
+            raw = idleConnections.poll();
+        }
+
+        if (raw == null) {
+            if (totalConnections.incrementAndGet() <= poolSize) {
+                raw = createConnection();
+                if (raw == null) {
+                    totalConnections.decrementAndGet();
+                    return null;
+                }
+            } else {
+                totalConnections.decrementAndGet();
+                borrowWaits.increment();
+                try {
+                    raw = idleConnections.poll(BORROW_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                if (raw == null) {
+                    borrowTimeouts.increment();
+                    System.err.println("❌ 获取数据库连接超时（连接池已满 " + poolSize + "）");
+                    return null;
+                }
+            }
+        }
+
+        activeConnections.incrementAndGet();
+        return wrap(raw);
+    }
+
+    // 创建一个物理连接
+    private static Connection createConnection() {
+        try {
+            // 加载MySQL 5.7驱动
+            Class.forName("com.mysql.cj.jdbc.Driver");
+            Connection conn = DriverManager.getConnection(DB_URL, DB_USER, DB_PASSWORD);
+            System.out.println("✅ MySQL 5.7数据库连接成功（jdbc库）");
+            return conn;
+        } catch (ClassNotFoundException e) {
+            System.err.println("❌ 找不到MySQL驱动类：" + e.getMessage());
+            System.err.println("请导入mysql-connector-java-5.x版本驱动（如5.1.49）");
+        } catch (SQLException e) {
+            System.err.println("❌ MySQL连接失败：" + e.getMessage());
+            System.err.println("排查：1.服务是否启动 2.账号密码正确 3.jdbc数据库已创建");
+        }
+        return null;
+    }
+
+    // 包装借出的连接：close() 时归还连接池而不是真正关闭
+    private static Connection wrap(Connection raw) {
+        boolean[] returned = {false};
+        return (Connection) Proxy.newProxyInstance(
+                DBHelper.class.getClassLoader(),
+                new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "close":
+                            synchronized (returned) {
+                                if (!returned[0]) {
+                                    returned[0] = true;
+                                    release(raw);
+                                }
+                            }
+                            return null;
+                        case "isClosed":
+                            return returned[0] || raw.isClosed();
+                        default:
+                            if (returned[0]) {
+                                throw new SQLException("连接已归还连接池");
+                            }
+                            try {
+                                return method.invoke(raw, args);
+                            } catch (InvocationTargetException e) {
+                                throw e.getCause();
+                            }
+                    }
+                });
+    }
+
+    private static void release(Connection raw) {
+        activeConnections.decrementAndGet();
+        if (isConnectionClosed(raw)) {
+            totalConnections.decrementAndGet();
+            return;
+        }
+        // 连接池调小后，多出来的连接归还时直接关闭
+        if (totalConnections.get() > poolSize) {
+            totalConnections.decrementAndGet();
+            closeQuietly(raw);
+            return;
+        }
+        try {
+            if (!raw.getAutoCommit()) {
+                raw.rollback();
+                raw.setAutoCommit(true);
             }
+            idleConnections.offer(raw);
+        } catch (SQLException e) {
+            totalConnections.decrementAndGet();
+            closeQuietly(raw);
         }
-        return connection;
     }
 
     /**
-     * 关闭数据库连接
+     * 关闭连接池中所有空闲连接（借出中的连接归还时若已关闭会被丢弃）
      */
     public static void closeConnection() {
-        if (connection != null) {
-            try {
-                connection.close();
-                connection = null;
-                System.out.println("✅ MySQL连接已关闭");
-            } catch (SQLException e) {
-                System.err.println("❌ 关闭MySQL连接失败：" + e.getMessage());
-            }
+        Connection raw;
+        int closed = 0;
+        while ((raw = idleConnections.poll()) != null) {
+            totalConnections.decrementAndGet();
+            closeQuietly(raw);
+            closed++;
         }
+        if (closed > 0) {
+            System.out.println("✅ MySQL连接已关闭（" + closed + " 个）");
+        }
+    }
+
+    private static void closeQuietly(Connection raw) {
+        try {
+            raw.close();
+        } catch (SQLException e) {
+            System.err.println("❌ 关闭MySQL连接失败：" + e.getMessage());
+        }
+    }
+
+    // ------------------- 连接池状态（监控用） -------------------
+    public static int getPoolSize() {
+        return poolSize;
+    }
+
+    /**
+     * 调整连接池上限（调大立即生效；调小时多出的连接在归还时关闭）
+     */
+    public static void setPoolSize(int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("连接池大小必须大于 0: " + size);
+        }
+        poolSize = size;
+    }
+
+    public static int getTotalConnections() {
+        return totalConnections.get();
+    }
+
+    public static int getActiveConnections() {
+        return activeConnections.get();
+    }
+
+    public static int getIdleConnections() {
+        return idleConnections.size();
+    }
+
+    public static long getBorrowWaits() {
+        return borrowWaits.sum();
+    }
+
+    public static long getBorrowTimeouts() {
+        return borrowTimeouts.sum();
     }
 
     /**
@@ -125,7 +274,7 @@ public class DBHelper {
     /**
      * 检查连接是否有效
      */
-    private static boolean isConnectionClosed() {
+    private static boolean isConnectionClosed(Connection connection) {
         try {
             return connection == null || connection.isClosed();
         } catch (SQLException e) {
@@ -0,0 +1,642 @@
+package server.dao;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import common.protocol.Message;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+
+/**
+ * 嵌入式文件存储（无需 MySQL，用于测试、压测和小规模部署）
+ * 所有修改以一行 JSON 追加写入日志文件（append-only），数据全部保存在内存索引中：
+ * 启动时顺序重放日志重建索引，若日志中失效记录过多则重写为一份紧凑的快照日志。
+ * 日志格式（每行一条）：
+ *   {"op":"user","account","password","nickname","status"}   新用户
+ *   {"op":"status","account","status"}                        在线状态
+ *   {"op":"friend","user","friend"}                           好友关系
+ *   {"op":"unfriend","user","friend"}                         删除好友关系
+ *   {"op":"msg","id","to","time","message"}                   离线消息
+ *   {"op":"del","to","upTo"}                                  删除 id <= upTo 的离线消息
+ *   {"op":"purge","before"}                                   删除早于 before 的离线消息
+ *   {"op":"seq","nextMessageId"}                              离线消息 id 高水位（压缩时写入，id 不会重复使用）
+ */
+public class EmbeddedUserStore implements UserStore {
+    private static final String LOG_FILE_NAME = "chat-store.log";
+    private static final Gson GSON = new Gson();
+
+    private static class UserRecord {
+        final String password;
+        final String nickname;
+        int status;
+
+        UserRecord(String password, String nickname, int status) {
+            this.password = password;
+            this.nickname = nickname;
+            this.status = status;
+        }
+    }
+
+    private static class MessageRecord {
+        final long time;
+        final String json;
+
+        MessageRecord(long time, String json) {
+            this.time = time;
+            this.json = json;
+        }
+    }
+
+    private final File logFile;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, UserRecord> users = new HashMap<>();
+    private final Map<String, Set<String>> friends = new HashMap<>();
+    private final Map<String, TreeMap<Long, MessageRecord>> offlineMessages = new HashMap<>();
+    private long nextMessageId = 1;
+    private long maxAccount = 0;
+    private Writer logWriter;
+
+    /**
+     * @param dataDir 数据目录（不存在则创建）
+     */
+    public EmbeddedUserStore(String dataDir) {
+        File dir = new File(dataDir);
+        if (!dir.exists()) {
+            dir.mkdirs();
+        }
+        this.logFile = new File(dir, LOG_FILE_NAME);
+
+        try {
+            long records = replay();
+            if (records > 2L * countLiveRecords() + 1000) {
+                compact();
+            }
+            logWriter = openAppender();
+            if (users.isEmpty()) {
+                insertTestData();
+            }
+            System.out.println("✅ 嵌入式存储已加载: " + logFile.getAbsolutePath() +
+                    " (用户 " + users.size() + " 个, 日志 " + records + " 条)");
+        } catch (IOException e) {
+            throw new IllegalStateException("嵌入式存储初始化失败: " + e.getMessage(), e);
+        }
+    }
+
+    // ------------------- 用户 -------------------
+    @Override
+    public Map<String, String> selectUserByAccount(String account) {
+        lock.readLock().lock();
+        try {
+            UserRecord record = users.get(account);
+            if (record == null) {
+                return null;
+            }
+            Map<String, String> user = new HashMap<>();
+            user.put("password", record.password);
+            user.put("nickname", record.nickname);
+            user.put("status", String.valueOf(record.status));
+            return user;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean insertUser(String account, String password, String nickname) {
+        lock.writeLock().lock();
+        try {
+            if (users.containsKey(account)) {
+                return false; // 账号已存在
+            }
+            JsonObject op = new JsonObject();
+            op.addProperty("op", "user");
+            op.addProperty("account", account);
+            op.addProperty("password", password);
+            op.addProperty("nickname", nickname);
+            op.addProperty("status", 0);
+            append(op);
+            applyUser(account, password, nickname, 0);
+            return true;
+        } catch (IOException e) {
+            System.err.println("❌ 插入用户失败：" + e.getMessage());
+            return false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean updateUserStatus(Map<String, Integer> statuses) {
+        lock.writeLock().lock();
+        try {
+            for (Map.Entry<String, Integer> entry : statuses.entrySet()) {
+                UserRecord record = users.get(entry.getKey());
+                if (record == null || record.status == entry.getValue()) {
+                    continue;
+                }
+                JsonObject op = new JsonObject();
+                op.addProperty("op", "status");
+                op.addProperty("account", entry.getKey());
+                op.addProperty("status", entry.getValue());
+                appendNoFlush(op);
+                record.status = entry.getValue();
+            }
+            logWriter.flush();
+            return true;
+        } catch (IOException e) {
+            System.err.println("❌ 批量更新状态失败：" + e.getMessage());
+            return false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public String getPasswordByAccountAndNickname(String account, String nickname) {
+        lock.readLock().lock();
+        try {
+            UserRecord record = users.get(account);
+            return record != null && record.nickname.equals(nickname) ? record.password : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public long getMaxAccount() {
+        lock.readLock().lock();
+        try {
+            return maxAccount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // ------------------- 好友 -------------------
+    @Override
+    public List<String> getFriendList(String userAccount) {
+        lock.readLock().lock();
+        try {
+            Set<String> set = friends.get(userAccount);
+            return set == null ? new ArrayList<>() : new ArrayList<>(set);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void loadFriendships(BiConsumer<String, String> sink) {
+        lock.readLock().lock();
+        try {
+            for (Map.Entry<String, Set<String>> entry : friends.entrySet()) {
+                for (String friend : entry.getValue()) {
+                    sink.accept(entry.getKey(), friend);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean insertFriend(String userAccount, String friendAccount) {
+        lock.writeLock().lock();
+        try {
+            // 与 MySQL 外键约束保持一致：双方都必须是已注册用户
+            if (!users.containsKey(userAccount) || !users.containsKey(friendAccount)) {
+                return false;
+            }
+            Set<String> set = friends.get(userAccount);
+            if (set != null && set.contains(friendAccount)) {
+                return false;
+            }
+            appendFriend("friend", userAccount, friendAccount);
+            friends.computeIfAbsent(userAccount, k -> new LinkedHashSet<>()).add(friendAccount);
+            return true;
+        } catch (IOException e) {
+            System.err.println("❌ 添加好友失败：" + e.getMessage());
+            return false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean deleteFriend(String userAccount, String friendAccount) {
+        lock.writeLock().lock();
+        try {
+            Set<String> set = friends.get(userAccount);
+            if (set == null || !set.contains(friendAccount)) {
+                return false;
+            }
+            appendFriend("unfriend", userAccount, friendAccount);
+            applyUnfriend(userAccount, friendAccount);
+            return true;
+        } catch (IOException e) {
+            System.err.println("❌ 删除好友失败：" + e.getMessage());
+            return false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // ------------------- 离线消息 -------------------
+    @Override
+    public int insertOfflineMessages(List<OfflineMessageStore.PendingMessage> batch) {
+        lock.writeLock().lock();
+        try {
+            int written = 0;
+            for (OfflineMessageStore.PendingMessage pending : batch) {
+                if (!users.containsKey(pending.toAccount)) {
+                    // 与 MySQL 外键约束保持一致：接收者必须是已注册用户
+                    System.err.println("❌ 离线消息写入失败 [" + pending.toAccount + "]：接收者不存在");
+                    continue;
+                }
+                long id = nextMessageId;
+                String json = GSON.toJson(pending.message);
+                JsonObject op = new JsonObject();
+                op.addProperty("op", "msg");
+                op.addProperty("id", id);
+                op.addProperty("to", pending.toAccount);
+                op.addProperty("time", pending.createTime);
+                op.addProperty("message", json);
+                appendNoFlush(op);
+                applyMessage(id, pending.toAccount, pending.createTime, json);
+                written++;
+            }
+            logWriter.flush();
+            return written;
+        } catch (IOException e) {
+            System.err.println("❌ 批量写入离线消息失败：" + e.getMessage());
+            return 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<OfflineMessageStore.StoredMessage> selectOfflineMessages(String toAccount, long afterId, int limit) {
+        List<OfflineMessageStore.StoredMessage> page = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            TreeMap<Long, MessageRecord> messages = offlineMessages.get(toAccount);
+            if (messages == null) {
+                return page;
+            }
+            for (Map.Entry<Long, MessageRecord> entry : messages.tailMap(afterId, false).entrySet()) {
+                if (page.size() >= limit) {
+                    break;
+                }
+                Message msg = GSON.fromJson(entry.getValue().json, Message.class);
+                page.add(new OfflineMessageStore.StoredMessage(entry.getKey(), msg));
+            }
+            return page;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int countOfflineMessages(String toAccount) {
+        lock.readLock().lock();
+        try {
+            TreeMap<Long, MessageRecord> messages = offlineMessages.get(toAccount);
+            return messages == null ? 0 : messages.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int deleteOfflineMessages(String toAccount, long upToId) {
+        lock.writeLock().lock();
+        try {
+            TreeMap<Long, MessageRecord> messages = offlineMessages.get(toAccount);
+            if (messages == null || messages.isEmpty() || messages.firstKey() > upToId) {
+                return 0;
+            }
+            JsonObject op = new JsonObject();
+            op.addProperty("op", "del");
+            op.addProperty("to", toAccount);
+            op.addProperty("upTo", upToId);
+            append(op);
+            return applyDelete(toAccount, upToId);
+        } catch (IOException e) {
+            System.err.println("❌ 删除离线消息失败：" + e.getMessage());
+            return 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public int trimOfflineMessages(String toAccount, int cap) {
+        long lastDropped;
+        lock.readLock().lock();
+        try {
+            TreeMap<Long, MessageRecord> messages = offlineMessages.get(toAccount);
+            if (messages == null || messages.size() <= cap) {
+                return 0; // 未超出上限
+            }
+            Iterator<Long> ids = messages.descendingKeySet().iterator();
+            for (int i = 0; i < cap; i++) {
+                ids.next();
+            }
+            lastDropped = ids.next();
+        } finally {
+            lock.readLock().unlock();
+        }
+        return deleteOfflineMessages(toAccount, lastDropped);
+    }
+
+    @Override
+    public int purgeOfflineMessagesBefore(long epochMillis) {
+        lock.writeLock().lock();
+        try {
+            if (!hasMessagesBefore(epochMillis)) {
+                return 0; // 没有过期消息时不写日志
+            }
+            JsonObject op = new JsonObject();
+            op.addProperty("op", "purge");
+            op.addProperty("before", epochMillis);
+            append(op);
+            return applyPurge(epochMillis);
+        } catch (IOException e) {
+            System.err.println("❌ 清理过期离线消息失败：" + e.getMessage());
+            return 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // ------------------- 生命周期 -------------------
+    @Override
+    public String getName() {
+        return "embedded";
+    }
+
+    @Override
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            if (logWriter != null) {
+                logWriter.close();
+                logWriter = null;
+            }
+        } catch (IOException e) {
+            System.err.println("❌ 关闭嵌入式存储失败：" + e.getMessage());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // ------------------- 日志读写 -------------------
+
+    private Writer openAppender() throws IOException {
+        // 上次写到一半宕机时日志末尾没有换行，先补上，避免新记录与残缺行粘在一起
+        if (logFile.length() > 0) {
+            try (RandomAccessFile raf = new RandomAccessFile(logFile, "rw")) {
+                raf.seek(raf.length() - 1);
+                if (raf.read() != '\n') {
+                    raf.write('\n');
+                }
+            }
+        }
+        return new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(logFile, true), StandardCharsets.UTF_8));
+    }
+
+    private void append(JsonObject op) throws IOException {
+        appendNoFlush(op);
+        logWriter.flush();
+    }
+
+    private void appendNoFlush(JsonObject op) throws IOException {
+        if (logWriter == null) {
+            throw new IOException("存储已关闭");
+        }
+        logWriter.write(GSON.toJson(op));
+        logWriter.write('\n');
+    }
+
+    // 重放日志，返回读取的记录数；末尾不完整的行（写到一半时宕机）和缺字段的记录跳过
+    private long replay() throws IOException {
+        if (!logFile.exists()) {
+            return 0;
+        }
+        long records = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(logFile), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                JsonObject op;
+                try {
+                    op = JsonParser.parseString(line).getAsJsonObject();
+                } catch (Exception e) {
+                    System.err.println("⚠️ 跳过损坏的存储日志记录: " + e.getMessage());
+                    continue;
+                }
+                try {
+                    applyOp(op);
+                } catch (RuntimeException e) {
+                    // 缺字段或字段类型不对（Gson 抛 NullPointerException/UnsupportedOperationException 等）
+                    System.err.println("⚠️ 跳过无效的存储日志记录: " + line);
+                    continue;
+                }
+                records++;
+            }
+        }
+        return records;
+    }
+
+    private void applyOp(JsonObject op) {
+        switch (op.get("op").getAsString()) {
+            case "user":
+                applyUser(op.get("account").getAsString(), op.get("password").getAsString(),
+                        op.get("nickname").getAsString(), op.get("status").getAsInt());
+                break;
+            case "status":
+                UserRecord record = users.get(op.get("account").getAsString());
+                if (record != null) {
+                    record.status = op.get("status").getAsInt();
+                }
+                break;
+            case "friend":
+                friends.computeIfAbsent(op.get("user").getAsString(), k -> new LinkedHashSet<>())
+                        .add(op.get("friend").getAsString());
+                break;
+            case "unfriend":
+                applyUnfriend(op.get("user").getAsString(), op.get("friend").getAsString());
+                break;
+            case "msg":
+                applyMessage(op.get("id").getAsLong(), op.get("to").getAsString(),
+                        op.get("time").getAsLong(), op.get("message").getAsString());
+                break;
+            case "del":
+                applyDelete(op.get("to").getAsString(), op.get("upTo").getAsLong());
+                break;
+            case "purge":
+                applyPurge(op.get("before").getAsLong());
+                break;
+            case "seq":
+                nextMessageId = Math.max(nextMessageId, op.get("nextMessageId").getAsLong());
+                break;
+            default:
+                System.err.println("⚠️ 未知的存储日志记录: " + op);
+        }
+    }
+
+    private void applyUser(String account, String password, String nickname, int status) {
+        users.put(account, new UserRecord(password, nickname, status));
+        try {
+            maxAccount = Math.max(maxAccount, Long.parseLong(account));
+        } catch (NumberFormatException ignored) {
+            // 非数字账号不参与序列
+        }
+    }
+
+    private void applyUnfriend(String user, String friend) {
+        Set<String> set = friends.get(user);
+        if (set != null) {
+            set.remove(friend);
+            if (set.isEmpty()) {
+                friends.remove(user);
+            }
+        }
+    }
+
+    private void applyMessage(long id, String toAccount, long time, String json) {
+        offlineMessages.computeIfAbsent(toAccount, k -> new TreeMap<>()).put(id, new MessageRecord(time, json));
+        nextMessageId = Math.max(nextMessageId, id + 1);
+    }
+
+    private int applyDelete(String toAccount, long upToId) {
+        TreeMap<Long, MessageRecord> messages = offlineMessages.get(toAccount);
+        if (messages == null) {
+            return 0;
+        }
+        NavigableMap<Long, MessageRecord> head = messages.headMap(upToId, true);
+        int removed = head.size();
+        head.clear();
+        if (messages.isEmpty()) {
+            offlineMessages.remove(toAccount);
+        }
+        return removed;
+    }
+
+    private boolean hasMessagesBefore(long before) {
+        for (TreeMap<Long, MessageRecord> messages : offlineMessages.values()) {
+            for (MessageRecord record : messages.values()) {
+                if (record.time < before) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private int applyPurge(long before) {
+        int removed = 0;
+        Iterator<TreeMap<Long, MessageRecord>> it = offlineMessages.values().iterator();
+        while (it.hasNext()) {
+            TreeMap<Long, MessageRecord> messages = it.next();
+            Iterator<MessageRecord> records = messages.values().iterator();
+            while (records.hasNext()) {
+                if (records.next().time < before) {
+                    records.remove();
+                    removed++;
+                }
+            }
+            if (messages.isEmpty()) {
+                it.remove();
+            }
+        }
+        return removed;
+    }
+
+    private long countLiveRecords() {
+        long count = users.size();
+        for (Set<String> set : friends.values()) {
+            count += set.size();
+        }
+        for (TreeMap<Long, MessageRecord> messages : offlineMessages.values()) {
+            count += messages.size();
+        }
+        return count;
+    }
+
+    // 把当前内存状态写成新日志并原子替换旧日志
+    private void compact() throws IOException {
+        File tmp = new File(logFile.getPath() + ".tmp");
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(tmp), StandardCharsets.UTF_8))) {
+            for (Map.Entry<String, UserRecord> entry : users.entrySet()) {
+                JsonObject op = new JsonObject();
+                op.addProperty("op", "user");
+                op.addProperty("account", entry.getKey());
+                op.addProperty("password", entry.getValue().password);
+                op.addProperty("nickname", entry.getValue().nickname);
+                op.addProperty("status", entry.getValue().status);
+                out.write(GSON.toJson(op));
+                out.write('\n');
+            }
+            for (Map.Entry<String, Set<String>> entry : friends.entrySet()) {
+                for (String friend : entry.getValue()) {
+                    JsonObject op = new JsonObject();
+                    op.addProperty("op", "friend");
+                    op.addProperty("user", entry.getKey());
+                    op.addProperty("friend", friend);
+                    out.write(GSON.toJson(op));
+                    out.write('\n');
+                }
+            }
+            for (Map.Entry<String, TreeMap<Long, MessageRecord>> entry : offlineMessages.entrySet()) {
+                for (Map.Entry<Long, MessageRecord> msg : entry.getValue().entrySet()) {
+                    JsonObject op = new JsonObject();
+                    op.addProperty("op", "msg");
+                    op.addProperty("id", msg.getKey());
+                    op.addProperty("to", entry.getKey());
+                    op.addProperty("time", msg.getValue().time);
+                    op.addProperty("message", msg.getValue().json);
+                    out.write(GSON.toJson(op));
+                    out.write('\n');
+                }
+            }
+            // 已删除的消息不再出现在快照里，单独记下 id 高水位，重启后不会重复分配旧 id
+            JsonObject seq = new JsonObject();
+            seq.addProperty("op", "seq");
+            seq.addProperty("nextMessageId", nextMessageId);
+            out.write(GSON.toJson(seq));
+            out.write('\n');
+        }
+        Files.move(tmp.toPath(), logFile.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        System.out.println("🗜️ 嵌入式存储日志已压缩");
+    }
+
+    // 与 DBHelper.insertTestData 相同的测试数据
+    private void insertTestData() throws IOException {
+        insertUser("10000000", "123456", "Alice");
+        insertUser("10000001", "123456", "Bob");
+        insertFriend("10000000", "10000001");
+        insertFriend("10000001", "10000000");
+        System.out.println("✅ 测试数据插入完成");
+    }
+
+    private void appendFriend(String op, String user, String friend) throws IOException {
+        JsonObject record = new JsonObject();
+        record.addProperty("op", op);
+        record.addProperty("user", user);
+        record.addProperty("friend", friend);
+        append(record);
+    }
+}
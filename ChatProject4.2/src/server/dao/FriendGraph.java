@@ -0,0 +1,313 @@
+package server.dao;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 好友关系内存索引（邻接表）
+ * 启动时用一次查询从 friends 表整体加载，之后随 UserDao.addFriend / removeFriend 增量维护，
+ * 登录时的好友列表和上下线通知的接收者都直接从这里读取，不再访问数据库。
+ * 账号是 8 位数字，直接用 int 作键：开放寻址哈希表（int[] 键）+ 每个账号一个有序 int[] 好友数组，
+ * 避免 HashMap<String, Set<String>> 每条边几十字节的装箱/节点开销（1M 条边约 10 字节/边，
+ * 测量方法见 tools.bench.FriendGraphFootprint）。
+ * 边是有向的，与 friends 表的行一一对应（表中好友关系按双向两行存储）。
+ */
+public class FriendGraph {
+    private static final int[] EMPTY = new int[0];
+    private static final int FREE = 0;              // 空槽位（合法账号不会是 0）
+    private static final float LOAD_FACTOR = 0.6f;
+    private static final int MIN_ADJ_CAPACITY = 4;
+
+    private static volatile FriendGraph instance;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private int[] keys;         // 账号
+    private int[][] adjacency;  // 好友账号（前 degrees[i] 个有效，升序）
+    private int[] degrees;      // 好友数量
+    private int nodeCount;
+    private long edgeCount;
+
+    /**
+     * @param expectedNodes 预计账号数量（用于预分配哈希表）
+     */
+    public FriendGraph(int expectedNodes) {
+        int capacity = Integer.highestOneBit(Math.max(16, (int) (expectedNodes / LOAD_FACTOR)) - 1) << 1;
+        keys = new int[capacity];
+        adjacency = new int[capacity][];
+        degrees = new int[capacity];
+    }
+
+    /**
+     * 获取全局好友索引（首次调用时从存储整体加载）
+     */
+    public static FriendGraph getInstance() {
+        FriendGraph graph = instance;
+        if (graph == null) {
+            synchronized (FriendGraph.class) {
+                graph = instance;
+                if (graph == null) {
+                    graph = loadFromStore(UserStoreFactory.getStore());
+                    instance = graph;
+                }
+            }
+        }
+        return graph;
+    }
+
+    /**
+     * 从存储整体加载好友关系（一次查询）
+     */
+    public static FriendGraph loadFromStore(UserStore store) {
+        long start = System.nanoTime();
+        FriendGraph graph = new FriendGraph(1024);
+        store.loadFriendships((user, friend) -> graph.addEdge(user, friend));
+        graph.trimToSize();
+        System.out.println("👥 好友索引加载完成: " + graph.getNodeCount() + " 个账号, " +
+                graph.getEdgeCount() + " 条关系, 耗时 " + (System.nanoTime() - start) / 1_000_000 + "ms");
+        return graph;
+    }
+
+    /**
+     * 账号转换为索引键，非法账号返回 -1
+     * 带前导 0 的账号也返回 -1：调用方用 String.valueOf(key) 还原账号，必须一一对应
+     */
+    public static int toKey(String account) {
+        if (account == null || account.isEmpty() || account.length() > 9) {
+            return -1;
+        }
+        if (account.length() > 1 && account.charAt(0) == '0') {
+            return -1;
+        }
+        int value = 0;
+        for (int i = 0; i < account.length(); i++) {
+            char c = account.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value == FREE ? -1 : value;
+    }
+
+    // ------------------- 查询 -------------------
+
+    /**
+     * 好友账号数组（副本，调用方可在不持锁的情况下遍历）
+     */
+    public int[] friendsOf(int account) {
+        lock.readLock().lock();
+        try {
+            int slot = find(account);
+            if (slot < 0 || degrees[slot] == 0) {
+                return EMPTY;
+            }
+            return Arrays.copyOf(adjacency[slot], degrees[slot]);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 好友账号列表（字符串形式，供登录时推送好友列表）
+     */
+    public List<String> getFriendList(String account) {
+        int key = toKey(account);
+        if (key < 0) {
+            return new ArrayList<>();
+        }
+        int[] friends = friendsOf(key);
+        List<String> list = new ArrayList<>(friends.length);
+        for (int friend : friends) {
+            list.add(String.valueOf(friend));
+        }
+        return list;
+    }
+
+    public boolean isFriend(int account, int friend) {
+        lock.readLock().lock();
+        try {
+            int slot = find(account);
+            return slot >= 0 && Arrays.binarySearch(adjacency[slot], 0, degrees[slot], friend) >= 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    public long getEdgeCount() {
+        return edgeCount;
+    }
+
+    /**
+     * 估算索引占用的堆内存（字节，按 64 位 JVM 压缩指针计算）
+     */
+    public long estimateBytes() {
+        lock.readLock().lock();
+        try {
+            long bytes = 3 * 16L + keys.length * (4L + 4L + 4L); // keys + adjacency 引用 + degrees
+            for (int i = 0; i < keys.length; i++) {
+                if (adjacency[i] != null) {
+                    bytes += 16 + 4L * adjacency[i].length;
+                }
+            }
+            return bytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // ------------------- 修改 -------------------
+
+    public boolean addEdge(String account, String friend) {
+        int from = toKey(account);
+        int to = toKey(friend);
+        if (from < 0 || to < 0) {
+            System.err.println("⚠️ 忽略非法好友关系: " + account + " -> " + friend);
+            return false;
+        }
+        return addEdge(from, to);
+    }
+
+    /**
+     * 添加一条好友关系，已存在返回 false
+     */
+    public boolean addEdge(int account, int friend) {
+        lock.writeLock().lock();
+        try {
+            int slot = findOrInsert(account);
+            int[] adj = adjacency[slot];
+            int degree = degrees[slot];
+            int pos = Arrays.binarySearch(adj, 0, degree, friend);
+            if (pos >= 0) {
+                return false;
+            }
+            pos = -pos - 1;
+            if (degree == adj.length) {
+                int[] grown = new int[Math.max(MIN_ADJ_CAPACITY, degree + (degree >> 1))];
+                System.arraycopy(adj, 0, grown, 0, degree);
+                adj = grown;
+                adjacency[slot] = adj;
+            }
+            System.arraycopy(adj, pos, adj, pos + 1, degree - pos);
+            adj[pos] = friend;
+            degrees[slot] = degree + 1;
+            edgeCount++;
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean removeEdge(String account, String friend) {
+        int from = toKey(account);
+        int to = toKey(friend);
+        return from >= 0 && to >= 0 && removeEdge(from, to);
+    }
+
+    /**
+     * 删除一条好友关系，不存在返回 false
+     */
+    public boolean removeEdge(int account, int friend) {
+        lock.writeLock().lock();
+        try {
+            int slot = find(account);
+            if (slot < 0) {
+                return false;
+            }
+            int[] adj = adjacency[slot];
+            int degree = degrees[slot];
+            int pos = Arrays.binarySearch(adj, 0, degree, friend);
+            if (pos < 0) {
+                return false;
+            }
+            System.arraycopy(adj, pos + 1, adj, pos, degree - pos - 1);
+            degrees[slot] = degree - 1;
+            edgeCount--;
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 去掉好友数组的预留空间（整体加载完成后调用）
+     */
+    public void trimToSize() {
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < keys.length; i++) {
+                if (adjacency[i] != null && adjacency[i].length != degrees[i]) {
+                    adjacency[i] = degrees[i] == 0 ? EMPTY : Arrays.copyOf(adjacency[i], degrees[i]);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // ------------------- 哈希表 -------------------
+
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private int find(int key) {
+        int mask = keys.length - 1;
+        int i = mix(key) & mask;
+        while (keys[i] != FREE) {
+            if (keys[i] == key) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    private int findOrInsert(int key) {
+        int slot = find(key);
+        if (slot >= 0) {
+            return slot;
+        }
+        if (nodeCount + 1 > keys.length * LOAD_FACTOR) {
+            rehash(keys.length << 1);
+        }
+        int mask = keys.length - 1;
+        int i = mix(key) & mask;
+        while (keys[i] != FREE) {
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        adjacency[i] = EMPTY;
+        nodeCount++;
+        return i;
+    }
+
+    private void rehash(int newCapacity) {
+        int[] oldKeys = keys;
+        int[][] oldAdjacency = adjacency;
+        int[] oldDegrees = degrees;
+        keys = new int[newCapacity];
+        adjacency = new int[newCapacity][];
+        degrees = new int[newCapacity];
+
+        int mask = newCapacity - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] == FREE) {
+                continue;
+            }
+            int i = mix(oldKeys[j]) & mask;
+            while (keys[i] != FREE) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = oldKeys[j];
+            adjacency[i] = oldAdjacency[j];
+            degrees[i] = oldDegrees[j];
+        }
+    }
+}
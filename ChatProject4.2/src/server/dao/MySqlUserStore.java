@@ -0,0 +1,351 @@
+package server.dao;
+
+import com.google.gson.Gson;
+import common.protocol.Message;
+
+import java.sql.*;
+import java.util.*;
+import java.util.function.BiConsumer;
+
+/**
+ * MySQL 5.7 存储实现（表结构见 DBHelper.initDatabase / jdbc.sql）
+ * 连接从 DBHelper 的连接池借出，try-with-resources 关闭时归还
+ */
+public class MySqlUserStore implements UserStore {
+    // 离线消息以完整 JSON 存入 content 列（含 extra 字段），Gson 线程安全可复用
+    private static final Gson GSON = new Gson();
+
+    public MySqlUserStore() {
+        DBHelper.initDatabase();
+    }
+
+    // ------------------- 用户 -------------------
+    @Override
+    public Map<String, String> selectUserByAccount(String account) {
+        String sql = "SELECT password, nickname, status FROM users WHERE account = ?";
+        try (Connection conn = DBHelper.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, account);
+            ResultSet rs = pstmt.executeQuery();
+            if (rs.next()) {
+                Map<String, String> user = new HashMap<>();
+                user.put("password", rs.getString("password"));
+                user.put("nickname", rs.getString("nickname"));
+                user.put("status", String.valueOf(rs.getInt("status")));
+                return user;
+            }
+        } catch (SQLException e) {
+            System.err.println("❌ 查询用户失败：" + e.getMessage());
+        }
+        return null;
+    }
+
+    @Override
+    public boolean insertUser(String account, String password, String nickname) {
+        String sql = "INSERT INTO users (account, password, nickname, status) VALUES (?, ?, ?, 0)";
+        try (Connection conn = DBHelper.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, account);
+            pstmt.setString(2, password);
+            pstmt.setString(3, nickname);
+            pstmt.executeUpdate();
+            return true;
+        } catch (SQLIntegrityConstraintViolationException e) {
+            // 账号已存在（主键冲突）
+            return false;
+        } catch (SQLException e) {
+            System.err.println("❌ 插入用户失败：" + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * 批量更新在线状态（一个事务内提交）
+     */
+    @Override
+    public boolean updateUserStatus(Map<String, Integer> statuses) {
+        if (statuses == null || statuses.isEmpty()) {
+            return true;
+        }
+        String sql = "UPDATE users SET status = ? WHERE account = ?";
+        Connection conn = DBHelper.getConnection();
+        if (conn == null) {
+            return false;
+        }
+        try (Connection c = conn;
+             PreparedStatement pstmt = c.prepareStatement(sql)) {
+            c.setAutoCommit(false);
+            try {
+                for (Map.Entry<String, Integer> entry : statuses.entrySet()) {
+                    pstmt.setInt(1, entry.getValue());
+                    pstmt.setString(2, entry.getKey());
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+                c.commit();
+                return true;
+            } catch (SQLException e) {
+                c.rollback();
+                throw e;
+            } finally {
+                c.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            System.err.println("❌ 批量更新状态失败：" + e.getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public String getPasswordByAccountAndNickname(String account, String nickname) {
+        String sql = "SELECT password FROM users WHERE account = ? AND nickname = ?";
+        try (Connection conn = DBHelper.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, account);
+            pstmt.setString(2, nickname);
+            ResultSet rs = pstmt.executeQuery();
+            if (rs.next()) {
+                return rs.getString("password");
+            }
+        } catch (SQLException e) {
+            System.err.println("❌ 查询密码失败：" + e.getMessage());
+        }
+        return null;
+    }
+
+    @Override
+    public long getMaxAccount() {
+        String sql = "SELECT MAX(CAST(account AS UNSIGNED)) FROM users";
+        try (Connection conn = DBHelper.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            if (rs.next()) {
+                return rs.getLong(1);
+            }
+        } catch (Exception e) {
+            System.err.println("❌ 查询最大账号失败：" + e.getMessage());
+        }
+        return 0;
+    }
+
+    // ------------------- 好友 -------------------
+    @Override
+    public List<String> getFriendList(String userAccount) {
+        List<String> friends = new ArrayList<>();
+        String sql = "SELECT friend_account FROM friends WHERE user_account = ?";
+        try (Connection conn = DBHelper.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, userAccount);
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                friends.add(rs.getString("friend_account"));
+            }
+        } catch (SQLException e) {
+            System.err.println("❌ 获取好友列表失败：" + e.getMessage());
+            friends = Collections.emptyList();
+        }
+        return friends;
+    }
+
+    @Override
+    public void loadFriendships(BiConsumer<String, String> sink) {
+        String sql = "SELECT user_account, friend_account FROM friends";
+        try (Connection conn = DBHelper.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.setFetchSize(Integer.MIN_VALUE); // MySQL 驱动按行流式读取，不把整张表读进内存
+            ResultSet rs = stmt.executeQuery(sql);
+            while (rs.next()) {
+                sink.accept(rs.getString(1), rs.getString(2));
+            }
+        } catch (SQLException e) {
+            System.err.println("❌ 加载好友关系失败：" + e.getMessage());
+        }
+    }
+
+    @Override
+    public boolean insertFriend(String userAccount, String friendAccount) {
+        String sql = "INSERT INTO friends (user_account, friend_account) VALUES (?, ?)";
+        try (Connection conn = DBHelper.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, userAccount);
+            pstmt.setString(2, friendAccount);
+            return pstmt.executeUpdate() > 0;
+        } catch (SQLIntegrityConstraintViolationException e) {
+            // 关系已存在或账号不存在
+            return false;
+        } catch (SQLException e) {
+            System.err.println("❌ 添加好友失败：" + e.getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public boolean deleteFriend(String userAccount, String friendAccount) {
+        String sql = "DELETE FROM friends WHERE user_account = ? AND friend_account = ?";
+        try (Connection conn = DBHelper.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, userAccount);
+            pstmt.setString(2, friendAccount);
+            return pstmt.executeUpdate() > 0;
+        } catch (SQLException e) {
+            System.err.println("❌ 删除好友失败：" + e.getMessage());
+            return false;
+        }
+    }
+
+    // ------------------- 离线消息 -------------------
+
+    /**
+     * 批量插入离线消息（一个事务）
+     * 批量失败（如接收者账号不存在触发外键约束）时整批回滚再逐条重试，只丢弃出错的那几条；
+     * 驱动改写批量语句时可能拆成多条执行，不回滚的话已执行的部分会在重试时重复插入
+     */
+    @Override
+    public int insertOfflineMessages(List<OfflineMessageStore.PendingMessage> batch) {
+        String sql = "INSERT INTO offline_messages (from_account, to_account, message_type, content, send_time) " +
+                "VALUES (?, ?, ?, ?, ?)";
+        Connection conn = DBHelper.getConnection();
+        if (conn == null) {
+            return 0;
+        }
+        try (Connection c = conn;
+             PreparedStatement pstmt = c.prepareStatement(sql)) {
+            c.setAutoCommit(false);
+            try {
+                for (OfflineMessageStore.PendingMessage pending : batch) {
+                    bindOfflineMessage(pstmt, pending);
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+                c.commit();
+                return batch.size();
+            } catch (SQLException e) {
+                c.rollback();
+                c.setAutoCommit(true); // 逐条重试时每条单独提交
+                pstmt.clearBatch();
+                int written = 0;
+                for (OfflineMessageStore.PendingMessage pending : batch) {
+                    try {
+                        bindOfflineMessage(pstmt, pending);
+                        written += pstmt.executeUpdate();
+                    } catch (SQLException rowError) {
+                        System.err.println("❌ 离线消息写入失败 [" + pending.toAccount + "]：" + rowError.getMessage());
+                    }
+                }
+                return written;
+            } finally {
+                c.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            System.err.println("❌ 批量写入离线消息失败：" + e.getMessage());
+            return 0;
+        }
+    }
+
+    private void bindOfflineMessage(PreparedStatement pstmt, OfflineMessageStore.PendingMessage pending) throws SQLException {
+        Message msg = pending.message;
+        pstmt.setString(1, msg.getFrom());
+        pstmt.setString(2, pending.toAccount);
+        pstmt.setString(3, msg.getType());
+        pstmt.setString(4, GSON.toJson(msg));
+        pstmt.setTimestamp(5, new Timestamp(pending.createTime));
+    }
+
+    /**
+     * keyset 分页：InnoDB 中 to_account 外键索引隐含主键 id，因此按 (to_account, id) 索引顺序读取
+     */
+    @Override
+    public List<OfflineMessageStore.StoredMessage> selectOfflineMessages(String toAccount, long afterId, int limit) {
+        List<OfflineMessageStore.StoredMessage> page = new ArrayList<>();
+        String sql = "SELECT id, content FROM offline_messages WHERE to_account = ? AND id > ? ORDER BY id LIMIT ?";
+        try (Connection conn = DBHelper.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, toAccount);
+            pstmt.setLong(2, afterId);
+            pstmt.setInt(3, limit);
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                Message msg = GSON.fromJson(rs.getString("content"), Message.class);
+                page.add(new OfflineMessageStore.StoredMessage(rs.getLong("id"), msg));
+            }
+        } catch (Exception e) {
+            System.err.println("❌ 查询离线消息失败：" + e.getMessage());
+        }
+        return page;
+    }
+
+    @Override
+    public int countOfflineMessages(String toAccount) {
+        String sql = "SELECT COUNT(*) FROM offline_messages WHERE to_account = ?";
+        try (Connection conn = DBHelper.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, toAccount);
+            ResultSet rs = pstmt.executeQuery();
+            if (rs.next()) {
+                return rs.getInt(1);
+            }
+        } catch (Exception e) {
+            System.err.println("❌ 统计离线消息失败：" + e.getMessage());
+        }
+        return 0;
+    }
+
+    @Override
+    public int deleteOfflineMessages(String toAccount, long upToId) {
+        String sql = "DELETE FROM offline_messages WHERE to_account = ? AND id <= ?";
+        try (Connection conn = DBHelper.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, toAccount);
+            pstmt.setLong(2, upToId);
+            return pstmt.executeUpdate();
+        } catch (Exception e) {
+            System.err.println("❌ 删除离线消息失败：" + e.getMessage());
+            return 0;
+        }
+    }
+
+    @Override
+    public int trimOfflineMessages(String toAccount, int cap) {
+        String findSql = "SELECT id FROM offline_messages WHERE to_account = ? ORDER BY id DESC LIMIT 1 OFFSET ?";
+        long lastDropped;
+        try (Connection conn = DBHelper.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(findSql)) {
+            pstmt.setString(1, toAccount);
+            pstmt.setInt(2, cap);
+            ResultSet rs = pstmt.executeQuery();
+            if (!rs.next()) {
+                return 0; // 未超出上限
+            }
+            lastDropped = rs.getLong(1);
+        } catch (Exception e) {
+            System.err.println("❌ 裁剪离线消息失败：" + e.getMessage());
+            return 0;
+        }
+        // 先归还查询用的连接再删除，避免同一线程同时占用两个池连接
+        return deleteOfflineMessages(toAccount, lastDropped);
+    }
+
+    @Override
+    public int purgeOfflineMessagesBefore(long epochMillis) {
+        String sql = "DELETE FROM offline_messages WHERE send_time < ?";
+        try (Connection conn = DBHelper.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setTimestamp(1, new Timestamp(epochMillis));
+            return pstmt.executeUpdate();
+        } catch (Exception e) {
+            System.err.println("❌ 清理过期离线消息失败：" + e.getMessage());
+            return 0;
+        }
+    }
+
+    // ------------------- 生命周期 -------------------
+    @Override
+    public String getName() {
+        return "mysql";
+    }
+
+    @Override
+    public void close() {
+        DBHelper.closeConnection();
+    }
+}
@@ -0,0 +1,359 @@
+package server.dao;
+
+import common.protocol.Message;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 离线消息持久化（offline_messages 表）
+ * 1. 写入：saveOfflineMessage 只把消息放进内存队列，由后台线程按批（BATCH_SIZE 条或 FLUSH_INTERVAL_MS 毫秒）
+ *    批量 INSERT，发送方线程不等待数据库
+ * 2. 读取：按 id 升序分页（keyset 游标：id > 上一页最后的 id），投递后按 id 区间批量删除；
+ *    回放开始前只等待该用户自己还在队列里的消息写完，不为其他用户的积压买单
+ * 3. 容量：每个用户最多保留 MAX_PER_USER 条（超出删除最旧的），超过 RETENTION_DAYS 天的消息定期清理
+ */
+public class OfflineMessageStore {
+    private static final int QUEUE_CAPACITY = 100_000;     // 内存队列上限
+    private static final int BATCH_SIZE = 200;              // 每批最多写入条数
+    private static final long FLUSH_INTERVAL_MS = 100;      // 队列不满一批时的最长等待
+    private static final long OFFER_TIMEOUT_MS = 100;       // 队列满时发送方最多等待的时间
+    private static final long FLUSH_WAIT_MS = 2000;         // 等待后台批次写完的最长时间
+    public static final int MAX_PER_USER = 1000;            // 每个用户最多保留的离线消息条数
+    public static final int RETENTION_DAYS = 7;             // 离线消息保留天数
+    private static final long PURGE_INTERVAL_MINUTES = 60;  // 过期清理周期
+
+    /**
+     * 从数据库读出的一条离线消息（id 用作分页游标）
+     */
+    public static class StoredMessage {
+        public final long id;
+        public final Message message;
+
+        public StoredMessage(long id, Message message) {
+            this.id = id;
+            this.message = message;
+        }
+    }
+
+    /**
+     * 等待写入的离线消息
+     */
+    public static class PendingMessage {
+        public final String toAccount;
+        public final Message message;
+        public final long createTime;
+
+        PendingMessage(String toAccount, Message message) {
+            this.toAccount = toAccount;
+            this.message = message;
+            this.createTime = System.currentTimeMillis();
+        }
+    }
+
+    private static final BlockingQueue<PendingMessage> queue = new LinkedBlockingQueue<>(QUEUE_CAPACITY);
+    private static final Object writeLock = new Object();
+    private static final AtomicLong enqueuedCount = new AtomicLong();   // 已提交的消息数
+    private static final AtomicLong processedCount = new AtomicLong();  // 已写入（或写入失败）的消息数
+    // 每个接收者尚未写完的消息（全部写完后删除该项），回放前只等待这个接收者的消息
+    private static final ConcurrentHashMap<String, Backlog> backlogs = new ConcurrentHashMap<>();
+    private static final Object writtenSignal = new Object();
+    private static final UserDao userDao = new UserDao();
+    private static volatile Thread writerThread;
+    private static volatile boolean running;
+    private static volatile boolean closed;      // shutdown 之后不再启动后台线程，改为同步写入
+    private static ScheduledExecutorService purgeScheduler;
+
+    // 某个接收者已提交/已写入的条数（只在 backlogs 的 compute 中修改）
+    private static final class Backlog {
+        final AtomicLong enqueued = new AtomicLong();
+        final AtomicLong written = new AtomicLong();
+    }
+
+    static {
+        // 关闭钩子只注册一次：shutdown 之后再保存不会重新启动后台线程（关闭过程中不能再注册钩子）
+        try {
+            Runtime.getRuntime().addShutdownHook(new Thread(OfflineMessageStore::shutdown, "offline-message-flush"));
+        } catch (IllegalStateException e) {
+            closed = true; // 首次使用时 JVM 已在关闭，离线消息直接同步写入
+        }
+    }
+
+    /**
+     * 启动后台写入线程和过期清理任务（首次保存时自动调用，shutdown 之后不再启动）
+     */
+    public static synchronized void start() {
+        if (running || closed) {
+            return;
+        }
+        running = true;
+
+        writerThread = new Thread(OfflineMessageStore::writeLoop, "offline-message-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+
+        purgeScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "offline-message-purge");
+            t.setDaemon(true);
+            return t;
+        });
+        purgeScheduler.scheduleWithFixedDelay(
+                OfflineMessageStore::purgeExpired,
+                1,
+                PURGE_INTERVAL_MINUTES,
+                TimeUnit.MINUTES
+        );
+    }
+
+    /**
+     * 保存一条离线消息（异步写入；shutdown 之后在调用线程上同步写入）
+     */
+    public static void save(String toAccount, Message message) {
+        if (toAccount == null || toAccount.isEmpty() || message == null) {
+            return;
+        }
+        if (!running) {
+            start();
+        }
+
+        PendingMessage pending = new PendingMessage(toAccount, message);
+        backlogs.compute(toAccount, (k, b) -> {
+            Backlog backlog = b != null ? b : new Backlog();
+            backlog.enqueued.incrementAndGet();
+            return backlog;
+        });
+        if (running) {
+            try {
+                if (queue.offer(pending, OFFER_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                    enqueuedCount.incrementAndGet();
+                    if (closed) {
+                        flush(); // 入队时恰好在关闭，后台线程已停止，自己写掉
+                    }
+                    return;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        // 已关闭或队列持续积压：在发送方线程同步写入，既不丢消息也起到反压作用
+        List<PendingMessage> single = new ArrayList<>(1);
+        single.add(pending);
+        enqueuedCount.incrementAndGet();
+        synchronized (writeLock) {
+            writeBatch(single);
+        }
+    }
+
+    /**
+     * 立即把队列中的消息全部写入数据库（关闭时调用）
+     */
+    public static void flush() {
+        long target = enqueuedCount.get();
+        synchronized (writeLock) {
+            List<PendingMessage> batch = new ArrayList<>(BATCH_SIZE);
+            while (queue.drainTo(batch, BATCH_SIZE) > 0) {
+                writeBatch(batch);
+                batch.clear();
+            }
+
+            // 后台线程可能已取走一批正在凑批，等它写完（最多 FLUSH_WAIT_MS）
+            long deadline = System.currentTimeMillis() + FLUSH_WAIT_MS;
+            while (processedCount.get() < target) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    break;
+                }
+                try {
+                    writeLock.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * 等待某用户在此之前提交的离线消息写入数据库（最多 FLUSH_WAIT_MS）
+     * 只等这个用户自己的消息，不抢写锁、不替其他用户写队列
+     */
+    public static void awaitPending(String toAccount) {
+        Backlog backlog = backlogs.get(toAccount);
+        if (backlog == null) {
+            return;
+        }
+        long target = backlog.enqueued.get();
+        long deadline = System.currentTimeMillis() + FLUSH_WAIT_MS;
+        synchronized (writtenSignal) {
+            // 该项被删除说明这个用户的消息已全部写完
+            while (backlogs.get(toAccount) == backlog && backlog.written.get() < target) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    break;
+                }
+                try {
+                    writtenSignal.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * 按 id 升序读取一页离线消息（回放开始时先调用 count，等待该用户的积压写完）
+     * @param afterId 上一页最后一条的 id（第一页传 0）
+     */
+    public static List<StoredMessage> getPage(String toAccount, long afterId, int limit) {
+        return userDao.getOfflineMessages(toAccount, afterId, limit);
+    }
+
+    /**
+     * 删除已投递的消息（id <= upToId 的全部删除）
+     */
+    public static void deleteDelivered(String toAccount, long upToId) {
+        userDao.deleteOfflineMessages(toAccount, upToId);
+    }
+
+    /**
+     * 统计某用户的离线消息条数（先等待该用户已提交的消息写入）
+     */
+    public static int count(String toAccount) {
+        awaitPending(toAccount);
+        return userDao.countOfflineMessages(toAccount);
+    }
+
+    /**
+     * 当前等待写入的消息数量
+     */
+    public static int getQueueSize() {
+        return queue.size();
+    }
+
+    /**
+     * 停止后台线程并写入剩余消息
+     */
+    public static synchronized void shutdown() {
+        closed = true;
+        if (!running) {
+            return;
+        }
+        running = false;
+
+        if (purgeScheduler != null) {
+            purgeScheduler.shutdownNow();
+        }
+        Thread t = writerThread;
+        if (t != null) {
+            t.interrupt();
+            try {
+                t.join(2000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        flush();
+    }
+
+    // 后台写入循环：等待第一条消息，再在 FLUSH_INTERVAL_MS 内尽量凑满一批
+    private static void writeLoop() {
+        List<PendingMessage> batch = new ArrayList<>(BATCH_SIZE);
+        while (running) {
+            try {
+                PendingMessage first = queue.take();
+                batch.add(first);
+
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(FLUSH_INTERVAL_MS);
+                while (batch.size() < BATCH_SIZE) {
+                    if (queue.drainTo(batch, BATCH_SIZE - batch.size()) > 0) {
+                        continue;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        break;
+                    }
+                    PendingMessage next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                synchronized (writeLock) {
+                    writeBatch(batch);
+                }
+                batch.clear();
+            } catch (InterruptedException e) {
+                // shutdown 时被中断，剩余消息由 flush 写入
+                synchronized (writeLock) {
+                    writeBatch(batch);
+                }
+                batch.clear();
+                break;
+            } catch (Exception e) {
+                System.err.println("❌ 离线消息写入线程异常：" + e.getMessage());
+                batch.clear();
+            }
+        }
+    }
+
+    // 调用方必须持有 writeLock
+    private static void writeBatch(List<PendingMessage> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            writeBatchToStore(batch);
+        } finally {
+            processedCount.addAndGet(batch.size());
+            writeLock.notifyAll();
+            for (PendingMessage pending : batch) {
+                backlogs.computeIfPresent(pending.toAccount, (k, b) ->
+                        b.written.incrementAndGet() >= b.enqueued.get() ? null : b);
+            }
+            synchronized (writtenSignal) {
+                writtenSignal.notifyAll();
+            }
+        }
+    }
+
+    private static void writeBatchToStore(List<PendingMessage> batch) {
+
+        int written = userDao.insertOfflineMessages(batch);
+        if (written < batch.size()) {
+            System.err.println("❌ 离线消息写入失败 " + (batch.size() - written) + "/" + batch.size() + " 条");
+        }
+
+        // 写入后对本批涉及的用户做容量裁剪
+        Set<String> recipients = new LinkedHashSet<>();
+        for (PendingMessage pending : batch) {
+            recipients.add(pending.toAccount);
+        }
+        for (String toAccount : recipients) {
+            userDao.trimOfflineMessages(toAccount, MAX_PER_USER);
+        }
+    }
+
+    private static void purgeExpired() {
+        try {
+            long cutoff = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(RETENTION_DAYS);
+            int purged = userDao.purgeOfflineMessagesBefore(cutoff);
+            if (purged > 0) {
+                System.out.println("🧹 已清理过期离线消息 " + purged + " 条");
+            }
+        } catch (Exception e) {
+            System.err.println("❌ 清理过期离线消息失败：" + e.getMessage());
+        }
+    }
+}
@@ -1,91 +1,96 @@
 package server.dao;
 
 import common.protocol.Message;
+import server.jfr.ChatEvents;
+import server.jfr.DbQueryEvent;
 
-import java.sql.*;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 
 /**
- * 用户数据访问对象（对接MySQL 5.7）
+ * 用户数据访问对象
  * 支持登录、注册、找回密码、离线消息、好友列表功能
+ * 具体存储由 UserStoreFactory 按配置选择（MySQL 或嵌入式文件存储）
  */
 public class UserDao {
-    // 账号生成器（8位数字）
-    private static final AtomicLong accountSeq = new AtomicLong(10000000L);
+    private static final long MIN_ACCOUNT = 10000000L;
+    private static final long MAX_ACCOUNT = 99999999L;
 
-    // 离线消息内存存储（简化实现）
-    private static final Map<String, List<Message>> offlineMessages = new ConcurrentHashMap<>();
+    // 账号生成器（8位数字），首次使用时从存储中已有的最大账号继续
+    private static volatile AtomicLong accountSeq;
+
+    private UserStore store() {
+        return UserStoreFactory.getStore();
+    }
+
+    // 调用存储实现，耗时超过阈值时记录 JFR 事件（sqlId 取 UserDao 方法名）
+    private <T> T query(String sqlId, Function<UserStore, T> call) {
+        UserStore s = store();
+        DbQueryEvent jfr = ChatEvents.beginDbQuery();
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            T result = call.apply(s);
+            success = true;
+            return result;
+        } finally {
+            ChatEvents.commitDbQuery(jfr, sqlId, s.getName(), success, System.nanoTime() - start);
+        }
+    }
 
     // ------------------- 核心业务方法 -------------------
     /**
      * 根据账号查询用户（登录/验证用）
      */
     public Map<String, String> selectUserByAccount(String account) {
-        String sql = "SELECT password, nickname, status FROM users WHERE account = ?";
-        try (Connection conn = DBHelper.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, account);
-            ResultSet rs = pstmt.executeQuery();
-            if (rs.next()) {
-                Map<String, String> user = new HashMap<>();
-                user.put("password", rs.getString("password"));
-                user.put("nickname", rs.getString("nickname"));
-                user.put("status", String.valueOf(rs.getInt("status")));
-                return user;
-            }
-        } catch (SQLException e) {
-            System.err.println("❌ 查询用户失败：" + e.getMessage());
-        }
-        return null;
+        return query("selectUserByAccount", s -> s.selectUserByAccount(account));
     }
 
     /**
      * 插入新用户（注册用）
      */
     public boolean insertUser(String account, String password, String nickname) {
-        String sql = "INSERT INTO users (account, password, nickname, status) VALUES (?, ?, ?, 0)";
-        try (Connection conn = DBHelper.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, account);
-            pstmt.setString(2, password);
-            pstmt.setString(3, nickname);
-            pstmt.executeUpdate();
-            return true;
-        } catch (SQLIntegrityConstraintViolationException e) {
-            // 账号已存在（主键冲突）
-            return false;
-        } catch (SQLException e) {
-            System.err.println("❌ 插入用户失败：" + e.getMessage());
-            return false;
-        }
+        return query("insertUser", s -> s.insertUser(account, password, nickname));
     }
 
     /**
      * 更新用户在线状态
      */
     public boolean updateUserStatus(String account, int status) {
-        String sql = "UPDATE users SET status = ? WHERE account = ?";
-        try (Connection conn = DBHelper.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setInt(1, status);
-            pstmt.setString(2, account);
-            return pstmt.executeUpdate() > 0;
-        } catch (SQLException e) {
-            System.err.println("❌ 更新状态失败：" + e.getMessage());
-            return false;
+        return query("updateUserStatus", s -> s.updateUserStatus(Collections.singletonMap(account, status)));
+    }
+
+    /**
+     * 批量更新用户在线状态（供 UserStatusWriter 写回使用）
+     * @param statuses 账号 -> 状态
+     * @return 全部写入成功返回 true
+     */
+    public boolean updateUserStatusBatch(Map<String, Integer> statuses) {
+        if (statuses == null || statuses.isEmpty()) {
+            return true;
         }
+        return query("updateUserStatus", s -> s.updateUserStatus(statuses));
     }
 
     /**
      * 生成唯一8位账号
      */
     public String generateAccount() {
-        long next = accountSeq.incrementAndGet();
-        if (next > 99999999L) {
-            accountSeq.set(10000000L);
-            next = accountSeq.incrementAndGet();
+        AtomicLong seq = accountSeq;
+        if (seq == null) {
+            synchronized (UserDao.class) {
+                if (accountSeq == null) {
+                    long max = query("getMaxAccount", s -> s.getMaxAccount());
+                    accountSeq = new AtomicLong(max >= MIN_ACCOUNT && max < MAX_ACCOUNT ? max : MIN_ACCOUNT);
+                }
+                seq = accountSeq;
+            }
+        }
+        long next = seq.incrementAndGet();
+        if (next > MAX_ACCOUNT) {
+            seq.set(MIN_ACCOUNT);
+            next = seq.incrementAndGet();
         }
         return String.valueOf(next);
     }
@@ -94,49 +99,95 @@ public class UserDao {
      * 找回密码：根据账号+昵称查询密码
      */
     public String getPasswordByAccountAndNickname(String account, String nickname) {
-        String sql = "SELECT password FROM users WHERE account = ? AND nickname = ?";
-        try (Connection conn = DBHelper.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, account);
-            pstmt.setString(2, nickname);
-            ResultSet rs = pstmt.executeQuery();
-            if (rs.next()) {
-                return rs.getString("password");
-            }
-        } catch (SQLException e) {
-            System.err.println("❌ 查询密码失败：" + e.getMessage());
-        }
-        return null;
+        return query("getPasswordByAccountAndNickname", s -> s.getPasswordByAccountAndNickname(account, nickname));
     }
 
     // ------------------- 离线消息相关 -------------------
-    public List<Message> getOfflineMessages(String toAccount) {
-        return offlineMessages.getOrDefault(toAccount, Collections.emptyList());
+    /**
+     * 保存离线消息（进入 OfflineMessageStore 的异步批量写入队列）
+     */
+    public void saveOfflineMessage(String toAccount, Message message) {
+        OfflineMessageStore.save(toAccount, message);
     }
 
-    public void clearOfflineMessages(String toAccount) {
-        offlineMessages.remove(toAccount);
+    /**
+     * 分页查询离线消息（keyset 分页：id > afterId，按 id 升序）
+     */
+    public List<OfflineMessageStore.StoredMessage> getOfflineMessages(String toAccount, long afterId, int limit) {
+        return query("selectOfflineMessages", s -> s.selectOfflineMessages(toAccount, afterId, limit));
     }
 
-    public void saveOfflineMessage(String toAccount, Message message) {
-        offlineMessages.computeIfAbsent(toAccount, k -> new ArrayList<>()).add(message);
+    /**
+     * 统计离线消息条数
+     */
+    public int countOfflineMessages(String toAccount) {
+        return query("countOfflineMessages", s -> s.countOfflineMessages(toAccount));
+    }
+
+    /**
+     * 删除已投递的离线消息（id <= upToId）
+     */
+    public int deleteOfflineMessages(String toAccount, long upToId) {
+        return query("deleteOfflineMessages", s -> s.deleteOfflineMessages(toAccount, upToId));
+    }
+
+    /**
+     * 批量插入离线消息
+     * @return 成功写入的条数
+     */
+    int insertOfflineMessages(List<OfflineMessageStore.PendingMessage> batch) {
+        return query("insertOfflineMessages", s -> s.insertOfflineMessages(batch));
+    }
+
+    /**
+     * 只保留某用户最新的 cap 条离线消息
+     */
+    int trimOfflineMessages(String toAccount, int cap) {
+        return query("trimOfflineMessages", s -> s.trimOfflineMessages(toAccount, cap));
+    }
+
+    /**
+     * 清理早于指定时间的离线消息
+     */
+    int purgeOfflineMessagesBefore(long epochMillis) {
+        return query("purgeOfflineMessagesBefore", s -> s.purgeOfflineMessagesBefore(epochMillis));
     }
 
     // ------------------- 好友列表相关 -------------------
+    /**
+     * 好友列表（从内存好友索引读取，不访问数据库）
+     */
     public List<String> getFriendList(String userAccount) {
-        List<String> friends = new ArrayList<>();
-        String sql = "SELECT friend_account FROM friends WHERE user_account = ?";
-        try (Connection conn = DBHelper.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, userAccount);
-            ResultSet rs = pstmt.executeQuery();
-            while (rs.next()) {
-                friends.add(rs.getString("friend_account"));
-            }
-        } catch (SQLException e) {
-            System.err.println("❌ 获取好友列表失败：" + e.getMessage());
-            friends = Collections.emptyList();
+        return FriendGraph.getInstance().getFriendList(userAccount);
+    }
+
+    /**
+     * 添加好友关系（双向），同时更新内存好友索引
+     */
+    public boolean addFriend(String userAccount, String friendAccount) {
+        FriendGraph graph = FriendGraph.getInstance();
+        boolean added = false;
+        if (query("insertFriend", s -> s.insertFriend(userAccount, friendAccount))) {
+            added |= graph.addEdge(userAccount, friendAccount);
+        }
+        if (query("insertFriend", s -> s.insertFriend(friendAccount, userAccount))) {
+            added |= graph.addEdge(friendAccount, userAccount);
+        }
+        return added;
+    }
+
+    /**
+     * 删除好友关系（双向），同时更新内存好友索引
+     */
+    public boolean removeFriend(String userAccount, String friendAccount) {
+        FriendGraph graph = FriendGraph.getInstance();
+        boolean removed = false;
+        if (query("deleteFriend", s -> s.deleteFriend(userAccount, friendAccount))) {
+            removed |= graph.removeEdge(userAccount, friendAccount);
+        }
+        if (query("deleteFriend", s -> s.deleteFriend(friendAccount, userAccount))) {
+            removed |= graph.removeEdge(friendAccount, userAccount);
         }
-        return friends;
+        return removed;
     }
-}
\ No newline at end of file
+}
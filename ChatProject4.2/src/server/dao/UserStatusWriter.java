@@ -0,0 +1,138 @@
+package server.dao;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 用户在线状态写回缓冲（write-behind）
+ * 登录/下线时只在内存中记录账号的最新状态（同一账号后写覆盖先写），
+ * 由后台线程每隔 FLUSH_INTERVAL_MS 毫秒或积累满 BATCH_SIZE 个账号时，
+ * 以一次 JDBC 批量 UPDATE 写入 users 表，避免登录/下线高峰时逐条更新数据库。
+ * 注意：在线状态的读取仍以 OnlineUserManager 为准，数据库中的 status 只是持久化记录。
+ */
+public class UserStatusWriter {
+    private static final long FLUSH_INTERVAL_MS = 300; // 定时刷盘间隔
+    private static final int BATCH_SIZE = 500;         // 积累到该数量立即刷盘
+
+    // 待写入的状态：账号 -> 最新状态（0-离线，1-在线）
+    private static final Map<String, Integer> pending = new ConcurrentHashMap<>();
+    private static final AtomicBoolean flushRequested = new AtomicBoolean(false);
+    private static final Object flushLock = new Object();
+    private static final UserDao userDao = new UserDao();
+    private static volatile ScheduledExecutorService scheduler;
+
+    /**
+     * 启动后台刷盘线程（首次提交时自动调用），并注册 JVM 退出时的最后一次刷盘
+     */
+    public static synchronized void start() {
+        if (scheduler != null && !scheduler.isShutdown()) {
+            return;
+        }
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "user-status-writer");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(
+                UserStatusWriter::flushQuietly,
+                FLUSH_INTERVAL_MS,
+                FLUSH_INTERVAL_MS,
+                TimeUnit.MILLISECONDS
+        );
+        Runtime.getRuntime().addShutdownHook(new Thread(UserStatusWriter::shutdown, "user-status-flush"));
+    }
+
+    /**
+     * 记录账号状态变化（只写内存，不阻塞调用线程）
+     */
+    public static void submit(String account, int status) {
+        if (account == null || account.isEmpty()) {
+            return;
+        }
+        if (scheduler == null) {
+            start();
+        }
+
+        pending.put(account, status);
+
+        // 达到批量上限时提前触发一次刷盘，避免等到下一个周期
+        if (pending.size() >= BATCH_SIZE && flushRequested.compareAndSet(false, true)) {
+            try {
+                scheduler.execute(UserStatusWriter::flushQuietly);
+            } catch (Exception e) {
+                flushRequested.set(false); // 已关闭，交给 shutdown 中的刷盘
+            }
+        }
+    }
+
+    /**
+     * 把缓冲中的状态批量写入数据库
+     * @return 本次写入的账号数量
+     */
+    public static int flush() {
+        synchronized (flushLock) {
+            flushRequested.set(false);
+            if (pending.isEmpty()) {
+                return 0;
+            }
+
+            // 逐个取出（remove 保证同一账号只会被取走一次，取走后的新状态留到下一批）
+            Map<String, Integer> batch = new LinkedHashMap<>();
+            for (String account : pending.keySet()) {
+                Integer status = pending.remove(account);
+                if (status != null) {
+                    batch.put(account, status);
+                }
+            }
+            if (batch.isEmpty()) {
+                return 0;
+            }
+
+            if (!userDao.updateUserStatusBatch(batch)) {
+                // 写入失败：放回缓冲，但不覆盖期间产生的更新状态
+                for (Map.Entry<String, Integer> entry : batch.entrySet()) {
+                    pending.putIfAbsent(entry.getKey(), entry.getValue());
+                }
+                return 0;
+            }
+            return batch.size();
+        }
+    }
+
+    /**
+     * 停止后台线程并写入剩余状态（服务器关闭时调用）
+     */
+    public static void shutdown() {
+        ScheduledExecutorService s = scheduler;
+        if (s != null) {
+            s.shutdown();
+            try {
+                s.awaitTermination(2, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        flushQuietly();
+    }
+
+    /**
+     * 当前尚未写入数据库的账号数量
+     */
+    public static int getPendingCount() {
+        return pending.size();
+    }
+
+    private static void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            System.err.println("❌ 批量更新用户状态失败：" + e.getMessage());
+        }
+    }
+}
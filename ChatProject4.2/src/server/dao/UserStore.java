@@ -0,0 +1,107 @@
+package server.dao;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * 持久化存储接口（UserDao 背后的存储实现）
+ * 覆盖用户、好友、离线消息和账号序列四类数据，当前有两种实现：
+ * MySqlUserStore（生产环境，MySQL 5.7）和 EmbeddedUserStore（本地文件，用于测试、压测和小规模部署），
+ * 由 UserStoreFactory 按配置选择。
+ */
+public interface UserStore {
+
+    // ------------------- 用户 -------------------
+
+    /**
+     * 根据账号查询用户，返回 password / nickname / status 三个字段，不存在返回 null
+     */
+    Map<String, String> selectUserByAccount(String account);
+
+    /**
+     * 插入新用户，账号已存在返回 false
+     */
+    boolean insertUser(String account, String password, String nickname);
+
+    /**
+     * 批量更新在线状态（账号 -> 状态），全部成功返回 true
+     */
+    boolean updateUserStatus(Map<String, Integer> statuses);
+
+    /**
+     * 根据账号+昵称查询密码，不匹配返回 null
+     */
+    String getPasswordByAccountAndNickname(String account, String nickname);
+
+    /**
+     * 已注册的最大账号（用于初始化账号序列），没有用户时返回 0
+     */
+    long getMaxAccount();
+
+    // ------------------- 好友 -------------------
+
+    /**
+     * 查询好友账号列表
+     */
+    List<String> getFriendList(String userAccount);
+
+    /**
+     * 一次性读出全部好友关系（启动时加载 FriendGraph 用），每行回调一次 (user, friend)
+     */
+    void loadFriendships(BiConsumer<String, String> sink);
+
+    /**
+     * 添加一条好友关系（单向），已存在返回 false
+     */
+    boolean insertFriend(String userAccount, String friendAccount);
+
+    /**
+     * 删除一条好友关系（单向），不存在返回 false
+     */
+    boolean deleteFriend(String userAccount, String friendAccount);
+
+    // ------------------- 离线消息 -------------------
+
+    /**
+     * 批量写入离线消息，返回成功写入的条数
+     */
+    int insertOfflineMessages(List<OfflineMessageStore.PendingMessage> batch);
+
+    /**
+     * 按 id 升序读取 id > afterId 的最多 limit 条离线消息
+     */
+    List<OfflineMessageStore.StoredMessage> selectOfflineMessages(String toAccount, long afterId, int limit);
+
+    /**
+     * 统计离线消息条数
+     */
+    int countOfflineMessages(String toAccount);
+
+    /**
+     * 删除 id <= upToId 的离线消息，返回删除条数
+     */
+    int deleteOfflineMessages(String toAccount, long upToId);
+
+    /**
+     * 只保留最新的 cap 条离线消息，返回删除条数
+     */
+    int trimOfflineMessages(String toAccount, int cap);
+
+    /**
+     * 删除早于指定时间的离线消息，返回删除条数
+     */
+    int purgeOfflineMessagesBefore(long epochMillis);
+
+    // ------------------- 生命周期 -------------------
+
+    /**
+     * 存储名称（日志和监控用）
+     */
+    String getName();
+
+    /**
+     * 关闭存储，释放连接或文件句柄
+     */
+    void close();
+}
@@ -0,0 +1,62 @@
+package server.dao;
+
+import server.ServerConfig;
+
+/**
+ * 存储实现选择
+ * 配置项 chat.store 选择实现：mysql（默认）或 embedded；
+ * embedded 的数据目录由 chat.store.dir 指定（默认 data），两项都通过 ServerConfig 读取
+ * 例：java -Dchat.store=embedded -Dchat.store.dir=/tmp/chat server.Server
+ */
+public class UserStoreFactory {
+    public static final String STORE_PROPERTY = ServerConfig.STORE;
+    public static final String STORE_DIR_PROPERTY = ServerConfig.STORE_DIR;
+
+    private static volatile UserStore store;
+
+    /**
+     * 获取当前存储（首次调用时按配置创建）
+     */
+    public static UserStore getStore() {
+        UserStore s = store;
+        if (s == null) {
+            synchronized (UserStoreFactory.class) {
+                s = store;
+                if (s == null) {
+                    s = create(ServerConfig.get().getString(STORE_PROPERTY, "mysql"));
+                    store = s;
+                    System.out.println("🗄️ 存储实现: " + s.getName());
+                }
+            }
+        }
+        return s;
+    }
+
+    /**
+     * 直接指定存储实现（测试、压测工具在服务器启动前调用）
+     */
+    public static synchronized void setStore(UserStore newStore) {
+        store = newStore;
+    }
+
+    /**
+     * 关闭当前存储（服务器退出时调用）
+     */
+    public static synchronized void close() {
+        if (store != null) {
+            store.close();
+            store = null;
+        }
+    }
+
+    private static UserStore create(String type) {
+        switch (type.trim().toLowerCase()) {
+            case "embedded":
+                return new EmbeddedUserStore(ServerConfig.get().getString(STORE_DIR_PROPERTY, "data"));
+            case "mysql":
+                return new MySqlUserStore();
+            default:
+                throw new IllegalArgumentException("未知的存储实现: " + type + "（可选 mysql / embedded）");
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package server.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * OnlineUserManager 的一次群发（群聊、系统消息、上下线通知）
+ */
+@Name("chat.Broadcast")
+@Label("广播")
+@Category({"Chat Server", "Routing"})
+@Description("一次群发的接收人数和总耗时")
+@StackTrace(false)
+public class BroadcastEvent extends jdk.jfr.Event {
+    @Label("广播类型")
+    String kind;
+
+    @Label("发送者")
+    String from;
+
+    @Label("目标人数")
+    int recipients;
+
+    @Label("成功人数")
+    int delivered;
+}
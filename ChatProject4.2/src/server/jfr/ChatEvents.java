@@ -0,0 +1,188 @@
+package server.jfr;
+
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
+
+/**
+ * 自定义 JFR 事件的开关和阈值
+ * 没有正在进行的录制、或总开关关闭时，begin 方法直接返回 null，热点路径上不创建事件对象。
+ * 只有耗时不低于阈值的事件才会写入录制，阈值可通过 JMX（ChatServerAdmin）在运行时调整。
+ * 录制示例：jcmd <pid> JFR.start name=chat duration=60s filename=chat.jfr
+ */
+public class ChatEvents {
+    private static final EventType ROUTE_TYPE;
+    private static final EventType BROADCAST_TYPE;
+    private static final EventType DB_TYPE;
+    private static final EventType SEND_TYPE;
+
+    private static volatile boolean enabled = true;
+    private static volatile long routeThresholdNanos = 1_000_000;     // 1ms
+    private static volatile long broadcastThresholdNanos = 1_000_000; // 1ms
+    private static volatile long dbThresholdNanos = 1_000_000;        // 1ms
+    private static volatile long sendThresholdNanos = 1_000_000;      // 1ms
+
+    static {
+        // 提前注册，录制开始前 JMC 里就能看到这些事件类型
+        FlightRecorder.register(RouteEvent.class);
+        FlightRecorder.register(BroadcastEvent.class);
+        FlightRecorder.register(DbQueryEvent.class);
+        FlightRecorder.register(SendEvent.class);
+        ROUTE_TYPE = EventType.getEventType(RouteEvent.class);
+        BROADCAST_TYPE = EventType.getEventType(BroadcastEvent.class);
+        DB_TYPE = EventType.getEventType(DbQueryEvent.class);
+        SEND_TYPE = EventType.getEventType(SendEvent.class);
+    }
+
+    // ===== 消息路由 =====
+
+    public static RouteEvent beginRoute() {
+        if (!enabled || !ROUTE_TYPE.isEnabled()) {
+            return null;
+        }
+        RouteEvent event = new RouteEvent();
+        event.begin();
+        return event;
+    }
+
+    public static void commitRoute(RouteEvent event, String type, int size, String userId, int clientId,
+                                   long durationNanos) {
+        if (event == null) {
+            return;
+        }
+        event.end();
+        if (durationNanos >= routeThresholdNanos && event.shouldCommit()) {
+            event.messageType = type;
+            event.size = size;
+            event.userId = userId;
+            event.clientId = clientId;
+            event.commit();
+        }
+    }
+
+    // ===== 广播 =====
+
+    public static BroadcastEvent beginBroadcast() {
+        if (!enabled || !BROADCAST_TYPE.isEnabled()) {
+            return null;
+        }
+        BroadcastEvent event = new BroadcastEvent();
+        event.begin();
+        return event;
+    }
+
+    public static void commitBroadcast(BroadcastEvent event, String kind, String from, int recipients,
+                                       int delivered, long durationNanos) {
+        if (event == null) {
+            return;
+        }
+        event.end();
+        if (durationNanos >= broadcastThresholdNanos && event.shouldCommit()) {
+            event.kind = kind;
+            event.from = from;
+            event.recipients = recipients;
+            event.delivered = delivered;
+            event.commit();
+        }
+    }
+
+    // ===== 数据库访问 =====
+
+    public static DbQueryEvent beginDbQuery() {
+        if (!enabled || !DB_TYPE.isEnabled()) {
+            return null;
+        }
+        DbQueryEvent event = new DbQueryEvent();
+        event.begin();
+        return event;
+    }
+
+    public static void commitDbQuery(DbQueryEvent event, String sqlId, String store, boolean success,
+                                     long durationNanos) {
+        if (event == null) {
+            return;
+        }
+        event.end();
+        if (durationNanos >= dbThresholdNanos && event.shouldCommit()) {
+            event.sqlId = sqlId;
+            event.store = store;
+            event.success = success;
+            event.commit();
+        }
+    }
+
+    // ===== 发送阻塞 =====
+
+    public static SendEvent beginSend() {
+        if (!enabled || !SEND_TYPE.isEnabled()) {
+            return null;
+        }
+        SendEvent event = new SendEvent();
+        event.begin();
+        return event;
+    }
+
+    public static void commitSend(SendEvent event, String type, String userId, int clientId, int size,
+                                  long lockWaitNanos, long durationNanos) {
+        if (event == null) {
+            return;
+        }
+        event.end();
+        if (durationNanos >= sendThresholdNanos && event.shouldCommit()) {
+            event.messageType = type;
+            event.userId = userId;
+            event.clientId = clientId;
+            event.size = size;
+            event.lockWait = lockWaitNanos;
+            event.commit();
+        }
+    }
+
+    // ===== 开关和阈值 =====
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        ChatEvents.enabled = enabled;
+    }
+
+    public static long getRouteThresholdMicros() {
+        return routeThresholdNanos / 1000;
+    }
+
+    public static void setRouteThresholdMicros(long micros) {
+        routeThresholdNanos = toNanos(micros);
+    }
+
+    public static long getBroadcastThresholdMicros() {
+        return broadcastThresholdNanos / 1000;
+    }
+
+    public static void setBroadcastThresholdMicros(long micros) {
+        broadcastThresholdNanos = toNanos(micros);
+    }
+
+    public static long getDbThresholdMicros() {
+        return dbThresholdNanos / 1000;
+    }
+
+    public static void setDbThresholdMicros(long micros) {
+        dbThresholdNanos = toNanos(micros);
+    }
+
+    public static long getSendThresholdMicros() {
+        return sendThresholdNanos / 1000;
+    }
+
+    public static void setSendThresholdMicros(long micros) {
+        sendThresholdNanos = toNanos(micros);
+    }
+
+    private static long toNanos(long micros) {
+        if (micros < 0) {
+            throw new IllegalArgumentException("阈值不能为负数: " + micros);
+        }
+        return micros * 1000;
+    }
+}
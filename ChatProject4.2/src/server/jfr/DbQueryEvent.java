@@ -0,0 +1,26 @@
+package server.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * UserDao 的一次存储访问
+ */
+@Name("chat.DbQuery")
+@Label("数据库访问")
+@Category({"Chat Server", "Storage"})
+@Description("UserDao 调用存储实现的耗时，sqlId 为 UserDao 方法名")
+@StackTrace(false)
+public class DbQueryEvent extends jdk.jfr.Event {
+    @Label("SQL 标识")
+    String sqlId;
+
+    @Label("存储实现")
+    String store;
+
+    @Label("是否成功")
+    boolean success;
+}
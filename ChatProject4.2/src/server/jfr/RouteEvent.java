@@ -0,0 +1,31 @@
+package server.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * 一条消息从解析完成到路由处理结束（含转发、广播、登录等业务处理）
+ */
+@Name("chat.Route")
+@Label("消息路由")
+@Category({"Chat Server", "Routing"})
+@Description("MessageRouter / ClientHandler 处理单条消息的耗时")
+@StackTrace(false)
+public class RouteEvent extends jdk.jfr.Event {
+    @Label("消息类型")
+    String messageType;
+
+    @Label("消息大小")
+    @DataAmount
+    int size;
+
+    @Label("发送者")
+    String userId;
+
+    @Label("连接编号")
+    int clientId;
+}
@@ -0,0 +1,36 @@
+package server.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * ClientHandler.send 阻塞调用方的时间（等待写锁 + 写出 socket）
+ */
+@Name("chat.Send")
+@Label("发送阻塞")
+@Category({"Chat Server", "Network"})
+@Description("send() 阻塞调用线程的总时间，lockWait 为其中等待写锁的部分")
+@StackTrace(false)
+public class SendEvent extends jdk.jfr.Event {
+    @Label("消息类型")
+    String messageType;
+
+    @Label("接收者")
+    String userId;
+
+    @Label("连接编号")
+    int clientId;
+
+    @Label("消息大小")
+    @DataAmount
+    int size;
+
+    @Label("等待写锁")
+    @Timespan(Timespan.NANOSECONDS)
+    long lockWait;
+}
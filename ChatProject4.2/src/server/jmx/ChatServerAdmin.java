@@ -0,0 +1,503 @@
+package server.jmx;
+
+import server.AdmissionControl;
+import server.ChatServer;
+import server.ClientHandler;
+import server.HeartbeatManager;
+import server.OnlineUserManager;
+import server.OnlineSet;
+import server.PresenceBroadcaster;
+import server.RateLimiter;
+import server.ServerLogger;
+import server.ServerLogger.Category;
+import server.dao.DBHelper;
+import server.jfr.ChatEvents;
+import server.service.LoginQueue;
+import server.service.OfflineReplayService;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * ChatServerAdminMXBean 的实现，所有属性都直接读写各管理类的静态状态
+ */
+public class ChatServerAdmin implements ChatServerAdminMXBean {
+    private final ChatServer chatServer;
+
+    public ChatServerAdmin(ChatServer chatServer) {
+        this.chatServer = chatServer;
+    }
+
+    @Override
+    public int getOnlineUserCount() {
+        return OnlineUserManager.getOnlineCount();
+    }
+
+    @Override
+    public int getOpenConnectionCount() {
+        return ClientHandler.getOpenConnectionCount();
+    }
+
+    @Override
+    public int getAcceptedConnectionCount() {
+        return chatServer.getAcceptedCount();
+    }
+
+    @Override
+    public int getHeartbeatTrackedCount() {
+        return HeartbeatManager.getTrackedCount();
+    }
+
+    @Override
+    public int getLiveThreadCount() {
+        return ManagementFactory.getThreadMXBean().getThreadCount();
+    }
+
+    @Override
+    public long getLoggerPendingCount() {
+        return ServerLogger.getPendingCount();
+    }
+
+    @Override
+    public long getLoggerDroppedCount() {
+        return ServerLogger.getDroppedCount();
+    }
+
+    @Override
+    public int getDbActiveConnections() {
+        return DBHelper.getActiveConnections();
+    }
+
+    @Override
+    public int getDbIdleConnections() {
+        return DBHelper.getIdleConnections();
+    }
+
+    @Override
+    public int getOfflineReplayActiveCount() {
+        return OfflineReplayService.getActiveCount();
+    }
+
+    @Override
+    public List<String> getOnlineUsers() {
+        return Arrays.asList(OnlineUserManager.getAllOnlineUsers());
+    }
+
+    @Override
+    public long getHeartbeatTimeoutMillis() {
+        return HeartbeatManager.getTimeoutMillis();
+    }
+
+    @Override
+    public void setHeartbeatTimeoutMillis(long millis) {
+        HeartbeatManager.setTimeoutMillis(millis);
+        ServerLogger.log("⚙️ [JMX] 心跳超时调整为 " + millis + "ms");
+    }
+
+    @Override
+    public long getHeartbeatCheckIntervalMillis() {
+        return HeartbeatManager.getCheckIntervalMillis();
+    }
+
+    @Override
+    public void setHeartbeatCheckIntervalMillis(long millis) {
+        HeartbeatManager.setCheckIntervalMillis(millis);
+        ServerLogger.log("⚙️ [JMX] 心跳检测间隔调整为 " + millis + "ms");
+    }
+
+    @Override
+    public String getGeneralLogLevel() {
+        return ServerLogger.getLevel(Category.GENERAL).name();
+    }
+
+    @Override
+    public void setGeneralLogLevel(String level) {
+        setLevel(Category.GENERAL, level);
+    }
+
+    @Override
+    public String getRoutingLogLevel() {
+        return ServerLogger.getLevel(Category.ROUTING).name();
+    }
+
+    @Override
+    public void setRoutingLogLevel(String level) {
+        setLevel(Category.ROUTING, level);
+    }
+
+    @Override
+    public String getPresenceLogLevel() {
+        return ServerLogger.getLevel(Category.PRESENCE).name();
+    }
+
+    @Override
+    public void setPresenceLogLevel(String level) {
+        setLevel(Category.PRESENCE, level);
+    }
+
+    @Override
+    public String getTransferLogLevel() {
+        return ServerLogger.getLevel(Category.TRANSFER).name();
+    }
+
+    @Override
+    public void setTransferLogLevel(String level) {
+        setLevel(Category.TRANSFER, level);
+    }
+
+    private static void setLevel(Category category, String level) {
+        ServerLogger.Level lvl = ServerLogger.Level.valueOf(level.trim().toUpperCase(Locale.ROOT));
+        ServerLogger.setLevel(category, lvl);
+        ServerLogger.log("⚙️ [JMX] " + category + " 日志级别调整为 " + lvl);
+    }
+
+    @Override
+    public String getLoggerOverflowPolicy() {
+        return ServerLogger.getOverflowPolicy().name();
+    }
+
+    @Override
+    public void setLoggerOverflowPolicy(String policy) {
+        ServerLogger.OverflowPolicy p = ServerLogger.OverflowPolicy.valueOf(policy.trim().toUpperCase(Locale.ROOT));
+        ServerLogger.setOverflowPolicy(p);
+        ServerLogger.log("⚙️ [JMX] 日志缓冲区溢出策略调整为 " + p);
+    }
+
+    @Override
+    public int getDbPoolSize() {
+        return DBHelper.getPoolSize();
+    }
+
+    @Override
+    public void setDbPoolSize(int size) {
+        DBHelper.setPoolSize(size);
+        ServerLogger.log("⚙️ [JMX] 数据库连接池大小调整为 " + size);
+    }
+
+    @Override
+    public int getOfflineReplayThreads() {
+        return OfflineReplayService.getThreadCount();
+    }
+
+    @Override
+    public void setOfflineReplayThreads(int threads) {
+        OfflineReplayService.setThreadCount(threads);
+        ServerLogger.log("⚙️ [JMX] 离线回放线程数调整为 " + threads);
+    }
+
+    @Override
+    public boolean isJfrEventsEnabled() {
+        return ChatEvents.isEnabled();
+    }
+
+    @Override
+    public void setJfrEventsEnabled(boolean enabled) {
+        ChatEvents.setEnabled(enabled);
+        ServerLogger.log("⚙️ [JMX] JFR 事件已" + (enabled ? "开启" : "关闭"));
+    }
+
+    @Override
+    public long getJfrRouteThresholdMicros() {
+        return ChatEvents.getRouteThresholdMicros();
+    }
+
+    @Override
+    public void setJfrRouteThresholdMicros(long micros) {
+        ChatEvents.setRouteThresholdMicros(micros);
+    }
+
+    @Override
+    public long getJfrBroadcastThresholdMicros() {
+        return ChatEvents.getBroadcastThresholdMicros();
+    }
+
+    @Override
+    public void setJfrBroadcastThresholdMicros(long micros) {
+        ChatEvents.setBroadcastThresholdMicros(micros);
+    }
+
+    @Override
+    public long getJfrDbThresholdMicros() {
+        return ChatEvents.getDbThresholdMicros();
+    }
+
+    @Override
+    public void setJfrDbThresholdMicros(long micros) {
+        ChatEvents.setDbThresholdMicros(micros);
+    }
+
+    @Override
+    public long getJfrSendThresholdMicros() {
+        return ChatEvents.getSendThresholdMicros();
+    }
+
+    @Override
+    public void setJfrSendThresholdMicros(long micros) {
+        ChatEvents.setSendThresholdMicros(micros);
+    }
+
+    @Override
+    public boolean isRateLimitEnabled() {
+        return RateLimiter.isEnabled();
+    }
+
+    @Override
+    public void setRateLimitEnabled(boolean enabled) {
+        RateLimiter.setEnabled(enabled);
+        ServerLogger.log("⚙️ [JMX] 入站限流已" + (enabled ? "开启" : "关闭"));
+    }
+
+    @Override
+    public String getRateLimitAction() {
+        return RateLimiter.getAction();
+    }
+
+    @Override
+    public void setRateLimitAction(String action) {
+        RateLimiter.setAction(action);
+        ServerLogger.log("⚙️ [JMX] 限流策略调整为 " + RateLimiter.getAction());
+    }
+
+    @Override
+    public long getRateLimitMaxDelayMillis() {
+        return RateLimiter.getMaxDelayMillis();
+    }
+
+    @Override
+    public void setRateLimitMaxDelayMillis(long millis) {
+        RateLimiter.setMaxDelayMillis(millis);
+    }
+
+    @Override
+    public String getRateLimitConnection() {
+        return RateLimiter.getConnectionLimit();
+    }
+
+    @Override
+    public void setRateLimitConnection(String spec) {
+        RateLimiter.setConnectionLimit(spec);
+        ServerLogger.log("⚙️ [JMX] 连接限流调整为 " + spec);
+    }
+
+    @Override
+    public String getRateLimitTypes() {
+        return RateLimiter.getTypeLimits();
+    }
+
+    @Override
+    public void setRateLimitTypes(String spec) {
+        RateLimiter.setTypeLimits(spec);
+        ServerLogger.log("⚙️ [JMX] 按类型限流调整为 " + spec);
+    }
+
+    @Override
+    public long getRateLimitDroppedCount() {
+        return RateLimiter.getDroppedCount();
+    }
+
+    @Override
+    public long getRateLimitDelayedCount() {
+        return RateLimiter.getDelayedCount();
+    }
+
+    @Override
+    public long getRateLimitDisconnectedCount() {
+        return RateLimiter.getDisconnectedCount();
+    }
+
+    @Override
+    public boolean isAdmissionEnabled() {
+        return AdmissionControl.isEnabled();
+    }
+
+    @Override
+    public void setAdmissionEnabled(boolean enabled) {
+        AdmissionControl.setEnabled(enabled);
+        ServerLogger.log("⚙️ [JMX] 连接准入控制已" + (enabled ? "开启" : "关闭"));
+    }
+
+    @Override
+    public int getAdmissionMaxConnections() {
+        return AdmissionControl.getMaxConnections();
+    }
+
+    @Override
+    public void setAdmissionMaxConnections(int max) {
+        AdmissionControl.setMaxConnections(max);
+        ServerLogger.log("⚙️ [JMX] 全局连接上限调整为 " + max);
+    }
+
+    @Override
+    public int getAdmissionMaxPerIp() {
+        return AdmissionControl.getMaxPerIp();
+    }
+
+    @Override
+    public void setAdmissionMaxPerIp(int max) {
+        AdmissionControl.setMaxPerIp(max);
+        ServerLogger.log("⚙️ [JMX] 单 IP 连接上限调整为 " + max);
+    }
+
+    @Override
+    public String getAdmissionExempt() {
+        return AdmissionControl.getExempt();
+    }
+
+    @Override
+    public void setAdmissionExempt(String spec) {
+        AdmissionControl.setExempt(spec);
+    }
+
+    @Override
+    public String getAdmissionAcceptRate() {
+        return AdmissionControl.getAcceptRate();
+    }
+
+    @Override
+    public void setAdmissionAcceptRate(String spec) {
+        AdmissionControl.setAcceptRate(spec);
+        ServerLogger.log("⚙️ [JMX] 接受速率调整为 " + spec);
+    }
+
+    @Override
+    public long getAdmissionLoginTimeoutMillis() {
+        return AdmissionControl.getLoginTimeoutMillis();
+    }
+
+    @Override
+    public void setAdmissionLoginTimeoutMillis(long millis) {
+        AdmissionControl.setLoginTimeoutMillis(millis);
+    }
+
+    @Override
+    public long getAdmissionRejectedCount() {
+        return AdmissionControl.getRejectedCount();
+    }
+
+    @Override
+    public long getAdmissionThrottledCount() {
+        return AdmissionControl.getThrottledCount();
+    }
+
+    @Override
+    public int getLoginConcurrency() {
+        return LoginQueue.getConcurrency();
+    }
+
+    @Override
+    public void setLoginConcurrency(int threads) {
+        LoginQueue.setConcurrency(threads);
+        ServerLogger.log("⚙️ [JMX] 登录并发数调整为 " + threads);
+    }
+
+    @Override
+    public int getLoginQueueCapacity() {
+        return LoginQueue.getQueueCapacity();
+    }
+
+    @Override
+    public void setLoginQueueCapacity(int capacity) {
+        LoginQueue.setQueueCapacity(capacity);
+    }
+
+    @Override
+    public long getLoginDeferMaxMillis() {
+        return LoginQueue.getDeferMaxMillis();
+    }
+
+    @Override
+    public void setLoginDeferMaxMillis(long millis) {
+        LoginQueue.setDeferMaxMillis(millis);
+    }
+
+    @Override
+    public int getLoginQueueDepth() {
+        return LoginQueue.getQueueDepth();
+    }
+
+    @Override
+    public long getLoginRejectedCount() {
+        return LoginQueue.getRejectedCount();
+    }
+
+    @Override
+    public double getLoginQueueWaitP99Millis() {
+        return LoginQueue.getQueueWait().getPercentile(99) / 1e6;
+    }
+
+    @Override
+    public double getTimeToLoginP50Millis() {
+        return LoginQueue.getTimeToLogin().getPercentile(50) / 1e6;
+    }
+
+    @Override
+    public double getTimeToLoginP99Millis() {
+        return LoginQueue.getTimeToLogin().getPercentile(99) / 1e6;
+    }
+
+    @Override
+    public long getPresenceWindowMillis() {
+        return PresenceBroadcaster.getWindowMillis();
+    }
+
+    @Override
+    public void setPresenceWindowMillis(long millis) {
+        PresenceBroadcaster.setWindowMillis(millis);
+        ServerLogger.log("⚙️ [JMX] 上下线通知合并窗口调整为 " + millis + "ms");
+    }
+
+    @Override
+    public long getPresenceEventCount() {
+        return PresenceBroadcaster.getEventCount();
+    }
+
+    @Override
+    public long getPresenceFrameCount() {
+        return PresenceBroadcaster.getFrameCount();
+    }
+
+    @Override
+    public long getPresenceEntryCount() {
+        return PresenceBroadcaster.getEntryCount();
+    }
+
+    @Override
+    public long getOnlineSetVersion() {
+        return OnlineSet.getVersion();
+    }
+
+    @Override
+    public int getOnlineChangeLogSize() {
+        return OnlineSet.getChangeLogSize();
+    }
+
+    @Override
+    public void setOnlineChangeLogSize(int size) {
+        OnlineSet.setChangeLogSize(size);
+        ServerLogger.log("⚙️ [JMX] 在线列表变更日志调整为 " + size + " 条");
+    }
+
+    @Override
+    public long getOnlineListFullCount() {
+        return OnlineSet.getFullResponseCount();
+    }
+
+    @Override
+    public long getOnlineListDeltaCount() {
+        return OnlineSet.getDeltaResponseCount();
+    }
+
+    @Override
+    public long getOnlineSnapshotBuildCount() {
+        return OnlineSet.getSnapshotBuildCount();
+    }
+
+    @Override
+    public boolean kickUser(String userId) {
+        boolean kicked = OnlineUserManager.kickUser(userId);
+        ServerLogger.log("⚙️ [JMX] 踢出用户 " + userId + (kicked ? " 成功" : " 失败（不在线）"));
+        return kicked;
+    }
+}
@@ -0,0 +1,206 @@
+package server.jmx;
+
+import java.util.List;
+
+/**
+ * 服务器管理 MBean（server:type=ChatServerAdmin）
+ * 只读属性用于查看运行状态，带 setter 的属性可在 JConsole / VisualVM 中直接修改，立即生效。
+ */
+public interface ChatServerAdminMXBean {
+
+    // ===== 运行状态 =====
+
+    int getOnlineUserCount();
+
+    int getOpenConnectionCount();
+
+    int getAcceptedConnectionCount();
+
+    int getHeartbeatTrackedCount();
+
+    int getLiveThreadCount();
+
+    long getLoggerPendingCount();
+
+    long getLoggerDroppedCount();
+
+    int getDbActiveConnections();
+
+    int getDbIdleConnections();
+
+    int getOfflineReplayActiveCount();
+
+    List<String> getOnlineUsers();
+
+    // ===== 可调参数 =====
+
+    long getHeartbeatTimeoutMillis();
+
+    void setHeartbeatTimeoutMillis(long millis);
+
+    long getHeartbeatCheckIntervalMillis();
+
+    void setHeartbeatCheckIntervalMillis(long millis);
+
+    String getGeneralLogLevel();
+
+    void setGeneralLogLevel(String level);
+
+    String getRoutingLogLevel();
+
+    void setRoutingLogLevel(String level);
+
+    String getPresenceLogLevel();
+
+    void setPresenceLogLevel(String level);
+
+    String getTransferLogLevel();
+
+    void setTransferLogLevel(String level);
+
+    String getLoggerOverflowPolicy();
+
+    void setLoggerOverflowPolicy(String policy);
+
+    int getDbPoolSize();
+
+    void setDbPoolSize(int size);
+
+    int getOfflineReplayThreads();
+
+    void setOfflineReplayThreads(int threads);
+
+    // ===== JFR 事件（阈值单位微秒） =====
+
+    boolean isJfrEventsEnabled();
+
+    void setJfrEventsEnabled(boolean enabled);
+
+    long getJfrRouteThresholdMicros();
+
+    void setJfrRouteThresholdMicros(long micros);
+
+    long getJfrBroadcastThresholdMicros();
+
+    void setJfrBroadcastThresholdMicros(long micros);
+
+    long getJfrDbThresholdMicros();
+
+    void setJfrDbThresholdMicros(long micros);
+
+    long getJfrSendThresholdMicros();
+
+    void setJfrSendThresholdMicros(long micros);
+
+    // ===== 入站限流（见 RateLimiter，限额格式 每秒条数/突发条数） =====
+
+    boolean isRateLimitEnabled();
+
+    void setRateLimitEnabled(boolean enabled);
+
+    String getRateLimitAction();
+
+    void setRateLimitAction(String action);
+
+    long getRateLimitMaxDelayMillis();
+
+    void setRateLimitMaxDelayMillis(long millis);
+
+    String getRateLimitConnection();
+
+    void setRateLimitConnection(String spec);
+
+    String getRateLimitTypes();
+
+    void setRateLimitTypes(String spec);
+
+    long getRateLimitDroppedCount();
+
+    long getRateLimitDelayedCount();
+
+    long getRateLimitDisconnectedCount();
+
+    // ===== 连接准入（见 AdmissionControl，0 表示不限） =====
+
+    boolean isAdmissionEnabled();
+
+    void setAdmissionEnabled(boolean enabled);
+
+    int getAdmissionMaxConnections();
+
+    void setAdmissionMaxConnections(int max);
+
+    int getAdmissionMaxPerIp();
+
+    void setAdmissionMaxPerIp(int max);
+
+    String getAdmissionExempt();
+
+    void setAdmissionExempt(String spec);
+
+    String getAdmissionAcceptRate();
+
+    void setAdmissionAcceptRate(String spec);
+
+    long getAdmissionLoginTimeoutMillis();
+
+    void setAdmissionLoginTimeoutMillis(long millis);
+
+    long getAdmissionRejectedCount();
+
+    long getAdmissionThrottledCount();
+
+    // ===== 登录排队（见 LoginQueue） =====
+
+    int getLoginConcurrency();
+
+    void setLoginConcurrency(int threads);
+
+    int getLoginQueueCapacity();
+
+    void setLoginQueueCapacity(int capacity);
+
+    long getLoginDeferMaxMillis();
+
+    void setLoginDeferMaxMillis(long millis);
+
+    int getLoginQueueDepth();
+
+    long getLoginRejectedCount();
+
+    double getLoginQueueWaitP99Millis();
+
+    double getTimeToLoginP50Millis();
+
+    double getTimeToLoginP99Millis();
+
+    // ===== 上下线通知合并（见 PresenceBroadcaster） =====
+
+    long getPresenceWindowMillis();
+
+    void setPresenceWindowMillis(long millis);
+
+    long getPresenceEventCount();
+
+    long getPresenceFrameCount();
+
+    long getPresenceEntryCount();
+
+    // ===== 在线列表（见 OnlineSet） =====
+
+    long getOnlineSetVersion();
+
+    int getOnlineChangeLogSize();
+
+    void setOnlineChangeLogSize(int size);
+
+    long getOnlineListFullCount();
+
+    long getOnlineListDeltaCount();
+
+    long getOnlineSnapshotBuildCount();
+
+    // ===== 操作 =====
+
+    boolean kickUser(String userId);
+}
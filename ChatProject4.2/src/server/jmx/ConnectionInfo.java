@@ -0,0 +1,111 @@
+package server.jmx;
+
+import server.ClientHandler;
+import server.ConnectionStats;
+
+/**
+ * 单个连接的快照（JMX 中以 CompositeData 展示）
+ */
+public class ConnectionInfo {
+    private final int clientId;
+    private final String userId;
+    private final String address;
+    private final long connectedAt;
+    private final long bytesIn;
+    private final long bytesOut;
+    private final long framesIn;
+    private final long framesOut;
+    private final int queuedFrames;
+    private final int maxQueuedFrames;
+    private final long sendBlockedMillis;
+    private final String heaviestType;
+    private final long rateLimited;
+    private final long lastHeartbeat;
+
+    public ConnectionInfo(ClientHandler handler) {
+        ConnectionStats stats = handler.getStats();
+        this.clientId = handler.getClientId();
+        this.userId = handler.getUserId() != null ? handler.getUserId() : "";
+        this.address = handler.getClientAddress();
+        this.connectedAt = stats.getConnectedAt();
+        this.bytesIn = stats.getBytesIn();
+        this.bytesOut = stats.getBytesOut();
+        this.framesIn = stats.getFramesIn();
+        this.framesOut = stats.getFramesOut();
+        this.queuedFrames = stats.getQueuedFrames();
+        this.maxQueuedFrames = stats.getMaxQueuedFrames();
+        this.sendBlockedMillis = stats.getSendBlockedNanos() / 1_000_000;
+        this.heaviestType = stats.getHeaviestType() != null ? stats.getHeaviestType() : "";
+        this.lastHeartbeat = stats.getLastHeartbeat();
+        this.rateLimited = handler.getRateLimitedCount();
+    }
+
+    public int getClientId() {
+        return clientId;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    public long getConnectedAt() {
+        return connectedAt;
+    }
+
+    public long getBytesIn() {
+        return bytesIn;
+    }
+
+    public long getBytesOut() {
+        return bytesOut;
+    }
+
+    public long getFramesIn() {
+        return framesIn;
+    }
+
+    public long getFramesOut() {
+        return framesOut;
+    }
+
+    public int getQueuedFrames() {
+        return queuedFrames;
+    }
+
+    public int getMaxQueuedFrames() {
+        return maxQueuedFrames;
+    }
+
+    public long getSendBlockedMillis() {
+        return sendBlockedMillis;
+    }
+
+    /**
+     * 收发字节最多的消息类型
+     */
+    public String getHeaviestType() {
+        return heaviestType;
+    }
+
+    public long getLastHeartbeat() {
+        return lastHeartbeat;
+    }
+
+    /**
+     * 被限流的消息数
+     */
+    public long getRateLimited() {
+        return rateLimited;
+    }
+
+    /**
+     * 距最近一次收到消息的毫秒数
+     */
+    public long getIdleMillis() {
+        return System.currentTimeMillis() - lastHeartbeat;
+    }
+}
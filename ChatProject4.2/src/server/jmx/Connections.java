@@ -0,0 +1,63 @@
+package server.jmx;
+
+import server.ClientHandler;
+import server.HeartbeatManager;
+import server.OnlineUserManager;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ConnectionsMXBean 的实现，连接列表来自 HeartbeatManager（所有已建立的连接）
+ */
+public class Connections implements ConnectionsMXBean {
+
+    @Override
+    public int getConnectionCount() {
+        return HeartbeatManager.getTrackedCount();
+    }
+
+    @Override
+    public long getTotalBytesIn() {
+        long total = 0;
+        for (ClientHandler handler : HeartbeatManager.getTrackedClients()) {
+            total += handler.getStats().getBytesIn();
+        }
+        return total;
+    }
+
+    @Override
+    public long getTotalBytesOut() {
+        long total = 0;
+        for (ClientHandler handler : HeartbeatManager.getTrackedClients()) {
+            total += handler.getStats().getBytesOut();
+        }
+        return total;
+    }
+
+    @Override
+    public int getTotalQueuedFrames() {
+        int total = 0;
+        for (ClientHandler handler : HeartbeatManager.getTrackedClients()) {
+            total += handler.getStats().getQueuedFrames();
+        }
+        return total;
+    }
+
+    @Override
+    public List<ConnectionInfo> getConnections() {
+        List<ClientHandler> handlers = HeartbeatManager.getTrackedClients();
+        List<ConnectionInfo> list = new ArrayList<>(handlers.size());
+        for (ClientHandler handler : handlers) {
+            list.add(new ConnectionInfo(handler));
+        }
+        list.sort((a, b) -> Integer.compare(a.getClientId(), b.getClientId()));
+        return list;
+    }
+
+    @Override
+    public ConnectionInfo getConnection(String userId) {
+        ClientHandler handler = OnlineUserManager.getUser(userId);
+        return handler != null ? new ConnectionInfo(handler) : null;
+    }
+}
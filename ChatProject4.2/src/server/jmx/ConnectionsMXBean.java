@@ -0,0 +1,25 @@
+package server.jmx;
+
+import java.util.List;
+
+/**
+ * 连接统计 MBean（server:type=Connections）
+ * 每次读取都重新生成快照，包含尚未登录的连接。
+ */
+public interface ConnectionsMXBean {
+
+    int getConnectionCount();
+
+    long getTotalBytesIn();
+
+    long getTotalBytesOut();
+
+    int getTotalQueuedFrames();
+
+    List<ConnectionInfo> getConnections();
+
+    /**
+     * 按用户名查询单个连接，不在线返回 null
+     */
+    ConnectionInfo getConnection(String userId);
+}
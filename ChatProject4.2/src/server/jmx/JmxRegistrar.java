@@ -0,0 +1,52 @@
+package server.jmx;
+
+import server.ChatServer;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+/**
+ * 把管理 MBean 注册到平台 MBeanServer
+ * 本机用 JConsole / VisualVM 直接连接进程即可看到 server 域下的 ChatServerAdmin 和 Connections；
+ * 远程查看需要启动时加 -Dcom.sun.management.jmxremote.port 等参数。
+ * chat.jmx.enabled=false 时不注册。
+ */
+public class JmxRegistrar {
+    public static final String ADMIN_NAME = "server:type=ChatServerAdmin";
+    public static final String CONNECTIONS_NAME = "server:type=Connections";
+
+    public static synchronized void register(ChatServer chatServer) {
+        try {
+            MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+            registerBean(mbs, new ChatServerAdmin(chatServer), ADMIN_NAME);
+            registerBean(mbs, new Connections(), CONNECTIONS_NAME);
+            System.out.println("🔧 JMX 管理接口已注册: " + ADMIN_NAME + ", " + CONNECTIONS_NAME);
+        } catch (Exception e) {
+            System.err.println("❌ 注册 JMX 管理接口失败: " + e.getMessage());
+        }
+    }
+
+    // 重复启动（GUI 停止后再启动）时替换旧的实例
+    private static void registerBean(MBeanServer mbs, Object bean, String name) throws Exception {
+        ObjectName objectName = new ObjectName(name);
+        if (mbs.isRegistered(objectName)) {
+            mbs.unregisterMBean(objectName);
+        }
+        mbs.registerMBean(bean, objectName);
+    }
+
+    public static synchronized void unregister() {
+        try {
+            MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+            for (String name : new String[]{ADMIN_NAME, CONNECTIONS_NAME}) {
+                ObjectName objectName = new ObjectName(name);
+                if (mbs.isRegistered(objectName)) {
+                    mbs.unregisterMBean(objectName);
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("❌ 注销 JMX 管理接口失败: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package server.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 固定内存的延迟直方图（HDR 风格的对数分桶）
+ * 每个 2 的幂区间再均分 8 个子桶，相对误差不超过 12.5%，覆盖 0 ~ 2^41 纳秒（约 36 分钟），
+ * 共 312 个桶、约 2.5KB，与记录次数无关。
+ * record() 只做一次数组自增和两次累加，不加锁；读百分位时复制一份桶计数再计算，不影响写入。
+ */
+public class LatencyHistogram {
+    private static final int SUB_BITS = 3;
+    private static final int SUB_COUNT = 1 << SUB_BITS;      // 每个区间 8 个子桶
+    private static final int MAX_EXP = 40;                   // 最大区间 [2^40, 2^41)
+    private static final int BUCKET_COUNT = SUB_COUNT + (MAX_EXP - SUB_BITS + 1) * SUB_COUNT;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * 记录一次耗时（纳秒）
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        buckets.incrementAndGet(indexOf(nanos));
+        count.increment();
+        sum.add(nanos);
+        long m = max.get();
+        while (nanos > m && !max.compareAndSet(m, nanos)) {
+            m = max.get();
+        }
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB_COUNT) {
+            return (int) value;
+        }
+        int exp = 63 - Long.numberOfLeadingZeros(value);
+        if (exp > MAX_EXP) {
+            return BUCKET_COUNT - 1;
+        }
+        int sub = (int) (value >>> (exp - SUB_BITS)) & (SUB_COUNT - 1);
+        return SUB_COUNT + (exp - SUB_BITS) * SUB_COUNT + sub;
+    }
+
+    // 桶的上界（该桶内的最大值）
+    static long upperBoundOf(int index) {
+        if (index < SUB_COUNT) {
+            return index;
+        }
+        int exp = (index - SUB_COUNT) / SUB_COUNT + SUB_BITS;
+        int sub = (index - SUB_COUNT) % SUB_COUNT;
+        long width = 1L << (exp - SUB_BITS);
+        return (1L << exp) + (sub + 1) * width - 1;
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        long c = count.sum();
+        return c == 0 ? 0 : (double) sum.sum() / c;
+    }
+
+    /**
+     * 百分位（0~100），返回所在桶的上界（纳秒），不超过记录到的最大值
+     */
+    public long getPercentile(double percentile) {
+        return snapshot().getPercentile(percentile);
+    }
+
+    /**
+     * 复制当前桶计数，之后的计算不再读取共享数据
+     */
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            copy[i] = buckets.get(i);
+            total += copy[i];
+        }
+        return new Snapshot(copy, total, max.get(), getMean());
+    }
+
+    /**
+     * 把当前桶计数累加到 dest（长度为 getBucketCount()），用于合并多个直方图或计算区间增量，不分配内存
+     */
+    public void addCountsTo(long[] dest) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            dest[i] += buckets.get(i);
+        }
+    }
+
+    public static int getBucketCount() {
+        return BUCKET_COUNT;
+    }
+
+    /**
+     * 按桶计数计算百分位（0~100），返回所在桶的上界（纳秒），没有记录时返回 0
+     */
+    public static long percentileOf(long[] counts, double percentile) {
+        long total = 0;
+        for (long c : counts) {
+            total += c;
+        }
+        int index = percentileIndex(counts, total, percentile);
+        return index >= 0 ? upperBoundOf(index) : 0;
+    }
+
+    // 第 percentile 百分位所在的桶，total 为 0 时返回 -1
+    static int percentileIndex(long[] counts, long total, double percentile) {
+        if (total == 0) {
+            return -1;
+        }
+        long rank = (long) Math.ceil(total * Math.min(100.0, Math.max(0.0, percentile)) / 100.0);
+        rank = Math.max(1, rank);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return i;
+            }
+        }
+        return counts.length - 1;
+    }
+
+    /**
+     * 清零（监控面板"重置统计"用，与并发写入之间不保证原子）
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets.set(i, 0);
+        }
+        count.reset();
+        sum.reset();
+        max.set(0);
+    }
+
+    /**
+     * 某一时刻的直方图副本
+     */
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long total;
+        private final long max;
+        private final double mean;
+
+        Snapshot(long[] counts, long total, long max, double mean) {
+            this.counts = counts;
+            this.total = total;
+            this.max = max;
+            this.mean = mean;
+        }
+
+        public long getPercentile(double percentile) {
+            if (total == 0) {
+                return 0;
+            }
+            return Math.min(upperBoundOf(percentileIndex(counts, total, percentile)), max);
+        }
+
+        public long getCount() {
+            return total;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        public double getMean() {
+            return mean;
+        }
+    }
+}
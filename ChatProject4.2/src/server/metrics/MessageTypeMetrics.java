@@ -0,0 +1,119 @@
+package server.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个消息类型的统计：收发次数、字节数、路由耗时、发送耗时、错误数、被限流数
+ * 计数器都是 LongAdder（分段累加，多线程写入不争抢同一个缓存行）
+ */
+public class MessageTypeMetrics {
+    private final String type;
+    private final int index;   // 在 MetricsRegistry 中的序号（连接级按类型统计用作数组下标）
+
+    final LongAdder received = new LongAdder();
+    final LongAdder receivedBytes = new LongAdder();
+    final LongAdder sent = new LongAdder();
+    final LongAdder sentBytes = new LongAdder();
+    final LongAdder errors = new LongAdder();
+    final LongAdder rateLimited = new LongAdder();
+    final LatencyHistogram routeLatency = new LatencyHistogram();
+    final LatencyHistogram sendLatency = new LatencyHistogram();
+
+    MessageTypeMetrics(String type, int index) {
+        this.type = type;
+        this.index = index;
+    }
+
+    /**
+     * 收到一条消息
+     */
+    public void recordReceived(long bytes) {
+        received.increment();
+        receivedBytes.add(bytes);
+    }
+
+    /**
+     * 一次路由（从解析完成到处理结束）的耗时
+     */
+    public void recordRoute(long nanos) {
+        routeLatency.record(nanos);
+    }
+
+    /**
+     * 发送一条消息（含等待写锁和 flush 的耗时）
+     */
+    public void recordSent(long bytes, long nanos) {
+        sent.increment();
+        sentBytes.add(bytes);
+        sendLatency.record(nanos);
+    }
+
+    public void recordError() {
+        errors.increment();
+    }
+
+    /**
+     * 一条收到的消息因超过限流被丢弃或导致断开（见 RateLimiter）
+     */
+    public void recordRateLimited() {
+        rateLimited.increment();
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public long getReceived() {
+        return received.sum();
+    }
+
+    public long getReceivedBytes() {
+        return receivedBytes.sum();
+    }
+
+    public long getSent() {
+        return sent.sum();
+    }
+
+    public long getSentBytes() {
+        return sentBytes.sum();
+    }
+
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    public long getRateLimited() {
+        return rateLimited.sum();
+    }
+
+    public LatencyHistogram getRouteLatency() {
+        return routeLatency;
+    }
+
+    public LatencyHistogram getSendLatency() {
+        return sendLatency;
+    }
+
+    /**
+     * 是否有过任何记录
+     */
+    public boolean isActive() {
+        return received.sum() > 0 || sent.sum() > 0 || errors.sum() > 0;
+    }
+
+    void reset() {
+        received.reset();
+        receivedBytes.reset();
+        sent.reset();
+        sentBytes.reset();
+        errors.reset();
+        rateLimited.reset();
+        routeLatency.reset();
+        sendLatency.reset();
+    }
+}
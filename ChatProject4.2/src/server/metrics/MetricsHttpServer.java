@@ -0,0 +1,378 @@
+package server.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import server.AdmissionControl;
+import server.ChatServer;
+import server.ClientHandler;
+import server.OnlineUserManager;
+import server.OnlineSet;
+import server.PresenceBroadcaster;
+import server.RateLimiter;
+import server.ServerLogger;
+import server.ServerMonitor;
+import server.dao.DBHelper;
+import server.dao.OfflineMessageStore;
+import server.dao.UserStatusWriter;
+import server.service.LoginQueue;
+import server.service.OfflineReplayService;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 本地 HTTP 指标接口（Prometheus 文本格式），GET /metrics
+ * 后台线程每秒生成一次完整的文本快照（byte[]），抓取请求只是把最近一次快照原样写出，
+ * 不读取任何计数器、不加锁，抓取频率再高也不会和消息路由争用。
+ * 默认只监听 127.0.0.1:9100，由 chat.metrics.port / chat.metrics.bind 配置，端口设为 -1 关闭。
+ */
+public class MetricsHttpServer {
+    private static final long REFRESH_MILLIS = 1000;
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    private static final int TOP_N = 10; // 流量排行导出的连接数（控制时间序列数量）
+
+    private final ChatServer chatServer;
+    private final String bindAddress;
+    private final int port;
+
+    private HttpServer httpServer;
+    private ExecutorService httpExecutor;
+    private ScheduledExecutorService snapshotScheduler;
+    private volatile byte[] snapshot = new byte[0];
+
+    // 计算速率用的上一次计数（只在快照线程访问）
+    private final Map<String, Long> lastReceived = new HashMap<>();
+    private final Map<String, Long> lastSent = new HashMap<>();
+    private long lastSnapshotNanos;
+
+    public MetricsHttpServer(ChatServer chatServer, String bindAddress, int port) {
+        this.chatServer = chatServer;
+        this.bindAddress = bindAddress;
+        this.port = port;
+    }
+
+    /**
+     * 绑定端口并开始定时生成快照
+     */
+    public synchronized void start() throws IOException {
+        if (httpServer != null) {
+            return;
+        }
+        refresh();
+
+        httpServer = HttpServer.create(new InetSocketAddress(bindAddress, port), 16);
+        httpServer.createContext("/metrics", this::handle);
+        httpExecutor = Executors.newSingleThreadExecutor(r -> daemon(r, "metrics-http"));
+        httpServer.setExecutor(httpExecutor);
+        httpServer.start();
+
+        snapshotScheduler = Executors.newSingleThreadScheduledExecutor(r -> daemon(r, "metrics-snapshot"));
+        snapshotScheduler.scheduleAtFixedRate(() -> {
+            try {
+                refresh();
+            } catch (Exception e) {
+                System.err.println("❌ 生成指标快照失败: " + e.getMessage());
+            }
+        }, REFRESH_MILLIS, REFRESH_MILLIS, TimeUnit.MILLISECONDS);
+
+        ServerLogger.log("📈 指标接口已启动: http://" + bindAddress + ":" + getPort() + "/metrics");
+    }
+
+    public synchronized void stop() {
+        if (httpServer == null) {
+            return;
+        }
+        snapshotScheduler.shutdownNow();
+        httpServer.stop(0);
+        httpExecutor.shutdownNow();
+        httpServer = null;
+    }
+
+    /**
+     * 实际监听的端口
+     */
+    public synchronized int getPort() {
+        return httpServer != null ? httpServer.getAddress().getPort() : port;
+    }
+
+    private static Thread daemon(Runnable r, String name) {
+        Thread t = new Thread(r, name);
+        t.setDaemon(true);
+        return t;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = snapshot;
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * 重新生成快照（快照线程调用）
+     */
+    void refresh() {
+        snapshot = render().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 当前快照的文本（调试用）
+     */
+    public String getSnapshotText() {
+        return new String(snapshot, StandardCharsets.UTF_8);
+    }
+
+    private String render() {
+        StringBuilder sb = new StringBuilder(16 * 1024);
+        long now = System.nanoTime();
+        double seconds = lastSnapshotNanos == 0 ? 0 : (now - lastSnapshotNanos) / 1e9;
+        lastSnapshotNanos = now;
+
+        // 连接
+        gauge(sb, "chat_online_users", "已登录的在线用户数", OnlineUserManager.getOnlineCount());
+        gauge(sb, "chat_open_connections", "当前打开的客户端连接数（含未登录）", ClientHandler.getOpenConnectionCount());
+        counter(sb, "chat_connections_accepted_total", "累计接受的连接数",
+                chatServer != null ? chatServer.getAcceptedCount() : 0);
+        gauge(sb, "chat_server_startup_milliseconds", "ChatServer.start 到开始监听的耗时",
+                chatServer != null ? chatServer.getStartupMillis() : -1);
+        header(sb, "chat_connections_rejected_total", "counter", "按原因统计的被拒绝或被断开的连接数");
+        for (AdmissionControl.Reason reason : AdmissionControl.Reason.values()) {
+            sb.append("chat_connections_rejected_total{reason=\"").append(reason.getLabel()).append("\"} ")
+                    .append(AdmissionControl.getRejectedCount(reason)).append('\n');
+        }
+        counter(sb, "chat_accept_throttled_total", "监听线程因接受速率等待的次数", AdmissionControl.getThrottledCount());
+        counter(sb, "chat_accept_throttle_milliseconds_total", "监听线程因接受速率累计等待的时间",
+                AdmissionControl.getThrottleMillis());
+        gauge(sb, "chat_connection_source_ips", "当前有连接的来源 IP 数", AdmissionControl.getTrackedIpCount());
+
+        // 消息
+        List<MessageTypeMetrics> all = MetricsRegistry.getAll();
+        header(sb, "chat_messages_received_total", "counter", "按类型统计的收到消息数");
+        for (MessageTypeMetrics m : all) {
+            sample(sb, "chat_messages_received_total", m.getType(), null, m.getReceived());
+        }
+        header(sb, "chat_messages_received_bytes_total", "counter", "按类型统计的收到字节数（UTF-8）");
+        for (MessageTypeMetrics m : all) {
+            sample(sb, "chat_messages_received_bytes_total", m.getType(), null, m.getReceivedBytes());
+        }
+        header(sb, "chat_messages_sent_total", "counter", "按类型统计的发送消息数");
+        for (MessageTypeMetrics m : all) {
+            sample(sb, "chat_messages_sent_total", m.getType(), null, m.getSent());
+        }
+        header(sb, "chat_messages_sent_bytes_total", "counter", "按类型统计的发送字节数（UTF-8）");
+        for (MessageTypeMetrics m : all) {
+            sample(sb, "chat_messages_sent_bytes_total", m.getType(), null, m.getSentBytes());
+        }
+        header(sb, "chat_message_errors_total", "counter", "按类型统计的处理/发送失败数");
+        for (MessageTypeMetrics m : all) {
+            sample(sb, "chat_message_errors_total", m.getType(), null, m.getErrors());
+        }
+        header(sb, "chat_messages_received_per_second", "gauge", "最近一个快照周期内每秒收到的消息数");
+        for (MessageTypeMetrics m : all) {
+            sample(sb, "chat_messages_received_per_second", m.getType(), null,
+                    rate(lastReceived, m.getType(), m.getReceived(), seconds));
+        }
+        header(sb, "chat_messages_sent_per_second", "gauge", "最近一个快照周期内每秒发送的消息数");
+        for (MessageTypeMetrics m : all) {
+            sample(sb, "chat_messages_sent_per_second", m.getType(), null,
+                    rate(lastSent, m.getType(), m.getSent(), seconds));
+        }
+        header(sb, "chat_messages_rate_limited_total", "counter", "按类型统计的被限流消息数");
+        for (MessageTypeMetrics m : all) {
+            sample(sb, "chat_messages_rate_limited_total", m.getType(), null, m.getRateLimited());
+        }
+        header(sb, "chat_rate_limit_actions_total", "counter", "限流处理次数（drop 丢弃、delay 等待后放行、disconnect 断开）");
+        sb.append("chat_rate_limit_actions_total{action=\"drop\"} ").append(RateLimiter.getDroppedCount()).append('\n');
+        sb.append("chat_rate_limit_actions_total{action=\"delay\"} ").append(RateLimiter.getDelayedCount()).append('\n');
+        sb.append("chat_rate_limit_actions_total{action=\"disconnect\"} ").append(RateLimiter.getDisconnectedCount()).append('\n');
+        counter(sb, "chat_rate_limit_delay_milliseconds_total", "delay 策略累计让读线程等待的时间", RateLimiter.getDelayMillis());
+        summary(sb, "chat_route_latency_seconds", "消息路由耗时", all, true);
+        summary(sb, "chat_send_latency_seconds", "消息发送耗时（含等待写锁）", all, false);
+
+        // 流量最大的连接（按字节、按速率各取前 TOP_N 个）
+        topTalkers(sb);
+
+        // 队列
+        gauge(sb, "chat_status_writer_pending", "等待写回的在线状态数", UserStatusWriter.getPendingCount());
+        gauge(sb, "chat_offline_queue_depth", "等待写库的离线消息数", OfflineMessageStore.getQueueSize());
+        gauge(sb, "chat_offline_replays_active", "正在进行的离线消息回放数", OfflineReplayService.getActiveCount());
+        gauge(sb, "chat_logger_ring_pending", "日志环形缓冲区中未写出的条数", ServerLogger.getPendingCount());
+        counter(sb, "chat_logger_dropped_total", "因缓冲区满被丢弃的日志条数", ServerLogger.getDroppedCount());
+        gauge(sb, "chat_time_to_first_live_avg_milliseconds", "登录到首条实时消息的平均耗时",
+                OfflineReplayService.getAvgTimeToFirstLiveMillis());
+        gauge(sb, "chat_time_to_first_live_max_milliseconds", "登录到首条实时消息的最大耗时",
+                OfflineReplayService.getMaxTimeToFirstLiveMillis());
+
+        // 登录排队
+        gauge(sb, "chat_login_queue_depth", "排队等待登录的请求数", LoginQueue.getQueueDepth());
+        gauge(sb, "chat_login_active", "正在执行的登录数", LoginQueue.getActiveCount());
+        gauge(sb, "chat_login_deferred_pending", "等待执行的登录后续工作数（上线通知、好友列表、离线回放）",
+                LoginQueue.getDeferredPending());
+        counter(sb, "chat_login_rejected_total", "因排队已满回复 busy 的登录数", LoginQueue.getRejectedCount());
+        counter(sb, "chat_login_defer_yields_total", "登录后续工作为实时消息让路的次数", LoginQueue.getDeferYieldCount());
+        summary(sb, "chat_login_queue_wait_seconds", "登录请求排队等待时间", LoginQueue.getQueueWait());
+        summary(sb, "chat_time_to_login_seconds", "收到登录请求到回复登录成功的耗时", LoginQueue.getTimeToLogin());
+
+        // 上下线通知
+        counter(sb, "chat_presence_events_total", "上下线变化数", PresenceBroadcaster.getEventCount());
+        counter(sb, "chat_presence_frames_total", "发送的上下线通知帧数（合并后）", PresenceBroadcaster.getFrameCount());
+        counter(sb, "chat_presence_entries_total", "通知到接收者的变化条数（逐条发送时需要的帧数）",
+                PresenceBroadcaster.getEntryCount());
+        gauge(sb, "chat_presence_pending", "等待合并发送的上下线变化数", PresenceBroadcaster.getPendingCount());
+
+        // 在线列表
+        counter(sb, "chat_online_set_changes_total", "在线集合的变化数（版本号的增量）", OnlineSet.getChangeCount());
+        counter(sb, "chat_online_list_full_total", "回复完整在线列表的次数", OnlineSet.getFullResponseCount());
+        counter(sb, "chat_online_list_delta_total", "回复在线列表增量的次数", OnlineSet.getDeltaResponseCount());
+        counter(sb, "chat_online_snapshot_builds_total", "重新编码完整在线列表的次数", OnlineSet.getSnapshotBuildCount());
+
+        // 数据库连接池
+        gauge(sb, "chat_db_pool_size", "连接池上限", DBHelper.getPoolSize());
+        gauge(sb, "chat_db_pool_connections", "已创建的连接数", DBHelper.getTotalConnections());
+        gauge(sb, "chat_db_pool_active", "借出中的连接数", DBHelper.getActiveConnections());
+        gauge(sb, "chat_db_pool_idle", "空闲连接数", DBHelper.getIdleConnections());
+        counter(sb, "chat_db_pool_borrow_waits_total", "借连接时需要等待的次数", DBHelper.getBorrowWaits());
+        counter(sb, "chat_db_pool_borrow_timeouts_total", "借连接超时的次数", DBHelper.getBorrowTimeouts());
+
+        // JVM / 系统（ServerMonitor）
+        ServerMonitor.SystemStats stats = ServerMonitor.getStats();
+        gauge(sb, "chat_jvm_memory_used_megabytes", "JVM 已用堆内存", stats.memoryUsed);
+        gauge(sb, "chat_system_cpu_load_percent", "系统 CPU 使用率", stats.cpuLoad);
+        gauge(sb, "chat_jvm_threads", "JVM 线程数", Thread.activeCount());
+        return sb.toString();
+    }
+
+    private static void topTalkers(StringBuilder sb) {
+        List<TopTalkers.Entry> byBytes = TopTalkers.top(TOP_N, TopTalkers.Sort.BYTES);
+        List<TopTalkers.Entry> byRate = TopTalkers.top(TOP_N, TopTalkers.Sort.RATE);
+
+        header(sb, "chat_top_connection_bytes", "gauge", "流量最大的连接的累计收发字节数");
+        for (int i = 0; i < byBytes.size(); i++) {
+            TopTalkers.Entry e = byBytes.get(i);
+            connectionSample(sb, "chat_top_connection_bytes", "bytes", i + 1, e, "in", e.getBytesIn());
+            connectionSample(sb, "chat_top_connection_bytes", "bytes", i + 1, e, "out", e.getBytesOut());
+        }
+        header(sb, "chat_top_connection_messages_per_second", "gauge", "消息速率最高的连接的收发速率");
+        for (int i = 0; i < byRate.size(); i++) {
+            TopTalkers.Entry e = byRate.get(i);
+            connectionSample(sb, "chat_top_connection_messages_per_second", "rate", i + 1, e, null,
+                    e.getMessageRate());
+        }
+        header(sb, "chat_top_connection_send_blocked_seconds", "gauge", "流量最大的连接 send() 累计阻塞时间");
+        for (int i = 0; i < byBytes.size(); i++) {
+            TopTalkers.Entry e = byBytes.get(i);
+            connectionSample(sb, "chat_top_connection_send_blocked_seconds", "bytes", i + 1, e, null,
+                    e.getSendBlockedNanos() / 1e9);
+        }
+        header(sb, "chat_top_connection_queue_max", "gauge", "流量最大的连接排队等待发送的帧数峰值");
+        for (int i = 0; i < byBytes.size(); i++) {
+            TopTalkers.Entry e = byBytes.get(i);
+            connectionSample(sb, "chat_top_connection_queue_max", "bytes", i + 1, e, null, e.getMaxQueuedFrames());
+        }
+    }
+
+    private static void connectionSample(StringBuilder sb, String name, String by, int rank, TopTalkers.Entry e,
+                                         String direction, double value) {
+        sb.append(name).append("{by=\"").append(by).append("\",rank=\"").append(rank)
+                .append("\",client=\"").append(e.getClientId())
+                .append("\",user=\"").append(escape(e.getUserId() != null ? e.getUserId() : ""))
+                .append("\",top_type=\"").append(e.getHeaviestType() != null ? e.getHeaviestType() : "")
+                .append('"');
+        if (direction != null) {
+            sb.append(",direction=\"").append(direction).append('"');
+        }
+        sb.append("} ").append(format(value)).append('\n');
+    }
+
+    // 用户名来自客户端，按 Prometheus 文本格式转义
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static double rate(Map<String, Long> last, String type, long current, double seconds) {
+        Long previous = last.put(type, current);
+        if (previous == null || seconds <= 0) {
+            return 0;
+        }
+        return (current - previous) / seconds;
+    }
+
+    private static void summary(StringBuilder sb, String name, String help, List<MessageTypeMetrics> all, boolean route) {
+        header(sb, name, "summary", help);
+        for (MessageTypeMetrics m : all) {
+            LatencyHistogram.Snapshot s = (route ? m.getRouteLatency() : m.getSendLatency()).snapshot();
+            if (s.getCount() == 0) {
+                continue;
+            }
+            sample(sb, name, m.getType(), "0.5", s.getPercentile(50) / 1e9);
+            sample(sb, name, m.getType(), "0.99", s.getPercentile(99) / 1e9);
+            sample(sb, name, m.getType(), "0.999", s.getPercentile(99.9) / 1e9);
+            sb.append(name).append("_sum{type=\"").append(m.getType()).append("\"} ")
+                    .append(format(s.getMean() * s.getCount() / 1e9)).append('\n');
+            sb.append(name).append("_count{type=\"").append(m.getType()).append("\"} ")
+                    .append(s.getCount()).append('\n');
+        }
+    }
+
+    // 不分类型的单个直方图
+    private static void summary(StringBuilder sb, String name, String help, LatencyHistogram histogram) {
+        header(sb, name, "summary", help);
+        LatencyHistogram.Snapshot s = histogram.snapshot();
+        sb.append(name).append("{quantile=\"0.5\"} ").append(format(s.getPercentile(50) / 1e9)).append('\n');
+        sb.append(name).append("{quantile=\"0.99\"} ").append(format(s.getPercentile(99) / 1e9)).append('\n');
+        sb.append(name).append("{quantile=\"0.999\"} ").append(format(s.getPercentile(99.9) / 1e9)).append('\n');
+        sb.append(name).append("_sum ").append(format(s.getMean() * s.getCount() / 1e9)).append('\n');
+        sb.append(name).append("_count ").append(s.getCount()).append('\n');
+    }
+
+    private static void header(StringBuilder sb, String name, String type, String help) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void gauge(StringBuilder sb, String name, String help, double value) {
+        header(sb, name, "gauge", help);
+        sb.append(name).append(' ').append(format(value)).append('\n');
+    }
+
+    private static void counter(StringBuilder sb, String name, String help, long value) {
+        header(sb, name, "counter", help);
+        sb.append(name).append(' ').append(value).append('\n');
+    }
+
+    // 消息类型来自 MetricsRegistry 的固定列表，不需要转义
+    private static void sample(StringBuilder sb, String name, String type, String quantile, double value) {
+        sb.append(name).append("{type=\"").append(type).append('"');
+        if (quantile != null) {
+            sb.append(",quantile=\"").append(quantile).append('"');
+        }
+        sb.append("} ").append(format(value)).append('\n');
+    }
+
+    private static String format(double value) {
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return String.valueOf((long) value);
+        }
+        return String.format(Locale.ROOT, "%.6g", value);
+    }
+}
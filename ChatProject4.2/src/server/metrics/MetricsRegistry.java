@@ -0,0 +1,146 @@
+package server.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 服务端指标注册表
+ * 每个协议消息类型一组 MessageTypeMetrics，启动时一次性创建，之后只读查找（热点路径上没有加锁和分配）。
+ * 客户端发来的类型字符串不可信，未登记的类型统一记在 "other"，避免表无限增长；
+ * 无法解析的消息记在 "invalid"。
+ */
+public class MetricsRegistry {
+    public static final String OTHER = "other";
+    public static final String INVALID = "invalid";
+
+    // 协议中出现的全部消息类型（客户端请求 + 服务器推送）
+    private static final String[] KNOWN_TYPES = {
+            "login", "register", "findPwd", "text", "group", "heartbeat", "getOnlineUsers", "logout", "ping",
+            "file", "shake", "screenshot",
+            "loginResult", "registerResult", "findPwdResult", "logoutResult", "friendList", "onlineList", "onlineDelta",
+            "online", "offline", "presence", "offlineCount", "offlineDone", "ack", "error", "success", "system", "kick", "pong",
+            OTHER, INVALID
+    };
+
+    private static final Map<String, MessageTypeMetrics> byType;
+    private static final MessageTypeMetrics[] byIndex = new MessageTypeMetrics[KNOWN_TYPES.length];
+    private static volatile long startTime = System.currentTimeMillis();
+
+    static {
+        Map<String, MessageTypeMetrics> map = new LinkedHashMap<>();
+        for (int i = 0; i < KNOWN_TYPES.length; i++) {
+            byIndex[i] = new MessageTypeMetrics(KNOWN_TYPES[i], i);
+            map.put(KNOWN_TYPES[i], byIndex[i]);
+        }
+        byType = Collections.unmodifiableMap(map);
+    }
+
+    /**
+     * 取某个消息类型的统计（未登记的类型返回 other）
+     */
+    public static MessageTypeMetrics forType(String type) {
+        MessageTypeMetrics m = type != null ? byType.get(type) : null;
+        return m != null ? m : byType.get(OTHER);
+    }
+
+    /**
+     * 按序号取某个消息类型的统计
+     */
+    public static MessageTypeMetrics forIndex(int index) {
+        return byIndex[index];
+    }
+
+    /**
+     * 全部消息类型的统计（按协议顺序）
+     */
+    public static List<MessageTypeMetrics> getAll() {
+        return new ArrayList<>(byType.values());
+    }
+
+    /**
+     * 登记的消息类型数（含 other、invalid）
+     */
+    public static int getTypeCount() {
+        return KNOWN_TYPES.length;
+    }
+
+    /**
+     * 按序号取消息类型名
+     */
+    public static String getTypeName(int index) {
+        return KNOWN_TYPES[index];
+    }
+
+    /**
+     * 统计开始时间（启动或上次重置）
+     */
+    public static long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * 字符串按 UTF-8 编码的字节数（不创建 byte[]）
+     */
+    public static int utf8Length(String s) {
+        int len = 0;
+        for (int i = 0, n = s.length(); i < n; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                len++;
+            } else if (c < 0x800) {
+                len += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+                len += 4;
+                i++;
+            } else {
+                len += 3;
+            }
+        }
+        return len;
+    }
+
+    /**
+     * 清零全部统计
+     */
+    public static void reset() {
+        for (MessageTypeMetrics m : byType.values()) {
+            m.reset();
+        }
+        startTime = System.currentTimeMillis();
+    }
+
+    /**
+     * 文本报表（只列出有记录的类型），耗时单位微秒
+     */
+    public static String formatReport() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-15s %9s %11s %9s %11s %6s | %-24s | %-24s%n",
+                "type", "recv", "recvBytes", "sent", "sentBytes", "err",
+                "route p50/p99/p999 (us)", "send p50/p99/p999 (us)"));
+        for (MessageTypeMetrics m : byType.values()) {
+            if (!m.isActive()) {
+                continue;
+            }
+            LatencyHistogram.Snapshot route = m.getRouteLatency().snapshot();
+            LatencyHistogram.Snapshot send = m.getSendLatency().snapshot();
+            sb.append(String.format("%-15s %9d %11d %9d %11d %6d | %-24s | %-24s%n",
+                    m.getType(), m.getReceived(), m.getReceivedBytes(), m.getSent(), m.getSentBytes(), m.getErrors(),
+                    percentiles(route), percentiles(send)));
+        }
+        return sb.toString();
+    }
+
+    private static String percentiles(LatencyHistogram.Snapshot s) {
+        if (s.getCount() == 0) {
+            return "-";
+        }
+        return micros(s.getPercentile(50)) + "/" + micros(s.getPercentile(99)) + "/" + micros(s.getPercentile(99.9));
+    }
+
+    private static String micros(long nanos) {
+        return nanos < 10_000 ? String.format("%.1f", nanos / 1000.0) : String.valueOf(nanos / 1000);
+    }
+}
@@ -0,0 +1,183 @@
+package server.metrics;
+
+import server.ClientHandler;
+import server.ServerMonitor;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 指标采样器：每秒读取一次 MetricsRegistry 和 ServerMonitor，写入固定长度的环形序列
+ * 消息速率和 p99 路由耗时都按"本秒与上一秒的差值"计算，反映的是最近一秒而不是启动以来的累计值。
+ * 采样在后台线程完成，界面只读取序列并绘图（见 DashboardPanel）。
+ */
+public class MetricsSampler {
+    public static final int CAPACITY = 120; // 保留最近 2 分钟
+
+    /**
+     * 固定长度的环形序列（单线程写入，任意线程读取）
+     */
+    public static final class Series {
+        private final String title;
+        private final String unit;
+        private final double[] values = new double[CAPACITY];
+        private volatile long count;   // 累计写入的点数，先写值再递增，读取方看到的点都已写完
+
+        Series(String title, String unit) {
+            this.title = title;
+            this.unit = unit;
+        }
+
+        void add(double value) {
+            values[(int) (count % CAPACITY)] = value;
+            count = count + 1;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public String getUnit() {
+            return unit;
+        }
+
+        /**
+         * 累计写入的点数（用来判断有没有新点）
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * 第 seq 个点（seq 从 0 开始累计，只保留最近 CAPACITY 个）
+         */
+        public double valueAt(long seq) {
+            return values[(int) (seq % CAPACITY)];
+        }
+
+        public double getLatest() {
+            long c = count;
+            return c == 0 ? 0 : valueAt(c - 1);
+        }
+
+        /**
+         * 窗口内的最大值
+         */
+        public double getMax() {
+            long c = count;
+            double max = 0;
+            for (long seq = Math.max(0, c - CAPACITY); seq < c; seq++) {
+                max = Math.max(max, valueAt(seq));
+            }
+            return max;
+        }
+    }
+
+    private final Series messagesPerSecond = new Series("消息/秒", "");
+    private final Series connections = new Series("连接数", "");
+    private final Series routeP99 = new Series("路由 p99", "us");
+    private final Series heapUsed = new Series("堆内存", "MB");
+    private final Series cpuLoad = new Series("CPU", "%");
+
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+    private ScheduledExecutorService scheduler;
+
+    // 以下只在采样线程访问
+    private long lastReceived = -1;
+    private long lastNanos;
+    private long[] lastRouteCounts = new long[LatencyHistogram.getBucketCount()];
+    private long[] routeCounts = new long[LatencyHistogram.getBucketCount()];
+
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "metrics-sampler");
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        });
+        scheduler.scheduleAtFixedRate(this::sample, 0, 1, TimeUnit.SECONDS);
+    }
+
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * 每次采样完成后回调（在采样线程上调用，界面需要自行切换到 EDT）
+     */
+    public void addListener(Runnable listener) {
+        listeners.add(listener);
+    }
+
+    private void sample() {
+        try {
+            long now = System.nanoTime();
+            long received = 0;
+            Arrays.fill(routeCounts, 0);
+            for (MessageTypeMetrics m : MetricsRegistry.getAll()) {
+                received += m.getReceived();
+                m.getRouteLatency().addCountsTo(routeCounts);
+            }
+
+            if (lastReceived >= 0) {
+                double seconds = (now - lastNanos) / 1e9;
+                // 统计被重置时差值为负，按 0 处理
+                messagesPerSecond.add(Math.max(0, received - lastReceived) / seconds);
+                for (int i = 0; i < routeCounts.length; i++) {
+                    lastRouteCounts[i] = Math.max(0, routeCounts[i] - lastRouteCounts[i]);
+                }
+                routeP99.add(LatencyHistogram.percentileOf(lastRouteCounts, 99) / 1000.0);
+            } else {
+                messagesPerSecond.add(0);
+                routeP99.add(0);
+            }
+            // 本次的累计计数作为下一次的基准（两个数组交替使用，不重新分配）
+            long[] swap = lastRouteCounts;
+            lastRouteCounts = routeCounts;
+            routeCounts = swap;
+            lastReceived = received;
+            lastNanos = now;
+
+            connections.add(ClientHandler.getOpenConnectionCount());
+            ServerMonitor.SystemStats stats = ServerMonitor.getStats();
+            heapUsed.add(stats.memoryUsed);
+            cpuLoad.add(stats.cpuLoad);
+
+            for (Runnable listener : listeners) {
+                listener.run();
+            }
+        } catch (Exception e) {
+            System.err.println("❌ 指标采样失败: " + e.getMessage());
+        }
+    }
+
+    public Series getMessagesPerSecond() {
+        return messagesPerSecond;
+    }
+
+    public Series getConnections() {
+        return connections;
+    }
+
+    public Series getRouteP99() {
+        return routeP99;
+    }
+
+    public Series getHeapUsed() {
+        return heapUsed;
+    }
+
+    public Series getCpuLoad() {
+        return cpuLoad;
+    }
+}
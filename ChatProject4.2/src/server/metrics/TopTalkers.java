@@ -0,0 +1,156 @@
+package server.metrics;
+
+import server.ClientHandler;
+import server.ConnectionStats;
+import server.HeartbeatManager;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 流量最大的连接排行（按收发字节数或消息速率）
+ * 数据来自每个连接的 ConnectionStats，排行时只遍历一次当前连接并复制少量数值，不影响收发线程。
+ * ServerGUI 的"流量排行"按钮和 /metrics 接口都使用这里的结果，用于事故时找出刷屏/刷截图的客户端。
+ */
+public class TopTalkers {
+
+    public enum Sort {
+        BYTES,  // 累计收发字节数
+        RATE    // 最近的收发消息速率
+    }
+
+    /**
+     * 单个连接的排行数据
+     */
+    public static final class Entry {
+        final int clientId;
+        final String userId;
+        final String address;
+        final long bytesIn;
+        final long bytesOut;
+        final long framesIn;
+        final long framesOut;
+        final double messageRate;
+        final long sendBlockedNanos;
+        final int queuedFrames;
+        final int maxQueuedFrames;
+        final String heaviestType;
+
+        Entry(ClientHandler handler) {
+            ConnectionStats stats = handler.getStats();
+            this.clientId = handler.getClientId();
+            this.userId = handler.getUserId();
+            this.address = handler.getClientAddress();
+            this.bytesIn = stats.getBytesIn();
+            this.bytesOut = stats.getBytesOut();
+            this.framesIn = stats.getFramesIn();
+            this.framesOut = stats.getFramesOut();
+            this.messageRate = stats.sampleMessageRate();
+            this.sendBlockedNanos = stats.getSendBlockedNanos();
+            this.queuedFrames = stats.getQueuedFrames();
+            this.maxQueuedFrames = stats.getMaxQueuedFrames();
+            this.heaviestType = stats.getHeaviestType();
+        }
+
+        public int getClientId() {
+            return clientId;
+        }
+
+        public String getUserId() {
+            return userId;
+        }
+
+        public String getAddress() {
+            return address;
+        }
+
+        public long getBytesIn() {
+            return bytesIn;
+        }
+
+        public long getBytesOut() {
+            return bytesOut;
+        }
+
+        public long getTotalBytes() {
+            return bytesIn + bytesOut;
+        }
+
+        public long getFramesIn() {
+            return framesIn;
+        }
+
+        public long getFramesOut() {
+            return framesOut;
+        }
+
+        public double getMessageRate() {
+            return messageRate;
+        }
+
+        public long getSendBlockedNanos() {
+            return sendBlockedNanos;
+        }
+
+        public int getQueuedFrames() {
+            return queuedFrames;
+        }
+
+        public int getMaxQueuedFrames() {
+            return maxQueuedFrames;
+        }
+
+        public String getHeaviestType() {
+            return heaviestType;
+        }
+    }
+
+    /**
+     * 前 n 个连接（含尚未登录的连接）
+     */
+    public static List<Entry> top(int n, Sort sort) {
+        List<ClientHandler> handlers = HeartbeatManager.getTrackedClients();
+        List<Entry> entries = new ArrayList<>(handlers.size());
+        for (ClientHandler handler : handlers) {
+            entries.add(new Entry(handler));
+        }
+        Comparator<Entry> order = sort == Sort.RATE
+                ? Comparator.comparingDouble(Entry::getMessageRate)
+                : Comparator.comparingLong(Entry::getTotalBytes);
+        entries.sort(order.reversed());
+        return entries.size() > n ? new ArrayList<>(entries.subList(0, n)) : entries;
+    }
+
+    /**
+     * 文本报表（ServerGUI 日志面板显示）
+     */
+    public static String formatReport(int n, Sort sort) {
+        List<Entry> entries = top(n, sort);
+        StringBuilder sb = new StringBuilder();
+        sb.append(sort == Sort.RATE ? "按消息速率排行" : "按收发字节排行")
+                .append("（共 ").append(HeartbeatManager.getTrackedCount()).append(" 个连接）")
+                .append(System.lineSeparator());
+        sb.append(String.format("%-4s %-6s %-10s %-21s %10s %10s %8s %8s %8s %9s %6s %-12s%n",
+                "#", "id", "user", "address", "bytesIn", "bytesOut", "in", "out", "msg/s",
+                "blocked", "qMax", "topType"));
+        int rank = 1;
+        for (Entry e : entries) {
+            sb.append(String.format("%-4d %-6d %-10s %-21s %10s %10s %8d %8d %8.1f %7dms %6d %-12s%n",
+                    rank++, e.clientId, e.userId != null ? e.userId : "-", e.address,
+                    formatBytes(e.bytesIn), formatBytes(e.bytesOut), e.framesIn, e.framesOut, e.messageRate,
+                    e.sendBlockedNanos / 1_000_000, e.maxQueuedFrames,
+                    e.heaviestType != null ? e.heaviestType : "-"));
+        }
+        return sb.toString();
+    }
+
+    static String formatBytes(long bytes) {
+        if (bytes < 1024) {
+            return bytes + "B";
+        } else if (bytes < 1024 * 1024) {
+            return String.format("%.1fKB", bytes / 1024.0);
+        }
+        return String.format("%.1fMB", bytes / (1024.0 * 1024));
+    }
+}
@@ -0,0 +1,249 @@
+package server.service;
+
+import server.ClientHandler;
+import server.OnlineUserManager;
+import server.ServerConfig;
+import server.metrics.LatencyHistogram;
+import server.metrics.MessageTypeMetrics;
+import server.metrics.MetricsRegistry;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+/**
+ * 登录排队：服务器重启后所有客户端同时重连时，限制同时进行的登录数量，避免登录挤占实时消息
+ * 1. 登录（校验、查库、绑定连接、回复 loginResult）在固定数量的登录线程上执行，
+ *    读线程提交后等待完成，同一连接的后续消息仍按顺序处理；排队已满时回复 loginResult=busy，客户端稍后重试。
+ * 2. 登录成功后的上线通知、好友列表和离线消息回放由一个后台线程安排：
+ *    只要实时消息（text/group/file）还在持续到达就先让路，从登录完成算起最多推迟 chat.login.defer.max 毫秒，
+ *    所以登录风暴中上线通知会集中在实时消息的间隙发出；到时后交给该连接自己的后台发送队列执行，
+ *    一个不读数据的客户端只会拖慢自己，不会挡住其他用户的登录后续工作。
+ * 统计：排队等待时间、收到登录请求到回复登录成功的耗时（time-to-login）。
+ *
+ * 配置（ServerConfig，JMX ChatServerAdmin 可在运行时修改）：
+ *   chat.login.concurrency=4     同时进行的登录数
+ *   chat.login.queue=1000        排队上限（0 表示不限）
+ *   chat.login.defer.max=200     登录后续工作最多为实时消息让路的毫秒数
+ */
+public class LoginQueue {
+    private static final long YIELD_NANOS = 2_000_000L; // 有实时消息时每次让路的时长
+
+    private static final AtomicInteger threadSeq = new AtomicInteger();
+    private static final ThreadPoolExecutor loginExecutor = new ThreadPoolExecutor(4, 4,
+            0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), r -> {
+        Thread t = new Thread(r, "login-" + threadSeq.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+    });
+    private static final ThreadPoolExecutor deferredExecutor = new ThreadPoolExecutor(1, 1,
+            0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), r -> {
+        Thread t = new Thread(r, "login-followup");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private static volatile int queueCapacity = 1000;
+    private static volatile long deferMaxNanos = 200_000_000L;
+
+    private static final LatencyHistogram queueWait = new LatencyHistogram();
+    private static final LatencyHistogram timeToLogin = new LatencyHistogram();
+    private static final LongAdder rejected = new LongAdder();
+    private static final LongAdder deferYields = new LongAdder();
+
+    // 实时消息计数（只由 login-followup 线程读取，用来判断这段时间有没有新的实时消息）
+    private static final MessageTypeMetrics[] LIVE = {
+            MetricsRegistry.forType("text"), MetricsRegistry.forType("group"), MetricsRegistry.forType("file")};
+    private static long lastLive;
+
+    /**
+     * 读线程调用：在登录线程上执行 login 并等待完成（login 返回 true 表示登录成功）
+     * 排队已满、或等待期间被中断且登录还没开始时不执行，返回 false，由调用方回复 busy
+     */
+    public static boolean execute(BooleanSupplier login) {
+        int capacity = queueCapacity;
+        if (capacity > 0 && loginExecutor.getQueue().size() >= capacity) {
+            rejected.increment();
+            return false;
+        }
+        long submitted = System.nanoTime();
+        Future<Boolean> future = loginExecutor.submit(() -> {
+            queueWait.record(System.nanoTime() - submitted);
+            boolean success = login.getAsBoolean();
+            if (success) {
+                timeToLogin.record(System.nanoTime() - submitted);
+            }
+            return success;
+        });
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            // 已经开始的登录继续完成并自己回复结果；还没开始的取消掉
+            return !future.cancel(false);
+        } catch (ExecutionException e) {
+            // 保持和直接在读线程上登录时一样的异常处理（ClientHandler 回复处理失败）
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+        return true;
+    }
+
+    /**
+     * 登录成功后的后续工作（上线通知、好友列表、离线回放），在实时消息之后执行
+     * 让路结束后在该连接的后台发送队列上执行；执行前连接已断开、或账号已在别的连接上重新登录时跳过
+     */
+    public static void defer(String account, ClientHandler handler, Runnable work) {
+        long deadline = System.nanoTime() + deferMaxNanos;
+        deferredExecutor.execute(() -> {
+            yieldToLiveTraffic(deadline);
+            handler.runOutbound(() -> {
+                if (handler.isRunning() && OnlineUserManager.getUser(account) == handler) {
+                    try {
+                        work.run();
+                    } catch (Exception e) {
+                        System.err.println("❌ 登录后续处理失败 [" + account + "]: " + e.getMessage());
+                    }
+                }
+            });
+        });
+    }
+
+    // 距上次检查又有实时消息到达时让路一小段时间，直到没有新的实时消息或到达期限
+    private static void yieldToLiveTraffic(long deadline) {
+        long live = liveReceived();
+        while (live != lastLive && System.nanoTime() < deadline) {
+            lastLive = live;
+            deferYields.increment();
+            LockSupport.parkNanos(YIELD_NANOS);
+            live = liveReceived();
+        }
+        lastLive = live;
+    }
+
+    private static long liveReceived() {
+        long total = 0;
+        for (MessageTypeMetrics m : LIVE) {
+            total += m.getReceived();
+        }
+        return total;
+    }
+
+    // ===== 配置 =====
+
+    /**
+     * 按服务器配置设置全部参数（ChatServer 启动时调用），配置无效时保留当前参数
+     */
+    public static void configure(ServerConfig config) {
+        try {
+            setConcurrency(config.getInt(ServerConfig.LOGIN_CONCURRENCY, 4));
+            setQueueCapacity(config.getInt(ServerConfig.LOGIN_QUEUE, 1000));
+            setDeferMaxMillis(config.getLong(ServerConfig.LOGIN_DEFER_MAX, 200));
+        } catch (IllegalArgumentException e) {
+            System.err.println("❌ 登录排队配置无效，保留当前设置: " + e.getMessage());
+        }
+    }
+
+    public static int getConcurrency() {
+        return loginExecutor.getMaximumPoolSize();
+    }
+
+    /**
+     * 调整同时进行的登录数（运行时生效）
+     */
+    public static synchronized void setConcurrency(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("登录并发数必须大于 0: " + threads);
+        }
+        // 调大时先调最大值，调小时先调核心数，保证任何时刻 core <= max
+        if (threads > loginExecutor.getMaximumPoolSize()) {
+            loginExecutor.setMaximumPoolSize(threads);
+            loginExecutor.setCorePoolSize(threads);
+        } else {
+            loginExecutor.setCorePoolSize(threads);
+            loginExecutor.setMaximumPoolSize(threads);
+        }
+    }
+
+    public static int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public static void setQueueCapacity(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("登录排队上限不能为负: " + capacity);
+        }
+        queueCapacity = capacity;
+    }
+
+    public static long getDeferMaxMillis() {
+        return deferMaxNanos / 1_000_000L;
+    }
+
+    public static void setDeferMaxMillis(long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("推迟时间不能为负: " + millis);
+        }
+        deferMaxNanos = millis * 1_000_000L;
+    }
+
+    // ===== 统计 =====
+
+    /**
+     * 排队等待登录的请求数
+     */
+    public static int getQueueDepth() {
+        return loginExecutor.getQueue().size();
+    }
+
+    /**
+     * 正在登录线程上执行的登录数
+     */
+    public static int getActiveCount() {
+        return loginExecutor.getActiveCount();
+    }
+
+    /**
+     * 等待让路结束的登录后续工作数
+     */
+    public static int getDeferredPending() {
+        return deferredExecutor.getQueue().size();
+    }
+
+    /**
+     * 因排队已满回复 busy 的登录数
+     */
+    public static long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    /**
+     * 登录后续工作为实时消息让路的次数
+     */
+    public static long getDeferYieldCount() {
+        return deferYields.sum();
+    }
+
+    /**
+     * 提交到开始执行的等待时间
+     */
+    public static LatencyHistogram getQueueWait() {
+        return queueWait;
+    }
+
+    /**
+     * 收到登录请求到回复登录成功的耗时
+     */
+    public static LatencyHistogram getTimeToLogin() {
+        return timeToLogin;
+    }
+}
@@ -3,6 +3,7 @@ package server.service;
 import server.ClientHandler;
 import server.dao.DBHelper;
 import server.dao.UserDao;
+import server.dao.UserStatusWriter;
 import server.OnlineUserManager;
 import common.protocol.Message;
 
@@ -11,14 +12,27 @@ import java.util.Map;
 
 /**
  * 登录服务类（对接UserDao，遵循协议规范）
+ * 登录在 LoginQueue 的登录线程上执行，登录成功后的上线通知、好友列表和离线回放推迟到实时消息之后。
  */
 public class LoginService {
     private final UserDao userDao = new UserDao();
 
     /**
-     * 处理登录请求
+     * 处理登录请求（读线程调用，等待登录线程处理完成；排队已满时回复 busy）
      */
     public void handleLogin(Message loginMsg, ClientHandler handler) {
+        if (!LoginQueue.execute(() -> authenticate(loginMsg, handler))) {
+            Message busyMsg = new Message("loginResult");
+            busyMsg.setContent("busy");
+            handler.send(busyMsg);
+        }
+    }
+
+    // 在登录线程上执行，登录成功返回 true
+    private boolean authenticate(Message loginMsg, ClientHandler handler) {
+        if (!handler.isRunning()) {
+            return false; // 排队期间连接已断开
+        }
         String account = loginMsg.getAccount();
         String password = loginMsg.getPassword();
         Message resultMsg = new Message("loginResult");
@@ -27,7 +41,7 @@ public class LoginService {
         if (account == null || account.length() != 8 || password == null || password.trim().isEmpty()) {
             resultMsg.setContent("failed");
             handler.send(resultMsg);
-            return;
+            return false;
         }
 
         // 2. 查询用户
@@ -35,30 +49,33 @@ public class LoginService {
         if (user == null || !user.get("password").equals(password)) {
             resultMsg.setContent("failed");
             handler.send(resultMsg);
-            return;
+            return false;
         }
 
         // 3. 检查重复登录
         if (OnlineUserManager.isUserOnline(account)) {
             resultMsg.setContent("duplicate");
             handler.send(resultMsg);
-            return;
+            return false;
         }
 
-        // 4. 更新在线状态
-        userDao.updateUserStatus(account, 1);
+        // 4. 绑定用户与连接（setUserId 内部已加入 OnlineUserManager，上线通知在第 7 步发）
+        handler.setUserId(account, false);
 
-        // 5. 绑定用户与连接
-        handler.setUserId(account);
-        OnlineUserManager.addUser(account, handler);
+        // 5. 更新在线状态（写回缓冲，批量落库）
+        UserStatusWriter.submit(account, 1);
 
         // 6. 登录成功响应
         resultMsg.setContent("success");
         handler.send(resultMsg);
 
-        // 7. 推送离线消息和好友列表
-        sendOfflineMessages(account, handler);
-        sendFriendList(account, handler);
+        // 7. 上线通知、好友列表和离线消息回放推迟到实时消息之后（离线消息由后台分页回放）
+        LoginQueue.defer(account, handler, () -> {
+            OnlineUserManager.notifyOnline(account);
+            sendFriendList(account, handler);
+            OfflineReplayService.startReplay(account, handler);
+        });
+        return true;
     }
 
     /**
@@ -68,20 +85,7 @@ public class LoginService {
         if (account == null || account.length() != 8) return;
 
         OnlineUserManager.removeUser(account);
-        userDao.updateUserStatus(account, 0);
-    }
-
-    /**
-     * 推送离线消息
-     */
-    private void sendOfflineMessages(String account, ClientHandler handler) {
-        List<Message> offlineMsgs = userDao.getOfflineMessages(account);
-        if (!offlineMsgs.isEmpty()) {
-            for (Message msg : offlineMsgs) {
-                handler.send(msg);
-            }
-            userDao.clearOfflineMessages(account);
-        }
+        UserStatusWriter.submit(account, 0);
     }
 
     /**
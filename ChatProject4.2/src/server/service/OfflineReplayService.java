@@ -0,0 +1,189 @@
+package server.service;
+
+import common.protocol.Message;
+import server.ClientHandler;
+import server.dao.OfflineMessageStore;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 离线消息回放服务
+ * 登录成功后在后台线程中分页推送离线消息，不阻塞连接的读线程：
+ * 1. 先发送 offlineCount（离线消息总数），再按页推送，最后发送 offlineDone
+ * 2. 每页之间暂停（至少 PAGE_PAUSE_MS，客户端接收慢时按发送耗时加长），让实时消息插队发送
+ * 3. 每页投递完成且连接仍在时才删除该页，断线后下次登录从未删除的位置继续（至少一次投递，
+ *    客户端可按 offlineId 去重）
+ * 同时统计"登录到收到第一条实时消息"的耗时，用于评估回放对实时消息的影响。
+ */
+public class OfflineReplayService {
+    private static final int PAGE_SIZE = 50;         // 每页条数
+    private static final long PAGE_PAUSE_MS = 20;    // 页间最短暂停
+    private static final int REPLAY_THREADS = 2;     // 回放线程数
+
+    private static final AtomicInteger threadSeq = new AtomicInteger();
+    private static final ThreadPoolExecutor executor = new ThreadPoolExecutor(REPLAY_THREADS, REPLAY_THREADS,
+            0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), r -> {
+        Thread t = new Thread(r, "offline-replay-" + threadSeq.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+    });
+
+    // 正在回放的任务：账号 -> 任务（同一账号重新登录时取消旧任务）
+    private static final Map<String, ReplayTask> activeTasks = new ConcurrentHashMap<>();
+
+    // 登录到第一条实时消息的耗时统计
+    private static final LongAdder firstLiveCount = new LongAdder();
+    private static final LongAdder firstLiveTotalNanos = new LongAdder();
+    private static final AtomicLong firstLiveMaxNanos = new AtomicLong();
+
+    /**
+     * 为刚登录的用户启动离线消息回放
+     */
+    public static void startReplay(String account, ClientHandler handler) {
+        ReplayTask task = new ReplayTask(account, handler);
+        ReplayTask previous = activeTasks.put(account, task);
+        if (previous != null) {
+            previous.cancelled = true;
+        }
+        executor.execute(task);
+    }
+
+    /**
+     * 记录一次"登录后第一条实时消息"的耗时（由 ClientHandler 在首次发送实时消息时调用）
+     */
+    public static void recordTimeToFirstLive(long nanos) {
+        firstLiveCount.increment();
+        firstLiveTotalNanos.add(nanos);
+        firstLiveMaxNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    /**
+     * 登录到第一条实时消息的平均耗时（毫秒）
+     */
+    public static double getAvgTimeToFirstLiveMillis() {
+        long count = firstLiveCount.sum();
+        return count == 0 ? 0 : firstLiveTotalNanos.sum() / (count * 1_000_000.0);
+    }
+
+    /**
+     * 登录到第一条实时消息的最大耗时（毫秒）
+     */
+    public static double getMaxTimeToFirstLiveMillis() {
+        return firstLiveMaxNanos.get() / 1_000_000.0;
+    }
+
+    /**
+     * 回放线程数
+     */
+    public static int getThreadCount() {
+        return executor.getMaximumPoolSize();
+    }
+
+    /**
+     * 调整回放线程数（运行时生效）
+     */
+    public static synchronized void setThreadCount(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("回放线程数必须大于 0: " + threads);
+        }
+        // 调大时先调最大值，调小时先调核心数，保证任何时刻 core <= max
+        if (threads > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(threads);
+            executor.setCorePoolSize(threads);
+        } else {
+            executor.setCorePoolSize(threads);
+            executor.setMaximumPoolSize(threads);
+        }
+    }
+
+    /**
+     * 正在进行的回放数量
+     */
+    public static int getActiveCount() {
+        return activeTasks.size();
+    }
+
+    private static class ReplayTask implements Runnable {
+        private final String account;
+        private final ClientHandler handler;
+        private volatile boolean cancelled;
+
+        ReplayTask(String account, ClientHandler handler) {
+            this.account = account;
+            this.handler = handler;
+        }
+
+        private boolean alive() {
+            return !cancelled && handler.isRunning();
+        }
+
+        @Override
+        public void run() {
+            try {
+                int total = OfflineMessageStore.count(account);
+                if (total == 0 || !alive()) {
+                    return;
+                }
+
+                Message countMsg = new Message("offlineCount");
+                countMsg.setContent(String.valueOf(total));
+                handler.send(countMsg);
+
+                int delivered = 0;
+                long lastId = 0;
+                while (alive()) {
+                    List<OfflineMessageStore.StoredMessage> page =
+                            OfflineMessageStore.getPage(account, lastId, PAGE_SIZE);
+                    if (page.isEmpty()) {
+                        break;
+                    }
+
+                    long pageStart = System.nanoTime();
+                    for (OfflineMessageStore.StoredMessage stored : page) {
+                        if (!alive()) {
+                            return; // 本页未完整投递，不删除，下次登录重新投递
+                        }
+                        Message msg = stored.message;
+                        msg.putExtra("offline", "1");
+                        msg.putExtra("offlineId", String.valueOf(stored.id));
+                        handler.send(msg);
+                    }
+                    if (!alive()) {
+                        return;
+                    }
+
+                    lastId = page.get(page.size() - 1).id;
+                    OfflineMessageStore.deleteDelivered(account, lastId);
+                    delivered += page.size();
+                    if (page.size() < PAGE_SIZE) {
+                        break;
+                    }
+
+                    // 流控：客户端接收越慢暂停越久，期间实时消息可以占用连接
+                    long pageMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - pageStart);
+                    Thread.sleep(Math.max(PAGE_PAUSE_MS, pageMillis));
+                }
+
+                if (alive()) {
+                    Message doneMsg = new Message("offlineDone");
+                    doneMsg.setContent(String.valueOf(delivered));
+                    handler.send(doneMsg);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                System.err.println("❌ 离线消息回放失败 [" + account + "]: " + e.getMessage());
+            } finally {
+                activeTasks.remove(account, this);
+            }
+        }
+    }
+}
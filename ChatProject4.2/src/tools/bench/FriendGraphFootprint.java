@@ -0,0 +1,80 @@
+package tools.bench;
+
+import server.dao.FriendGraph;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * 好友索引内存占用测量
+ * 构造指定规模的好友关系（默认 10 万账号 × 每人 10 个好友 = 100 万条边），
+ * 分别测量 FriendGraph 与等价的 HashMap<String, Set<String>> 的堆占用（GC 后的已用堆差值）。
+ * 用法：java -Xmx2g -cp out tools.bench.FriendGraphFootprint [账号数] [每人好友数]
+ */
+public class FriendGraphFootprint {
+
+    public static void main(String[] args) {
+        int users = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int degree = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int[][] pairs = generate(users, degree);
+
+        long before = usedHeap();
+        FriendGraph graph = new FriendGraph(users);
+        for (int u = 0; u < users; u++) {
+            for (int f : pairs[u]) {
+                graph.addEdge(10_000_000 + u, f);
+            }
+        }
+        graph.trimToSize();
+        long graphBytes = usedHeap() - before;
+        long edges = graph.getEdgeCount();
+
+        before = usedHeap();
+        Map<String, Set<String>> naive = new HashMap<>();
+        for (int u = 0; u < users; u++) {
+            Set<String> set = naive.computeIfAbsent(String.valueOf(10_000_000 + u), k -> new HashSet<>());
+            for (int f : pairs[u]) {
+                set.add(String.valueOf(f));
+            }
+        }
+        long naiveBytes = usedHeap() - before;
+
+        System.out.printf("账号数: %d, 边数: %d%n", users, graph.getEdgeCount());
+        System.out.printf("FriendGraph         : %,d 字节 (%.1f 字节/边, 估算 %,d 字节)%n",
+                graphBytes, graphBytes / (double) edges, graph.estimateBytes());
+        System.out.printf("HashMap<String,Set> : %,d 字节 (%.1f 字节/边)%n",
+                naiveBytes, naiveBytes / (double) edges);
+
+        // 保证两个结构在测量期间不被回收
+        if (graph.getNodeCount() + naive.size() == 0) {
+            System.out.println();
+        }
+    }
+
+    private static int[][] generate(int users, int degree) {
+        Random random = new Random(42);
+        int[][] pairs = new int[users][degree];
+        for (int u = 0; u < users; u++) {
+            for (int i = 0; i < degree; i++) {
+                pairs[u][i] = 10_000_000 + random.nextInt(users);
+            }
+        }
+        return pairs;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,320 @@
+package tools.bench;
+
+import client.MessageParser;
+import client.storage.ChatHistoryManager;
+import common.protocol.Message;
+import common.utils.JsonUtil;
+import server.ClientHandler;
+import server.OnlineUserManager;
+import server.RateLimiter;
+import server.ServerLogger;
+import server.dao.EmbeddedUserStore;
+import server.dao.UserStoreFactory;
+import tools.loadgen.LoadGenerator;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * 协议编解码与路由热点路径的微基准
+ * 覆盖 JsonUtil 编解码、客户端基于 Gson 的 MessageParser、服务器读线程处理一行消息的完整路径
+ * （ClientHandler：解析、统计、限流检查、JFR、路由和转发）、OnlineUserManager 查找与群发遍历（默认 1 万个模拟会话）、
+ * ChatHistoryManager 保存/加载。
+ * 模拟会话是真实的 ClientHandler，底层是丢弃输出的桩 Socket，所以发送路径（编码、写锁、统计）都会执行。
+ * 路由用例测量时关闭入站限流（检查本身仍会执行），否则突发额度用完后测到的是丢弃路径。
+ * 输入数据用固定种子生成，结果可在本机重复对比；建议固定堆大小运行。
+ * 用法：java -Xms1g -Xmx1g -cp out:lib/* tools.bench.HotPathBench [--选项=值 ...]
+ *   --filter=json                      只运行名称包含该字符串的用例
+ *   --warmup=3 --iterations=5          预热轮数、测量轮数
+ *   --time=1000                        每轮时长（毫秒）
+ *   --sessions=10000                   模拟在线会话数
+ *   --csv=bench.csv                    另外把结果写成 CSV（便于和历史结果对比）
+ */
+public class HotPathBench {
+    private static final int INPUTS = 1024; // 每类输入预先生成的条数（2 的幂，按序号轮换）
+    private static final String[] SESSION_BENCHMARKS = {
+            "route.heartbeat", "route.text", "route.getOnlineUsers",
+            "online.getUser.hit", "online.isUserOnline.miss", "online.broadcastGroup"};
+
+    private final Map<String, String> options;
+    private final MicroBench bench;
+    private final String filter;
+    private final int sessions;
+    private final List<MicroBench.Result> results = new ArrayList<>();
+
+    public static void main(String[] args) throws Exception {
+        new HotPathBench(LoadGenerator.parseArgs(args)).run();
+    }
+
+    HotPathBench(Map<String, String> options) {
+        this.options = options;
+        this.filter = options.getOrDefault("filter", "");
+        this.sessions = Integer.parseInt(options.getOrDefault("sessions", "10000"));
+        this.bench = new MicroBench(
+                Integer.parseInt(options.getOrDefault("warmup", "3")),
+                Integer.parseInt(options.getOrDefault("iterations", "5")),
+                Long.parseLong(options.getOrDefault("time", "1000")));
+    }
+
+    void run() throws Exception {
+        System.out.printf("JVM: %s %s, 最大堆 %d MB, 处理器 %d%n",
+                System.getProperty("java.vm.name"), System.getProperty("java.version"),
+                Runtime.getRuntime().maxMemory() / 1048576, Runtime.getRuntime().availableProcessors());
+        System.out.println("参数: " + options);
+        System.out.println(MicroBench.header());
+
+        // 服务端日志关闭，避免日志队列和文件写入干扰测量
+        ServerLogger.setEnabled(false);
+        Path dataDir = Files.createTempDirectory("hotpath-bench");
+        UserStoreFactory.setStore(new EmbeddedUserStore(dataDir.toString()));
+        try {
+            codecBenchmarks();
+            parserBenchmarks();
+            sessionBenchmarks();
+            historyBenchmarks();
+        } finally {
+            UserStoreFactory.close();
+            deleteRecursively(dataDir);
+        }
+
+        String csv = options.get("csv");
+        if (csv != null) {
+            try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(Path.of(csv), StandardCharsets.UTF_8))) {
+                writer.println(MicroBench.csvHeader());
+                for (MicroBench.Result r : results) {
+                    writer.println(MicroBench.csv(r));
+                }
+            }
+            System.out.println("📄 结果已写入 " + csv);
+        }
+    }
+
+    private void bench(String name, MicroBench.Op op) throws Exception {
+        if (!selected(name)) {
+            return;
+        }
+        MicroBench.Result result = bench.run(name, op);
+        results.add(result);
+        System.out.println(MicroBench.format(result));
+    }
+
+    // 准备数据开销较大的分组先判断有没有用例被选中
+    private boolean selected(String... names) {
+        for (String name : names) {
+            if (name.contains(filter)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // ===== JsonUtil =====
+
+    private void codecBenchmarks() throws Exception {
+        Random random = new Random(42);
+        Message[] texts = new Message[INPUTS];
+        String[] textJson = new String[INPUTS];
+        String[] fileJson = new String[INPUTS];
+        for (int i = 0; i < INPUTS; i++) {
+            texts[i] = textMessage(random, i);
+            textJson[i] = JsonUtil.toJson(texts[i]);
+            Message file = new Message("file");
+            file.setFrom(account(i));
+            file.setTo(account(i + 1));
+            file.setContent(randomText(random, 4096));
+            file.putExtra("fileName", "report-" + i + ".pdf");
+            fileJson[i] = JsonUtil.toJson(file);
+        }
+        Message group = textMessage(random, 0);
+        group.setType("group");
+        group.putExtra("groupId", "900001");
+        group.putExtra("time", "1700000000000");
+
+        bench("json.toJson.text", i -> JsonUtil.toJson(texts[i & (INPUTS - 1)]));
+        bench("json.toJson.groupExtras", i -> JsonUtil.toJson(group));
+        bench("json.fromJson.text", i -> JsonUtil.fromJson(textJson[i & (INPUTS - 1)]));
+        bench("json.fromJson.file4k", i -> JsonUtil.fromJson(fileJson[i & (INPUTS - 1)]));
+    }
+
+    // ===== 客户端 MessageParser（Gson） =====
+
+    private void parserBenchmarks() throws Exception {
+        Random random = new Random(43);
+        String[] contents = new String[INPUTS];
+        String[] json = new String[INPUTS];
+        for (int i = 0; i < INPUTS; i++) {
+            contents[i] = randomText(random, 64);
+            json[i] = MessageParser.buildSingleChatMsg(account(i), account(i + 1), contents[i]);
+        }
+
+        bench("parser.buildSingleChat", i -> MessageParser.buildSingleChatMsg(
+                account(0), account(1), contents[i & (INPUTS - 1)]));
+        bench("parser.getMessageType", i -> MessageParser.getMessageType(json[i & (INPUTS - 1)]));
+        bench("parser.getField", i -> MessageParser.getField(json[i & (INPUTS - 1)], "content"));
+    }
+
+    // ===== ClientHandler 路由 / OnlineUserManager（模拟会话） =====
+
+    private void sessionBenchmarks() throws Exception {
+        if (!selected(SESSION_BENCHMARKS)) {
+            return;
+        }
+        ClientHandler[] handlers = new ClientHandler[sessions];
+        for (int i = 0; i < sessions; i++) {
+            handlers[i] = new ClientHandler(new StubSocket(i), i);
+            handlers[i].setUserId(account(i)); // 同时登记到 OnlineUserManager
+        }
+        System.out.println("👥 已模拟 " + OnlineUserManager.getOnlineCount() + " 个在线会话");
+
+        boolean rateLimit = RateLimiter.isEnabled();
+        RateLimiter.setEnabled(false);
+        try {
+            // 和读线程收到的一样是 JSON 行，解析也计入耗时
+            ClientHandler sender = handlers[0];
+            String heartbeat = JsonUtil.toJson(new Message("heartbeat"));
+            Message textMsg = new Message("text");
+            textMsg.setFrom(account(0));
+            textMsg.setTo(account(1));
+            textMsg.setContent("路由基准测试消息");
+            String text = JsonUtil.toJson(textMsg);
+            String onlineList = JsonUtil.toJson(new Message("getOnlineUsers"));
+            Message group = new Message("group");
+            group.setFrom(account(0));
+            group.setContent("群发基准测试消息");
+
+            bench("route.heartbeat", i -> {
+                sender.processLine(heartbeat);
+                return heartbeat;
+            });
+            bench("route.text", i -> {
+                sender.processLine(text);
+                return text;
+            });
+            bench("route.getOnlineUsers", i -> {
+                sender.processLine(onlineList);
+                return onlineList;
+            });
+
+            Random random = new Random(44);
+            String[] hits = new String[INPUTS];
+            String[] misses = new String[INPUTS];
+            for (int i = 0; i < INPUTS; i++) {
+                hits[i] = account(random.nextInt(sessions));
+                misses[i] = account(sessions + random.nextInt(sessions));
+            }
+            bench("online.getUser.hit", i -> OnlineUserManager.getUser(hits[i & (INPUTS - 1)]));
+            bench("online.isUserOnline.miss", i -> OnlineUserManager.isUserOnline(misses[i & (INPUTS - 1)]));
+            bench("online.broadcastGroup", i -> {
+                OnlineUserManager.broadcastGroupMessage(group, account(0));
+                return group;
+            });
+        } finally {
+            RateLimiter.setEnabled(rateLimit);
+            for (int i = 0; i < sessions; i++) {
+                OnlineUserManager.removeUser(account(i));
+            }
+        }
+    }
+
+    // ===== 客户端 ChatHistoryManager =====
+
+    private void historyBenchmarks() throws Exception {
+        if (!selected("history.save200", "history.load200")) {
+            return;
+        }
+        Random random = new Random(45);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            sb.append("[12:").append(10 + i % 50).append("] ").append(account(i % 2)).append(": ")
+                    .append(randomText(random, 60)).append('\n');
+        }
+        String content = sb.toString();
+        ChatHistoryManager history = new ChatHistoryManager("single", "bench" + ProcessHandle.current().pid());
+        try {
+            bench("history.save200", i -> {
+                history.saveChatHistory(content);
+                return content;
+            });
+            bench("history.load200", i -> history.loadChatHistory());
+        } finally {
+            history.deleteChatHistory();
+        }
+    }
+
+    // ===== 工具 =====
+
+    private static Message textMessage(Random random, int i) {
+        Message msg = new Message("text");
+        msg.setFrom(account(i));
+        msg.setTo(account(i + 1));
+        msg.setContent(randomText(random, 64));
+        return msg;
+    }
+
+    private static String account(int i) {
+        return String.valueOf(10_000_000 + i);
+    }
+
+    // 中英文混合的随机文本（JsonUtil 按逗号切分字段，所以不含逗号、引号这类它处理不了的字符）
+    private static String randomText(Random random, int length) {
+        String alphabet = "abcdefghijklmnopqrstuvwxyz0123456789 .!?你好世界消息测试";
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return sb.toString();
+    }
+
+    private static void deleteRecursively(Path dir) {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        } catch (IOException e) {
+            System.err.println("❌ 清理临时目录失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 桩 Socket：没有输入，输出全部丢弃
+     */
+    private static final class StubSocket extends Socket {
+        private final int port;
+
+        StubSocket(int port) {
+            this.port = port;
+        }
+
+        @Override
+        public InetAddress getInetAddress() {
+            return InetAddress.getLoopbackAddress();
+        }
+
+        @Override
+        public int getPort() {
+            return port;
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return new ByteArrayInputStream(new byte[0]);
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return OutputStream.nullOutputStream();
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package tools.bench;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 简易微基准框架（项目没有构建工具，无法引入 JMH，这里只实现 HotPathBench 用到的部分）
+ * 每个用例先预热若干轮，再测量若干轮；每轮在固定时长内按批反复调用，统计 ns/op。
+ * 分配量用 ThreadMXBean 读取当前线程的累计分配字节数，得到 B/op 和分配速率，
+ * 同时记录测量期间的 GC 次数和耗时（相当于 JMH 的 -prof gc）。
+ * 用例的返回值交给 consume()，防止 JIT 把没有副作用的调用整体消除。
+ */
+final class MicroBench {
+
+    /**
+     * 一次被测调用，i 为累计调用序号（用来轮换预先准备好的输入）
+     */
+    interface Op {
+        Object run(int i) throws Exception;
+    }
+
+    /**
+     * 单个用例的测量结果
+     */
+    static final class Result {
+        final String name;
+        final long ops;
+        final double nsPerOp;
+        final double nsStdev;          // 各测量轮 ns/op 的标准差
+        final double bytesPerOp;
+        final double allocMbPerSec;
+        final long gcCount;
+        final long gcMillis;
+
+        Result(String name, long ops, double nsPerOp, double nsStdev, double bytesPerOp,
+               double allocMbPerSec, long gcCount, long gcMillis) {
+            this.name = name;
+            this.ops = ops;
+            this.nsPerOp = nsPerOp;
+            this.nsStdev = nsStdev;
+            this.bytesPerOp = bytesPerOp;
+            this.allocMbPerSec = allocMbPerSec;
+            this.gcCount = gcCount;
+            this.gcMillis = gcMillis;
+        }
+    }
+
+    private static final PrintStream DISCARD = new PrintStream(OutputStream.nullOutputStream());
+
+    private final int warmupIterations;
+    private final int iterations;
+    private final long iterationNanos;
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private final List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+
+    // consume() 用：返回值与一个不可能相等的对象比较，JIT 无法证明比较结果而必须算出返回值
+    private volatile Object marker = new Object();
+    private long consumed;
+
+    MicroBench(int warmupIterations, int iterations, long iterationMillis) {
+        this.warmupIterations = warmupIterations;
+        this.iterations = iterations;
+        this.iterationNanos = iterationMillis * 1_000_000L;
+        if (threads.isThreadAllocatedMemorySupported()) {
+            threads.setThreadAllocatedMemoryEnabled(true);
+        }
+    }
+
+    /**
+     * 运行一个用例；期间 System.out 被临时丢弃（被测代码里的控制台输出不计入结果也不刷屏）
+     */
+    Result run(String name, Op op) throws Exception {
+        PrintStream out = System.out;
+        System.setOut(DISCARD);
+        try {
+            int batch = 1;
+            int seq = 0;
+            for (int w = 0; w < warmupIterations; w++) {
+                long ops = 0;
+                long start = System.nanoTime();
+                long elapsed;
+                do {
+                    for (int k = 0; k < batch; k++) {
+                        consume(op.run(seq++));
+                    }
+                    ops += batch;
+                    elapsed = System.nanoTime() - start;
+                } while (elapsed < iterationNanos);
+                // 调整批大小，让一批大约 1 毫秒，减少读时钟的开销
+                batch = (int) Math.max(1, Math.min(1 << 20, ops * 1_000_000L / elapsed));
+            }
+
+            long threadId = Thread.currentThread().getId();
+            long gcCountBefore = gcCount();
+            long gcMillisBefore = gcMillis();
+            long allocBefore = threads.getThreadAllocatedBytes(threadId);
+            double[] nsPerOp = new double[iterations];
+            long totalOps = 0;
+            long totalNanos = 0;
+            for (int it = 0; it < iterations; it++) {
+                long ops = 0;
+                long start = System.nanoTime();
+                long elapsed;
+                do {
+                    for (int k = 0; k < batch; k++) {
+                        consume(op.run(seq++));
+                    }
+                    ops += batch;
+                    elapsed = System.nanoTime() - start;
+                } while (elapsed < iterationNanos);
+                nsPerOp[it] = elapsed / (double) ops;
+                totalOps += ops;
+                totalNanos += elapsed;
+            }
+            long allocated = threads.getThreadAllocatedBytes(threadId) - allocBefore;
+
+            double mean = 0;
+            for (double v : nsPerOp) {
+                mean += v;
+            }
+            mean /= iterations;
+            double variance = 0;
+            for (double v : nsPerOp) {
+                variance += (v - mean) * (v - mean);
+            }
+            double stdev = iterations > 1 ? Math.sqrt(variance / (iterations - 1)) : 0;
+
+            return new Result(name, totalOps, mean, stdev,
+                    allocated < 0 ? -1 : allocated / (double) totalOps,
+                    allocated < 0 ? -1 : allocated / 1048576.0 / (totalNanos / 1e9),
+                    gcCount() - gcCountBefore, gcMillis() - gcMillisBefore);
+        } finally {
+            System.setOut(out);
+        }
+    }
+
+    private void consume(Object result) {
+        if (result == marker) {
+            consumed++;
+        }
+    }
+
+    private long gcCount() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : collectors) {
+            total += Math.max(0, gc.getCollectionCount());
+        }
+        return total;
+    }
+
+    private long gcMillis() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : collectors) {
+            total += Math.max(0, gc.getCollectionTime());
+        }
+        return total;
+    }
+
+    static String header() {
+        return String.format("%-28s %12s %10s %10s %12s %10s %6s %8s",
+                "benchmark", "ns/op", "±stdev", "ops/s", "B/op", "MB/s", "gc", "gc ms");
+    }
+
+    static String format(Result r) {
+        return String.format("%-28s %12.1f %10.1f %10.0f %12.1f %10.1f %6d %8d",
+                r.name, r.nsPerOp, r.nsStdev, 1e9 / r.nsPerOp, r.bytesPerOp, r.allocMbPerSec, r.gcCount, r.gcMillis);
+    }
+
+    static String csvHeader() {
+        return "benchmark,ns_per_op,ns_stdev,ops_per_sec,bytes_per_op,alloc_mb_per_sec,gc_count,gc_millis";
+    }
+
+    static String csv(Result r) {
+        return String.format(Locale.ROOT, "%s,%.2f,%.2f,%.1f,%.1f,%.2f,%d,%d",
+                r.name, r.nsPerOp, r.nsStdev, 1e9 / r.nsPerOp, r.bytesPerOp, r.allocMbPerSec, r.gcCount, r.gcMillis);
+    }
+}
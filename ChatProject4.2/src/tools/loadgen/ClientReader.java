@@ -0,0 +1,71 @@
+package tools.loadgen;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * 读取线程：一个 Selector 负责一部分已登录的连接（LoadGenerator、EndToEndBench 共用）
+ */
+class ClientReader extends Thread {
+    private final Selector selector;
+    private final LoadStats stats;
+    private final Queue<SimulatedClient> pending = new ConcurrentLinkedQueue<>();
+
+    ClientReader(String name, LoadStats stats) throws IOException {
+        super(name);
+        setDaemon(true);
+        this.stats = stats;
+        this.selector = Selector.open();
+    }
+
+    void add(SimulatedClient client) {
+        pending.add(client);
+        selector.wakeup();
+    }
+
+    void shutdown() {
+        interrupt();
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (!isInterrupted()) {
+                SimulatedClient c;
+                while ((c = pending.poll()) != null) {
+                    c.channel.configureBlocking(false);
+                    c.channel.register(selector, SelectionKey.OP_READ, c);
+                }
+                selector.select(100);
+                for (SelectionKey key : selector.selectedKeys()) {
+                    SimulatedClient client = (SimulatedClient) key.attachment();
+                    boolean open;
+                    try {
+                        open = client.onReadable();
+                    } catch (IOException e) {
+                        open = false;
+                    }
+                    if (!open) {
+                        key.cancel();
+                        if (!client.closed) {
+                            client.close();
+                            stats.disconnects.increment();
+                        }
+                    }
+                }
+                selector.selectedKeys().clear();
+            }
+        } catch (IOException e) {
+            System.err.println("❌ 读取线程异常: " + e.getMessage());
+        } finally {
+            try {
+                selector.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
@@ -0,0 +1,380 @@
+package tools.loadgen;
+
+import com.google.gson.GsonBuilder;
+import common.protocol.Message;
+import server.ChatServer;
+import server.HeartbeatManager;
+import server.ServerConfig;
+import server.ServerLogger;
+import server.dao.OfflineMessageStore;
+import server.dao.UserStatusWriter;
+import server.dao.UserStoreFactory;
+import server.metrics.LatencyHistogram;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * 端到端延迟与群发扇出基准
+ * 在同一进程内启动 ChatServer（内嵌存储、127.0.0.1、系统分配端口），按 --sizes 依次把在线人数加到 10 / 100 / 1000 / 10000，
+ * 每一级分别测量：
+ *   text  —— 1:1 私聊的投递延迟（随机挑选发送方和接收方，最多 --window 条在途）
+ *   group —— 群发给全部在线用户时每个接收方的投递延迟，以及整轮扇出完成时间（最后一个接收方收到为止）
+ * 不依赖网络和外部服务；结果输出到控制台，并写成 JSON 报告（字段顺序固定，可以直接 diff 不同版本的结果）。
+ * 有场景超时（消息没有全部送达）时进程以退出码 1 结束，便于无人值守运行。
+ * 服务端和客户端在同一进程，每个连接占两个文件描述符，超出进程上限的规模会跳过并写入报告。
+ * 基准测的是投递能力，进程内服务器关闭入站限流（RateLimiter）和连接准入控制（AdmissionControl）。
+ *
+ * 用法：java -Xmx2g -cp out:lib/* tools.loadgen.EndToEndBench [--选项=值 ...]
+ *   --sizes=10,100,1000,10000          在线人数（即群规模，群聊发给全部在线用户）
+ *   --text-messages=5000 --window=32   每级私聊条数、在途上限
+ *   --group-messages=0                 每级群发条数（0 表示 100000/规模，限制在 20~1000）
+ *   --group-window=1                   群发在途上限
+ *   --warmup-messages=2000             第一级开始前的预热私聊条数（不计入结果）
+ *   --text-size=64                     消息内容长度（字符）
+ *   --io-threads=4                     客户端读取线程数
+ *   --timeout=30                       等待投递的超时（秒）
+ *   --report=e2e-report.json           报告路径
+ *   --server-log=WARN                  服务端日志级别
+ */
+public class EndToEndBench {
+    private static final String ID_KEY = "e2e";      // 场景序号（高 32 位）+ 场景内消息序号（低 32 位）
+    private static final String PASSWORD = "bench123";
+
+    private final Map<String, String> options;
+    private final LoadStats stats = new LoadStats();
+    private final List<SimulatedClient> clients = new ArrayList<>();
+    private final List<ClientReader> readers = new ArrayList<>();
+    private final List<Map<String, Object>> results = new ArrayList<>();
+    private final List<Integer> skippedSizes = new ArrayList<>();
+    private final long timeoutSeconds;
+    private InetSocketAddress address;
+    private String content;
+    private int scenarioSeq;
+    private boolean anyTimedOut;
+    private volatile Scenario current;
+
+    /**
+     * 一个场景（一种消息类型 × 一个在线规模）的进行中状态，投递回调在读取线程上更新
+     */
+    private static final class Scenario {
+        final String type;
+        final long idBase;
+        final Semaphore window;
+        final Map<Integer, AtomicInteger> remaining = new ConcurrentHashMap<>(); // 消息序号 -> 还差几个接收方
+        final LatencyHistogram delivery = new LatencyHistogram();
+        final LatencyHistogram fanout = new LatencyHistogram();
+        final LongAdder deliveries = new LongAdder();
+
+        Scenario(String type, int seq, int window) {
+            this.type = type;
+            this.idBase = (long) seq << 32;
+            this.window = new Semaphore(window);
+        }
+    }
+
+    public EndToEndBench(Map<String, String> options) {
+        this.options = options;
+        this.timeoutSeconds = Long.parseLong(options.getOrDefault("timeout", "30"));
+    }
+
+    public static void main(String[] args) throws Exception {
+        EndToEndBench bench = new EndToEndBench(LoadGenerator.parseArgs(args));
+        boolean ok = bench.run();
+        System.exit(ok ? 0 : 1);
+    }
+
+    /**
+     * 运行全部规模，返回是否所有场景都在超时前完成
+     */
+    public boolean run() throws Exception {
+        List<Integer> sizes = new ArrayList<>();
+        for (String s : get("sizes", "10,100,1000,10000").split(",")) {
+            sizes.add(Math.max(2, Integer.parseInt(s.trim())));
+        }
+        Collections.sort(sizes);
+        content = LoadGenerator.filler(getInt("text-size", 64));
+
+        ServerLogger.setLevel(ServerLogger.Level.valueOf(get("server-log", "WARN")));
+        HeartbeatManager.setTimeoutMillis(TimeUnit.HOURS.toMillis(24)); // 客户端不发心跳，基准期间不做超时踢线
+        Path dataDir = Files.createTempDirectory("e2e-bench");
+        ServerConfig config = ServerConfig.load(new String[]{
+                "--port=0", "--bind=127.0.0.1", "--store=embedded", "--store.dir=" + dataDir,
+                "--metrics.port=-1", "--jmx.enabled=false", "--ratelimit.enabled=false",
+                "--admission.enabled=false"});
+        ChatServer server = new ChatServer(config, new ChatServer.Listener() {
+            @Override
+            public void onError(String message, Exception e) {
+                System.err.println(message);
+            }
+        });
+        server.start();
+        address = new InetSocketAddress("127.0.0.1", server.getPort());
+        System.out.printf("🚀 进程内服务器已启动 %s，规模 %s%n", address, sizes);
+
+        for (int i = 0; i < getInt("io-threads", 4); i++) {
+            ClientReader reader = new ClientReader("e2e-io-" + i, stats);
+            readers.add(reader);
+            reader.start();
+        }
+
+        long maxFds = maxFileDescriptors();
+        try {
+            boolean warmedUp = false;
+            System.out.println(String.format("%-6s %7s %8s %11s %10s %12s %9s %9s %9s %9s %11s",
+                    "type", "online", "sent", "deliveries", "msg/s", "deliv/s",
+                    "p50 us", "p99 us", "p999 us", "max us", "fanout p99"));
+            for (int size : sizes) {
+                if (maxFds > 0 && 2L * size + 256 > maxFds) {
+                    System.err.printf("⚠️ 文件描述符上限 %d 不足以在同一进程内支撑 %d 个连接，跳过该规模%n", maxFds, size);
+                    skippedSizes.add(size);
+                    continue;
+                }
+                growTo(size);
+                if (!warmedUp) {
+                    runScenario("text", getInt("warmup-messages", 2000), getInt("window", 32), false);
+                    warmedUp = true;
+                }
+                runScenario("text", getInt("text-messages", 5000), getInt("window", 32), true);
+                int groupMessages = getInt("group-messages", 0);
+                if (groupMessages <= 0) {
+                    groupMessages = Math.max(20, Math.min(1000, 100_000 / size));
+                }
+                runScenario("group", groupMessages, getInt("group-window", 1), true);
+            }
+        } finally {
+            current = null;
+            for (ClientReader reader : readers) {
+                reader.shutdown();
+            }
+            for (SimulatedClient client : clients) {
+                client.close();
+            }
+            server.stop();
+            UserStatusWriter.shutdown();
+            OfflineMessageStore.shutdown();
+            UserStoreFactory.close();
+            deleteRecursively(dataDir);
+        }
+
+        writeReport(Paths.get(get("report", "e2e-report.json")));
+        return !anyTimedOut;
+    }
+
+    // ===== 建立连接 =====
+
+    // 注册并登录新连接，直到在线人数达到 size
+    private void growTo(int size) throws Exception {
+        int from = clients.size();
+        if (size <= from) {
+            return;
+        }
+        long start = System.nanoTime();
+        List<SimulatedClient> created = Collections.synchronizedList(new ArrayList<>());
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(32, size - from));
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = from; i < size; i++) {
+            int index = i;
+            futures.add(pool.submit(() -> {
+                SimulatedClient client = new SimulatedClient(index, address, stats);
+                try {
+                    String account = client.register("e2e" + index, PASSWORD);
+                    client.login(account, PASSWORD);
+                } catch (IOException e) {
+                    client.close();
+                    throw e;
+                }
+                client.deliveryListener = this::onDelivery;
+                created.add(client);
+                return null;
+            }));
+        }
+        try {
+            for (Future<?> f : futures) {
+                f.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+        created.sort(Comparator.comparingInt(c -> c.index));
+        for (SimulatedClient client : created) {
+            readers.get(client.index % readers.size()).add(client);
+            clients.add(client);
+        }
+        System.out.printf("👥 在线 %d 个连接（本级新建 %d 个，耗时 %d ms）%n",
+                clients.size(), created.size(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    // ===== 场景 =====
+
+    private void runScenario(String type, int messages, int window, boolean record) throws Exception {
+        int online = clients.size();
+        int expectedPerMessage = "group".equals(type) ? online - 1 : 1; // 群发不发给发送者自己
+        int typeIndex = LoadStats.indexOf(type);
+        Scenario s = new Scenario(type, ++scenarioSeq, window);
+        current = s;
+        Random random = new Random(scenarioSeq); // 固定种子，同样的参数每次挑选同样的收发双方
+
+        long start = System.nanoTime();
+        int sent = 0;
+        boolean timedOut = false;
+        for (int n = 0; n < messages; n++) {
+            if (!s.window.tryAcquire(timeoutSeconds, TimeUnit.SECONDS)) {
+                timedOut = true;
+                break;
+            }
+            SimulatedClient sender = clients.get(random.nextInt(online));
+            Message msg = new Message(type);
+            msg.setContent(content);
+            if ("text".equals(type)) {
+                SimulatedClient receiver = clients.get(random.nextInt(online - 1));
+                msg.setTo((receiver != sender ? receiver : clients.get(online - 1)).account);
+            }
+            msg.putExtra(ID_KEY, Long.toString(s.idBase + n));
+            s.remaining.put(n, new AtomicInteger(expectedPerMessage));
+            sender.sendTimed(msg, typeIndex);
+            sent++;
+        }
+        // 等待在途消息全部送达
+        if (!timedOut && !s.window.tryAcquire(window, timeoutSeconds, TimeUnit.SECONDS)) {
+            timedOut = true;
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        current = null;
+        if (!record) {
+            return;
+        }
+        if (timedOut) {
+            anyTimedOut = true;
+            System.err.printf("❌ %s 场景（在线 %d）等待投递超时，已送达 %d / %d%n",
+                    type, online, s.deliveries.sum(), (long) sent * expectedPerMessage);
+        }
+
+        LatencyHistogram.Snapshot delivery = s.delivery.snapshot();
+        LatencyHistogram.Snapshot fanout = s.fanout.snapshot();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("type", type);
+        result.put("online", online);
+        result.put("messages", sent);
+        result.put("expectedDeliveries", (long) sent * expectedPerMessage);
+        result.put("deliveries", s.deliveries.sum());
+        result.put("timedOut", timedOut);
+        result.put("seconds", round(seconds, 3));
+        result.put("messagesPerSecond", round(sent / seconds, 1));
+        result.put("deliveriesPerSecond", round(s.deliveries.sum() / seconds, 1));
+        result.put("deliveryMicros", percentiles(delivery));
+        if ("group".equals(type)) {
+            result.put("fanoutMicros", percentiles(fanout));
+        }
+        results.add(result);
+
+        System.out.println(String.format("%-6s %7d %8d %11d %10.1f %12.1f %9d %9d %9d %9d %11s",
+                type, online, sent, s.deliveries.sum(), sent / seconds, s.deliveries.sum() / seconds,
+                delivery.getPercentile(50) / 1000, delivery.getPercentile(99) / 1000,
+                delivery.getPercentile(99.9) / 1000, delivery.getMax() / 1000,
+                "group".equals(type) ? String.valueOf(fanout.getPercentile(99) / 1000) : "-"));
+    }
+
+    // 读取线程回调：记录投递延迟，某条消息的最后一个接收方收到时记录扇出完成时间并释放在途名额
+    private void onDelivery(SimulatedClient receiver, Message msg, long latencyNanos, long now) {
+        Scenario s = current;
+        String id = msg.getExtra(ID_KEY);
+        if (s == null || id == null || !s.type.equals(msg.getType())) {
+            return;
+        }
+        long value = Long.parseLong(id);
+        if ((value & ~0xFFFFFFFFL) != s.idBase) {
+            return; // 上一个场景超时后迟到的消息
+        }
+        s.delivery.record(latencyNanos);
+        s.deliveries.increment();
+        int n = (int) value;
+        AtomicInteger remaining = s.remaining.get(n);
+        if (remaining != null && remaining.decrementAndGet() == 0) {
+            s.remaining.remove(n);
+            s.fanout.record(latencyNanos);
+            s.window.release();
+        }
+    }
+
+    // ===== 报告 =====
+
+    private void writeReport(Path path) throws IOException {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("tool", "EndToEndBench");
+        report.put("javaVersion", System.getProperty("java.version"));
+        report.put("processors", Runtime.getRuntime().availableProcessors());
+        report.put("maxHeapMb", Runtime.getRuntime().maxMemory() / 1048576);
+        report.put("options", options);
+        report.put("skippedSizes", skippedSizes);
+        report.put("scenarios", results);
+        String json = new GsonBuilder().setPrettyPrinting().disableHtmlEscaping().create().toJson(report);
+        Files.write(path, (json + "\n").getBytes(StandardCharsets.UTF_8));
+        System.out.println("📄 报告已写入 " + path.toAbsolutePath());
+    }
+
+    private static Map<String, Object> percentiles(LatencyHistogram.Snapshot s) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("count", s.getCount());
+        map.put("mean", round(s.getMean() / 1000, 1));
+        map.put("p50", s.getPercentile(50) / 1000);
+        map.put("p90", s.getPercentile(90) / 1000);
+        map.put("p99", s.getPercentile(99) / 1000);
+        map.put("p999", s.getPercentile(99.9) / 1000);
+        map.put("max", s.getMax() / 1000);
+        return map;
+    }
+
+    private static double round(double value, int digits) {
+        double scale = Math.pow(10, digits);
+        return Math.round(value * scale) / scale;
+    }
+
+    // ===== 工具 =====
+
+    private static long maxFileDescriptors() {
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.UnixOperatingSystemMXBean) {
+            return ((com.sun.management.UnixOperatingSystemMXBean) os).getMaxFileDescriptorCount();
+        }
+        return -1;
+    }
+
+    private static void deleteRecursively(Path dir) {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        } catch (IOException e) {
+            System.err.println("❌ 清理临时目录失败: " + e.getMessage());
+        }
+    }
+
+    private String get(String key, String defaultValue) {
+        return options.getOrDefault(key, defaultValue);
+    }
+
+    private int getInt(String key, int defaultValue) {
+        return Integer.parseInt(get(key, String.valueOf(defaultValue)));
+    }
+}
@@ -0,0 +1,333 @@
+package tools.loadgen;
+
+import common.protocol.Message;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 无界面压测工具：模拟大量聊天客户端
+ * 建立 N 条连接并注册/登录，然后按目标速率和消息配比发送 text、group、file、heartbeat、getOnlineUsers，
+ * 消息中带发送时间戳（同一进程内的 System.nanoTime()），收到时计算端到端延迟并按类型统计百分位。
+ * 只依赖 common.protocol.Message / JsonUtil，不加载任何 Swing 类，可在同一台 Linux 机器上对本地服务器压测。
+ *
+ * 用法：java -cp out:lib/* tools.loadgen.LoadGenerator [--选项=值 ...]
+ *   --host=127.0.0.1 --port=5000       服务器地址
+ *   --clients=100                      模拟连接数
+ *   --rate=1000                        全部连接合计每秒发送的消息数
+ *   --mix=text:60,group:5,file:5,heartbeat:20,getOnlineUsers:10   消息配比（权重）
+ *   --duration=30                      发送阶段时长（秒）
+ *   --text-size=64 --file-size=4096    text/group 和 file 的内容长度（字符）
+ *   --senders=2 --io-threads=2         发送线程数、读取线程数
+ *   --accounts=loadgen-accounts.txt    账号文件（已有账号直接登录，不够时注册新账号并追加）
+ *   --password=loadgen123              压测账号密码
+ *   --drain-millis=1000                停止发送后继续接收在途消息的时间
+ *   --online-delta=true                getOnlineUsers 带上已知版本，只取变化（false 时每次取完整列表）
+ *
+ * 注意：JsonUtil 按逗号分割字段，消息内容里不能有逗号，这里只用字母和数字填充。
+ * 群聊会发给全部在线用户，连接数较多时 group 的权重要相应调低。
+ * 服务器默认开启入站限流和连接准入控制，高速率或大量连接压测时用 --ratelimit.enabled=false、
+ * --admission.enabled=false 启动服务器（或相应调高限额），否则测到的是限流后的结果。
+ */
+public class LoadGenerator {
+    private static final String FILLER_CHARS = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
+
+    private final Map<String, String> options;
+    private final LoadStats stats = new LoadStats();
+    private final List<SimulatedClient> clients = Collections.synchronizedList(new ArrayList<>());
+    private SimulatedClient[] peers;   // 登录成功的连接（发送线程随机挑选私聊对象，只读）
+    private final int[] mixWeights = new int[LoadStats.TYPES.length];
+    private int mixTotal;
+    private String textContent;
+    private String fileContent;
+    private boolean onlineDelta;
+    private volatile boolean running = true;
+
+    public LoadGenerator(Map<String, String> options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        new LoadGenerator(parseArgs(args)).run();
+    }
+
+    public void run() throws Exception {
+        String host = get("host", "127.0.0.1");
+        int port = getInt("port", 5000);
+        int clientCount = getInt("clients", 100);
+        int rate = getInt("rate", 1000);
+        int duration = getInt("duration", 30);
+        int senders = Math.max(1, getInt("senders", 2));
+        int ioThreads = Math.max(1, getInt("io-threads", 2));
+        parseMix(get("mix", "text:60,group:5,file:5,heartbeat:20,getOnlineUsers:10"));
+        textContent = filler(getInt("text-size", 64));
+        fileContent = filler(getInt("file-size", 4096));
+        onlineDelta = Boolean.parseBoolean(get("online-delta", "true"));
+
+        System.out.printf("🚀 压测目标 %s:%d，%d 个连接，%d 条/秒，时长 %d 秒，配比 %s%n",
+                host, port, clientCount, rate, duration, get("mix", "默认"));
+
+        // 1. 建立连接并登录
+        long setupStart = System.nanoTime();
+        connectAll(new InetSocketAddress(host, port), clientCount);
+        if (clients.size() < 2) {
+            System.err.println("❌ 登录成功的连接不足 2 个，无法压测");
+            return;
+        }
+        System.out.printf("✅ %d 个连接已登录，耗时 %d ms%n", clients.size(),
+                (System.nanoTime() - setupStart) / 1_000_000);
+
+        // 2. 读取线程
+        List<ClientReader> readers = new ArrayList<>();
+        for (int i = 0; i < ioThreads; i++) {
+            ClientReader t = new ClientReader("loadgen-io-" + i, stats);
+            readers.add(t);
+            t.start();
+        }
+        for (int i = 0; i < clients.size(); i++) {
+            readers.get(i % ioThreads).add(clients.get(i));
+        }
+
+        // 3. 发送线程（每个线程负责一部分连接，按各自的份额定速发送）
+        List<Thread> senderThreads = new ArrayList<>();
+        for (int i = 0; i < senders; i++) {
+            List<SimulatedClient> slice = new ArrayList<>();
+            for (int c = i; c < clients.size(); c += senders) {
+                slice.add(clients.get(c));
+            }
+            double perSender = rate / (double) senders;
+            Thread t = new Thread(() -> sendLoop(slice, perSender), "loadgen-sender-" + i);
+            t.setDaemon(true);
+            senderThreads.add(t);
+            t.start();
+        }
+
+        // 4. 每秒输出一次进度
+        long start = System.nanoTime();
+        long lastSent = 0, lastReceived = 0;
+        for (int s = 1; s <= duration; s++) {
+            LockSupport.parkNanos(start + s * 1_000_000_000L - System.nanoTime());
+            long sent = stats.totalSent();
+            long received = stats.totalReceived();
+            System.out.printf("[%3ds] 发送 %6d/s  收到 %6d/s  错误 %d  写阻塞 %d  断开 %d%n", s,
+                    sent - lastSent, received - lastReceived, stats.errors.sum(),
+                    stats.sendStalls.sum(), stats.disconnects.sum());
+            lastSent = sent;
+            lastReceived = received;
+        }
+        running = false;
+        for (Thread t : senderThreads) {
+            t.join(2000);
+        }
+        // 留一点时间接收在途消息
+        Thread.sleep(getInt("drain-millis", 1000));
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        for (ClientReader t : readers) {
+            t.shutdown();
+        }
+        for (SimulatedClient c : clients) {
+            c.close();
+        }
+        System.out.println();
+        System.out.print(stats.formatReport(seconds));
+    }
+
+    // ===== 建立连接 =====
+
+    private void connectAll(InetSocketAddress address, int count) throws Exception {
+        String password = get("password", "loadgen123");
+        Path accountFile = Paths.get(get("accounts", "loadgen-accounts.txt"));
+        List<String> accounts = Files.exists(accountFile)
+                ? new ArrayList<>(Files.readAllLines(accountFile, StandardCharsets.UTF_8))
+                : new ArrayList<>();
+        accounts.removeIf(String::isBlank);
+        List<String> created = Collections.synchronizedList(new ArrayList<>());
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(32, count));
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            int index = i;
+            String existing = index < accounts.size() ? accounts.get(index).trim() : null;
+            futures.add(pool.submit(() -> {
+                SimulatedClient client = null;
+                try {
+                    client = new SimulatedClient(index, address, stats);
+                    String account = existing;
+                    if (account == null) {
+                        account = client.register("lg" + index, password);
+                        created.add(account);
+                    }
+                    client.login(account, password);
+                    clients.add(client);
+                } catch (IOException e) {
+                    System.err.println("❌ 连接 #" + index + " 初始化失败: " + e.getMessage());
+                    if (client != null) {
+                        client.close();
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> f : futures) {
+            f.get();
+        }
+        pool.shutdown();
+
+        if (!created.isEmpty()) {
+            Files.write(accountFile, created, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            System.out.println("📝 新注册 " + created.size() + " 个账号，已追加到 " + accountFile.toAbsolutePath());
+        }
+        clients.sort((a, b) -> Integer.compare(a.index, b.index));
+        peers = clients.toArray(new SimulatedClient[0]);
+    }
+
+    // ===== 发送 =====
+
+    // 开环定速发送：按计划时间发送，落后时不补睡眠、尽快追上，并记录落后了多少
+    private void sendLoop(List<SimulatedClient> slice, double ratePerSecond) {
+        if (slice.isEmpty() || ratePerSecond <= 0) {
+            return;
+        }
+        long interval = (long) (1e9 / ratePerSecond);
+        long next = System.nanoTime();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (running) {
+            long now = System.nanoTime();
+            if (next > now) {
+                LockSupport.parkNanos(next - now);
+                continue;
+            }
+            stats.scheduleLag.record(now - next);
+            next += interval;
+
+            SimulatedClient client = slice.get(random.nextInt(slice.size()));
+            if (client.closed) {
+                continue;
+            }
+            int type = pickType(random);
+            try {
+                client.sendTimed(buildMessage(type, client, random), type);
+            } catch (IOException e) {
+                if (!client.closed) {
+                    client.close();
+                    stats.disconnects.increment();
+                }
+            }
+        }
+    }
+
+    private Message buildMessage(int type, SimulatedClient sender, ThreadLocalRandom random) {
+        switch (type) {
+            case LoadStats.TEXT: {
+                Message msg = new Message("text");
+                msg.setTo(randomPeer(sender, random).account);
+                msg.setContent(textContent);
+                return msg;
+            }
+            case LoadStats.GROUP: {
+                Message msg = new Message("group");
+                msg.setContent(textContent);
+                return msg;
+            }
+            case LoadStats.FILE: {
+                Message msg = new Message("file");
+                msg.setTo(randomPeer(sender, random).account);
+                msg.setContent(fileContent);
+                msg.putExtra("fileName", "loadgen.bin");
+                return msg;
+            }
+            case LoadStats.HEARTBEAT:
+                return new Message("heartbeat");
+            default: {
+                Message msg = new Message("getOnlineUsers");
+                String version = sender.onlineVersion;
+                if (onlineDelta && version != null) {
+                    msg.putExtra("since", version);
+                }
+                return msg;
+            }
+        }
+    }
+
+    private SimulatedClient randomPeer(SimulatedClient sender, ThreadLocalRandom random) {
+        int n = peers.length;
+        SimulatedClient peer = peers[random.nextInt(n - 1)];
+        return peer != sender ? peer : peers[n - 1];
+    }
+
+    private int pickType(ThreadLocalRandom random) {
+        int r = random.nextInt(mixTotal);
+        for (int i = 0; i < mixWeights.length; i++) {
+            r -= mixWeights[i];
+            if (r < 0) {
+                return i;
+            }
+        }
+        return LoadStats.HEARTBEAT;
+    }
+
+    // ===== 参数 =====
+
+    private void parseMix(String mix) {
+        Arrays.fill(mixWeights, 0);
+        for (String part : mix.split(",")) {
+            String[] kv = part.trim().split(":");
+            int index = LoadStats.indexOf(kv[0].trim());
+            if (index < 0 || kv.length != 2) {
+                throw new IllegalArgumentException("无法识别的配比项: " + part + "（可选 " + String.join("/", LoadStats.TYPES) + "）");
+            }
+            mixWeights[index] = Integer.parseInt(kv[1].trim());
+        }
+        mixTotal = Arrays.stream(mixWeights).sum();
+        if (mixTotal <= 0) {
+            throw new IllegalArgumentException("消息配比的权重之和必须大于 0: " + mix);
+        }
+    }
+
+    static String filler(int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append(FILLER_CHARS.charAt(i % FILLER_CHARS.length()));
+        }
+        return sb.toString();
+    }
+
+    // --key=value（HotPathBench 等工具共用）
+    public static Map<String, String> parseArgs(String[] args) {
+        Map<String, String> map = new TreeMap<>();
+        for (String arg : args) {
+            if (arg.startsWith("--")) {
+                int eq = arg.indexOf('=');
+                map.put(eq > 0 ? arg.substring(2, eq) : arg.substring(2), eq > 0 ? arg.substring(eq + 1) : "true");
+            }
+        }
+        return map;
+    }
+
+    private String get(String key, String defaultValue) {
+        return options.getOrDefault(key, defaultValue);
+    }
+
+    private int getInt(String key, int defaultValue) {
+        String value = options.get(key);
+        return value != null ? Integer.parseInt(value.trim()) : defaultValue;
+    }
+}
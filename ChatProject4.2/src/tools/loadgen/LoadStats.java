@@ -0,0 +1,87 @@
+package tools.loadgen;
+
+import server.metrics.LatencyHistogram;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 压测统计：按消息类型记录发送数、收到数和端到端延迟
+ * 延迟直方图复用服务端的 LatencyHistogram（固定内存、无锁写入）。
+ */
+class LoadStats {
+    // 压测会发送的消息类型（下标即类型序号）
+    static final String[] TYPES = {"text", "group", "file", "heartbeat", "getOnlineUsers"};
+    static final int TEXT = 0;
+    static final int GROUP = 1;
+    static final int FILE = 2;
+    static final int HEARTBEAT = 3;
+    static final int ONLINE_USERS = 4;
+
+    final LongAdder[] sent = new LongAdder[TYPES.length];
+    final LongAdder[] received = new LongAdder[TYPES.length];
+    final LatencyHistogram[] latency = new LatencyHistogram[TYPES.length];
+    final LatencyHistogram scheduleLag = new LatencyHistogram();   // 实际发送时间落后计划时间多少
+    final LongAdder sentBytes = new LongAdder();
+    final LongAdder receivedFrames = new LongAdder();
+    final LongAdder errors = new LongAdder();
+    final LongAdder sendStalls = new LongAdder();                  // 写入时 socket 缓冲区已满的次数
+    final LongAdder disconnects = new LongAdder();
+
+    LoadStats() {
+        for (int i = 0; i < TYPES.length; i++) {
+            sent[i] = new LongAdder();
+            received[i] = new LongAdder();
+            latency[i] = new LatencyHistogram();
+        }
+    }
+
+    static int indexOf(String type) {
+        for (int i = 0; i < TYPES.length; i++) {
+            if (TYPES[i].equals(type)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    long totalSent() {
+        long total = 0;
+        for (LongAdder s : sent) {
+            total += s.sum();
+        }
+        return total;
+    }
+
+    long totalReceived() {
+        long total = 0;
+        for (LongAdder r : received) {
+            total += r.sum();
+        }
+        return total;
+    }
+
+    /**
+     * 结束时的汇总表，延迟单位毫秒
+     */
+    String formatReport(double seconds) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-15s %10s %10s %10s %9s %9s %9s %9s %9s%n",
+                "type", "sent", "received", "recv/s", "p50", "p90", "p99", "p999", "max"));
+        for (int i = 0; i < TYPES.length; i++) {
+            LatencyHistogram.Snapshot s = latency[i].snapshot();
+            sb.append(String.format("%-15s %10d %10d %10.1f %9s %9s %9s %9s %9s%n",
+                    TYPES[i], sent[i].sum(), received[i].sum(), received[i].sum() / seconds,
+                    millis(s.getPercentile(50), s), millis(s.getPercentile(90), s),
+                    millis(s.getPercentile(99), s), millis(s.getPercentile(99.9), s), millis(s.getMax(), s)));
+        }
+        LatencyHistogram.Snapshot lag = scheduleLag.snapshot();
+        sb.append(String.format("发送计划滞后 p99=%s ms, max=%s ms；错误 %d，写阻塞 %d 次，断开 %d 个%n",
+                millis(lag.getPercentile(99), lag), millis(lag.getMax(), lag),
+                errors.sum(), sendStalls.sum(), disconnects.sum()));
+        return sb.toString();
+    }
+
+    private static String millis(long nanos, LatencyHistogram.Snapshot s) {
+        return s.getCount() == 0 ? "-" : String.format("%.2f", nanos / 1e6);
+    }
+}
@@ -0,0 +1,233 @@
+package tools.loadgen;
+
+import common.protocol.Message;
+import common.utils.JsonUtil;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 一个模拟客户端（一条 TCP 连接）
+ * 注册、登录阶段用阻塞模式逐行读写；登录完成后切换为非阻塞模式，交给 IO 线程的 Selector 读取，
+ * 发送线程直接写 channel（缓冲区满时短暂等待并计数）。
+ */
+class SimulatedClient {
+    static final String TIMESTAMP_KEY = "lgts";   // 发送时的 System.nanoTime()，收到时计算端到端延迟
+
+    /**
+     * 收到带时间戳的实时消息时回调（在读取线程上调用，EndToEndBench 用来统计群发完成时间）
+     */
+    interface DeliveryListener {
+        void onDelivery(SimulatedClient receiver, Message msg, long latencyNanos, long now);
+    }
+
+    final int index;
+    final SocketChannel channel;
+    private final LoadStats stats;
+    String account;
+    volatile boolean closed;
+    volatile DeliveryListener deliveryListener;
+    volatile String onlineVersion; // 最近一次收到的在线列表版本（getOnlineUsers 带上它只取变化）
+
+    // 请求-响应类消息（心跳、在线列表）按发送顺序排队，收到响应时取出对应的发送时间
+    private final Queue<Long> pendingHeartbeats = new ConcurrentLinkedQueue<>();
+    private final Queue<Long> pendingOnlineLists = new ConcurrentLinkedQueue<>();
+
+    // 行缓冲（只在当前读线程访问：登录阶段是建连线程，之后是 IO 线程）
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(64 * 1024);
+    private byte[] line = new byte[1024];
+    private int lineLength;
+
+    SimulatedClient(int index, InetSocketAddress address, LoadStats stats) throws IOException {
+        this.index = index;
+        this.stats = stats;
+        this.channel = SocketChannel.open(address);
+        this.channel.socket().setTcpNoDelay(true);
+    }
+
+    // ===== 注册 / 登录（阻塞模式） =====
+
+    /**
+     * 注册新账号，返回服务器分配的账号
+     */
+    String register(String nickname, String password) throws IOException {
+        Message msg = new Message("register");
+        msg.setNickname(nickname);
+        msg.setPassword(password);
+        send(JsonUtil.toJson(msg));
+        Message result = awaitType("registerResult");
+        if (result.getContent() == null || "failed".equals(result.getContent())) {
+            throw new IOException("注册失败: " + nickname);
+        }
+        return result.getContent();
+    }
+
+    void login(String account, String password) throws IOException {
+        Message msg = new Message("login");
+        msg.setAccount(account);
+        msg.setPassword(password);
+        send(JsonUtil.toJson(msg));
+        Message result = awaitType("loginResult");
+        if (!"success".equals(result.getContent())) {
+            throw new IOException("登录失败 " + account + ": " + result.getContent());
+        }
+        this.account = account;
+    }
+
+    // 阻塞读取直到收到指定类型的消息，途中的其他消息（好友列表、离线消息等）忽略
+    private Message awaitType(String type) throws IOException {
+        while (true) {
+            String json = readLineBlocking();
+            Message msg = JsonUtil.fromJson(json);
+            if (type.equals(msg.getType())) {
+                return msg;
+            }
+        }
+    }
+
+    private String readLineBlocking() throws IOException {
+        while (true) {
+            readBuffer.flip();
+            String json = nextLine();
+            readBuffer.compact();
+            if (json != null) {
+                return json;
+            }
+            if (channel.read(readBuffer) < 0) {
+                throw new EOFException("连接被服务器关闭");
+            }
+        }
+    }
+
+    // 从 readBuffer（读模式）中取出一行，不足一行时把已读字节留在 line 中并返回 null
+    private String nextLine() {
+        while (readBuffer.hasRemaining()) {
+            byte b = readBuffer.get();
+            if (b == '\n') {
+                String json = new String(line, 0, lineLength, StandardCharsets.UTF_8);
+                lineLength = 0;
+                return json;
+            }
+            if (lineLength == line.length) {
+                line = Arrays.copyOf(line, line.length * 2);
+            }
+            line[lineLength++] = b;
+        }
+        return null;
+    }
+
+    // ===== 运行阶段（非阻塞，IO 线程调用） =====
+
+    /**
+     * 读取并处理当前可读的全部消息，连接关闭返回 false
+     */
+    boolean onReadable() throws IOException {
+        int n = channel.read(readBuffer);
+        if (n < 0) {
+            return false;
+        }
+        readBuffer.flip();
+        String json;
+        while ((json = nextLine()) != null) {
+            onMessage(json);
+        }
+        readBuffer.compact();
+        return true;
+    }
+
+    private void onMessage(String json) {
+        long now = System.nanoTime();
+        stats.receivedFrames.increment();
+        Message msg = JsonUtil.fromJson(json);
+        String type = msg.getType();
+        if (type == null) {
+            return;
+        }
+        switch (type) {
+            case "text":
+            case "group":
+            case "file": {
+                String ts = msg.getExtra(TIMESTAMP_KEY);
+                if (ts != null && msg.getExtra("offline") == null) {
+                    int i = LoadStats.indexOf(type);
+                    long latency = now - Long.parseLong(ts);
+                    stats.received[i].increment();
+                    stats.latency[i].record(latency);
+                    DeliveryListener listener = deliveryListener;
+                    if (listener != null) {
+                        listener.onDelivery(this, msg, latency, now);
+                    }
+                }
+                break;
+            }
+            case "heartbeat":
+                complete(pendingHeartbeats, LoadStats.HEARTBEAT, now);
+                break;
+            case "onlineList":
+            case "onlineDelta":
+                onlineVersion = msg.getExtra("version");
+                complete(pendingOnlineLists, LoadStats.ONLINE_USERS, now);
+                break;
+            case "error":
+                stats.errors.increment();
+                break;
+            default:
+                // 上下线通知、系统消息等不计入
+        }
+    }
+
+    private void complete(Queue<Long> pending, int typeIndex, long now) {
+        Long sentAt = pending.poll();
+        if (sentAt != null) {
+            stats.received[typeIndex].increment();
+            stats.latency[typeIndex].record(now - sentAt);
+        }
+    }
+
+    // ===== 发送（任意发送线程调用） =====
+
+    /**
+     * 发送一条压测消息，时间戳在编码前写入
+     */
+    void sendTimed(Message msg, int typeIndex) throws IOException {
+        long now = System.nanoTime();
+        if (typeIndex == LoadStats.HEARTBEAT) {
+            pendingHeartbeats.add(now);
+        } else if (typeIndex == LoadStats.ONLINE_USERS) {
+            pendingOnlineLists.add(now);
+        } else {
+            msg.putExtra(TIMESTAMP_KEY, Long.toString(now));
+        }
+        send(JsonUtil.toJson(msg));
+        stats.sent[typeIndex].increment();
+    }
+
+    synchronized void send(String json) throws IOException {
+        byte[] bytes = (json + "\n").getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+        while (buf.hasRemaining()) {
+            if (channel.write(buf) == 0) {
+                // 非阻塞模式下 socket 发送缓冲区已满（服务器读得比我们发得慢）
+                stats.sendStalls.increment();
+                LockSupport.parkNanos(50_000);
+            }
+        }
+        stats.sentBytes.add(bytes.length);
+    }
+
+    void close() {
+        closed = true;
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
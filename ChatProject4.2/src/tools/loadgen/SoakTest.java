@@ -0,0 +1,441 @@
+package tools.loadgen;
+
+import common.protocol.Message;
+import common.utils.JsonUtil;
+import server.ChatServer;
+import server.ClientHandler;
+import server.HeartbeatManager;
+import server.OnlineUserManager;
+import server.ServerConfig;
+import server.ServerLogger;
+import server.dao.OfflineMessageStore;
+import server.dao.UserStatusWriter;
+import server.dao.UserStoreFactory;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+
+/**
+ * 长时间浸泡测试：连接反复登录/退出/掉线/超时，检测资源泄漏
+ * 在同一进程内启动 ChatServer（内嵌存储、127.0.0.1、系统分配端口），保持 --stable 个常驻连接定时心跳和互发消息，
+ * 另有 --churners 个线程不停地"连接 → 登录 → 发几条消息（部分发给离线用户）→ 结束"，结束方式按配比选择：
+ *   logout  —— 发送 logout 后关闭
+ *   drop    —— 直接关闭 socket（模拟断网、进程被杀）
+ *   timeout —— 不再发任何消息，等服务器心跳检测踢掉后再关闭
+ * 每隔 --sample-interval 秒采样一次（先 System.gc()）：堆、线程数、文件描述符，以及在线用户数、心跳登记数、
+ * 打开的连接数、离线消息写入队列长度。预热结束时的采样作为基线，之后任一指标连续 --violations 次超出
+ * 基线加允许增量即判定泄漏并失败。运行结束后停止换手、等待超时连接被清理，再检查服务端的连接与会话
+ * 都回落到常驻连接数。失败时退出码为 1。
+ *
+ * 用法：java -Xmx1g -cp out:lib/* tools.loadgen.SoakTest [--选项=值 ...]
+ *   --duration=3600 --warmup=120       总时长、预热时长（秒）
+ *   --sample-interval=10               采样间隔（秒）
+ *   --stable=50 --churners=16          常驻连接数、换手线程数
+ *   --accounts=400                     账号总数（前 stable 个给常驻连接，其余分给换手线程）
+ *   --messages-per-session=5           每次换手登录后发送的私聊条数
+ *   --ending=logout:50,drop:30,timeout:20   结束方式配比
+ *   --heartbeat-timeout=5000           浸泡期间服务端的心跳超时（毫秒，检测间隔取其 1/3）
+ *   --max-heap-growth-mb=64 --max-heap-growth-pct=50   允许的堆增长（取两者较大值）
+ *   --max-thread-growth=0 --max-fd-growth=0            允许的线程、描述符增长（0 表示按换手线程数自动取）
+ *   --violations=3                     连续超限几次判定为泄漏
+ *   --csv=soak.csv                     采样序列（CSV）
+ *   --server-log=WARN                  服务端日志级别
+ */
+public class SoakTest {
+    private static final String PASSWORD = "soak1234";
+    private static final String[] ENDINGS = {"logout", "drop", "timeout"};
+
+    private final Map<String, String> options;
+    private final LoadStats stats = new LoadStats();
+    private final List<SimulatedClient> stableClients = new ArrayList<>();
+    private final List<String> accounts = new ArrayList<>();
+    private final AtomicInteger clientSeq = new AtomicInteger();
+    private final LongAdder[] endings = {new LongAdder(), new LongAdder(), new LongAdder()};
+    private final LongAdder sessionErrors = new LongAdder();
+    private final int[] endingWeights = new int[ENDINGS.length];
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private InetSocketAddress address;
+    private String content;
+    private long heartbeatTimeout;
+    private volatile boolean running = true;    // 常驻连接的心跳（直到测试结束）
+    private volatile boolean churning = true;   // 换手线程（结束前先停止，等待服务端回落）
+
+    /**
+     * 一次采样
+     */
+    private static final class Sample {
+        long seconds;
+        long heapMb;
+        int threads;
+        long fds;
+        int online;
+        int tracked;
+        int openConnections;
+        int offlineQueue;
+        long sessions;
+
+        String csv() {
+            return seconds + "," + heapMb + "," + threads + "," + fds + "," + online + "," + tracked + ","
+                    + openConnections + "," + offlineQueue + "," + sessions;
+        }
+    }
+
+    public SoakTest(Map<String, String> options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        boolean ok = new SoakTest(LoadGenerator.parseArgs(args)).run();
+        System.exit(ok ? 0 : 1);
+    }
+
+    /**
+     * 运行浸泡测试，返回是否通过
+     */
+    public boolean run() throws Exception {
+        long duration = getInt("duration", 3600);
+        long warmup = getInt("warmup", 120);
+        long interval = Math.max(1, getInt("sample-interval", 10));
+        int stableCount = Math.max(2, getInt("stable", 50));
+        int churners = Math.max(1, getInt("churners", 16));
+        int accountCount = Math.max(stableCount + churners, getInt("accounts", 400));
+        int maxViolations = Math.max(1, getInt("violations", 3));
+        long heapGrowthMb = getInt("max-heap-growth-mb", 64);
+        int heapGrowthPct = getInt("max-heap-growth-pct", 50);
+        int threadGrowth = getInt("max-thread-growth", 0);
+        int fdGrowth = getInt("max-fd-growth", 0);
+        if (threadGrowth <= 0) {
+            threadGrowth = churners + 10;    // 每个换手会话在服务端占一个线程
+        }
+        if (fdGrowth <= 0) {
+            fdGrowth = 2 * churners + 32;    // 同一进程内每个连接两端各一个描述符
+        }
+        parseEndings(get("ending", "logout:50,drop:30,timeout:20"));
+        content = LoadGenerator.filler(32);
+
+        ServerLogger.setLevel(ServerLogger.Level.valueOf(get("server-log", "WARN")));
+        heartbeatTimeout = getInt("heartbeat-timeout", 5000);
+        HeartbeatManager.setTimeoutMillis(heartbeatTimeout);
+        HeartbeatManager.setCheckIntervalMillis(Math.max(100, heartbeatTimeout / 3));
+        Path dataDir = Files.createTempDirectory("soak-test");
+        ServerConfig config = ServerConfig.load(new String[]{
+                "--port=0", "--bind=127.0.0.1", "--store=embedded", "--store.dir=" + dataDir,
+                "--metrics.port=-1", "--jmx.enabled=false"});
+        ChatServer server = new ChatServer(config, new ChatServer.Listener() {
+            @Override
+            public void onError(String message, Exception e) {
+                System.err.println(message);
+            }
+        });
+        server.start();
+        address = new InetSocketAddress("127.0.0.1", server.getPort());
+        System.out.printf("🚀 进程内服务器已启动 %s：常驻 %d，换手线程 %d，账号 %d，时长 %d 秒（预热 %d 秒）%n",
+                address, stableCount, churners, accountCount, duration, warmup);
+
+        List<Thread> workers = new ArrayList<>();
+        ClientReader reader = new ClientReader("soak-io", stats);
+        PrintWriter csv = null;
+        boolean passed = true;
+        try {
+            registerAccounts(accountCount);
+            reader.start();
+            for (int i = 0; i < stableCount; i++) {
+                SimulatedClient client = new SimulatedClient(clientSeq.incrementAndGet(), address, stats);
+                client.login(accounts.get(i), PASSWORD);
+                stableClients.add(client);
+                reader.add(client);
+            }
+
+            Thread stableThread = new Thread(this::stableLoop, "soak-stable");
+            stableThread.setDaemon(true);
+            workers.add(stableThread);
+            List<String> churnAccounts = accounts.subList(stableCount, accounts.size());
+            for (int i = 0; i < churners; i++) {
+                // 每个换手线程使用不相交的一段账号，避免同一账号被两个线程同时登录
+                int from = i * churnAccounts.size() / churners;
+                int to = (i + 1) * churnAccounts.size() / churners;
+                List<String> slice = churnAccounts.subList(from, to);
+                Random random = new Random(i);
+                Thread t = new Thread(() -> churnLoop(slice, random), "soak-churn-" + i);
+                t.setDaemon(true);
+                workers.add(t);
+            }
+            for (Thread t : workers) {
+                t.start();
+            }
+
+            String csvPath = options.get("csv");
+            if (csvPath != null) {
+                csv = new PrintWriter(Files.newBufferedWriter(Paths.get(csvPath), StandardCharsets.UTF_8));
+                csv.println("seconds,heap_mb,threads,fds,online,tracked,open_connections,offline_queue,sessions");
+            }
+
+            System.out.printf("%7s %8s %8s %6s %7s %8s %6s %8s %9s  %s%n",
+                    "秒", "堆MB", "线程", "描述符", "在线", "心跳登记", "连接", "离线队列", "换手会话", "logout/drop/timeout/错误");
+            long start = System.nanoTime();
+            Sample baseline = null;
+            int heapViolations = 0, threadViolations = 0, fdViolations = 0;
+            for (long next = interval; next <= duration; next += interval) {
+                LockSupport.parkNanos(start + TimeUnit.SECONDS.toNanos(next) - System.nanoTime());
+                Sample s = sample(next);
+                print(s);
+                if (csv != null) {
+                    csv.println(s.csv());
+                    csv.flush();
+                }
+                if (baseline == null) {
+                    if (next >= warmup) {
+                        baseline = s;
+                        System.out.printf("📏 基线：堆 %d MB，线程 %d，描述符 %d%n", s.heapMb, s.threads, s.fds);
+                    }
+                    continue;
+                }
+                long heapLimit = baseline.heapMb + Math.max(heapGrowthMb, baseline.heapMb * heapGrowthPct / 100);
+                heapViolations = s.heapMb > heapLimit ? heapViolations + 1 : 0;
+                threadViolations = s.threads > baseline.threads + threadGrowth ? threadViolations + 1 : 0;
+                fdViolations = s.fds >= 0 && s.fds > baseline.fds + fdGrowth ? fdViolations + 1 : 0;
+                if (heapViolations >= maxViolations) {
+                    System.err.printf("❌ 堆持续增长：%d MB > 基线 %d MB 的上限 %d MB%n", s.heapMb, baseline.heapMb, heapLimit);
+                    passed = false;
+                }
+                if (threadViolations >= maxViolations) {
+                    System.err.printf("❌ 线程持续增长：%d > 基线 %d + %d%n", s.threads, baseline.threads, threadGrowth);
+                    passed = false;
+                }
+                if (fdViolations >= maxViolations) {
+                    System.err.printf("❌ 文件描述符持续增长：%d > 基线 %d + %d%n", s.fds, baseline.fds, fdGrowth);
+                    passed = false;
+                }
+                if (!passed) {
+                    break;
+                }
+            }
+
+            // 停止换手（常驻连接继续心跳），等超时会话被心跳检测清理后检查服务端状态是否回落
+            churning = false;
+            for (Thread t : workers) {
+                if (t != stableThread) {
+                    t.join(heartbeatTimeout * 2 + 5000);
+                }
+            }
+            Thread.sleep(heartbeatTimeout + HeartbeatManager.getCheckIntervalMillis() * 2 + 1000);
+            Sample last = sample((System.nanoTime() - start) / 1_000_000_000L);
+            System.out.println("🧹 停止换手后：");
+            print(last);
+            if (last.online != stableCount || last.tracked != stableCount || last.openConnections != stableCount) {
+                System.err.printf("❌ 停止换手后服务端状态没有回落到常驻连接数 %d：在线 %d，心跳登记 %d，连接 %d%n",
+                        stableCount, last.online, last.tracked, last.openConnections);
+                passed = false;
+            }
+            if (baseline == null) {
+                System.err.println("⚠️ 运行时长不足预热时长，未做增长检查");
+            }
+        } finally {
+            running = false;
+            churning = false;
+            if (csv != null) {
+                csv.close();
+            }
+            reader.shutdown();
+            for (SimulatedClient client : stableClients) {
+                client.close();
+            }
+            server.stop();
+            UserStatusWriter.shutdown();
+            OfflineMessageStore.shutdown();
+            UserStoreFactory.close();
+            deleteRecursively(dataDir);
+        }
+        System.out.println(passed ? "✅ 浸泡测试通过" : "❌ 浸泡测试失败");
+        return passed;
+    }
+
+    // ===== 账号 =====
+
+    // 每个账号用一个新连接注册（单个连接的注册频率受 RateLimiter 限制）
+    private void registerAccounts(int count) throws IOException {
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            SimulatedClient registrar = new SimulatedClient(clientSeq.incrementAndGet(), address, stats);
+            try {
+                accounts.add(registrar.register("soak" + i, PASSWORD));
+            } finally {
+                registrar.close();
+            }
+        }
+        System.out.printf("📝 已注册 %d 个账号，耗时 %d ms%n", count, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    // ===== 常驻连接 =====
+
+    // 每个常驻连接按心跳超时的 1/3 发送心跳，另外每轮随机发一条私聊给其他常驻连接
+    private void stableLoop() {
+        Random random = new Random(-1);
+        long period = TimeUnit.MILLISECONDS.toNanos(Math.max(100, heartbeatTimeout / 3));
+        long next = System.nanoTime();
+        while (running) {
+            next += period;
+            for (SimulatedClient client : stableClients) {
+                try {
+                    client.sendTimed(new Message("heartbeat"), LoadStats.HEARTBEAT);
+                    Message text = new Message("text");
+                    text.setTo(stableClients.get(random.nextInt(stableClients.size())).account);
+                    text.setContent(content);
+                    client.sendTimed(text, LoadStats.TEXT);
+                } catch (IOException e) {
+                    sessionErrors.increment();
+                }
+            }
+            LockSupport.parkNanos(next - System.nanoTime());
+        }
+    }
+
+    // ===== 换手 =====
+
+    private void churnLoop(List<String> slice, Random random) {
+        int messages = getInt("messages-per-session", 5);
+        int last = -1;
+        while (churning) {
+            // 不立即重登上一个账号：直接断开的旧会话可能还没被服务端清理，登录会因重复在线被拒绝
+            int pick = random.nextInt(slice.size());
+            if (pick == last && slice.size() > 1) {
+                pick = (pick + 1) % slice.size();
+            }
+            last = pick;
+            SimulatedClient client = null;
+            try {
+                client = new SimulatedClient(clientSeq.incrementAndGet(), address, stats);
+                client.login(slice.get(pick), PASSWORD);
+                for (int i = 0; i < messages; i++) {
+                    // 收件人从全部账号中随机选择，其中不在线的会进入离线消息
+                    Message text = new Message("text");
+                    text.setTo(accounts.get(random.nextInt(accounts.size())));
+                    text.setContent(content);
+                    client.sendTimed(text, LoadStats.TEXT);
+                }
+                int ending = pickEnding(random);
+                switch (ending) {
+                    case 0:
+                        client.send(JsonUtil.toJson(new Message("logout")));
+                        break;
+                    case 1:
+                        break;
+                    default:
+                        // 保持连接但不再发送，直到超过服务端心跳超时
+                        long wait = heartbeatTimeout + HeartbeatManager.getCheckIntervalMillis() + 500;
+                        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(wait);
+                        while (churning && System.nanoTime() < deadline) {
+                            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(100));
+                        }
+                }
+                endings[ending].increment();
+            } catch (IOException e) {
+                sessionErrors.increment();
+            } finally {
+                if (client != null) {
+                    client.close();
+                }
+            }
+        }
+    }
+
+    private int pickEnding(Random random) {
+        int total = 0;
+        for (int w : endingWeights) {
+            total += w;
+        }
+        int r = random.nextInt(total);
+        for (int i = 0; i < endingWeights.length; i++) {
+            r -= endingWeights[i];
+            if (r < 0) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    private void parseEndings(String spec) {
+        for (String part : spec.split(",")) {
+            String[] kv = part.trim().split(":");
+            int index = -1;
+            for (int i = 0; i < ENDINGS.length; i++) {
+                if (ENDINGS[i].equals(kv[0].trim())) {
+                    index = i;
+                }
+            }
+            if (index < 0 || kv.length != 2) {
+                throw new IllegalArgumentException("无法识别的结束方式: " + part + "（可选 logout/drop/timeout）");
+            }
+            endingWeights[index] = Integer.parseInt(kv[1].trim());
+        }
+        if (endingWeights[0] + endingWeights[1] + endingWeights[2] <= 0) {
+            throw new IllegalArgumentException("结束方式的权重之和必须大于 0: " + spec);
+        }
+    }
+
+    // ===== 采样 =====
+
+    private Sample sample(long seconds) {
+        System.gc();
+        Sample s = new Sample();
+        s.seconds = seconds;
+        s.heapMb = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed() / 1048576;
+        s.threads = threads.getThreadCount();
+        s.fds = openFileDescriptors();
+        s.online = OnlineUserManager.getOnlineCount();
+        s.tracked = HeartbeatManager.getTrackedCount();
+        s.openConnections = ClientHandler.getOpenConnectionCount();
+        s.offlineQueue = OfflineMessageStore.getQueueSize();
+        s.sessions = endings[0].sum() + endings[1].sum() + endings[2].sum();
+        return s;
+    }
+
+    private void print(Sample s) {
+        System.out.printf("%7d %8d %8d %6d %7d %8d %6d %8d %9d  %d/%d/%d/%d%n",
+                s.seconds, s.heapMb, s.threads, s.fds, s.online, s.tracked, s.openConnections,
+                s.offlineQueue, s.sessions, endings[0].sum(), endings[1].sum(), endings[2].sum(),
+                sessionErrors.sum());
+    }
+
+    private static long openFileDescriptors() {
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.UnixOperatingSystemMXBean) {
+            return ((com.sun.management.UnixOperatingSystemMXBean) os).getOpenFileDescriptorCount();
+        }
+        return -1;
+    }
+
+    private static void deleteRecursively(Path dir) {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        } catch (IOException e) {
+            System.err.println("❌ 清理临时目录失败: " + e.getMessage());
+        }
+    }
+
+    private String get(String key, String defaultValue) {
+        return options.getOrDefault(key, defaultValue);
+    }
+
+    private int getInt(String key, int defaultValue) {
+        return Integer.parseInt(get(key, String.valueOf(defaultValue)));
+    }
+}